@@ -9,15 +9,25 @@
 
 package org.eclipse.tracecompass.analysis.graph.core.tests.analysis.criticalpath;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.tracecompass.analysis.graph.core.base.IGraphWorker;
+import org.eclipse.tracecompass.analysis.graph.core.base.TmfEdge.EdgeType;
 import org.eclipse.tracecompass.analysis.graph.core.base.TmfGraph;
 import org.eclipse.tracecompass.analysis.graph.core.base.TmfVertex;
 import org.eclipse.tracecompass.analysis.graph.core.criticalpath.CriticalPathAlgorithmException;
 import org.eclipse.tracecompass.analysis.graph.core.criticalpath.ICriticalPathAlgorithm;
 import org.eclipse.tracecompass.analysis.graph.core.tests.stubs.GraphBuilder;
+import org.eclipse.tracecompass.analysis.graph.core.tests.stubs.GraphFactory;
+import org.eclipse.tracecompass.analysis.graph.core.tests.stubs.GraphOps;
+import org.eclipse.tracecompass.analysis.graph.core.tests.stubs.TestGraphWorker;
 import org.eclipse.tracecompass.internal.analysis.graph.core.criticalpath.CriticalPathAlgorithmBounded;
+import org.junit.Test;
 
 /**
  * Test the {@link CriticalPathAlgorithmBounded} critical path algorithm
@@ -44,4 +54,59 @@ public class TmfCriticalPathAlgoBoundedTest extends TmfCriticalPathAlgorithmTest
         return builder.criticalPathBounded();
     }
 
+    /**
+     * Test that the paths computed together, in parallel and sharing the
+     * resolved blockings, are the same as the paths computed one at a time
+     *
+     * @throws CriticalPathAlgorithmException
+     *             an exception in the calculation occurred
+     */
+    @Test
+    public void testComputeAll() throws CriticalPathAlgorithmException {
+        GraphBuilder[] builders = { GraphFactory.GRAPH_BASIC, GraphFactory.GRAPH_WAKEUP_SELF,
+                GraphFactory.GRAPH_WAKEUP_NEW, GraphFactory.GRAPH_WAKEUP_UNKNOWN,
+                GraphFactory.GRAPH_WAKEUP_MUTUAL, GraphFactory.GRAPH_NESTED,
+                GraphFactory.GRAPH_WAKEUP_EMBEDDED, GraphFactory.GRAPH_WAKEUP_INTERLEAVE,
+                GraphFactory.GRAPH_NET1 };
+        for (GraphBuilder builder : builders) {
+            checkComputeAll(builder.build());
+        }
+
+        /* A chain of workers, each woken up by the previous one */
+        int nbWorkers = 50;
+        TmfGraph graph = new TmfGraph();
+        List<IGraphWorker> workers = new ArrayList<>();
+        for (int i = 0; i < nbWorkers; i++) {
+            workers.add(new TestGraphWorker(i));
+        }
+        graph.add(workers.get(0), new TmfVertex(0));
+        for (int i = 1; i < nbWorkers; i++) {
+            graph.add(workers.get(i), new TmfVertex(0));
+            TmfVertex wakeup = new TmfVertex(10 * i + 5);
+            graph.append(workers.get(i - 1), wakeup, EdgeType.RUNNING);
+            TmfVertex woken = new TmfVertex(10 * i + 5);
+            graph.append(workers.get(i), woken, EdgeType.BLOCKED);
+            graph.link(wakeup, woken);
+        }
+        for (IGraphWorker worker : workers) {
+            graph.append(worker, new TmfVertex(1000), EdgeType.RUNNING);
+        }
+        checkComputeAll(graph);
+    }
+
+    private static void checkComputeAll(TmfGraph graph) throws CriticalPathAlgorithmException {
+        List<TmfVertex> starts = new ArrayList<>();
+        for (IGraphWorker worker : graph.getWorkers()) {
+            TmfVertex head = graph.getHead(worker);
+            assertNotNull(head);
+            starts.add(head);
+        }
+        List<TmfGraph> paths = new CriticalPathAlgorithmBounded(graph).computeAll(starts, null);
+        assertEquals(starts.size(), paths.size());
+        for (int i = 0; i < starts.size(); i++) {
+            TmfGraph expected = new CriticalPathAlgorithmBounded(graph).compute(starts.get(i), null);
+            GraphOps.checkEquality(expected, paths.get(i));
+        }
+    }
+
 }
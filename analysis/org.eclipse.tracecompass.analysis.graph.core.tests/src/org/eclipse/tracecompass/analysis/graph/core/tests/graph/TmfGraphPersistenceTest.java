@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.analysis.graph.core.tests.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.eclipse.tracecompass.analysis.graph.core.base.IGraphWorker;
+import org.eclipse.tracecompass.analysis.graph.core.base.IGraphWorkerSerializer;
+import org.eclipse.tracecompass.analysis.graph.core.base.TmfEdge;
+import org.eclipse.tracecompass.analysis.graph.core.base.TmfEdge.EdgeType;
+import org.eclipse.tracecompass.analysis.graph.core.base.TmfGraph;
+import org.eclipse.tracecompass.analysis.graph.core.base.TmfVertex;
+import org.eclipse.tracecompass.analysis.graph.core.base.TmfVertex.EdgeDirection;
+import org.eclipse.tracecompass.analysis.graph.core.tests.stubs.GraphBuilder;
+import org.eclipse.tracecompass.analysis.graph.core.tests.stubs.GraphFactory;
+import org.eclipse.tracecompass.analysis.graph.core.tests.stubs.GraphOps;
+import org.eclipse.tracecompass.analysis.graph.core.tests.stubs.TestGraphWorker;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test saving a {@link TmfGraph} to a file and loading it back, and spilling
+ * it to a file while it is built
+ */
+@SuppressWarnings("javadoc")
+public class TmfGraphPersistenceTest {
+
+    private static final IGraphWorkerSerializer SERIALIZER = new IGraphWorkerSerializer() {
+
+        @Override
+        public void writeWorker(DataOutput out, IGraphWorker worker) throws IOException {
+            out.writeInt(((TestGraphWorker) worker).getValue());
+        }
+
+        @Override
+        public IGraphWorker readWorker(DataInput in) throws IOException {
+            return new TestGraphWorker(in.readInt());
+        }
+    };
+
+    private File fFile;
+
+    @Before
+    public void setUp() throws IOException {
+        fFile = File.createTempFile("graph", ".tmp");
+    }
+
+    @After
+    public void tearDown() {
+        fFile.delete();
+    }
+
+    @Test
+    public void testSaveLoad() throws IOException {
+        GraphBuilder[] builders = { GraphFactory.GRAPH_BASIC, GraphFactory.GRAPH_WAKEUP_SELF,
+                GraphFactory.GRAPH_WAKEUP_MISSING, GraphFactory.GRAPH_WAKEUP_UNKNOWN,
+                GraphFactory.GRAPH_WAKEUP_NEW, GraphFactory.GRAPH_OPENED,
+                GraphFactory.GRAPH_WAKEUP_MUTUAL, GraphFactory.GRAPH_WAKEUP_EMBEDDED,
+                GraphFactory.GRAPH_WAKEUP_INTERLEAVE, GraphFactory.GRAPH_NESTED,
+                GraphFactory.GRAPH_NET1 };
+        for (GraphBuilder builder : builders) {
+            TmfGraph graph = builder.build();
+            graph.save(fFile, SERIALIZER);
+            TmfGraph loaded = TmfGraph.load(fFile, SERIALIZER);
+            GraphOps.checkEquality(graph, loaded);
+        }
+    }
+
+    @Test
+    public void testModifyLoaded() throws IOException {
+        IGraphWorker worker0 = new TestGraphWorker(0);
+        IGraphWorker worker1 = new TestGraphWorker(1);
+        TmfGraph graph = new TmfGraph();
+        for (int i = 0; i < 100; i++) {
+            graph.append(worker0, new TmfVertex(i), EdgeType.RUNNING);
+            graph.append(worker1, new TmfVertex(i), EdgeType.BLOCKED);
+        }
+        graph.link(graph.getNodesOf(worker0).get(10), graph.getNodesOf(worker1).get(20), EdgeType.NETWORK);
+        graph.save(fFile, SERIALIZER);
+        long length = fFile.length();
+
+        TmfGraph loaded = TmfGraph.load(fFile, SERIALIZER);
+        assertEquals(200, loaded.size());
+        TmfVertex vertex = loaded.getNodesOf(worker0).get(10);
+        assertSame(vertex, loaded.getNodesOf(worker0).get(10));
+        TmfEdge edge = vertex.getEdge(EdgeDirection.OUTGOING_VERTICAL_EDGE);
+        assertNotNull(edge);
+        assertEquals(EdgeType.NETWORK, edge.getType());
+        assertEquals(worker1, loaded.getParentOf(edge.getVertexTo()));
+
+        /* Changes to the loaded graph are not written to the file */
+        edge.setType(EdgeType.PREEMPTED);
+        assertEquals(EdgeType.PREEMPTED, edge.getType());
+        loaded.append(worker0, new TmfVertex(200), EdgeType.RUNNING);
+        loaded.append(new TestGraphWorker(2), new TmfVertex(0));
+        assertEquals(202, loaded.size());
+        assertEquals(101, loaded.getNodesOf(worker0).size());
+        TmfVertex tail = loaded.getTail(worker0);
+        assertNotNull(tail);
+        assertEquals(200, tail.getTs());
+
+        assertEquals(length, fFile.length());
+        GraphOps.checkEquality(graph, TmfGraph.load(fFile, SERIALIZER));
+    }
+
+    @Test
+    public void testInvalidFile() throws IOException {
+        GraphFactory.GRAPH_WAKEUP_NEW.build().save(fFile, SERIALIZER);
+        try (RandomAccessFile raf = new RandomAccessFile(fFile, "rw")) {
+            raf.writeInt(0);
+        }
+        try {
+            TmfGraph.load(fFile, SERIALIZER);
+            fail();
+        } catch (IOException e) {
+            /* Expected */
+        }
+
+        GraphFactory.GRAPH_WAKEUP_NEW.build().save(fFile, SERIALIZER);
+        try (RandomAccessFile raf = new RandomAccessFile(fFile, "rw")) {
+            raf.setLength(raf.length() / 2);
+        }
+        try {
+            TmfGraph.load(fFile, SERIALIZER);
+            fail();
+        } catch (IOException e) {
+            /* Expected */
+        }
+    }
+
+    @Test
+    public void testSaveFailure() {
+        IGraphWorkerSerializer failing = new IGraphWorkerSerializer() {
+
+            @Override
+            public void writeWorker(DataOutput out, IGraphWorker worker) throws IOException {
+                throw new IOException();
+            }
+
+            @Override
+            public IGraphWorker readWorker(DataInput in) throws IOException {
+                throw new IOException();
+            }
+        };
+        try {
+            GraphFactory.GRAPH_BASIC.build().save(fFile, failing);
+            fail();
+        } catch (IOException e) {
+            assertFalse(fFile.exists());
+        }
+    }
+
+    private static TmfGraph buildLargeGraph(int nbVertices, boolean spill, File file) throws IOException {
+        IGraphWorker worker0 = new TestGraphWorker(0);
+        IGraphWorker worker1 = new TestGraphWorker(1);
+        TmfGraph graph = new TmfGraph();
+        if (spill) {
+            graph.setSpillFile(file, 1000);
+        }
+        TmfVertex first = new TmfVertex(0);
+        graph.add(worker0, first);
+        for (int i = 1; i < nbVertices; i++) {
+            TmfVertex vertex = new TmfVertex(i);
+            graph.append(worker0, vertex, EdgeType.RUNNING);
+            if (i % 10 == 0) {
+                TmfVertex wakeup = new TmfVertex(i);
+                graph.append(worker1, wakeup, EdgeType.BLOCKED);
+                vertex.linkVertical(wakeup).setType(EdgeType.NETWORK);
+            }
+        }
+        /* Modify a vertex that was spilled */
+        TmfVertex tail = new TmfVertex(nbVertices);
+        first.linkVertical(tail);
+        graph.add(worker1, tail);
+        graph.closeGraph();
+        return graph;
+    }
+
+    @Test
+    public void testSpill() throws IOException {
+        int nbVertices = 150000;
+        TmfGraph expected = buildLargeGraph(nbVertices, false, fFile);
+        TmfGraph spilled = buildLargeGraph(nbVertices, true, fFile);
+        assertTrue(fFile.length() > 0);
+        GraphOps.checkEquality(expected, spilled);
+
+        IGraphWorker worker1 = new TestGraphWorker(1);
+        TmfVertex vertex = spilled.getVertexAt(new TmfTimestamp(nbVertices / 2), worker1);
+        assertNotNull(vertex);
+        assertEquals(nbVertices / 2, vertex.getTs());
+        TmfVertex head = spilled.getHead(new TestGraphWorker(0));
+        assertNotNull(head);
+        TmfEdge edge = head.getEdge(EdgeDirection.OUTGOING_VERTICAL_EDGE);
+        assertNotNull(edge);
+        assertEquals(nbVertices, edge.getVertexTo().getTs());
+
+        /* The spilled graph can be saved like any other graph */
+        File saved = File.createTempFile("graph", ".tmp");
+        try {
+            spilled.save(saved, SERIALIZER);
+            GraphOps.checkEquality(expected, TmfGraph.load(saved, SERIALIZER));
+        } finally {
+            saved.delete();
+        }
+    }
+
+    @Test
+    public void testDispose() throws IOException {
+        /* Disposing a spilled graph deletes its spill file */
+        TmfGraph spilled = buildLargeGraph(150000, true, fFile);
+        assertTrue(fFile.exists());
+        spilled.dispose();
+        assertFalse(fFile.exists());
+
+        /* Disposing a loaded graph unmaps its file, which can be deleted */
+        buildLargeGraph(150000, false, fFile).save(fFile, SERIALIZER);
+        TmfGraph loaded = TmfGraph.load(fFile, SERIALIZER);
+        assertEquals(165000, loaded.size());
+        loaded.dispose();
+        assertTrue(fFile.delete());
+    }
+}
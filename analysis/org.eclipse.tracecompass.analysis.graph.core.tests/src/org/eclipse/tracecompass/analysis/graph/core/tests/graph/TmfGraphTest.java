@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015 École Polytechnique de Montréal
+ * Copyright (c) 2015, 2016 École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -17,6 +17,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import java.util.HashSet;
 import java.util.List;
@@ -233,6 +234,33 @@ public class TmfGraphTest {
         assertEquals(fV0, fGraph.getTail(WORKER1));
     }
 
+    /**
+     * Test that a vertex removed with {@link TmfGraph#removeTail(IGraphWorker)}
+     * keeps its edges and can be added again
+     */
+    @Test
+    public void testRemoveTailAndAddAgain() {
+        fGraph.append(WORKER1, fV0);
+        fGraph.append(WORKER1, fV1, EdgeType.BLOCKED);
+        assertSame(fV1, fGraph.removeTail(WORKER1));
+        assertEquals(1, fGraph.size());
+        assertNull(fGraph.getParentOf(fV1));
+
+        TmfEdge edge = fV1.getEdge(EdgeDirection.INCOMING_HORIZONTAL_EDGE);
+        assertNotNull(edge);
+        assertSame(fV0, edge.getVertexFrom());
+        assertEquals(EdgeType.BLOCKED, edge.getType());
+        assertSame(edge, fV0.getEdge(EdgeDirection.OUTGOING_HORIZONTAL_EDGE));
+
+        fGraph.add(WORKER1, fV1);
+        assertSame(fV1, fGraph.getTail(WORKER1));
+        assertEquals(2, fGraph.size());
+        edge = fV0.getEdge(EdgeDirection.OUTGOING_HORIZONTAL_EDGE);
+        assertNotNull(edge);
+        assertSame(fV1, edge.getVertexTo());
+        assertEquals(EdgeType.BLOCKED, edge.getType());
+    }
+
     /**
      * Test the {@link TmfGraph#getHead()} methods
      */
@@ -294,6 +322,93 @@ public class TmfGraphTest {
         assertNull(fGraph.getVertexAt(new TmfTimestamp(26), WORKER1));
     }
 
+    /**
+     * Test that the vertices and edges returned by the graph are equivalent to
+     * the ones that were added, after the vertex objects were released
+     */
+    @Test
+    public void testStoredVertices() {
+        int nbVertices = 1000;
+        for (int i = 0; i < nbVertices; i++) {
+            TmfVertex v1 = new TmfVertex(i);
+            TmfVertex v2 = new TmfVertex(i);
+            fGraph.append(WORKER1, v1, EdgeType.RUNNING);
+            fGraph.append(WORKER2, v2, EdgeType.BLOCKED);
+            v1.linkVertical(v2).setType(EdgeType.NETWORK);
+        }
+        System.gc();
+        assertEquals(2 * nbVertices, fGraph.size());
+
+        List<TmfVertex> list = fGraph.getNodesOf(WORKER1);
+        assertEquals(nbVertices, list.size());
+        assertEquals(nbVertices, fGraph.getNodesOf(WORKER2).size());
+        for (int i = 0; i < nbVertices; i++) {
+            TmfVertex vertex = list.get(i);
+            assertSame(vertex, list.get(i));
+            assertEquals(i, vertex.getTs());
+            assertEquals(WORKER1, fGraph.getParentOf(vertex));
+
+            TmfEdge edge = vertex.getEdge(EdgeDirection.OUTGOING_VERTICAL_EDGE);
+            assertNotNull(edge);
+            assertEquals(EdgeType.NETWORK, edge.getType());
+            assertEquals(WORKER2, fGraph.getParentOf(edge.getVertexTo()));
+            assertEquals(i, edge.getVertexTo().getTs());
+            assertSame(vertex, edge.getVertexFrom());
+
+            edge = vertex.getEdge(EdgeDirection.INCOMING_HORIZONTAL_EDGE);
+            if (i == 0) {
+                assertNull(edge);
+            } else {
+                assertNotNull(edge);
+                assertEquals(EdgeType.RUNNING, edge.getType());
+                assertSame(list.get(i - 1), edge.getVertexFrom());
+                edge.setType(EdgeType.PREEMPTED);
+                edge = list.get(i - 1).getEdge(EdgeDirection.OUTGOING_HORIZONTAL_EDGE);
+                assertNotNull(edge);
+                assertEquals(EdgeType.PREEMPTED, edge.getType());
+            }
+        }
+        assertSame(list.get(nbVertices / 2), fGraph.getVertexAt(new TmfTimestamp(nbVertices / 2), WORKER1));
+    }
+
+    /**
+     * Test that the edges of vertices linked before being added to the graph
+     * are kept
+     */
+    @Test
+    public void testLinkBeforeAdd() {
+        TmfVertex v2 = new TmfVertex(2);
+        TmfVertex v3 = new TmfVertex(3);
+        fV0.linkHorizontal(fV1).setType(EdgeType.BLOCKED);
+        fV1.linkVertical(v2).setType(EdgeType.TIMER);
+        fGraph.add(WORKER1, fV0);
+        fGraph.add(WORKER1, fV1);
+        fGraph.add(WORKER2, v2);
+        fGraph.link(v2, v3, EdgeType.RUNNING);
+
+        TmfEdge edge = fV0.getEdge(EdgeDirection.OUTGOING_HORIZONTAL_EDGE);
+        assertNotNull(edge);
+        assertEquals(EdgeType.BLOCKED, edge.getType());
+        assertSame(fV1, edge.getVertexTo());
+        edge = v2.getEdge(EdgeDirection.INCOMING_VERTICAL_EDGE);
+        assertNotNull(edge);
+        assertEquals(EdgeType.TIMER, edge.getType());
+        assertSame(fV1, edge.getVertexFrom());
+        edge = v3.getEdge(EdgeDirection.INCOMING_HORIZONTAL_EDGE);
+        assertNotNull(edge);
+        assertEquals(EdgeType.RUNNING, edge.getType());
+        assertEquals(WORKER2, fGraph.getParentOf(v3));
+    }
+
+    /**
+     * Test that a vertex cannot be added twice
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddTwice() {
+        fGraph.add(WORKER1, fV0);
+        fGraph.add(WORKER2, fV0);
+    }
+
     /**
      * Test the {@link TmfVertex#linkHorizontal(TmfVertex)} with non
      * chronological timestamps
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.analysis.graph.core.base;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads back the workers of a graph, to save the graph to a file
+ * with {@link TmfGraph#save}
+ *
+ * @since 2.0
+ */
+public interface IGraphWorkerSerializer {
+
+    /**
+     * Write a worker
+     *
+     * @param out
+     *            The output
+     * @param worker
+     *            The worker to write
+     * @throws IOException
+     *             If the worker could not be written, including if it is not
+     *             of a type supported by this serializer
+     */
+    void writeWorker(DataOutput out, IGraphWorker worker) throws IOException;
+
+    /**
+     * Read a worker written by {@link #writeWorker(DataOutput, IGraphWorker)}
+     *
+     * @param in
+     *            The input
+     * @return The worker, equal to the one that was written
+     * @throws IOException
+     *             If the worker could not be read
+     */
+    IGraphWorker readWorker(DataInput in) throws IOException;
+}
@@ -13,9 +13,16 @@
 
 package org.eclipse.tracecompass.analysis.graph.core.base;
 
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.Nullable;
+
 /**
  * Edge of a TmfGraph
  *
+ * The edges between vertices of a same graph are not stored as objects: they
+ * are created on demand, and their type is kept in the graph.
+ *
  * @author Francis Giraldeau
  * @author Geneviève Bastien
  */
@@ -87,6 +94,9 @@ public class TmfEdge {
     private EdgeType fType;
     private final TmfVertex fVertexFrom;
     private final TmfVertex fVertexTo;
+    /* The graph storing the type of this edge, null if it is stored here */
+    private final @Nullable TmfGraph fGraph;
+    private final boolean fHorizontal;
 
     /**
      * Constructor
@@ -100,6 +110,28 @@ public class TmfEdge {
         fVertexFrom = from;
         fVertexTo = to;
         fType = EdgeType.DEFAULT;
+        fGraph = null;
+        fHorizontal = false;
+    }
+
+    /**
+     * Constructor for an edge between two vertices of a graph
+     *
+     * @param from
+     *            The vertex this edge leaves from
+     * @param to
+     *            The vertex the edge leads to
+     * @param graph
+     *            The graph of the two vertices, storing the edge type
+     * @param horizontal
+     *            Whether the edge is horizontal or vertical
+     */
+    TmfEdge(TmfVertex from, TmfVertex to, TmfGraph graph, boolean horizontal) {
+        fVertexFrom = from;
+        fVertexTo = to;
+        fType = EdgeType.DEFAULT;
+        fGraph = graph;
+        fHorizontal = horizontal;
     }
 
     /*
@@ -130,6 +162,10 @@ public class TmfEdge {
      * @return The type of the edge
      */
     public EdgeType getType() {
+        TmfGraph graph = fGraph;
+        if (graph != null) {
+            return graph.getEdgeType(fVertexFrom, fHorizontal);
+        }
         return fType;
     }
 
@@ -140,6 +176,11 @@ public class TmfEdge {
      *            The edge type
      */
     public void setType(final EdgeType type) {
+        TmfGraph graph = fGraph;
+        if (graph != null) {
+            graph.setEdgeType(fVertexFrom, fHorizontal, type);
+            return;
+        }
         fType = type;
     }
 
@@ -152,9 +193,30 @@ public class TmfEdge {
         return fVertexTo.getTs() - fVertexFrom.getTs();
     }
 
+    @Override
+    public int hashCode() {
+        if (fGraph == null) {
+            return super.hashCode();
+        }
+        return Objects.hash(fVertexFrom, fVertexTo, fHorizontal);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (fGraph == null || !(obj instanceof TmfEdge)) {
+            return false;
+        }
+        TmfEdge other = (TmfEdge) obj;
+        return fGraph == other.fGraph && fHorizontal == other.fHorizontal &&
+                fVertexFrom == other.fVertexFrom && fVertexTo == other.fVertexTo;
+    }
+
     @SuppressWarnings("nls")
     @Override
     public String toString() {
-        return "[" + fVertexFrom + "--" + fType + "->" + fVertexTo + "]";
+        return "[" + fVertexFrom + "--" + getType() + "->" + fVertexTo + "]";
     }
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015 École Polytechnique de Montréal
+ * Copyright (c) 2015, 2016 École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -13,39 +13,73 @@
 
 package org.eclipse.tracecompass.analysis.graph.core.base;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.analysis.graph.core.base.TmfEdge.EdgeType;
 import org.eclipse.tracecompass.analysis.graph.core.base.TmfVertex.EdgeDirection;
 import org.eclipse.tracecompass.common.core.NonNullUtils;
+import org.eclipse.tracecompass.internal.analysis.graph.core.base.TmfGraphStore;
 import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
 
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MapMaker;
 
 /**
  * Undirected, unweighed, timed graph data type for dependencies between
  * elements of a system.
  *
  * Vertices are timed: each vertex has a timestamp associated, so the vertex
- * belongs to an object (the key of the multimap) at a given time. This is why
- * we use a ListMultimap to represent the graph, instead of a simple list.
+ * belongs to an object (the worker) at a given time. Each worker has a list of
+ * vertices.
+ *
+ * The vertices and edges are stored in primitive arrays, see
+ * {@link TmfGraphStore}. The {@link TmfVertex} and {@link TmfEdge} objects
+ * returned by the graph are created on demand: the graph only keeps a weak
+ * reference to the vertex objects, so that a vertex has a single object as long
+ * as it is used.
  *
  * @author Francis Giraldeau
  * @author Geneviève Bastien
  */
 public class TmfGraph {
 
-    private final ListMultimap<IGraphWorker, TmfVertex> fNodeMap;
-    private final Map<TmfVertex, IGraphWorker> fReverse;
+    private static final int MAGIC = 0x54474631; // "TGF1"
+    private static final int VERSION = 2;
+    private static final int FILE_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final TmfGraphStore fStore;
+    private final List<IGraphWorker> fWorkers = new ArrayList<>();
+    private final Map<IGraphWorker, Integer> fWorkerIds = new HashMap<>();
+    private final ConcurrentMap<Integer, TmfVertex> fVertices;
+    /* Vertices of the graph with edges to vertices not in the graph */
+    private final Set<TmfVertex> fPending = new HashSet<>();
+    private int fSize = 0;
+    private @Nullable File fSpillFile = null;
 
     /* Latch tracking if the graph is done building or not */
     private final CountDownLatch fFinishedLatch = new CountDownLatch(1);
@@ -54,22 +88,97 @@ public class TmfGraph {
      * Constructor
      */
     public TmfGraph() {
-        fNodeMap = NonNullUtils.checkNotNull(ArrayListMultimap.create());
-        fReverse = new HashMap<>();
+        this(new TmfGraphStore(), Collections.emptyList());
+    }
+
+    private TmfGraph(TmfGraphStore store, List<IGraphWorker> workers) {
+        fStore = store;
+        fVertices = NonNullUtils.checkNotNull(new MapMaker().weakValues().<Integer, TmfVertex> makeMap());
+        for (IGraphWorker worker : workers) {
+            fWorkerIds.put(worker, fWorkers.size());
+            fWorkers.add(worker);
+        }
+        for (int id = 0; id < store.getNbWorkers(); id++) {
+            fSize += store.getNbVertices(id);
+        }
     }
 
     /**
-     * Add node to the provided object without linking
+     * Add node to the provided object without linking. Since 2.0, a vertex
+     * can only be added once, to a single graph.
      *
      * @param worker
      *            The key of the object the vertex belongs to
      * @param vertex
      *            The new vertex
+     * @throws IllegalArgumentException
+     *             If the vertex is already in a graph, since 2.0
      */
     public void add(IGraphWorker worker, TmfVertex vertex) {
-        List<TmfVertex> list = fNodeMap.get(worker);
-        list.add(vertex);
-        fReverse.put(vertex, worker);
+        if (vertex.getGraph() != null) {
+            throw new IllegalArgumentException(Messages.TmfGraph_VertexAlreadyInGraph);
+        }
+        Integer id = fWorkerIds.get(worker);
+        if (id == null) {
+            id = fStore.addWorker();
+            fWorkers.add(worker);
+            fWorkerIds.put(worker, id);
+        }
+        int index = fStore.addVertex(vertex.getTs(), vertex.getID(), id);
+        vertex.setGraph(this, index);
+        fVertices.put(index, vertex);
+        fSize++;
+        if (vertex.hasLocalEdges()) {
+            storeLocalEdges(vertex);
+        }
+    }
+
+    /**
+     * Move the edges of a vertex that was linked before being added to the
+     * storage of the graph, if the vertex at the other end is in the graph
+     */
+    private void storeLocalEdges(TmfVertex vertex) {
+        for (EdgeDirection dir : EdgeDirection.values()) {
+            TmfEdge edge = vertex.getLocalEdge(dir);
+            if (edge == null) {
+                continue;
+            }
+            TmfVertex from = edge.getVertexFrom();
+            TmfVertex to = edge.getVertexTo();
+            if ((from != vertex && to != vertex) || from.getGraph() != this || to.getGraph() != this) {
+                continue;
+            }
+            boolean horizontal = (dir == EdgeDirection.OUTGOING_HORIZONTAL_EDGE || dir == EdgeDirection.INCOMING_HORIZONTAL_EDGE);
+            EdgeDirection outgoing = horizontal ? EdgeDirection.OUTGOING_HORIZONTAL_EDGE : EdgeDirection.OUTGOING_VERTICAL_EDGE;
+            EdgeDirection incoming = horizontal ? EdgeDirection.INCOMING_HORIZONTAL_EDGE : EdgeDirection.INCOMING_VERTICAL_EDGE;
+            if (from.getLocalEdge(outgoing) == edge) {
+                from.setLocalEdge(outgoing, null);
+                fStore.setEdge(from.getIndex(), outgoing, to.getIndex());
+                fStore.setType(from.getIndex(), horizontal, edge.getType());
+            }
+            if (to.getLocalEdge(incoming) == edge) {
+                to.setLocalEdge(incoming, null);
+                fStore.setEdge(to.getIndex(), incoming, from.getIndex());
+            }
+            updatePending(from);
+            updatePending(to);
+        }
+        updatePending(vertex);
+    }
+
+    /**
+     * Keep a reference to the vertices with edges not stored in the graph, so
+     * that these edges are not lost
+     */
+    private void updatePending(TmfVertex vertex) {
+        if (vertex.getGraph() != this) {
+            return;
+        }
+        if (vertex.hasLocalEdges()) {
+            fPending.add(vertex);
+        } else {
+            fPending.remove(vertex);
+        }
     }
 
     /**
@@ -97,15 +206,16 @@ public class TmfGraph {
      * @return The edge constructed
      */
     public @Nullable TmfEdge append(IGraphWorker worker, TmfVertex vertex, EdgeType type) {
-        List<TmfVertex> list = fNodeMap.get(worker);
         TmfVertex tail = getTail(worker);
+        if (tail != null) {
+            tail.checkLink(vertex);
+        }
+        add(worker, vertex);
         TmfEdge link = null;
         if (tail != null) {
             link = tail.linkHorizontal(vertex);
             link.setType(type);
         }
-        list.add(vertex);
-        fReverse.put(vertex, worker);
         return link;
     }
 
@@ -146,8 +256,8 @@ public class TmfGraph {
      * @return The newly created edge
      */
     public TmfEdge link(TmfVertex from, TmfVertex to, EdgeType type) {
-        IGraphWorker ofrom = fReverse.get(from);
-        IGraphWorker oto = fReverse.get(to);
+        IGraphWorker ofrom = getParentOf(from);
+        IGraphWorker oto = getParentOf(to);
         if (ofrom == null) {
             throw new IllegalArgumentException(Messages.TmfGraph_FromNotInGraph);
         }
@@ -176,28 +286,71 @@ public class TmfGraph {
      * @return The last vertex of obj
      */
     public @Nullable TmfVertex getTail(IGraphWorker worker) {
-        List<TmfVertex> list = fNodeMap.get(worker);
-        if (!list.isEmpty()) {
-            return list.get(list.size() - 1);
+        int id = getWorkerId(worker);
+        if (id == TmfGraphStore.NONE) {
+            return null;
+        }
+        int size = fStore.getNbVertices(id);
+        if (size > 0) {
+            return getVertex(fStore.getVertex(id, size - 1));
         }
         return null;
     }
 
     /**
-     * Removes the last vertex of the provided object
+     * Removes the last vertex of the provided object. The removed vertex keeps
+     * its edges, and can be added again to a graph.
      *
      * @param worker
      *            The key of the object the vertex belongs to
      * @return The removed vertex
      */
     public @Nullable TmfVertex removeTail(IGraphWorker worker) {
-        List<TmfVertex> list = fNodeMap.get(worker);
-        if (!list.isEmpty()) {
-            TmfVertex last = list.remove(list.size() - 1);
-            fReverse.remove(last);
-            return last;
+        int id = getWorkerId(worker);
+        if (id == TmfGraphStore.NONE) {
+            return null;
         }
-        return null;
+        int index = fStore.removeTail(id);
+        if (index == TmfGraphStore.NONE) {
+            return null;
+        }
+        fSize--;
+        TmfVertex vertex = getVertex(index);
+        detach(vertex);
+        return vertex;
+    }
+
+    /**
+     * Move the stored edges of a vertex removed from the graph to the vertex
+     * and to the vertices at their other end, then release the vertex from
+     * the graph
+     */
+    private void detach(TmfVertex vertex) {
+        int index = vertex.getIndex();
+        for (EdgeDirection dir : EdgeDirection.values()) {
+            TmfEdge edge = getEdge(vertex, dir);
+            if (edge == null) {
+                continue;
+            }
+            TmfVertex from = edge.getVertexFrom();
+            TmfVertex to = edge.getVertexTo();
+            TmfVertex other = (from == vertex) ? to : from;
+            boolean horizontal = (dir == EdgeDirection.OUTGOING_HORIZONTAL_EDGE || dir == EdgeDirection.INCOMING_HORIZONTAL_EDGE);
+            EdgeDirection outgoing = horizontal ? EdgeDirection.OUTGOING_HORIZONTAL_EDGE : EdgeDirection.OUTGOING_VERTICAL_EDGE;
+            EdgeDirection incoming = horizontal ? EdgeDirection.INCOMING_HORIZONTAL_EDGE : EdgeDirection.INCOMING_VERTICAL_EDGE;
+            TmfEdge local = new TmfEdge(from, to);
+            local.setType(edge.getType());
+            fStore.removeEdge(from.getIndex(), outgoing);
+            fStore.removeEdge(to.getIndex(), incoming);
+            from.setLocalEdge(outgoing, local);
+            to.setLocalEdge(incoming, local);
+            if (other != vertex) {
+                updatePending(other);
+            }
+        }
+        fPending.remove(vertex);
+        fVertices.remove(index);
+        vertex.removeGraph();
     }
 
     /**
@@ -209,12 +362,11 @@ public class TmfGraph {
      * @return The head vertex
      */
     public @Nullable TmfVertex getHead(IGraphWorker worker) {
-        IGraphWorker ref = worker;
-        List<TmfVertex> list = fNodeMap.get(ref);
-        if (!list.isEmpty()) {
-            return list.get(0);
+        int id = getWorkerId(worker);
+        if (id == TmfGraphStore.NONE || fStore.getNbVertices(id) == 0) {
+            return null;
         }
-        return null;
+        return getVertex(fStore.getVertex(id, 0));
     }
 
     /**
@@ -224,15 +376,20 @@ public class TmfGraph {
      * @return The head vertex
      */
     public @Nullable TmfVertex getHead() {
-        if (fNodeMap.isEmpty()) {
+        int head = TmfGraphStore.NONE;
+        for (int id = 0; id < fStore.getNbWorkers(); id++) {
+            if (fStore.getNbVertices(id) == 0) {
+                continue;
+            }
+            int vertex = fStore.getVertex(id, 0);
+            if (head == TmfGraphStore.NONE || fStore.getTimestamp(vertex) < fStore.getTimestamp(head)) {
+                head = vertex;
+            }
+        }
+        if (head == TmfGraphStore.NONE) {
             return null;
         }
-        IGraphWorker headWorker = fNodeMap.keySet().stream()
-                .filter(k -> !fNodeMap.get(k).isEmpty())
-                .sorted((k1, k2) -> fNodeMap.get(k1).get(0).compareTo(fNodeMap.get(k2).get(0)))
-                .findFirst()
-                .get();
-        return getHead(headWorker);
+        return getVertex(head);
     }
 
     /**
@@ -262,10 +419,18 @@ public class TmfGraph {
      *
      * @param obj
      *            The key of the object the vertex belongs to
-     * @return The list of vertices for the object
+     * @return The list of vertices for the object. Since 2.0, it is an
+     *         unmodifiable view of the graph, the vertices are added with
+     *         {@link #add(IGraphWorker, TmfVertex)} and
+     *         {@link #append(IGraphWorker, TmfVertex)}. Getting a vertex by
+     *         position is not constant time, iterating is preferred.
      */
     public List<TmfVertex> getNodesOf(IGraphWorker obj) {
-        return fNodeMap.get(obj);
+        int id = getWorkerId(obj);
+        if (id == TmfGraphStore.NONE) {
+            return NonNullUtils.checkNotNull(Collections.emptyList());
+        }
+        return new WorkerVertices(id);
     }
 
     /**
@@ -276,7 +441,14 @@ public class TmfGraph {
      * @return The object the vertex belongs to
      */
     public @Nullable IGraphWorker getParentOf(TmfVertex node) {
-        return fReverse.get(node);
+        if (node.getGraph() != this) {
+            return null;
+        }
+        int id = fStore.getWorker(node.getIndex());
+        if (id == TmfGraphStore.NONE) {
+            return null;
+        }
+        return fWorkers.get(id);
     }
 
     /**
@@ -285,7 +457,13 @@ public class TmfGraph {
      * @return The vertex map
      */
     public Set<IGraphWorker> getWorkers() {
-        return ImmutableSet.copyOf(fNodeMap.keySet());
+        ImmutableSet.Builder<IGraphWorker> builder = ImmutableSet.builder();
+        for (int id = 0; id < fStore.getNbWorkers(); id++) {
+            if (fStore.getNbVertices(id) > 0) {
+                builder.add(fWorkers.get(id));
+            }
+        }
+        return NonNullUtils.checkNotNull(builder.build());
     }
 
     /**
@@ -294,13 +472,13 @@ public class TmfGraph {
      * @return number of vertices
      */
     public int size() {
-        return fReverse.size();
+        return fSize;
     }
 
     @Override
     public String toString() {
         return NonNullUtils.nullToEmptyString(String.format("Graph { actors=%d, nodes=%d }", //$NON-NLS-1$
-                fNodeMap.keySet().size(), fNodeMap.values().size()));
+                getWorkers().size(), fSize));
     }
 
     /**
@@ -310,9 +488,9 @@ public class TmfGraph {
      */
     public String dump() {
         StringBuilder str = new StringBuilder();
-        for (IGraphWorker obj : fNodeMap.keySet()) {
+        for (IGraphWorker obj : getWorkers()) {
             str.append(String.format("%10s ", obj)); //$NON-NLS-1$
-            str.append(fNodeMap.get(obj));
+            str.append(getNodesOf(obj));
             str.append("\n"); //$NON-NLS-1$
         }
         return NonNullUtils.nullToEmptyString(str.toString());
@@ -342,11 +520,13 @@ public class TmfGraph {
             return;
         }
         Stack<TmfVertex> stack = new Stack<>();
-        HashSet<TmfVertex> visited = new HashSet<>();
+        /* Indexes of the visited vertices of this graph, and the others */
+        BitSet visited = new BitSet();
+        Set<TmfVertex> visitedOthers = new HashSet<>();
         stack.add(start);
         while (!stack.isEmpty()) {
             TmfVertex curr = stack.pop();
-            if (visited.contains(curr)) {
+            if ((curr.getGraph() == this) ? visited.get(curr.getIndex()) : visitedOthers.contains(curr)) {
                 continue;
             }
             // process one line
@@ -354,7 +534,11 @@ public class TmfGraph {
             visitor.visitHead(n);
             while (true) {
                 visitor.visit(n);
-                visited.add(n);
+                if (n.getGraph() == this) {
+                    visited.set(n.getIndex());
+                } else {
+                    visitedOthers.add(n);
+                }
 
                 // Only visit links up-right, guarantee to visit once only
                 TmfEdge edge = n.getEdge(EdgeDirection.OUTGOING_VERTICAL_EDGE);
@@ -404,14 +588,22 @@ public class TmfGraph {
      * @return Vertex at timestamp or null if no vertex at or after timestamp
      */
     public @Nullable TmfVertex getVertexAt(ITmfTimestamp startTime, IGraphWorker worker) {
-        List<TmfVertex> list = fNodeMap.get(worker);
+        int id = getWorkerId(worker);
+        if (id == TmfGraphStore.NONE) {
+            return null;
+        }
 
+        if (fStore.getNbVertices(id) == 0) {
+            return null;
+        }
         long ts = startTime.getValue();
         // Scan the list until vertex is later than time
-        for (TmfVertex vertex : list) {
-            if (vertex.getTs() >= ts) {
-                return vertex;
+        int vertex = fStore.getVertex(id, 0);
+        while (vertex != TmfGraphStore.NONE) {
+            if (fStore.getTimestamp(vertex) >= ts) {
+                return getVertex(vertex);
             }
+            vertex = fStore.getNextOfWorker(vertex);
         }
         return null;
     }
@@ -429,7 +621,255 @@ public class TmfGraph {
      * Countdown the latch to show that the graph is done building
      */
     public void closeGraph() {
+        fStore.closeSpill();
         fFinishedLatch.countDown();
     }
 
+    /**
+     * Keep only the recent vertices of the graph in memory while it is built.
+     * The blocks of vertices that are all older than a window before the
+     * latest added vertex are written to a file, and read back from that file
+     * when they are accessed. They can still be modified, but the
+     * modifications are kept in memory, so only the vertices at the frontier
+     * of the graph, like the last vertex of each worker, should be modified.
+     * The file is closed when the graph is closed, and deleted when it is
+     * disposed.
+     *
+     * @param file
+     *            The spill file, which is overwritten. It must not be deleted
+     *            as long as the graph is used.
+     * @param window
+     *            The duration of the window of vertices kept in memory, in
+     *            the unit of the vertex timestamps
+     * @throws IOException
+     *             If the file could not be opened
+     * @since 2.0
+     */
+    public void setSpillFile(File file, long window) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        fStore.setSpill(channel, window);
+        fSpillFile = file;
+    }
+
+    /**
+     * Dispose of the graph. The parts of the graph mapped from a file are
+     * unmapped and the spill file is deleted, so the graph and its vertices
+     * must not be used anymore.
+     *
+     * @since 2.0
+     */
+    public void dispose() {
+        fStore.dispose();
+        fVertices.clear();
+        fPending.clear();
+        File spillFile = fSpillFile;
+        if (spillFile != null) {
+            spillFile.delete();
+            fSpillFile = null;
+        }
+    }
+
+    // ----------------------------------------------
+    // Persistence
+    // ----------------------------------------------
+
+    /**
+     * Save the graph to a file, that can be opened with
+     * {@link #load(File, IGraphWorkerSerializer)}. The edges between a vertex
+     * of the graph and a vertex that is not in the graph are not saved.
+     *
+     * @param file
+     *            The file, which is deleted if the graph could not be saved
+     * @param serializer
+     *            The serializer of the workers of the graph
+     * @throws IOException
+     *             If the graph could not be saved
+     * @since 2.0
+     */
+    public void save(File file, IGraphWorkerSerializer serializer) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            fStore.write(out);
+            out.writeInt(fWorkers.size());
+            for (IGraphWorker worker : fWorkers) {
+                serializer.writeWorker(out, worker);
+            }
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a graph saved with {@link #save(File, IGraphWorkerSerializer)}.
+     * The vertices and edges are mapped from the file, and only read from it
+     * when they are accessed. The returned graph is closed, modifying it does
+     * not modify the file.
+     *
+     * @param file
+     *            The file
+     * @param serializer
+     *            The serializer of the workers of the graph
+     * @return The graph
+     * @throws IOException
+     *             If the file could not be read, or was saved by another
+     *             version
+     * @since 2.0
+     */
+    public static TmfGraph load(File file, IGraphWorkerSerializer serializer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException("Truncated graph file " + file); //$NON-NLS-1$
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Unsupported graph file " + file); //$NON-NLS-1$
+            }
+            TmfGraphStore store = TmfGraphStore.map(channel, FILE_HEADER_SIZE);
+
+            channel.position(FILE_HEADER_SIZE + store.getByteSize());
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            int nbWorkers = in.readInt();
+            if (nbWorkers != store.getNbWorkers()) {
+                throw new IOException("Invalid graph file " + file); //$NON-NLS-1$
+            }
+            List<IGraphWorker> workers = new ArrayList<>();
+            for (int i = 0; i < nbWorkers; i++) {
+                workers.add(serializer.readWorker(in));
+            }
+            TmfGraph graph = new TmfGraph(store, workers);
+            graph.closeGraph();
+            return graph;
+        }
+    }
+
+    // ----------------------------------------------
+    // Storage
+    // ----------------------------------------------
+
+    private int getWorkerId(IGraphWorker worker) {
+        Integer id = fWorkerIds.get(worker);
+        return (id == null) ? TmfGraphStore.NONE : id;
+    }
+
+    /**
+     * Get the vertex object of a vertex, creating it if there is none
+     */
+    private TmfVertex getVertex(int index) {
+        TmfVertex vertex = fVertices.get(index);
+        if (vertex == null) {
+            vertex = new TmfVertex(this, index, fStore.getTimestamp(index), fStore.getId(index));
+            TmfVertex previous = fVertices.putIfAbsent(index, vertex);
+            if (previous != null) {
+                vertex = previous;
+            }
+        }
+        return vertex;
+    }
+
+    TmfEdge link(TmfVertex from, TmfVertex to, boolean horizontal) {
+        from.setLocalEdge(horizontal ? EdgeDirection.OUTGOING_HORIZONTAL_EDGE : EdgeDirection.OUTGOING_VERTICAL_EDGE, null);
+        to.setLocalEdge(horizontal ? EdgeDirection.INCOMING_HORIZONTAL_EDGE : EdgeDirection.INCOMING_VERTICAL_EDGE, null);
+        fStore.link(from.getIndex(), to.getIndex(), horizontal, EdgeType.DEFAULT);
+        updatePending(from);
+        updatePending(to);
+        return new TmfEdge(from, to, this, horizontal);
+    }
+
+    @Nullable TmfEdge getEdge(TmfVertex vertex, EdgeDirection dir) {
+        int neighbor = fStore.getNeighbor(vertex.getIndex(), dir);
+        if (neighbor == TmfGraphStore.NONE) {
+            return null;
+        }
+        switch (dir) {
+        case OUTGOING_VERTICAL_EDGE:
+            return new TmfEdge(vertex, getVertex(neighbor), this, false);
+        case INCOMING_VERTICAL_EDGE:
+            return new TmfEdge(getVertex(neighbor), vertex, this, false);
+        case OUTGOING_HORIZONTAL_EDGE:
+            return new TmfEdge(vertex, getVertex(neighbor), this, true);
+        case INCOMING_HORIZONTAL_EDGE:
+            return new TmfEdge(getVertex(neighbor), vertex, this, true);
+        default:
+            throw new IllegalStateException();
+        }
+    }
+
+    void removeEdge(TmfVertex vertex, EdgeDirection dir) {
+        fStore.removeEdge(vertex.getIndex(), dir);
+        updatePending(vertex);
+    }
+
+    EdgeType getEdgeType(TmfVertex from, boolean horizontal) {
+        return fStore.getType(from.getIndex(), horizontal);
+    }
+
+    void setEdgeType(TmfVertex from, boolean horizontal, EdgeType type) {
+        fStore.setType(from.getIndex(), horizontal, type);
+    }
+
+    /**
+     * Unmodifiable view of the vertices of a worker
+     */
+    private class WorkerVertices extends AbstractList<TmfVertex> {
+
+        private final int fId;
+        /*
+         * The position and index of the last vertex read, in a single value so
+         * that the list can be read concurrently, to read the next vertex
+         * without searching it
+         */
+        private volatile long fCursor = -1;
+
+        public WorkerVertices(int id) {
+            fId = id;
+        }
+
+        @Override
+        public TmfVertex get(int index) {
+            long cursor = fCursor;
+            int vertex = TmfGraphStore.NONE;
+            if (cursor != -1 && index == (int) (cursor >>> 32) + 1 && index < size()) {
+                vertex = fStore.getNextOfWorker((int) cursor);
+            }
+            if (vertex == TmfGraphStore.NONE) {
+                vertex = fStore.getVertex(fId, index);
+            }
+            fCursor = ((long) index << 32) | (vertex & 0xFFFFFFFFL);
+            return getVertex(vertex);
+        }
+
+        @Override
+        public Iterator<TmfVertex> iterator() {
+            return new Iterator<TmfVertex>() {
+                private int fNext = fStore.getNbVertices(fId) == 0 ? TmfGraphStore.NONE : fStore.getVertex(fId, 0);
+
+                @Override
+                public boolean hasNext() {
+                    return fNext != TmfGraphStore.NONE;
+                }
+
+                @Override
+                public TmfVertex next() {
+                    if (fNext == TmfGraphStore.NONE) {
+                        throw new NoSuchElementException();
+                    }
+                    TmfVertex vertex = getVertex(fNext);
+                    fNext = fStore.getNextOfWorker(fNext);
+                    return vertex;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return fStore.getNbVertices(fId);
+        }
+    }
+
 }
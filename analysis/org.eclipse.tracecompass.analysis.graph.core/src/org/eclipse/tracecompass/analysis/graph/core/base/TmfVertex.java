@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015 École Polytechnique de Montréal
+ * Copyright (c) 2015, 2016 École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -20,6 +20,13 @@ import org.eclipse.jdt.annotation.Nullable;
 /**
  * Timed vertex for TmfGraph
  *
+ * Once added to a graph, the timestamp and edges of a vertex are stored in the
+ * graph, and the vertex object is only a handle to them: the graph keeps a
+ * weak reference to it, and creates an equivalent one when it is no longer
+ * used. There is only one vertex object at a time for a vertex of a graph, so
+ * vertices can still be compared by identity. A vertex removed from its graph
+ * keeps its edges and can be added to a graph again.
+ *
  * @author Francis Giraldeau
  * @author Geneviève Bastien
  */
@@ -81,12 +88,19 @@ public class TmfVertex implements Comparable<TmfVertex> {
         }
     };
 
+    /*
+     * The edges to or from vertices that are not in the same graph as this
+     * one. The edges between vertices of a graph are stored in the graph.
+     */
     private @Nullable TmfEdge fOutgoingVertical = null;
     private @Nullable TmfEdge fIncomingVertical = null;
     private @Nullable TmfEdge fOutgoingHorizontal = null;
     private @Nullable TmfEdge fIncomingHorizontal = null;
     private final long fTimestamp;
     private final long fId;
+    /* The graph this vertex was added to, and its index in that graph */
+    private @Nullable TmfGraph fGraph = null;
+    private int fIndex = -1;
 
     /**
      * Default Constructor
@@ -131,10 +145,29 @@ public class TmfVertex implements Comparable<TmfVertex> {
         synchronized (TmfVertex.class) {
             fId = count++;
         }
-        fOutgoingVertical = node.fOutgoingVertical;
-        fIncomingVertical = node.fIncomingVertical;
-        fOutgoingHorizontal = node.fOutgoingHorizontal;
-        fIncomingHorizontal = node.fIncomingHorizontal;
+        fOutgoingVertical = node.getEdge(EdgeDirection.OUTGOING_VERTICAL_EDGE);
+        fIncomingVertical = node.getEdge(EdgeDirection.INCOMING_VERTICAL_EDGE);
+        fOutgoingHorizontal = node.getEdge(EdgeDirection.OUTGOING_HORIZONTAL_EDGE);
+        fIncomingHorizontal = node.getEdge(EdgeDirection.INCOMING_HORIZONTAL_EDGE);
+    }
+
+    /**
+     * Constructor of a vertex stored in a graph
+     *
+     * @param graph
+     *            The graph
+     * @param index
+     *            The index of the vertex in the graph
+     * @param ts
+     *            The vertex's timestamp
+     * @param id
+     *            The vertex's id
+     */
+    TmfVertex(TmfGraph graph, int index, long ts, long id) {
+        fTimestamp = ts;
+        fId = id;
+        fGraph = graph;
+        fIndex = index;
     }
 
     /*
@@ -168,16 +201,8 @@ public class TmfVertex implements Comparable<TmfVertex> {
      * @return The new edge
      */
     public TmfEdge linkHorizontal(TmfVertex to) {
-        checkTimestamps(to);
-        checkNotSelf(to);
-        return linkHorizontalRaw(to);
-    }
-
-    private TmfEdge linkHorizontalRaw(TmfVertex node) {
-        TmfEdge link = new TmfEdge(this, node);
-        fOutgoingHorizontal = link;
-        node.fIncomingHorizontal = link;
-        return link;
+        checkLink(to);
+        return link(to, true);
     }
 
     /**
@@ -188,18 +213,44 @@ public class TmfVertex implements Comparable<TmfVertex> {
      * @return The new edge
      */
     public TmfEdge linkVertical(TmfVertex to) {
-        checkTimestamps(to);
-        checkNotSelf(to);
-        return linkVerticalRaw(to);
+        checkLink(to);
+        return link(to, false);
     }
 
-    private TmfEdge linkVerticalRaw(TmfVertex to) {
+    private TmfEdge link(TmfVertex to, boolean horizontal) {
+        TmfGraph graph = fGraph;
+        if (graph != null && graph == to.fGraph) {
+            return graph.link(this, to, horizontal);
+        }
         TmfEdge link = new TmfEdge(this, to);
-        fOutgoingVertical = link;
-        to.fIncomingVertical = link;
+        replaceEdge(horizontal ? EdgeDirection.OUTGOING_HORIZONTAL_EDGE : EdgeDirection.OUTGOING_VERTICAL_EDGE, link);
+        to.replaceEdge(horizontal ? EdgeDirection.INCOMING_HORIZONTAL_EDGE : EdgeDirection.INCOMING_VERTICAL_EDGE, link);
         return link;
     }
 
+    /**
+     * Replace the edge in a direction by an edge that is not stored in the
+     * graph
+     */
+    private void replaceEdge(EdgeDirection dir, @Nullable TmfEdge edge) {
+        setLocalEdge(dir, edge);
+        TmfGraph graph = fGraph;
+        if (graph != null) {
+            graph.removeEdge(this, dir);
+        }
+    }
+
+    /**
+     * Check that a link from this vertex to the 'to' vertex is valid
+     *
+     * @param to
+     *            The vertex to link to
+     */
+    void checkLink(TmfVertex to) {
+        checkTimestamps(to);
+        checkNotSelf(to);
+    }
+
     private void checkTimestamps(TmfVertex to) {
         if (this.fTimestamp > to.fTimestamp) {
             throw new IllegalArgumentException(Messages.TmfVertex_ArgumentTimestampLower +
@@ -222,6 +273,48 @@ public class TmfVertex implements Comparable<TmfVertex> {
      * @return The edge from this vertex to the requested direction
      */
     public @Nullable TmfEdge getEdge(EdgeDirection dir) {
+        TmfEdge edge = getLocalEdge(dir);
+        TmfGraph graph = fGraph;
+        if (edge == null && graph != null) {
+            return graph.getEdge(this, dir);
+        }
+        return edge;
+    }
+
+    /**
+     * Removes a directed edge from this vertex. The edge in that direction will
+     * be null.
+     *
+     * @param dir
+     *            The direction to remove the edge from
+     */
+    public void removeEdge(EdgeDirection dir) {
+        replaceEdge(dir, null);
+    }
+
+    // ------------------------------------------------------------------------
+    // Storage, used by the graph
+    // ------------------------------------------------------------------------
+
+    @Nullable TmfGraph getGraph() {
+        return fGraph;
+    }
+
+    int getIndex() {
+        return fIndex;
+    }
+
+    void setGraph(TmfGraph graph, int index) {
+        fGraph = graph;
+        fIndex = index;
+    }
+
+    void removeGraph() {
+        fGraph = null;
+        fIndex = -1;
+    }
+
+    @Nullable TmfEdge getLocalEdge(EdgeDirection dir) {
         switch (dir) {
         case OUTGOING_VERTICAL_EDGE:
             return fOutgoingVertical;
@@ -236,32 +329,30 @@ public class TmfVertex implements Comparable<TmfVertex> {
         }
     }
 
-    /**
-     * Removes a directed edge from this vertex. The edge in that direction will
-     * be null.
-     *
-     * @param dir
-     *            The direction to remove the edge from
-     */
-    public void removeEdge(EdgeDirection dir) {
+    void setLocalEdge(EdgeDirection dir, @Nullable TmfEdge edge) {
         switch (dir) {
         case OUTGOING_VERTICAL_EDGE:
-            fOutgoingVertical = null;
+            fOutgoingVertical = edge;
             break;
         case INCOMING_VERTICAL_EDGE:
-            fIncomingVertical = null;
+            fIncomingVertical = edge;
             break;
         case OUTGOING_HORIZONTAL_EDGE:
-            fOutgoingHorizontal = null;
+            fOutgoingHorizontal = edge;
             break;
         case INCOMING_HORIZONTAL_EDGE:
-            fIncomingHorizontal = null;
+            fIncomingHorizontal = edge;
             break;
         default:
             throw new IllegalStateException();
         }
     }
 
+    boolean hasLocalEdges() {
+        return fOutgoingVertical != null || fIncomingVertical != null ||
+                fOutgoingHorizontal != null || fIncomingHorizontal != null;
+    }
+
     /**
      * Get the neighbor of a vertex from a directed edge. Incoming edges will
      * return the vertex from the edge and outgoing edges will return the vertex
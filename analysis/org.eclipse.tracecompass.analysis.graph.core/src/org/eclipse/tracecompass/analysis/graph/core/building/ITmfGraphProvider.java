@@ -10,6 +10,7 @@
 package org.eclipse.tracecompass.analysis.graph.core.building;
 
 import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.analysis.graph.core.base.IGraphWorkerSerializer;
 import org.eclipse.tracecompass.analysis.graph.core.base.TmfGraph;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
@@ -89,4 +90,16 @@ public interface ITmfGraphProvider {
      */
     void done();
 
+    /**
+     * Get the serializer of the workers of the graphs built by this provider.
+     * If there is one, the built graph is saved to a supplementary file and
+     * opened from that file the next time instead of reading the trace again.
+     *
+     * @return The worker serializer, or null if the graph cannot be saved
+     * @since 2.0
+     */
+    default @Nullable IGraphWorkerSerializer getWorkerSerializer() {
+        return null;
+    }
+
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015 École Polytechnique de Montréal
+ * Copyright (c) 2015, 2016 École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -9,8 +9,14 @@
 
 package org.eclipse.tracecompass.analysis.graph.core.building;
 
+import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.analysis.graph.core.base.IGraphWorkerSerializer;
 import org.eclipse.tracecompass.analysis.graph.core.base.TmfGraph;
 import org.eclipse.tracecompass.internal.analysis.graph.core.Activator;
 import org.eclipse.tracecompass.tmf.core.analysis.TmfAbstractAnalysisModule;
@@ -19,6 +25,8 @@ import org.eclipse.tracecompass.tmf.core.event.TmfEvent;
 import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
 import org.eclipse.tracecompass.tmf.core.request.TmfEventRequest;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
 
 /**
  * Base class for all modules building graphs
@@ -28,6 +36,9 @@ import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
  */
 public abstract class TmfGraphBuilderModule extends TmfAbstractAnalysisModule {
 
+    private static final String GRAPH_FILE_SUFFIX = ".graph"; //$NON-NLS-1$
+    private static final String SPILL_FILE_SUFFIX = ".graph.spill"; //$NON-NLS-1$
+
     private @Nullable TmfGraph fGraph;
     private @Nullable ITmfEventRequest fRequest;
 
@@ -47,6 +58,20 @@ public abstract class TmfGraphBuilderModule extends TmfAbstractAnalysisModule {
         return fGraph;
     }
 
+    /**
+     * Gets the duration of the window of the graph kept in memory while it is
+     * built. The older parts of the graph are written to a supplementary file
+     * and read back when they are accessed, so that the memory used to build
+     * the graph of a long trace stays bounded.
+     *
+     * @return The duration of the window in nanoseconds, or a negative value
+     *         to keep the whole graph in memory
+     * @since 2.0
+     */
+    protected long getMemoryWindow() {
+        return -1;
+    }
+
     // ------------------------------------------------------------------------
     // TmfAbstractAnalysisModule
     // ------------------------------------------------------------------------
@@ -55,17 +80,82 @@ public abstract class TmfGraphBuilderModule extends TmfAbstractAnalysisModule {
     protected boolean executeAnalysis(final IProgressMonitor monitor) {
         if (fGraph == null) {
             final ITmfGraphProvider provider = getGraphProvider();
+            IGraphWorkerSerializer serializer = provider.getWorkerSerializer();
+            File file = getGraphFile(provider.getTrace());
 
             /*
-             * TODO: This will eventually support multiple backends so we can
-             * save the graph on disk, like the state system, but for now, it is
-             * just in memory
+             * Open the graph saved by a previous execution if there is one,
+             * otherwise build it by reading the trace, and save it once it is
+             * complete
              */
+            if (serializer != null && file.exists()) {
+                fGraph = openGraph(file, serializer);
+            }
+            if (fGraph == null) {
+                File spillFile = new File(TmfTraceManager.getSupplementaryFileDir(provider.getTrace()) + getId() + SPILL_FILE_SUFFIX);
+                createGraph(provider, spillFile);
+                if (!monitor.isCanceled() && !isRequestCancelled()) {
+                    TmfGraph graph = checkNotNull(fGraph);
+                    graph.closeGraph();
+                    if (serializer != null && saveGraph(file, serializer) && spillFile.exists()) {
+                        /*
+                         * Reopen the saved graph, its parts are read on demand
+                         * like the spilled ones, and the spill file is no
+                         * longer needed
+                         */
+                        TmfGraph saved = openGraph(file, serializer);
+                        if (saved != null) {
+                            fGraph = saved;
+                            graph.dispose();
+                        }
+                    }
+                }
+            }
+        }
+        return !monitor.isCanceled();
+    }
 
-            createGraph(provider);
+    private File getGraphFile(ITmfTrace trace) {
+        return new File(TmfTraceManager.getSupplementaryFileDir(trace) + getId() + GRAPH_FILE_SUFFIX);
+    }
 
+    private boolean isRequestCancelled() {
+        ITmfEventRequest request = fRequest;
+        return request == null || request.isCancelled();
+    }
+
+    private static @Nullable TmfGraph openGraph(File file, IGraphWorkerSerializer serializer) {
+        try {
+            return TmfGraph.load(file, serializer);
+        } catch (IOException e) {
+            Activator.getInstance().logWarning("Could not open the graph file " + file + ", it will be rebuilt", e); //$NON-NLS-1$ //$NON-NLS-2$
+            file.delete();
+            return null;
+        }
+    }
+
+    private boolean saveGraph(File file, IGraphWorkerSerializer serializer) {
+        TmfGraph graph = fGraph;
+        if (graph == null) {
+            return false;
+        }
+        try {
+            graph.save(file, serializer);
+            return true;
+        } catch (IOException e) {
+            Activator.getInstance().logWarning("Could not save the graph file " + file, e); //$NON-NLS-1$
+            return false;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        TmfGraph graph = fGraph;
+        if (graph != null) {
+            fGraph = null;
+            graph.dispose();
         }
-        return !monitor.isCanceled();
     }
 
     @Override
@@ -80,10 +170,19 @@ public abstract class TmfGraphBuilderModule extends TmfAbstractAnalysisModule {
     // Graph creation methods
     // ------------------------------------------------------------------------
 
-    private void createGraph(ITmfGraphProvider provider) {
+    private void createGraph(ITmfGraphProvider provider, File spillFile) {
 
-        fGraph = new TmfGraph();
-        provider.assignTargetGraph(fGraph);
+        TmfGraph graph = new TmfGraph();
+        long window = getMemoryWindow();
+        if (window >= 0) {
+            try {
+                graph.setSpillFile(spillFile, window);
+            } catch (IOException e) {
+                Activator.getInstance().logWarning("Could not create the graph spill file " + spillFile, e); //$NON-NLS-1$
+            }
+        }
+        fGraph = graph;
+        provider.assignTargetGraph(graph);
 
         build(provider);
 
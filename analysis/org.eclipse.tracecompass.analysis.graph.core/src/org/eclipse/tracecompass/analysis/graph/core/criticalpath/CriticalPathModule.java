@@ -9,6 +9,14 @@
 
 package org.eclipse.tracecompass.analysis.graph.core.criticalpath;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
@@ -24,6 +32,7 @@ import org.eclipse.tracecompass.internal.analysis.graph.core.criticalpath.Messag
 import org.eclipse.tracecompass.tmf.core.analysis.IAnalysisModule;
 import org.eclipse.tracecompass.tmf.core.analysis.TmfAbstractAnalysisModule;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfAnalysisException;
+import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
@@ -184,6 +193,48 @@ public class CriticalPathModule extends TmfAbstractAnalysisModule {
         return new CriticalPathAlgorithmBounded(graph);
     }
 
+    /**
+     * Compute the critical paths of several workers of a graph, for example
+     * all the threads of a service. The paths are computed in parallel, and
+     * the blockings shared by several paths are resolved only once. The graph
+     * must not be modified during the computation.
+     *
+     * @param graph
+     *            The graph, usually from a {@link TmfGraphBuilderModule}
+     * @param workers
+     *            The workers for which to compute the critical path
+     * @param start
+     *            The start time of the paths
+     * @return The critical path of each worker, in the order of the workers.
+     *         The path of a worker without vertex after the start time is an
+     *         empty graph.
+     * @throws CriticalPathAlgorithmException
+     *             an exception in the calculation occurred
+     * @since 2.0
+     */
+    public static Map<IGraphWorker, TmfGraph> computeCriticalPaths(TmfGraph graph, Collection<IGraphWorker> workers, ITmfTimestamp start) throws CriticalPathAlgorithmException {
+        List<IGraphWorker> computedWorkers = new ArrayList<>();
+        List<TmfVertex> starts = new ArrayList<>();
+        for (IGraphWorker worker : workers) {
+            TmfVertex vertex = graph.getVertexAt(start, worker);
+            if (vertex != null) {
+                computedWorkers.add(worker);
+                starts.add(vertex);
+            }
+        }
+        Map<IGraphWorker, TmfGraph> computed = new HashMap<>();
+        Iterator<TmfGraph> computedPaths = getAlgorithm(graph).computeAll(starts, null).iterator();
+        for (IGraphWorker worker : computedWorkers) {
+            computed.put(worker, computedPaths.next());
+        }
+        Map<IGraphWorker, TmfGraph> paths = new LinkedHashMap<>();
+        for (IGraphWorker worker : workers) {
+            TmfGraph path = computed.get(worker);
+            paths.put(worker, path == null ? new TmfGraph() : path);
+        }
+        return paths;
+    }
+
     @Override
     public boolean canExecute(@NonNull ITmfTrace trace) {
         /*
@@ -9,6 +9,9 @@
 
 package org.eclipse.tracecompass.analysis.graph.core.criticalpath;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.analysis.graph.core.base.TmfGraph;
 import org.eclipse.tracecompass.analysis.graph.core.base.TmfVertex;
@@ -33,6 +36,29 @@ public interface ICriticalPathAlgorithm {
      */
     public TmfGraph compute(TmfVertex start, @Nullable TmfVertex end) throws CriticalPathAlgorithmException;
 
+    /**
+     * Computes the critical paths from several starting vertices, usually of
+     * different workers. The graph must not be modified during the
+     * computation.
+     *
+     * @param starts
+     *            The starting vertices
+     * @param end
+     *            The end vertex, common to all paths
+     * @return The graphs of the critical paths, in the order of the starting
+     *         vertices
+     * @throws CriticalPathAlgorithmException
+     *             an exception in the calculation occurred
+     * @since 2.0
+     */
+    public default List<TmfGraph> computeAll(List<TmfVertex> starts, @Nullable TmfVertex end) throws CriticalPathAlgorithmException {
+        List<TmfGraph> paths = new ArrayList<>();
+        for (TmfVertex start : starts) {
+            paths.add(compute(start, end));
+        }
+        return paths;
+    }
+
     /**
      * Unique ID of this algorithm
      *
@@ -0,0 +1,729 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.analysis.graph.core.base;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.analysis.graph.core.base.TmfEdge.EdgeType;
+import org.eclipse.tracecompass.analysis.graph.core.base.TmfVertex.EdgeDirection;
+import org.eclipse.tracecompass.internal.analysis.graph.core.Activator;
+
+/**
+ * Struct-of-arrays storage of the vertices and edges of a
+ * {@link org.eclipse.tracecompass.analysis.graph.core.base.TmfGraph}.
+ *
+ * Vertices are identified by their index, in the order they were added. For
+ * each vertex, the timestamp, the unique ID, the worker, the index of the
+ * vertex at the other end of each of its four edges and the index of the next
+ * vertex of the same worker are kept in primitive columns. The type of an edge
+ * is stored with its origin vertex. The position of every
+ * {@value #SKIP_INTERVAL}th vertex of each worker is indexed, to get a vertex
+ * of a worker by position.
+ *
+ * The columns are split in segments of {@value #SEGMENT_SIZE} vertices. Each
+ * segment is a buffer, either on the heap or mapped from a file. Mapped
+ * segments are copied on write: they can be modified without modifying the
+ * file. A segment is mapped when the store is opened from a file written with
+ * {@link #write(DataOutput)}, or when it is spilled to disk because all its
+ * vertices are older than the window set with
+ * {@link #setSpill(FileChannel, long)}.
+ *
+ * This class is not thread safe, the graph is built by a single thread. It
+ * can be read concurrently once it is built.
+ */
+public class TmfGraphStore {
+
+    /** Index of a missing vertex, edge or worker */
+    public static final int NONE = -1;
+
+    private static final int SEGMENT_SHIFT = 16;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int SKIP_INTERVAL = 64;
+
+    /*
+     * Offset of each column in a segment, in bytes per vertex of the segment
+     * capacity
+     */
+    private static final int TIMESTAMP = 0;
+    private static final int ID = TIMESTAMP + Long.BYTES;
+    private static final int WORKER = ID + Long.BYTES;
+    private static final int OUTGOING_HORIZONTAL = WORKER + Integer.BYTES;
+    private static final int INCOMING_HORIZONTAL = OUTGOING_HORIZONTAL + Integer.BYTES;
+    private static final int OUTGOING_VERTICAL = INCOMING_HORIZONTAL + Integer.BYTES;
+    private static final int INCOMING_VERTICAL = OUTGOING_VERTICAL + Integer.BYTES;
+    private static final int NEXT = INCOMING_VERTICAL + Integer.BYTES;
+    private static final int HORIZONTAL_TYPE = NEXT + Integer.BYTES;
+    private static final int VERTICAL_TYPE = HORIZONTAL_TYPE + 1;
+    private static final int VERTEX_SIZE = VERTICAL_TYPE + 1;
+
+    private static final int[] LONG_COLUMNS = { TIMESTAMP, ID };
+    private static final int[] INT_COLUMNS = { WORKER, OUTGOING_HORIZONTAL, INCOMING_HORIZONTAL, OUTGOING_VERTICAL, INCOMING_VERTICAL, NEXT };
+    private static final int[] BYTE_COLUMNS = { HORIZONTAL_TYPE, VERTICAL_TYPE };
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int WORKER_HEADER_SIZE = 4 * Integer.BYTES;
+    private static final EdgeType[] TYPES = EdgeType.values();
+
+    private final List<ByteBuffer> fSegments = new ArrayList<>();
+    private int fSize = 0;
+
+    /* The vertices of each worker */
+    private int[] fWorkerSizes = new int[0];
+    private int[] fWorkerHeads = new int[0];
+    private int[] fWorkerTails = new int[0];
+    private int[][] fWorkerSkips = new int[0][];
+
+    /* Spilling of the old segments */
+    private @Nullable FileChannel fSpillChannel = null;
+    private long fSpillWindow;
+    private int fNbSpilled = 0;
+    private long[] fMaxTimestamps = new long[0];
+
+    // ------------------------------------------------------------------------
+    // Segments
+    // ------------------------------------------------------------------------
+
+    private static int getCapacity(ByteBuffer segment) {
+        return segment.capacity() / VERTEX_SIZE;
+    }
+
+    private ByteBuffer getSegment(int vertex) {
+        return fSegments.get(vertex >>> SEGMENT_SHIFT);
+    }
+
+    private long getLong(int vertex, int column) {
+        ByteBuffer segment = getSegment(vertex);
+        return segment.getLong(column * getCapacity(segment) + (vertex & SEGMENT_MASK) * Long.BYTES);
+    }
+
+    private void putLong(int vertex, int column, long value) {
+        ByteBuffer segment = getSegment(vertex);
+        segment.putLong(column * getCapacity(segment) + (vertex & SEGMENT_MASK) * Long.BYTES, value);
+    }
+
+    private int getInt(int vertex, int column) {
+        ByteBuffer segment = getSegment(vertex);
+        return segment.getInt(column * getCapacity(segment) + (vertex & SEGMENT_MASK) * Integer.BYTES);
+    }
+
+    private void putInt(int vertex, int column, int value) {
+        ByteBuffer segment = getSegment(vertex);
+        segment.putInt(column * getCapacity(segment) + (vertex & SEGMENT_MASK) * Integer.BYTES, value);
+    }
+
+    private byte getByte(int vertex, int column) {
+        ByteBuffer segment = getSegment(vertex);
+        return segment.get(column * getCapacity(segment) + (vertex & SEGMENT_MASK));
+    }
+
+    private void putByte(int vertex, int column, byte value) {
+        ByteBuffer segment = getSegment(vertex);
+        segment.put(column * getCapacity(segment) + (vertex & SEGMENT_MASK), value);
+    }
+
+    /**
+     * Copy the first vertices of a segment to a segment of another capacity,
+     * column by column
+     */
+    private static void copyColumns(ByteBuffer src, ByteBuffer dst, int count) {
+        int srcCapacity = getCapacity(src);
+        int dstCapacity = getCapacity(dst);
+        for (int column : LONG_COLUMNS) {
+            copyColumn(src, column * srcCapacity, dst, column * dstCapacity, count * Long.BYTES);
+        }
+        for (int column : INT_COLUMNS) {
+            copyColumn(src, column * srcCapacity, dst, column * dstCapacity, count * Integer.BYTES);
+        }
+        for (int column : BYTE_COLUMNS) {
+            copyColumn(src, column * srcCapacity, dst, column * dstCapacity, count);
+        }
+    }
+
+    private static void copyColumn(ByteBuffer src, int srcOffset, ByteBuffer dst, int dstOffset, int length) {
+        ByteBuffer from = src.duplicate();
+        from.position(srcOffset);
+        from.limit(srcOffset + length);
+        ByteBuffer to = dst.duplicate();
+        to.position(dstOffset);
+        to.put(from);
+    }
+
+    /** Make room for one more vertex in the last segment */
+    private void ensureCapacity() {
+        int segmentIndex = fSize >>> SEGMENT_SHIFT;
+        if (segmentIndex == fSegments.size()) {
+            fSegments.add(ByteBuffer.allocate(INITIAL_CAPACITY * VERTEX_SIZE));
+            fMaxTimestamps = Arrays.copyOf(fMaxTimestamps, fSegments.size());
+            fMaxTimestamps[segmentIndex] = Long.MIN_VALUE;
+            return;
+        }
+        ByteBuffer segment = fSegments.get(segmentIndex);
+        int count = fSize & SEGMENT_MASK;
+        int capacity = getCapacity(segment);
+        if (count == capacity) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.min(SEGMENT_SIZE, capacity * 2) * VERTEX_SIZE);
+            copyColumns(segment, grown, count);
+            fSegments.set(segmentIndex, grown);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Vertices
+    // ------------------------------------------------------------------------
+
+    /**
+     * Add a vertex without edges at the end of the vertices of a worker
+     *
+     * @param ts
+     *            The timestamp of the vertex
+     * @param id
+     *            The unique ID of the vertex
+     * @param worker
+     *            The worker index, from {@link #addWorker()}
+     * @return The index of the new vertex
+     */
+    public int addVertex(long ts, long id, int worker) {
+        ensureCapacity();
+        int vertex = fSize++;
+        putLong(vertex, TIMESTAMP, ts);
+        putLong(vertex, ID, id);
+        putInt(vertex, WORKER, worker);
+        putInt(vertex, OUTGOING_HORIZONTAL, NONE);
+        putInt(vertex, INCOMING_HORIZONTAL, NONE);
+        putInt(vertex, OUTGOING_VERTICAL, NONE);
+        putInt(vertex, INCOMING_VERTICAL, NONE);
+        putInt(vertex, NEXT, NONE);
+        putByte(vertex, HORIZONTAL_TYPE, (byte) 0);
+        putByte(vertex, VERTICAL_TYPE, (byte) 0);
+        int segmentIndex = vertex >>> SEGMENT_SHIFT;
+        fMaxTimestamps[segmentIndex] = Math.max(fMaxTimestamps[segmentIndex], ts);
+
+        int size = fWorkerSizes[worker];
+        if (size == 0) {
+            fWorkerHeads[worker] = vertex;
+        } else {
+            putInt(fWorkerTails[worker], NEXT, vertex);
+        }
+        fWorkerTails[worker] = vertex;
+        if (size % SKIP_INTERVAL == 0) {
+            int[] skips = fWorkerSkips[worker];
+            int nbSkips = size / SKIP_INTERVAL;
+            if (nbSkips == skips.length) {
+                skips = Arrays.copyOf(skips, Math.max(4, nbSkips * 2));
+                fWorkerSkips[worker] = skips;
+            }
+            skips[nbSkips] = vertex;
+        }
+        fWorkerSizes[worker] = size + 1;
+
+        spillOldSegments(ts);
+        return vertex;
+    }
+
+    /**
+     * @return The number of vertices ever added, including the removed ones
+     */
+    public int getNbVertices() {
+        return fSize;
+    }
+
+    /**
+     * @param vertex
+     *            The vertex index
+     * @return The timestamp of the vertex
+     */
+    public long getTimestamp(int vertex) {
+        return getLong(vertex, TIMESTAMP);
+    }
+
+    /**
+     * @param vertex
+     *            The vertex index
+     * @return The unique ID of the vertex
+     */
+    public long getId(int vertex) {
+        return getLong(vertex, ID);
+    }
+
+    /**
+     * @param vertex
+     *            The vertex index
+     * @return The worker index of the vertex, or {@link #NONE} if it was
+     *         removed
+     */
+    public int getWorker(int vertex) {
+        return getInt(vertex, WORKER);
+    }
+
+    // ------------------------------------------------------------------------
+    // Edges
+    // ------------------------------------------------------------------------
+
+    private static int getColumn(EdgeDirection dir) {
+        switch (dir) {
+        case OUTGOING_VERTICAL_EDGE:
+            return OUTGOING_VERTICAL;
+        case INCOMING_VERTICAL_EDGE:
+            return INCOMING_VERTICAL;
+        case OUTGOING_HORIZONTAL_EDGE:
+            return OUTGOING_HORIZONTAL;
+        case INCOMING_HORIZONTAL_EDGE:
+            return INCOMING_HORIZONTAL;
+        default:
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Get the vertex at the other end of an edge
+     *
+     * @param vertex
+     *            The vertex index
+     * @param dir
+     *            The direction of the edge
+     * @return The index of the neighbor vertex, or {@link #NONE} if there is
+     *         no edge in that direction
+     */
+    public int getNeighbor(int vertex, EdgeDirection dir) {
+        return getInt(vertex, getColumn(dir));
+    }
+
+    /**
+     * Link two vertices, replacing the outgoing edge of the origin and the
+     * incoming edge of the destination in that direction
+     *
+     * @param from
+     *            The origin vertex index
+     * @param to
+     *            The destination vertex index
+     * @param horizontal
+     *            Whether the edge is horizontal or vertical
+     * @param type
+     *            The type of the edge
+     */
+    public void link(int from, int to, boolean horizontal, EdgeType type) {
+        if (horizontal) {
+            putInt(from, OUTGOING_HORIZONTAL, to);
+            putInt(to, INCOMING_HORIZONTAL, from);
+        } else {
+            putInt(from, OUTGOING_VERTICAL, to);
+            putInt(to, INCOMING_VERTICAL, from);
+        }
+        setType(from, horizontal, type);
+    }
+
+    /**
+     * Set the edge of a vertex in a direction, without modifying the vertex
+     * at the other end of the edge
+     *
+     * @param vertex
+     *            The vertex index
+     * @param dir
+     *            The direction of the edge
+     * @param neighbor
+     *            The index of the vertex at the other end of the edge
+     */
+    public void setEdge(int vertex, EdgeDirection dir, int neighbor) {
+        putInt(vertex, getColumn(dir), neighbor);
+    }
+
+    /**
+     * Remove the edge of a vertex in a direction. The vertex at the other end
+     * of the edge is not modified.
+     *
+     * @param vertex
+     *            The vertex index
+     * @param dir
+     *            The direction of the edge
+     */
+    public void removeEdge(int vertex, EdgeDirection dir) {
+        putInt(vertex, getColumn(dir), NONE);
+    }
+
+    /**
+     * Get the type of the outgoing edge of a vertex
+     *
+     * @param from
+     *            The origin vertex index
+     * @param horizontal
+     *            Whether the edge is horizontal or vertical
+     * @return The edge type
+     */
+    public EdgeType getType(int from, boolean horizontal) {
+        return TYPES[getByte(from, horizontal ? HORIZONTAL_TYPE : VERTICAL_TYPE)];
+    }
+
+    /**
+     * Set the type of the outgoing edge of a vertex
+     *
+     * @param from
+     *            The origin vertex index
+     * @param horizontal
+     *            Whether the edge is horizontal or vertical
+     * @param type
+     *            The edge type
+     */
+    public void setType(int from, boolean horizontal, EdgeType type) {
+        putByte(from, horizontal ? HORIZONTAL_TYPE : VERTICAL_TYPE, (byte) type.ordinal());
+    }
+
+    // ------------------------------------------------------------------------
+    // Workers
+    // ------------------------------------------------------------------------
+
+    /**
+     * Add a worker without vertices
+     *
+     * @return The index of the new worker
+     */
+    public int addWorker() {
+        int worker = fWorkerSizes.length;
+        fWorkerSizes = Arrays.copyOf(fWorkerSizes, worker + 1);
+        fWorkerHeads = Arrays.copyOf(fWorkerHeads, worker + 1);
+        fWorkerTails = Arrays.copyOf(fWorkerTails, worker + 1);
+        fWorkerSkips = Arrays.copyOf(fWorkerSkips, worker + 1);
+        fWorkerHeads[worker] = NONE;
+        fWorkerTails[worker] = NONE;
+        fWorkerSkips[worker] = new int[0];
+        return worker;
+    }
+
+    /**
+     * @return The number of workers
+     */
+    public int getNbWorkers() {
+        return fWorkerSizes.length;
+    }
+
+    /**
+     * @param worker
+     *            The worker index
+     * @return The number of vertices of the worker
+     */
+    public int getNbVertices(int worker) {
+        return fWorkerSizes[worker];
+    }
+
+    /**
+     * Get a vertex of a worker
+     *
+     * @param worker
+     *            The worker index
+     * @param position
+     *            The position of the vertex in the vertices of the worker
+     * @return The vertex index
+     */
+    public int getVertex(int worker, int position) {
+        int size = fWorkerSizes[worker];
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (position == size - 1) {
+            return fWorkerTails[worker];
+        }
+        int vertex = fWorkerSkips[worker][position / SKIP_INTERVAL];
+        for (int i = 0; i < position % SKIP_INTERVAL; i++) {
+            vertex = getInt(vertex, NEXT);
+        }
+        return vertex;
+    }
+
+    /**
+     * Get the vertex following a vertex in the vertices of its worker
+     *
+     * @param vertex
+     *            The vertex index
+     * @return The index of the next vertex of the worker, or {@link #NONE} if
+     *         the vertex is the last one
+     */
+    public int getNextOfWorker(int vertex) {
+        int worker = getWorker(vertex);
+        if (worker == NONE || vertex == fWorkerTails[worker]) {
+            return NONE;
+        }
+        return getInt(vertex, NEXT);
+    }
+
+    /**
+     * Remove the last vertex of a worker. The edges of the vertex are kept.
+     *
+     * @param worker
+     *            The worker index
+     * @return The removed vertex index, or {@link #NONE} if the worker has
+     *         no vertex
+     */
+    public int removeTail(int worker) {
+        int size = fWorkerSizes[worker];
+        if (size == 0) {
+            return NONE;
+        }
+        int vertex = fWorkerTails[worker];
+        if (size == 1) {
+            fWorkerHeads[worker] = NONE;
+            fWorkerTails[worker] = NONE;
+        } else {
+            int tail = getVertex(worker, size - 2);
+            putInt(tail, NEXT, NONE);
+            fWorkerTails[worker] = tail;
+        }
+        fWorkerSizes[worker] = size - 1;
+        putInt(vertex, WORKER, NONE);
+        return vertex;
+    }
+
+    // ------------------------------------------------------------------------
+    // Spilling
+    // ------------------------------------------------------------------------
+
+    /**
+     * Write the segments whose vertices are all older than a window before the
+     * latest vertex to a file, and map them back from that file, so that they
+     * do not use heap memory. The vertices of the spilled segments can still
+     * be modified, the modifications are kept in memory.
+     *
+     * @param channel
+     *            The channel of the spill file, opened for reading and
+     *            writing. It must stay open as long as the store is used.
+     * @param window
+     *            The duration of the window of vertices kept on the heap
+     */
+    public void setSpill(FileChannel channel, long window) {
+        fSpillChannel = channel;
+        fSpillWindow = window;
+    }
+
+    private void spillOldSegments(long latest) {
+        FileChannel channel = fSpillChannel;
+        if (channel == null) {
+            return;
+        }
+        /* Only the full segments are spilled */
+        while (fNbSpilled < (fSize >>> SEGMENT_SHIFT) &&
+                fMaxTimestamps[fNbSpilled] < latest - fSpillWindow) {
+            ByteBuffer segment = fSegments.get(fNbSpilled);
+            long position = (long) fNbSpilled * SEGMENT_SIZE * VERTEX_SIZE;
+            try {
+                ByteBuffer src = segment.duplicate();
+                src.clear();
+                while (src.hasRemaining()) {
+                    channel.write(src, position + src.position());
+                }
+                fSegments.set(fNbSpilled, channel.map(MapMode.PRIVATE, position, segment.capacity()));
+            } catch (IOException e) {
+                Activator.getInstance().logWarning("Could not spill the graph to disk, it is kept in memory", e); //$NON-NLS-1$
+                fSpillChannel = null;
+                return;
+            }
+            fNbSpilled++;
+        }
+    }
+
+    /**
+     * Stop spilling the old segments and close the spill file. The spilled
+     * segments stay mapped.
+     */
+    public void closeSpill() {
+        FileChannel channel = fSpillChannel;
+        if (channel == null) {
+            return;
+        }
+        fSpillChannel = null;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Activator.getInstance().logWarning("Could not close the graph spill file", e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Release the segments of the store and close the spill file. The mapped
+     * segments are unmapped, so the store must not be used anymore.
+     */
+    public void dispose() {
+        closeSpill();
+        List<ByteBuffer> segments = new ArrayList<>(fSegments);
+        /* Any later access fails instead of reading unmapped memory */
+        fSegments.clear();
+        fSize = 0;
+        fNbSpilled = 0;
+        fWorkerSizes = new int[0];
+        fWorkerHeads = new int[0];
+        fWorkerTails = new int[0];
+        fWorkerSkips = new int[0][];
+        for (ByteBuffer segment : segments) {
+            if (segment instanceof MappedByteBuffer) {
+                unmap((MappedByteBuffer) segment);
+            }
+        }
+    }
+
+    /**
+     * Unmap a buffer now rather than when it is garbage collected, so that
+     * its file can be deleted. There is no public API for this, so the buffer
+     * is left to the garbage collector if its cleaner cannot be called.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner"); //$NON-NLS-1$
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner); //$NON-NLS-1$
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            /* Unmapped when it is garbage collected */
+        }
+    }
+
+    /**
+     * @return The number of segments spilled to disk
+     */
+    public int getNbSpilledSegments() {
+        return fNbSpilled;
+    }
+
+    // ------------------------------------------------------------------------
+    // Persistence
+    // ------------------------------------------------------------------------
+
+    /**
+     * Write the store, segment by segment, so that it can be mapped back with
+     * {@link #map(FileChannel, long)}
+     *
+     * @param out
+     *            The output, in big-endian order
+     * @throws IOException
+     *             If the store could not be written
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(fSize);
+        out.writeInt(fWorkerSizes.length);
+        for (int i = 0; i < fSegments.size(); i++) {
+            ByteBuffer segment = fSegments.get(i);
+            int count = Math.min(SEGMENT_SIZE, fSize - i * SEGMENT_SIZE);
+            if (count != getCapacity(segment)) {
+                /* Only write the used part of the last segment */
+                ByteBuffer trimmed = ByteBuffer.allocate(count * VERTEX_SIZE);
+                copyColumns(segment, trimmed, count);
+                segment = trimmed;
+            }
+            ByteBuffer src = segment.duplicate();
+            src.clear();
+            byte[] bytes = new byte[src.remaining()];
+            src.get(bytes);
+            out.write(bytes);
+        }
+        for (int worker = 0; worker < fWorkerSizes.length; worker++) {
+            int nbSkips = getNbSkips(fWorkerSizes[worker]);
+            out.writeInt(fWorkerSizes[worker]);
+            out.writeInt(fWorkerHeads[worker]);
+            out.writeInt(fWorkerTails[worker]);
+            out.writeInt(nbSkips);
+            for (int i = 0; i < nbSkips; i++) {
+                out.writeInt(fWorkerSkips[worker][i]);
+            }
+        }
+    }
+
+    private static int getNbSkips(int size) {
+        return (size + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+    }
+
+    /**
+     * Map a store written with {@link #write(DataOutput)}. The segments are
+     * read from the file only when they are accessed.
+     *
+     * @param channel
+     *            The channel of the file
+     * @param position
+     *            The position of the store in the file
+     * @return The mapped store
+     * @throws IOException
+     *             If the file could not be mapped or is invalid
+     */
+    public static TmfGraphStore map(FileChannel channel, long position) throws IOException {
+        ByteBuffer header = read(channel, position, HEADER_SIZE);
+        int size = header.getInt();
+        int nbWorkers = header.getInt();
+        if (size < 0 || nbWorkers < 0 || position + HEADER_SIZE + (long) size * VERTEX_SIZE > channel.size()) {
+            throw new IOException("Invalid graph file"); //$NON-NLS-1$
+        }
+
+        TmfGraphStore store = new TmfGraphStore();
+        long offset = position + HEADER_SIZE;
+        for (int i = 0; i * (long) SEGMENT_SIZE < size; i++) {
+            int count = Math.min(SEGMENT_SIZE, size - i * SEGMENT_SIZE);
+            store.fSegments.add(channel.map(MapMode.PRIVATE, offset, count * VERTEX_SIZE));
+            offset += count * VERTEX_SIZE;
+        }
+        store.fSize = size;
+        store.fMaxTimestamps = new long[store.fSegments.size()];
+
+        /* The workers are small, read them on the heap */
+        store.fWorkerSizes = new int[nbWorkers];
+        store.fWorkerHeads = new int[nbWorkers];
+        store.fWorkerTails = new int[nbWorkers];
+        store.fWorkerSkips = new int[nbWorkers][];
+        for (int worker = 0; worker < nbWorkers; worker++) {
+            ByteBuffer workerHeader = read(channel, offset, WORKER_HEADER_SIZE);
+            offset += WORKER_HEADER_SIZE;
+            int workerSize = workerHeader.getInt();
+            int head = workerHeader.getInt();
+            int tail = workerHeader.getInt();
+            int nbSkips = workerHeader.getInt();
+            if (workerSize < 0 || workerSize > size || nbSkips != getNbSkips(workerSize) ||
+                    head < NONE || head >= size || tail < NONE || tail >= size) {
+                throw new IOException("Invalid graph file"); //$NON-NLS-1$
+            }
+            int[] skips = new int[nbSkips];
+            read(channel, offset, nbSkips * Integer.BYTES).asIntBuffer().get(skips);
+            offset += nbSkips * Integer.BYTES;
+            store.fWorkerSizes[worker] = workerSize;
+            store.fWorkerHeads[worker] = head;
+            store.fWorkerTails[worker] = tail;
+            store.fWorkerSkips[worker] = skips;
+        }
+        return store;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated graph file"); //$NON-NLS-1$
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return The number of bytes written by {@link #write(DataOutput)}
+     */
+    public long getByteSize() {
+        long byteSize = HEADER_SIZE + (long) fSize * VERTEX_SIZE;
+        for (int size : fWorkerSizes) {
+            byteSize += WORKER_HEADER_SIZE + getNbSkips(size) * (long) Integer.BYTES;
+        }
+        return byteSize;
+    }
+}
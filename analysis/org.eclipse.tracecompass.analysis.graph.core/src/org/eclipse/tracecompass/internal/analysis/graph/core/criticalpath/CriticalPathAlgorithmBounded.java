@@ -11,10 +11,17 @@ package org.eclipse.tracecompass.internal.analysis.graph.core.criticalpath;
 
 import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Deque;
 import java.util.List;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.analysis.graph.core.base.IGraphWorker;
@@ -33,10 +40,49 @@ import org.eclipse.tracecompass.analysis.graph.core.criticalpath.CriticalPathAlg
  * F. Giraldeau and M.Dagenais, Wait analysis of distributed systems using
  * kernel tracing, IEEE Transactions on Parallel and Distributed Systems
  *
+ * The resolution of each blocking is kept, so that the blockings shared by
+ * several paths computed with the same instance are resolved only once. The
+ * paths can be computed concurrently, as long as the graph is not modified.
+ *
  * @author Francis Giraldeau
  */
 public class CriticalPathAlgorithmBounded extends AbstractCriticalPathAlgorithm {
 
+    /**
+     * The resolved blockings, by blocking edge and bound. The lists are not
+     * modifiable.
+     */
+    private final ConcurrentMap<Blocking, List<TmfEdge>> fResolved = new ConcurrentHashMap<>();
+
+    /**
+     * A blocking edge, identified by its source vertex, resolved up to a
+     * bound. The vertices of a graph are unique, so they are compared by
+     * identity.
+     */
+    private static final class Blocking {
+        private final TmfVertex fFrom;
+        private final TmfVertex fBound;
+
+        public Blocking(TmfVertex from, TmfVertex bound) {
+            fFrom = from;
+            fBound = bound;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(fFrom) + System.identityHashCode(fBound);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (!(obj instanceof Blocking)) {
+                return false;
+            }
+            Blocking other = (Blocking) obj;
+            return fFrom == other.fFrom && fBound == other.fBound;
+        }
+    }
+
     /**
      * Constructor
      *
@@ -47,6 +93,40 @@ public class CriticalPathAlgorithmBounded extends AbstractCriticalPathAlgorithm
         super(graph);
     }
 
+    @Override
+    public List<TmfGraph> computeAll(List<TmfVertex> starts, @Nullable TmfVertex end) throws CriticalPathAlgorithmException {
+        int nbThreads = Math.min(starts.size(), Runtime.getRuntime().availableProcessors());
+        if (nbThreads <= 1) {
+            return super.computeAll(starts, end);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        try {
+            List<Future<TmfGraph>> futures = new ArrayList<>();
+            for (TmfVertex start : starts) {
+                futures.add(executor.submit(() -> compute(start, end)));
+            }
+            List<TmfGraph> paths = new ArrayList<>();
+            for (Future<TmfGraph> future : futures) {
+                paths.add(future.get());
+            }
+            return paths;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CriticalPathAlgorithmException("Critical path computation interrupted"); //$NON-NLS-1$
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CriticalPathAlgorithmException) {
+                throw (CriticalPathAlgorithmException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new CriticalPathAlgorithmException(String.valueOf(cause));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Override
     public TmfGraph compute(TmfVertex start, @Nullable TmfVertex end) throws CriticalPathAlgorithmException {
         /* Create new graph for the critical path result */
@@ -101,7 +181,7 @@ public class CriticalPathAlgorithmBounded extends AbstractCriticalPathAlgorithm
                 break;
             case NETWORK:
             case BLOCKED:
-                List<TmfEdge> links = resolveBlockingBounded(nextEdge, nextEdge.getVertexFrom());
+                List<TmfEdge> links = new ArrayList<>(resolveBlockingBounded(nextEdge, nextEdge.getVertexFrom()));
                 Collections.reverse(links);
                 appendPathComponent(criticalPath, graph, currentVertex, links);
                 break;
@@ -186,11 +266,30 @@ public class CriticalPathAlgorithmBounded extends AbstractCriticalPathAlgorithm
      * @param bound
      *            The vertex that limits the boundary until which to resolve the
      *            blocking
-     * @return The list of non-blocking edges
+     * @return The list of non-blocking edges, not modifiable
      */
     private List<TmfEdge> resolveBlockingBounded(TmfEdge blocking, TmfVertex bound) {
+        TmfVertex currentBound = bound.compareTo(blocking.getVertexFrom()) < 0 ? blocking.getVertexFrom() : bound;
+        Blocking key = new Blocking(blocking.getVertexFrom(), currentBound);
+        List<TmfEdge> resolved = fResolved.get(key);
+        if (resolved == null) {
+            /*
+             * The resolution is recursive, so it cannot be done in
+             * computeIfAbsent. Concurrent resolutions of the same blocking
+             * give the same result.
+             */
+            resolved = Collections.unmodifiableList(new ArrayList<>(resolveBlocking(blocking, currentBound)));
+            List<TmfEdge> previous = fResolved.putIfAbsent(key, resolved);
+            if (previous != null) {
+                resolved = previous;
+            }
+        }
+        return checkNotNull(resolved);
+    }
+
+    private Deque<TmfEdge> resolveBlocking(TmfEdge blocking, TmfVertex currentBound) {
 
-        LinkedList<TmfEdge> subPath = new LinkedList<>();
+        Deque<TmfEdge> subPath = new ArrayDeque<>();
         TmfVertex junction = findIncoming(blocking.getVertexTo(), EdgeDirection.OUTGOING_HORIZONTAL_EDGE);
         /* if wake-up source is not found, return empty list */
         if (junction == null) {
@@ -201,9 +300,7 @@ public class CriticalPathAlgorithmBounded extends AbstractCriticalPathAlgorithm
         subPath.add(down);
         TmfVertex vertexFrom = down.getVertexFrom();
 
-        TmfVertex currentBound = bound.compareTo(blocking.getVertexFrom()) < 0 ? blocking.getVertexFrom() : bound;
-
-        Stack<TmfVertex> stack = new Stack<>();
+        Deque<TmfVertex> stack = new ArrayDeque<>();
         while (vertexFrom != null && vertexFrom.compareTo(currentBound) > 0) {
             /* shortcut for down link that goes beyond the blocking */
             TmfEdge inVerticalEdge = vertexFrom.getEdge(EdgeDirection.INCOMING_VERTICAL_EDGE);
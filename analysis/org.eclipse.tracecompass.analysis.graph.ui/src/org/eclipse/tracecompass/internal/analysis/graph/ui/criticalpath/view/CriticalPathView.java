@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015 École Polytechnique de Montréal
+ * Copyright (c) 2015, 2016 École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -291,6 +291,20 @@ public class CriticalPathView extends AbstractTimeGraphView {
             return graph;
         }
 
+        /**
+         * Get the entries of the worker that is currently displayed
+         *
+         * @return the entries, or an empty list if they are not built yet
+         */
+        public List<TimeGraphEntry> getCurrentEntries() {
+            Object current = fCurrentObject;
+            List<TimeGraphEntry> entries = (current == null) ? null : workerEntries.get(current);
+            if (entries == null) {
+                return Collections.emptyList();
+            }
+            return entries;
+        }
+
         public @Nullable List<ILinkEvent> getLinkList(long startTime, long endTime) {
             Object current = fCurrentObject;
             if (current == null) {
@@ -504,7 +518,6 @@ public class CriticalPathView extends AbstractTimeGraphView {
             return null;
         }
         List<ITimeEvent> eventList = null;
-        entry.setZoomedEventList(null);
         Iterator<ITimeEvent> iterator = entry.getTimeEventsIterator();
         eventList = new ArrayList<>();
 
@@ -518,6 +531,40 @@ public class CriticalPathView extends AbstractTimeGraphView {
         return eventList;
     }
 
+    @Override
+    protected boolean isEntryZoomIndependent() {
+        /* The events of an entry are read from its own event list */
+        return true;
+    }
+
+    @Override
+    protected void zoomStarted(long startTime, long endTime, long resolution) {
+        /*
+         * The events are computed from the merged event lists of the entries,
+         * so the zoomed lists are reset once before zooming, and not in
+         * getEventList(), where the prefetch would clear the lists that were
+         * just published.
+         */
+        List<TimeGraphEntry> entryList = getEntryList(getTrace());
+        if (entryList != null) {
+            for (TimeGraphEntry entry : entryList) {
+                resetZoomedEventList(entry);
+            }
+        }
+        for (TimeGraphEntry entry : fContentProvider.getCurrentEntries()) {
+            resetZoomedEventList(entry);
+        }
+    }
+
+    private static void resetZoomedEventList(ITimeGraphEntry entry) {
+        if (entry instanceof TimeGraphEntry) {
+            ((TimeGraphEntry) entry).setZoomedEventList(null);
+        }
+        for (ITimeGraphEntry child : entry.getChildren()) {
+            resetZoomedEventList(child);
+        }
+    }
+
     private static boolean intersects(final long realStart, final long realEnd, ITimeEvent event) {
         return ((event.getTime() >= realStart) && (event.getTime() <= realEnd)) ||
                 ((event.getTime() + event.getDuration() > realStart) &&
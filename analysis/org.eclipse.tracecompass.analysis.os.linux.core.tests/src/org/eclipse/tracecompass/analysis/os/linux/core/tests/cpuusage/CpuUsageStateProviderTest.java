@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2015 École Polytechnique de Montréal
+ * Copyright (c) 2014, 2016 École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -27,6 +27,7 @@ import java.util.Map;
 
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.tracecompass.analysis.os.linux.core.cpuusage.KernelCpuUsageAnalysis;
 import org.eclipse.tracecompass.analysis.os.linux.core.kernelanalysis.Attributes;
@@ -323,4 +324,46 @@ public class CpuUsageStateProviderTest {
         assertEquals(expected, resultMap);
 
     }
+
+    /**
+     * Test the
+     * {@link KernelCpuUsageAnalysis#getCpuUsageInRanges(java.util.Set, long[], long[], org.eclipse.core.runtime.IProgressMonitor)}
+     * method, which must give the same results as one call to
+     * {@link KernelCpuUsageAnalysis#getCpuUsageInRange(java.util.Set, long, long)}
+     * per range, whether the ranges are contiguous or not
+     */
+    @Test
+    public void testUsageInRanges() {
+        fModule.schedule();
+        fModule.waitForCompletion();
+
+        long[] starts = { 0L, 1L, 4L, 12L, 13L, 22L, 24L };
+        long[] ends = { 1L, 4L, 13L, 13L, 22L, 25L, 25L };
+        Map<Integer, long[]> result = fModule.getCpuUsageInRanges(Collections.EMPTY_SET, starts, ends, new NullProgressMonitor());
+        assertEquals(ImmutableSet.of(1, 2, 3, 4), result.keySet());
+        for (int i = 0; i < starts.length; i++) {
+            Map<String, Long> rangeMap = fModule.getCpuUsageInRange(Collections.EMPTY_SET, starts[i], ends[i]);
+            for (Map.Entry<Integer, long[]> entry : result.entrySet()) {
+                Long expected = rangeMap.get(KernelCpuUsageAnalysis.TOTAL + KernelCpuUsageAnalysis.SPLIT_STRING + entry.getKey());
+                assertEquals(expected == null ? 0L : expected.longValue(), entry.getValue()[i]);
+            }
+        }
+
+        /* With a subset of the CPUs */
+        result = fModule.getCpuUsageInRanges(Collections.<@NonNull Integer> singleton(0), new long[] { 4L }, new long[] { 13L }, new NullProgressMonitor());
+        assertEquals(ImmutableSet.of(1, 2, 3), result.keySet());
+        assertEquals(0L, result.get(1)[0]);
+        assertEquals(9L, result.get(2)[0]);
+        assertEquals(0L, result.get(3)[0]);
+
+        /* Nothing is computed once cancelled */
+        NullProgressMonitor monitor = new NullProgressMonitor();
+        monitor.setCanceled(true);
+        result = fModule.getCpuUsageInRanges(Collections.EMPTY_SET, starts, ends, monitor);
+        for (long[] usage : result.values()) {
+            for (long value : usage) {
+                assertEquals(0L, value);
+            }
+        }
+    }
 }
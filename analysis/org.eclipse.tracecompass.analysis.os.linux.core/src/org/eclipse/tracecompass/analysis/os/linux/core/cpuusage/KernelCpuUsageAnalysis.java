@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2015 École Polytechnique de Montréal and others.
+ * Copyright (c) 2014, 2016 École Polytechnique de Montréal and others.
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -14,6 +14,8 @@ package org.eclipse.tracecompass.analysis.os.linux.core.cpuusage;
 
 import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -21,6 +23,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.tracecompass.analysis.os.linux.core.kernelanalysis.Attributes;
 import org.eclipse.tracecompass.analysis.os.linux.core.kernelanalysis.KernelAnalysisModule;
@@ -57,6 +60,9 @@ public class KernelCpuUsageAnalysis extends TmfStateSystemAnalysisModule {
     /** Idle process thread ID */
     public static final String TID_ZERO = "0"; //$NON-NLS-1$
 
+    /** Number of range boundaries whose states are read by one range query */
+    private static final int SWEEP_CHUNK = 64;
+
     @Override
     protected ITmfStateProvider createStateProvider() {
         ITmfTrace trace = checkNotNull(getTrace());
@@ -275,6 +281,276 @@ public class KernelCpuUsageAnalysis extends TmfStateSystemAnalysisModule {
         return map;
     }
 
+    /**
+     * Get the time spent on CPU by each thread in many time ranges. The states
+     * at the boundaries of the ranges are read in one forward sweep over the
+     * state histories, with range queries over consecutive groups of
+     * boundaries, instead of full queries at every boundary.
+     *
+     * @param cpus
+     *            A set of the desired CPUs to get. An empty set gets all the
+     *            cores
+     * @param starts
+     *            The start times of the ranges
+     * @param ends
+     *            The end times of the ranges, range i is [starts[i], ends[i]]
+     * @param monitor
+     *            The progress monitor, to cancel the computation
+     * @return A map of TID -> time spent on CPU in each range, summed over the
+     *         CPUs. The arrays have one element per range. The map is
+     *         incomplete if the computation is cancelled.
+     * @since 2.0
+     */
+    public Map<Integer, long[]> getCpuUsageInRanges(Set<@NonNull Integer> cpus, long[] starts, long[] ends, IProgressMonitor monitor) {
+        Map<Integer, long[]> map = new HashMap<>();
+        int nbRanges = Math.min(starts.length, ends.length);
+
+        ITmfTrace trace = getTrace();
+        ITmfStateSystem cpuSs = getStateSystem();
+        if (trace == null || cpuSs == null || nbRanges < 1) {
+            return map;
+        }
+        ITmfStateSystem kernelSs = TmfStateSystemAnalysisModule.getStateSystem(trace, KernelAnalysisModule.ID);
+        if (kernelSs == null) {
+            return map;
+        }
+        long ssStart = Math.max(cpuSs.getStartTime(), kernelSs.getStartTime());
+        long ssEnd = Math.min(cpuSs.getCurrentEndTime(), kernelSs.getCurrentEndTime());
+        if (ssEnd < ssStart) {
+            return map;
+        }
+
+        try {
+            /* Resolve the quarks and the TIDs once for all the ranges */
+            int cpusNode = cpuSs.getQuarkAbsolute(Attributes.CPUS);
+            List<Integer> cpuNodes = new ArrayList<>();
+            for (int cpuNode : cpuSs.getSubAttributes(cpusNode, false)) {
+                if (cpus.isEmpty() || cpus.contains(Integer.parseInt(cpuSs.getAttributeName(cpuNode)))) {
+                    cpuNodes.add(cpuNode);
+                }
+            }
+            int nbCpus = cpuNodes.size();
+            int[] currentThreadQuarks = new int[nbCpus];
+            int[] cpuOffsets = new int[nbCpus + 1];
+            List<Integer> tidNodeList = new ArrayList<>();
+            List<long[]> usageList = new ArrayList<>();
+            List<Integer> tidList = new ArrayList<>();
+            for (int c = 0; c < nbCpus; c++) {
+                int cpuNode = cpuNodes.get(c);
+                currentThreadQuarks[c] = kernelSs.getQuarkAbsolute(Attributes.CPUS, cpuSs.getAttributeName(cpuNode), Attributes.CURRENT_THREAD);
+                cpuOffsets[c] = tidNodeList.size();
+                for (int tidNode : cpuSs.getSubAttributes(cpuNode, false)) {
+                    int tid = Integer.parseInt(cpuSs.getAttributeName(tidNode));
+                    long[] usage = map.get(tid);
+                    if (usage == null) {
+                        usage = new long[nbRanges];
+                        map.put(tid, usage);
+                    }
+                    tidNodeList.add(tidNode);
+                    tidList.add(tid);
+                    usageList.add(usage);
+                }
+            }
+            cpuOffsets[nbCpus] = tidNodeList.size();
+            int[] tidNodes = new int[tidNodeList.size()];
+            int[] tids = new int[tidNodeList.size()];
+            for (int t = 0; t < tidNodes.length; t++) {
+                tidNodes[t] = tidNodeList.get(t);
+                tids[t] = tidList.get(t);
+            }
+
+            /* The distinct boundaries of the ranges, in chronological order */
+            long[] rangeStarts = new long[nbRanges];
+            long[] rangeEnds = new long[nbRanges];
+            long[] times = new long[2 * nbRanges];
+            for (int i = 0; i < nbRanges; i++) {
+                rangeStarts[i] = Math.max(ssStart, Math.min(ssEnd, starts[i]));
+                rangeEnds[i] = Math.max(rangeStarts[i], Math.min(ssEnd, ends[i]));
+                times[2 * i] = rangeStarts[i];
+                times[2 * i + 1] = rangeEnds[i];
+            }
+            Arrays.sort(times);
+            int nbTimes = 0;
+            for (int j = 0; j < times.length; j++) {
+                if (nbTimes == 0 || times[j] != times[nbTimes - 1]) {
+                    times[nbTimes++] = times[j];
+                }
+            }
+            times = Arrays.copyOf(times, nbTimes);
+
+            /*
+             * The ranges that end at each boundary, and the last boundary at
+             * which the counts at each boundary are still needed
+             */
+            int[] startIndexes = new int[nbRanges];
+            int[] endIndexes = new int[nbRanges];
+            int[] lastUse = new int[nbTimes];
+            for (int j = 0; j < nbTimes; j++) {
+                lastUse[j] = j;
+            }
+            for (int i = 0; i < nbRanges; i++) {
+                startIndexes[i] = Arrays.binarySearch(times, rangeStarts[i]);
+                endIndexes[i] = Arrays.binarySearch(times, rangeEnds[i]);
+                lastUse[startIndexes[i]] = Math.max(lastUse[startIndexes[i]], endIndexes[i]);
+            }
+            int[][] rangesByEnd = groupBy(endIndexes, nbTimes);
+            int[][] releasedAt = groupBy(lastUse, nbTimes);
+
+            CountsAtTime[] counts = new CountsAtTime[nbTimes];
+            for (int chunk = 0; chunk < nbTimes; chunk += SWEEP_CHUNK) {
+                int chunkEnd = Math.min(nbTimes, chunk + SWEEP_CHUNK);
+                long[] chunkTimes = Arrays.copyOfRange(times, chunk, chunkEnd);
+                ITmfStateInterval[][] running = sample(kernelSs, currentThreadQuarks, chunkTimes);
+                ITmfStateInterval[][] tidCounts = sample(cpuSs, tidNodes, chunkTimes);
+
+                for (int j = chunk; j < chunkEnd; j++) {
+                    if (monitor.isCanceled()) {
+                        return map;
+                    }
+                    CountsAtTime endCounts = new CountsAtTime(times[j], running[j - chunk], tidCounts[j - chunk], cpuOffsets);
+                    counts[j] = endCounts;
+
+                    for (int i : rangesByEnd[j]) {
+                        CountsAtTime startCounts = counts[startIndexes[i]];
+                        long startTime = times[startIndexes[i]];
+                        long endTime = times[j];
+                        for (int c = 0; c < nbCpus; c++) {
+                            int startThread = startCounts.fRunningThreads[c];
+                            int endThread = endCounts.fRunningThreads[c];
+                            for (int t = cpuOffsets[c]; t < cpuOffsets[c + 1]; t++) {
+                                int tid = tids[t];
+                                /*
+                                 * Same interpolation and unknown thread
+                                 * hypothesis as in getCpuUsageInRange()
+                                 */
+                                long countAtStart = (tid == startThread || startThread == -1) ? startCounts.fInterpolated[t] : startCounts.fCounts[t];
+                                long countAtEnd = (tid == endThread) ? endCounts.fInterpolated[t] : endCounts.fCounts[t];
+                                if ((startThread == -1) && ((countAtEnd - countAtStart < 0) || (countAtEnd == 0))) {
+                                    countAtStart = 0;
+                                }
+                                long currentCount = countAtEnd - countAtStart;
+                                if (currentCount < 0) {
+                                    Activator.getDefault().logWarning(String.format("Negative count: start %d, end %d", countAtStart, countAtEnd)); //$NON-NLS-1$
+                                    currentCount = 0;
+                                } else if (currentCount > endTime - startTime) {
+                                    Activator.getDefault().logWarning(String.format("CPU Usage: Spent more time on CPU than allowed: %d spent %d when max should be %d", tid, currentCount, endTime - startTime)); //$NON-NLS-1$
+                                    currentCount = 0;
+                                }
+                                usageList.get(t)[i] += currentCount;
+                            }
+                        }
+                    }
+
+                    /* Only keep the counts needed by the ranges not done yet */
+                    for (int k : releasedAt[j]) {
+                        counts[k] = null;
+                    }
+                }
+            }
+
+        } catch (TimeRangeException | AttributeNotFoundException e) {
+            /*
+             * Assume there is no events or the attribute does not exist yet,
+             * the ranges are left empty.
+             */
+        } catch (StateValueTypeException | StateSystemDisposedException e) {
+            Activator.getDefault().logError("Error getting CPU usage in time ranges", e); //$NON-NLS-1$
+        }
+
+        return map;
+    }
+
+    /**
+     * Group the indexes of an array by their value
+     *
+     * @return for each value, the indexes that have that value, in order
+     */
+    private static int[][] groupBy(int[] values, int nbValues) {
+        int[] sizes = new int[nbValues];
+        for (int value : values) {
+            sizes[value]++;
+        }
+        int[][] groups = new int[nbValues][];
+        for (int v = 0; v < nbValues; v++) {
+            groups[v] = new int[sizes[v]];
+            sizes[v] = 0;
+        }
+        for (int i = 0; i < values.length; i++) {
+            int value = values[i];
+            groups[value][sizes[value]++] = i;
+        }
+        return groups;
+    }
+
+    /**
+     * Get the intervals of attributes at sorted times, with one range query
+     * from the first time to the last.
+     *
+     * @return for each time, the interval of each attribute at that time
+     */
+    private static ITmfStateInterval[][] sample(ITmfStateSystem ss, int[] quarks, long[] times)
+            throws AttributeNotFoundException, StateSystemDisposedException {
+        ITmfStateInterval[][] samples = new ITmfStateInterval[times.length][quarks.length];
+        if (quarks.length == 0) {
+            return samples;
+        }
+        Map<Integer, Integer> indexes = new HashMap<>();
+        for (int q = 0; q < quarks.length; q++) {
+            indexes.put(quarks[q], q);
+        }
+        ss.queryRange(indexes.keySet(), times[0], times[times.length - 1], interval -> {
+            Integer q = indexes.get(interval.getAttribute());
+            if (q == null) {
+                return;
+            }
+            int j = Arrays.binarySearch(times, interval.getStartTime());
+            if (j < 0) {
+                j = -j - 1;
+            }
+            for (; j < times.length && times[j] <= interval.getEndTime(); j++) {
+                samples[j][q] = interval;
+            }
+        });
+        /* An interval being written to the history can be missed */
+        for (int j = 0; j < times.length; j++) {
+            for (int q = 0; q < quarks.length; q++) {
+                if (samples[j][q] == null) {
+                    samples[j][q] = ss.querySingleState(times[j], quarks[q]);
+                }
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * The time spent on CPU by each thread of each CPU at a given time, with
+     * and without the interpolation of the running thread. The threads of
+     * all the CPUs are in the same arrays, the threads of CPU c starting at
+     * offset c.
+     */
+    private static class CountsAtTime {
+        private final int[] fRunningThreads;
+        private final long[] fCounts;
+        private final long[] fInterpolated;
+
+        public CountsAtTime(long time, ITmfStateInterval[] running, ITmfStateInterval[] counts, int[] cpuOffsets) {
+            int nbCpus = running.length;
+            fRunningThreads = new int[nbCpus];
+            fCounts = new long[counts.length];
+            fInterpolated = new long[counts.length];
+            for (int c = 0; c < nbCpus; c++) {
+                fRunningThreads[c] = running[c].getStateValue().unboxInt();
+                long runningTime = running[c].getEndTime() - running[c].getStartTime();
+                long runningEnd = running[c].getEndTime();
+                for (int t = cpuOffsets[c]; t < cpuOffsets[c + 1]; t++) {
+                    long count = Math.max(0, counts[t].getStateValue().unboxLong());
+                    fCounts[t] = count;
+                    fInterpolated[t] = interpolateCount(count, time, runningEnd, runningTime);
+                }
+            }
+        }
+    }
+
     private static long interpolateCount(long count, long ts, long runningEnd, long runningTime) {
         long newCount = count;
 
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.analysis.os.linux.ui.tests.view.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.eclipse.tracecompass.internal.analysis.os.linux.ui.views.resources.StateIntervalCache;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
+import org.eclipse.tracecompass.statesystem.core.StateSystemFactory;
+import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the {@link StateIntervalCache} class
+ */
+@SuppressWarnings("javadoc")
+public class StateIntervalCacheTest {
+
+    private static final long START_TIME = 1000L;
+
+    private ITmfStateSystemBuilder fStateSystem;
+    private int fQuark;
+
+    @Before
+    public void setUp() throws Exception {
+        fStateSystem = StateSystemFactory.newStateSystem(StateHistoryBackendFactory.createInMemoryBackend("test", START_TIME));
+        fQuark = fStateSystem.getQuarkAbsoluteAndAdd("cpu");
+        for (int i = 1; i <= 200; i++) {
+            fStateSystem.modifyAttribute(START_TIME + i * 10, TmfStateValue.newValueInt(i), fQuark);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        fStateSystem.dispose();
+    }
+
+    @Test
+    public void testHits() throws Exception {
+        fStateSystem.closeHistory(5000L);
+        StateIntervalCache cache = new StateIntervalCache(fStateSystem);
+        ITmfStateInterval interval = cache.querySingleState(1505, fQuark);
+        assertEquals(1500, interval.getStartTime());
+        assertEquals(1, cache.getMisses());
+
+        /* Anywhere in the same interval is served from the cache */
+        assertSame(interval, cache.querySingleState(1500, fQuark));
+        assertSame(interval, cache.querySingleState(1509, fQuark));
+        assertEquals(2, cache.getHits());
+
+        assertEquals(1510, cache.querySingleState(1510, fQuark).getStartTime());
+        assertEquals(2, cache.getMisses());
+
+        /* The last interval, up to the end of the history */
+        assertEquals(5000, cache.querySingleState(4000, fQuark).getEndTime());
+        cache.querySingleState(5000, fQuark);
+        assertEquals(3, cache.getHits());
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        fStateSystem.closeHistory(5000L);
+        StateIntervalCache cache = new StateIntervalCache(fStateSystem);
+        for (long t = START_TIME + 10; t < 3000; t += 10) {
+            cache.querySingleState(t, fQuark);
+        }
+        long misses = cache.getMisses();
+        /* The recent intervals are kept, the oldest ones are evicted */
+        cache.querySingleState(2990, fQuark);
+        assertEquals(misses, cache.getMisses());
+        cache.querySingleState(START_TIME + 10, fQuark);
+        assertEquals(misses + 1, cache.getMisses());
+    }
+
+    @Test
+    public void testOngoing() throws Exception {
+        /* The ongoing interval can still change, it is not cached */
+        StateIntervalCache cache = new StateIntervalCache(fStateSystem);
+        long end = fStateSystem.getCurrentEndTime();
+        cache.querySingleState(end, fQuark);
+        cache.querySingleState(end, fQuark);
+        assertEquals(0, cache.getHits());
+
+        cache.querySingleState(1505, fQuark);
+        cache.querySingleState(1505, fQuark);
+        assertEquals(1, cache.getHits());
+    }
+}
@@ -12,6 +12,8 @@
 
 package org.eclipse.tracecompass.analysis.os.linux.ui.views.controlflow;
 
+import java.util.Collections;
+
 import org.eclipse.tracecompass.analysis.os.linux.core.kernelanalysis.Attributes;
 import org.eclipse.tracecompass.analysis.os.linux.core.kernelanalysis.KernelAnalysisModule;
 import org.eclipse.tracecompass.analysis.os.linux.core.kernelanalysis.StateValues;
@@ -97,15 +99,13 @@ public class ControlFlowCheckActiveProvider implements ITimeGraphEntryActiveProv
                         return true;
                     }
 
-                    /* Get the following state changes */
-                    long ts = currentInterval.getEndTime();
-                    while (ts != -1 && ts < endTS) {
-                        ts++; /* To "jump over" to the next state in the history */
-                        currentInterval = ssq.querySingleState(ts, statusQuark);
-                        if (isIntervalInStateActive(currentInterval)) {
-                            return true;
-                        }
-                        ts = currentInterval.getEndTime();
+                    /* Get the following state changes in one range query */
+                    if (currentInterval.getEndTime() < endTS) {
+                        boolean[] active = new boolean[1];
+                        ssq.queryRange(Collections.singleton(statusQuark), currentInterval.getEndTime() + 1, endTS, interval -> {
+                            active[0] |= isIntervalInStateActive(interval);
+                        });
+                        return active[0];
                     }
                 } catch (AttributeNotFoundException | StateSystemDisposedException e) {
                     /* Ignore ... */
@@ -15,6 +15,7 @@
 package org.eclipse.tracecompass.analysis.os.linux.ui.views.controlflow;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
@@ -225,6 +226,17 @@ public class ControlFlowView extends AbstractStateSystemTimeGraphView {
     // Internal
     // ------------------------------------------------------------------------
 
+    @Override
+    protected @Nullable Collection<@NonNull Integer> getRasterQuarks(ITmfStateSystem ss) {
+        List<@NonNull Integer> quarks = new ArrayList<>();
+        quarks.addAll(ss.getQuarks(Attributes.THREADS, "*", Attributes.EXEC_NAME)); //$NON-NLS-1$
+        quarks.addAll(ss.getQuarks(Attributes.THREADS, "*", Attributes.PPID)); //$NON-NLS-1$
+        quarks.addAll(ss.getQuarks(Attributes.THREADS, "*", Attributes.STATUS)); //$NON-NLS-1$
+        /* For the arrows */
+        quarks.addAll(ss.getQuarks(Attributes.CPUS, "*", Attributes.CURRENT_THREAD)); //$NON-NLS-1$
+        return quarks;
+    }
+
     @Override
     protected void buildEventList(final ITmfTrace trace, final ITmfTrace parentTrace, final IProgressMonitor monitor) {
         final ITmfStateSystem ssq = TmfStateSystemAnalysisModule.getStateSystem(trace, KernelAnalysisModule.ID);
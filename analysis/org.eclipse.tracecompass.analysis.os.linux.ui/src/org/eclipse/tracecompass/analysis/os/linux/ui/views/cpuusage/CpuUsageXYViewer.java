@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2015 École Polytechnique de Montréal
+ * Copyright (c) 2014, 2016 École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -12,11 +12,8 @@
 
 package org.eclipse.tracecompass.analysis.os.linux.ui.views.cpuusage;
 
-import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
-
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -118,50 +115,27 @@ public class CpuUsageXYViewer extends TmfCommonXLineChartViewer {
                 currentEnd = ss.getCurrentEndTime();
 
                 /* Initialize the data */
-                Map<String, Long> cpuUsageMap = fModule.getCpuUsageInRange(Collections.EMPTY_SET, Math.max(start, traceStart), Math.min(end, traceEnd));
-                Map<String, String> totalEntries = new HashMap<>();
                 fYValues.clear();
-                fYValues.put(Messages.CpuUsageXYViewer_Total, zeroFill(xvalues.length));
-                String stringSelectedThread = Long.toString(selectedThread);
+                double[] totalValues = zeroFill(xvalues.length);
+                fYValues.put(Messages.CpuUsageXYViewer_Total, totalValues);
+                double[] selectedValues = null;
                 if (selectedThread != -1) {
-                    fYValues.put(stringSelectedThread, zeroFill(xvalues.length));
+                    selectedValues = zeroFill(xvalues.length);
+                    fYValues.put(Long.toString(selectedThread), selectedValues);
                 }
 
-                for (Entry<String, Long> entry : cpuUsageMap.entrySet()) {
-                    /*
-                     * Process only entries representing the total of all CPUs
-                     * and that have time on CPU
-                     */
-                    if (entry.getValue() == 0) {
-                        continue;
-                    }
-                    if (!entry.getKey().startsWith(KernelCpuUsageAnalysis.TOTAL)) {
-                        continue;
-                    }
-                    String[] strings = entry.getKey().split(KernelCpuUsageAnalysis.SPLIT_STRING, 2);
-
-                    if ((strings.length > 1) && !(strings[1].equals(KernelCpuUsageAnalysis.TID_ZERO))) {
-                        /* This is the total cpu usage for a thread */
-                        totalEntries.put(strings[1], entry.getKey());
-                    }
-                }
-
-                double prevX = xvalues[0] - 1;
-                long prevTime = (long) prevX + offset;
                 /*
-                 * make sure that time is in the trace range after double to
-                 * long conversion
+                 * The range of each x value starts at the time of the previous
+                 * x value. Make sure that the times are in the trace range
+                 * after double to long conversion.
                  */
+                long[] starts = new long[xvalues.length];
+                long[] ends = new long[xvalues.length];
+                long prevTime = (long) (xvalues[0] - 1) + offset;
                 prevTime = Math.max(traceStart, prevTime);
                 prevTime = Math.min(traceEnd, prevTime);
-                /* Get CPU usage statistics for each x value */
                 for (int i = 0; i < xvalues.length; i++) {
-                    if (monitor.isCanceled()) {
-                        return;
-                    }
-                    long totalCpu = 0;
-                    double x = xvalues[i];
-                    long time = (long) x + offset;
+                    long time = (long) xvalues[i] + offset;
                     time = Math.max(traceStart, time);
                     time = Math.min(traceEnd, time);
                     if (time == prevTime) {
@@ -171,29 +145,35 @@ public class CpuUsageXYViewer extends TmfCommonXLineChartViewer {
                          */
                         prevTime = time - 1;
                     }
+                    starts[i] = prevTime;
+                    ends[i] = time;
+                    prevTime = time;
+                }
 
-                    cpuUsageMap = fModule.getCpuUsageInRange(Collections.EMPTY_SET, prevTime, time);
-
-                    /*
-                     * Calculate the sum of all total entries, and add a data
-                     * point to the selected one
-                     */
-                    for (Entry<String, String> entry : totalEntries.entrySet()) {
-                        Long cpuEntry = cpuUsageMap.get(entry.getValue());
-                        cpuEntry = cpuEntry != null ? cpuEntry : 0L;
-
-                        totalCpu += cpuEntry;
-
-                        if (entry.getKey().equals(stringSelectedThread)) {
-                            /* This is the total cpu usage for a thread */
-                            double[] key = checkNotNull(fYValues.get(entry.getKey()));
-                            key[i] = (double) cpuEntry / (double) (time - prevTime) * 100;
+                /* Get CPU usage statistics for all the x values at once */
+                Map<Integer, long[]> cpuUsage = fModule.getCpuUsageInRanges(Collections.EMPTY_SET, starts, ends, monitor);
+                if (monitor.isCanceled()) {
+                    return;
+                }
+                long[] totalCpu = new long[xvalues.length];
+                for (Entry<Integer, long[]> entry : cpuUsage.entrySet()) {
+                    int tid = entry.getKey();
+                    if (tid == 0) {
+                        /* The idle thread is not part of the total */
+                        continue;
+                    }
+                    long[] usage = entry.getValue();
+                    for (int i = 0; i < xvalues.length; i++) {
+                        totalCpu[i] += usage[i];
+                    }
+                    if (selectedValues != null && tid == selectedThread) {
+                        for (int i = 0; i < xvalues.length; i++) {
+                            selectedValues[i] = (double) usage[i] / (double) (ends[i] - starts[i]) * 100;
                         }
-
                     }
-                    double[] key = checkNotNull(fYValues.get(Messages.CpuUsageXYViewer_Total));
-                    key[i] = (double) totalCpu / (double) (time - prevTime) * 100;
-                    prevTime = time;
+                }
+                for (int i = 0; i < xvalues.length; i++) {
+                    totalValues[i] = (double) totalCpu[i] / (double) (ends[i] - starts[i]) * 100;
                 }
                 for (Entry<String, double[]> entry : fYValues.entrySet()) {
                     setSeries(entry.getKey(), entry.getValue());
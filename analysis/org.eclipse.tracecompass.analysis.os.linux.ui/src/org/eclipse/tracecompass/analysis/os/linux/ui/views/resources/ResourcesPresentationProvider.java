@@ -16,6 +16,7 @@ package org.eclipse.tracecompass.analysis.os.linux.ui.views.resources;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Color;
@@ -30,6 +31,7 @@ import org.eclipse.tracecompass.analysis.os.linux.core.trace.IKernelTrace;
 import org.eclipse.tracecompass.analysis.os.linux.ui.views.resources.ResourcesEntry.Type;
 import org.eclipse.tracecompass.internal.analysis.os.linux.ui.Activator;
 import org.eclipse.tracecompass.internal.analysis.os.linux.ui.Messages;
+import org.eclipse.tracecompass.internal.analysis.os.linux.ui.views.resources.StateIntervalCache;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
 import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
 import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
@@ -62,6 +64,7 @@ public class ResourcesPresentationProvider extends TimeGraphPresentationProvider
     private Color fColorWhite;
     private Color fColorGray;
     private Integer fAverageCharWidth;
+    private final Map<ITmfStateSystem, StateIntervalCache> fCaches = new WeakHashMap<>();
 
     private enum State {
         IDLE             (new RGB(200, 200, 200)),
@@ -87,6 +90,25 @@ public class ResourcesPresentationProvider extends TimeGraphPresentationProvider
         super();
     }
 
+    /**
+     * Get the interval cache of the kernel state system of a trace, shared by
+     * the tooltips and the drawing of this view
+     */
+    private StateIntervalCache getCache(ITmfTrace trace) {
+        ITmfStateSystem ss = TmfStateSystemAnalysisModule.getStateSystem(trace, KernelAnalysisModule.ID);
+        if (ss == null) {
+            return null;
+        }
+        synchronized (fCaches) {
+            StateIntervalCache cache = fCaches.get(ss);
+            if (cache == null) {
+                cache = new StateIntervalCache(ss);
+                fCaches.put(ss, cache);
+            }
+            return cache;
+        }
+    }
+
     private static State[] getStateValues() {
         return State.values();
     }
@@ -165,10 +187,11 @@ public class ResourcesPresentationProvider extends TimeGraphPresentationProvider
             ResourcesEntry entry = (ResourcesEntry) event.getEntry();
 
             if (tcEvent.hasValue()) {
-                ITmfStateSystem ss = TmfStateSystemAnalysisModule.getStateSystem(entry.getTrace(), KernelAnalysisModule.ID);
-                if (ss == null) {
+                StateIntervalCache cache = getCache(entry.getTrace());
+                if (cache == null) {
                     return retMap;
                 }
+                ITmfStateSystem ss = cache.getStateSystem();
                 // Check for IRQ or Soft_IRQ type
                 if (entry.getType().equals(Type.IRQ) || entry.getType().equals(Type.SOFT_IRQ)) {
 
@@ -188,16 +211,13 @@ public class ResourcesPresentationProvider extends TimeGraphPresentationProvider
                         int cpu = entry.getId();
 
                         try {
-                            List<ITmfStateInterval> fullState = ss.queryFullState(event.getTime());
                             List<Integer> irqQuarks = ss.getQuarks(Attributes.CPUS, Integer.toString(cpu), Attributes.IRQS, "*"); //$NON-NLS-1$
 
                             for (int irqQuark : irqQuarks) {
-                                if (fullState.get(irqQuark).getStateValue().unboxInt() == cpu) {
-                                    ITmfStateInterval value = ss.querySingleState(event.getTime(), irqQuark);
-                                    if (!value.getStateValue().isNull()) {
-                                        int irq = Integer.parseInt(ss.getAttributeName(irqQuark));
-                                        retMap.put(Messages.ResourcesView_attributeIrqName, String.valueOf(irq));
-                                    }
+                                ITmfStateInterval value = cache.querySingleState(event.getTime(), irqQuark);
+                                if (value.getStateValue().unboxInt() == cpu) {
+                                    int irq = Integer.parseInt(ss.getAttributeName(irqQuark));
+                                    retMap.put(Messages.ResourcesView_attributeIrqName, String.valueOf(irq));
                                     break;
                                 }
                             }
@@ -211,16 +231,13 @@ public class ResourcesPresentationProvider extends TimeGraphPresentationProvider
                         int cpu = entry.getId();
 
                         try {
-                            List<ITmfStateInterval> fullState = ss.queryFullState(event.getTime());
                             List<Integer> softIrqQuarks = ss.getQuarks(Attributes.CPUS, Integer.toString(cpu), Attributes.SOFT_IRQS, "*"); //$NON-NLS-1$
 
                             for (int softIrqQuark : softIrqQuarks) {
-                                if (fullState.get(softIrqQuark).getStateValue().unboxInt() == cpu) {
-                                    ITmfStateInterval value = ss.querySingleState(event.getTime(), softIrqQuark);
-                                    if (!value.getStateValue().isNull()) {
-                                        int softIrq = Integer.parseInt(ss.getAttributeName(softIrqQuark));
-                                        retMap.put(Messages.ResourcesView_attributeSoftIrqName, String.valueOf(softIrq));
-                                    }
+                                ITmfStateInterval value = cache.querySingleState(event.getTime(), softIrqQuark);
+                                if (value.getStateValue().unboxInt() == cpu) {
+                                    int softIrq = Integer.parseInt(ss.getAttributeName(softIrqQuark));
+                                    retMap.put(Messages.ResourcesView_attributeSoftIrqName, String.valueOf(softIrq));
                                     break;
                                 }
                             }
@@ -236,20 +253,20 @@ public class ResourcesPresentationProvider extends TimeGraphPresentationProvider
                             retMap.put(Messages.ResourcesView_attributeHoverTime, Utils.formatTime(hoverTime, TimeFormat.CALENDAR, Resolution.NANOSEC));
                             int cpuQuark = entry.getQuark();
                             int currentThreadQuark = ss.getQuarkRelative(cpuQuark, Attributes.CURRENT_THREAD);
-                            ITmfStateInterval interval = ss.querySingleState(hoverTime, currentThreadQuark);
+                            ITmfStateInterval interval = cache.querySingleState(hoverTime, currentThreadQuark);
                             if (!interval.getStateValue().isNull()) {
                                 ITmfStateValue value = interval.getStateValue();
                                 int currentThreadId = value.unboxInt();
                                 retMap.put(Messages.ResourcesView_attributeTidName, Integer.toString(currentThreadId));
                                 int execNameQuark = ss.getQuarkAbsolute(Attributes.THREADS, Integer.toString(currentThreadId), Attributes.EXEC_NAME);
-                                interval = ss.querySingleState(hoverTime, execNameQuark);
+                                interval = cache.querySingleState(hoverTime, execNameQuark);
                                 if (!interval.getStateValue().isNull()) {
                                     value = interval.getStateValue();
                                     retMap.put(Messages.ResourcesView_attributeProcessName, value.unboxStr());
                                 }
                                 if (status == StateValues.CPU_STATUS_RUN_SYSCALL) {
                                     int syscallQuark = ss.getQuarkAbsolute(Attributes.THREADS, Integer.toString(currentThreadId), Attributes.SYSTEM_CALL);
-                                    interval = ss.querySingleState(hoverTime, syscallQuark);
+                                    interval = cache.querySingleState(hoverTime, syscallQuark);
                                     if (!interval.getStateValue().isNull()) {
                                         value = interval.getStateValue();
                                         retMap.put(Messages.ResourcesView_attributeSyscallName, value.unboxStr());
@@ -304,16 +321,17 @@ public class ResourcesPresentationProvider extends TimeGraphPresentationProvider
             return;
         }
 
-        ITmfStateSystem ss = TmfStateSystemAnalysisModule.getStateSystem(entry.getTrace(), KernelAnalysisModule.ID);
-        if (ss == null) {
+        StateIntervalCache cache = getCache(entry.getTrace());
+        if (cache == null) {
             return;
         }
+        ITmfStateSystem ss = cache.getStateSystem();
         long time = event.getTime();
         try {
             while (time < event.getTime() + event.getDuration()) {
                 int cpuQuark = entry.getQuark();
                 int currentThreadQuark = ss.getQuarkRelative(cpuQuark, Attributes.CURRENT_THREAD);
-                ITmfStateInterval tidInterval = ss.querySingleState(time, currentThreadQuark);
+                ITmfStateInterval tidInterval = cache.querySingleState(time, currentThreadQuark);
                 long startTime = Math.max(tidInterval.getStartTime(), event.getTime());
                 int x = Math.max(drawingHelper.getXForTime(startTime), bounds.x);
                 if (x >= bounds.x + bounds.width) {
@@ -345,7 +363,7 @@ public class ResourcesPresentationProvider extends TimeGraphPresentationProvider
                             }
                             if (attribute != null) {
                                 int quark = ss.getQuarkAbsolute(Attributes.THREADS, Integer.toString(currentThreadId), attribute);
-                                ITmfStateInterval interval = ss.querySingleState(time, quark);
+                                ITmfStateInterval interval = cache.querySingleState(time, quark);
                                 if (!interval.getStateValue().isNull()) {
                                     value = interval.getStateValue();
                                     gc.setForeground(fColorWhite);
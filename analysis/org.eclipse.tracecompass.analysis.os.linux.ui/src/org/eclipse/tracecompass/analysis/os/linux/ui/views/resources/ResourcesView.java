@@ -14,6 +14,7 @@
 package org.eclipse.tracecompass.analysis.os.linux.ui.views.resources;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -123,6 +124,15 @@ public class ResourcesView extends AbstractStateSystemTimeGraphView {
         return Messages.ResourcesView_previousResourceActionToolTipText;
     }
 
+    @Override
+    protected @Nullable Collection<@NonNull Integer> getRasterQuarks(ITmfStateSystem ss) {
+        List<@NonNull Integer> quarks = new ArrayList<>();
+        quarks.addAll(ss.getQuarks(Attributes.CPUS, "*", Attributes.STATUS)); //$NON-NLS-1$
+        quarks.addAll(ss.getQuarks(Attributes.CPUS, "*", Attributes.IRQS, "*")); //$NON-NLS-1$ //$NON-NLS-2$
+        quarks.addAll(ss.getQuarks(Attributes.CPUS, "*", Attributes.SOFT_IRQS, "*")); //$NON-NLS-1$ //$NON-NLS-2$
+        return quarks;
+    }
+
     @Override
     protected void buildEventList(ITmfTrace trace, ITmfTrace parentTrace, final IProgressMonitor monitor) {
         final ITmfStateSystem ssq = TmfStateSystemAnalysisModule.getStateSystem(trace, KernelAnalysisModule.ID);
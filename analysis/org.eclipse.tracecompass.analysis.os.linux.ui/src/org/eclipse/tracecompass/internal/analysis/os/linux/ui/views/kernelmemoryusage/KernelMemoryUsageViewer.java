@@ -19,17 +19,20 @@ import java.text.ParsePosition;
 import java.util.List;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.tracecompass.analysis.os.linux.core.kernelmemoryusage.KernelMemoryAnalysisModule;
 import org.eclipse.tracecompass.internal.analysis.os.linux.ui.Activator;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.StateSystemUtils;
 import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
 import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
 import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
 import org.eclipse.tracecompass.tmf.core.statesystem.TmfStateSystemAnalysisModule;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.eclipse.tracecompass.tmf.core.trace.TmfTraceUtils;
+import org.eclipse.tracecompass.tmf.ui.viewers.xycharts.linecharts.StreamingLineSeries;
 import org.eclipse.tracecompass.tmf.ui.viewers.xycharts.linecharts.TmfCommonXLineChartViewer;
 import org.swtchart.Chart;
 
@@ -202,7 +205,12 @@ public class KernelMemoryUsageViewer extends TmfCommonXLineChartViewer {
             }
             setSeries(Messages.MemoryUsageViewer_Total, totalKernelMemoryValues);
             if (fSelectedThread != NOT_SELECTED) {
-                setSeries(fSelectedThread, selectedThreadValues);
+                StreamingLineSeries threadSeries = getThreadSeries(ss, xvalues, selectThreadValuesShift, monitor);
+                if (threadSeries != null) {
+                    setSeries(fSelectedThread, threadSeries);
+                } else {
+                    setSeries(fSelectedThread, selectedThreadValues);
+                }
             }
             updateDisplay();
 
@@ -211,6 +219,36 @@ public class KernelMemoryUsageViewer extends TmfCommonXLineChartViewer {
         }
     }
 
+    /**
+     * Get every memory change of the selected thread in the range of the X
+     * axis, instead of sampling it at the X values only. A thread can allocate
+     * and free memory many times in a pixel, the streaming series keeps the
+     * lowest and highest values of each pixel.
+     *
+     * @return The series, or null if it could not be queried
+     */
+    private @Nullable StreamingLineSeries getThreadSeries(ITmfStateSystem ss, double[] xvalues, double shift, IProgressMonitor monitor)
+            throws StateSystemDisposedException, AttributeNotFoundException {
+        int threadQuark = ss.optQuarkAbsolute(fSelectedThread);
+        int lastX = xvalues.length - 1;
+        long offset = getTimeOffset();
+        long start = Math.max((long) xvalues[0] + offset, ss.getStartTime());
+        long end = Math.min((long) xvalues[lastX] + offset, ss.getCurrentEndTime());
+        if (threadQuark == ITmfStateSystem.INVALID_ATTRIBUTE || start >= end) {
+            return null;
+        }
+        StreamingLineSeries series = new StreamingLineSeries(xvalues[0], xvalues[lastX], xvalues.length);
+        for (ITmfStateInterval interval : StateSystemUtils.queryHistoryRange(ss, threadQuark, start, end)) {
+            if (monitor.isCanceled()) {
+                return null;
+            }
+            double value = interval.getStateValue().unboxLong() + shift;
+            series.add(Math.max(interval.getStartTime(), start) - offset, value);
+            series.add(Math.min(interval.getEndTime(), end) - offset, value);
+        }
+        return series;
+    }
+
     /**
      * Set the selected thread ID, which will be graphed in this viewer
      *
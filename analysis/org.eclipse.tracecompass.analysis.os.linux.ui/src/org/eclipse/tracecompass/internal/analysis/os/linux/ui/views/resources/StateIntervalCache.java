@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.analysis.os.linux.ui.views.resources;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+
+/**
+ * Cache of the recently queried intervals of a state system, indexed by
+ * attribute and by time. A query at any time inside a cached interval is
+ * answered without reading the state history, so that hovering over the same
+ * state many times does not query the state system again.
+ *
+ * Only the intervals that can no longer change are cached: while the state
+ * system is being built, the interval that ends at its current end time can
+ * still be extended.
+ */
+public class StateIntervalCache {
+
+    /** Maximum number of attributes with cached intervals */
+    private static final int MAX_QUARKS = 1024;
+    /** Maximum number of cached intervals per attribute */
+    private static final int MAX_INTERVALS = 64;
+
+    private final ITmfStateSystem fStateSystem;
+    private final Map<Integer, TreeMap<Long, ITmfStateInterval>> fIntervals = new LinkedHashMap<Integer, TreeMap<Long, ITmfStateInterval>>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, TreeMap<Long, ITmfStateInterval>> eldest) {
+            return size() > MAX_QUARKS;
+        }
+    };
+    private long fHits = 0;
+    private long fMisses = 0;
+
+    /**
+     * Constructor
+     *
+     * @param ss
+     *            The state system
+     */
+    public StateIntervalCache(ITmfStateSystem ss) {
+        fStateSystem = ss;
+    }
+
+    /**
+     * @return The state system
+     */
+    public ITmfStateSystem getStateSystem() {
+        return fStateSystem;
+    }
+
+    /**
+     * Query the state of an attribute at a time, like
+     * {@link ITmfStateSystem#querySingleState(long, int)}
+     *
+     * @param t
+     *            The timestamp of the query
+     * @param quark
+     *            The attribute
+     * @return The interval of the attribute that contains the time
+     * @throws AttributeNotFoundException
+     *             If the attribute does not exist
+     * @throws StateSystemDisposedException
+     *             If the state system is disposed
+     */
+    public synchronized @NonNull ITmfStateInterval querySingleState(long t, int quark)
+            throws AttributeNotFoundException, StateSystemDisposedException {
+        TreeMap<Long, ITmfStateInterval> intervals = fIntervals.get(quark);
+        if (intervals != null) {
+            Map.Entry<Long, ITmfStateInterval> entry = intervals.floorEntry(t);
+            if (entry != null && entry.getValue().getEndTime() >= t) {
+                fHits++;
+                return entry.getValue();
+            }
+        }
+        fMisses++;
+        ITmfStateInterval interval = fStateSystem.querySingleState(t, quark);
+        if (interval.getEndTime() < fStateSystem.getCurrentEndTime() || fStateSystem.waitUntilBuilt(0)) {
+            if (intervals == null) {
+                intervals = new TreeMap<>();
+                fIntervals.put(quark, intervals);
+            }
+            intervals.put(interval.getStartTime(), interval);
+            if (intervals.size() > MAX_INTERVALS) {
+                /* Evict the interval farthest from the new one */
+                if (t - intervals.firstKey() > intervals.lastKey() - t) {
+                    intervals.pollFirstEntry();
+                } else {
+                    intervals.pollLastEntry();
+                }
+            }
+        }
+        return interval;
+    }
+
+    /**
+     * Discard all the cached intervals
+     */
+    public synchronized void clear() {
+        fIntervals.clear();
+    }
+
+    /**
+     * @return The number of queries answered from the cache
+     */
+    public synchronized long getHits() {
+        return fHits;
+    }
+
+    /**
+     * @return The number of queries sent to the state system
+     */
+    public synchronized long getMisses() {
+        return fMisses;
+    }
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.ctf.core.tests.temp.statistics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.testtraces.ctf.CtfTestTrace;
+import org.eclipse.tracecompass.tmf.core.exceptions.TmfAnalysisException;
+import org.eclipse.tracecompass.tmf.core.statistics.ITmfStatistics;
+import org.eclipse.tracecompass.tmf.core.statistics.TmfStateStatistics;
+import org.eclipse.tracecompass.tmf.core.statistics.TmfStatisticsModule;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.ctf.core.tests.shared.CtfTmfTestTraceUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+/**
+ * Unit tests for the statistics of a complete {@link TmfStatisticsModule},
+ * which also has the event counts precomputed while building the state
+ * systems. The results are compared to the exact counts of the state systems.
+ */
+@SuppressWarnings("javadoc")
+public class TmfStatisticsModuleTest {
+
+    /** Time-out tests after 60 seconds */
+    @Rule public TestRule globalTimeout = new Timeout(60, TimeUnit.SECONDS);
+
+    private static final @NonNull CtfTestTrace TEST_TRACE = CtfTestTrace.KERNEL;
+
+    /* Known values about the trace */
+    private static final long T_START = 1332170682440133097L;
+    private static final long T_END = 1332170692664579801L;
+
+    private ITmfTrace fTrace;
+    private TmfStatisticsModule fModule;
+
+    /** The statistics of the module */
+    private TmfStateStatistics fStatistics;
+
+    /** Statistics using the same state systems, without precomputed counts */
+    private TmfStateStatistics fExact;
+
+    @Before
+    public void setUp() {
+        fTrace = CtfTmfTestTraceUtils.getTrace(TEST_TRACE);
+        fModule = new TmfStatisticsModule();
+        try {
+            assertTrue(fModule.setTrace(fTrace));
+        } catch (TmfAnalysisException e) {
+            fail(e.getMessage());
+        }
+        fModule.schedule();
+        assertTrue(fModule.waitForCompletion());
+
+        ITmfStatistics stats = fModule.getStatistics();
+        assertTrue(stats instanceof TmfStateStatistics);
+        fStatistics = (TmfStateStatistics) stats;
+        ITmfStateSystem totalsSS = fStatistics.getTotalsSS();
+        ITmfStateSystem eventTypesSS = fStatistics.getEventTypesSS();
+        assertNotNull(totalsSS);
+        assertNotNull(eventTypesSS);
+        fExact = new TmfStateStatistics(totalsSS, eventTypesSS);
+    }
+
+    @After
+    public void tearDown() {
+        fModule.dispose();
+        fTrace.dispose();
+    }
+
+    /**
+     * The histogram queries of the module give the exact counts, whatever the
+     * bucket boundaries.
+     */
+    @Test
+    public void testHistogramQueryExact() {
+        long duration = T_END - T_START;
+        int[] nbs = { 1, 7, 10, 100, 1000 };
+        for (int nb : nbs) {
+            assertArrayEquals(fExact.histogramQueryArray(T_START, T_END, nb),
+                    fStatistics.histogramQueryArray(T_START, T_END, nb));
+            assertArrayEquals(fExact.histogramQueryArray(T_START + duration / 3, T_END - duration / 5, nb),
+                    fStatistics.histogramQueryArray(T_START + duration / 3, T_END - duration / 5, nb));
+        }
+
+        /* The buckets add up to the count of the range */
+        long[] counts = fStatistics.histogramQueryArray(T_START, T_END, 1000);
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        assertEquals(fStatistics.getEventsTotal(), total);
+    }
+
+    /**
+     * The approximate histogram queries are close to the exact counts.
+     */
+    @Test
+    public void testApproximateHistogramQuery() {
+        int nb = 100;
+        long[] exact = fExact.histogramQueryArray(T_START, T_END, nb);
+        long[] approximate = fStatistics.approximateHistogramQuery(T_START, T_END, nb);
+        assertNotNull(approximate);
+        assertEquals(nb, approximate.length);
+        assertCloseTo(exact, approximate);
+    }
+
+    /**
+     * There are no approximate counts finer than the precomputed ones, or
+     * without precomputed counts.
+     */
+    @Test
+    public void testApproximateHistogramQueryUnavailable() {
+        assertEquals(null, fStatistics.approximateHistogramQuery(T_START, T_START + 1000, 1000));
+        assertEquals(null, fExact.approximateHistogramQuery(T_START, T_END, 10));
+    }
+
+    /**
+     * Only the edges of the buckets are interpolated, so the total error is a
+     * small fraction of the number of events.
+     */
+    private static void assertCloseTo(long[] exact, long[] approximate) {
+        long total = 0;
+        long error = 0;
+        for (int i = 0; i < exact.length; i++) {
+            total += exact[i];
+            error += Math.abs(exact[i] - approximate[i]);
+        }
+        assertTrue("error " + error + " for " + total + " events", error <= total / 10);
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014 École Polytechnique de Montréal
+ * Copyright (c) 2014, 2016 École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -14,7 +14,10 @@ package org.eclipse.tracecompass.lttng2.kernel.core.tests.perf.event.matching;
 
 import static org.junit.Assert.assertNotNull;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.test.performance.Dimension;
@@ -23,14 +26,21 @@ import org.eclipse.test.performance.PerformanceMeter;
 import org.eclipse.tracecompass.internal.lttng2.kernel.core.event.matching.TcpEventMatching;
 import org.eclipse.tracecompass.internal.lttng2.kernel.core.event.matching.TcpLttngEventMatching;
 import org.eclipse.tracecompass.testtraces.ctf.CtfTestTrace;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.event.TmfEvent;
+import org.eclipse.tracecompass.tmf.core.event.matching.TmfEventDependency;
 import org.eclipse.tracecompass.tmf.core.event.matching.TmfEventMatching;
 import org.eclipse.tracecompass.tmf.core.synchronization.SynchronizationAlgorithm;
+import org.eclipse.tracecompass.tmf.core.synchronization.SynchronizationAlgorithmFactory;
 import org.eclipse.tracecompass.tmf.core.synchronization.SynchronizationManager;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfNanoTimestamp;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.eclipse.tracecompass.tmf.core.trace.experiment.TmfExperiment;
 import org.eclipse.tracecompass.tmf.ctf.core.event.CtfTmfEvent;
 import org.eclipse.tracecompass.tmf.ctf.core.tests.shared.CtfTmfTestTraceUtils;
 import org.eclipse.tracecompass.tmf.ctf.core.trace.CtfTmfTrace;
+import org.eclipse.tracecompass.tmf.tests.stubs.trace.TmfTraceStub;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -46,6 +56,9 @@ public class TraceSynchronizationBenchmark {
     private static final String MEMORY = " (memory usage)";
     private static final String TEST_SUMMARY = "Trace synchronization";
 
+    /* Number of hosts each host exchanges packets with, in the many hosts tests */
+    private static final int NB_PEERS = 4;
+
     /**
      * Initialize some data
      */
@@ -90,6 +103,87 @@ public class TraceSynchronizationBenchmark {
         trace3.dispose();
     }
 
+    /**
+     * Run the benchmark with packets exchanged between many hosts, without
+     * reading traces, to show how the convex hulls scale with the number of
+     * host pairs
+     */
+    @Test
+    public void testManyHosts() {
+        runManyHostsTest(16, 500000, 10);
+        runManyHostsTest(128, 500000, 10);
+    }
+
+    private static void runManyHostsTest(int nbHosts, int nbMatches, int loop_count) {
+        List<ITmfTrace> traces = new ArrayList<>();
+        for (int i = 0; i < nbHosts; i++) {
+            TmfTraceStub trace = new TmfTraceStub();
+            trace.init("host" + i);
+            traces.add(trace);
+        }
+        List<TmfEventDependency> matches = createMatches(traces, nbMatches);
+
+        String testName = nbHosts + " hosts";
+        Performance perf = Performance.getDefault();
+        PerformanceMeter pm = perf.createPerformanceMeter(TEST_ID + testName + TIME);
+        perf.tagAsSummary(pm, TEST_SUMMARY + ':' + testName + TIME, Dimension.CPU_TIME);
+
+        for (int i = 0; i < loop_count; i++) {
+            pm.start();
+            SynchronizationAlgorithm algo = SynchronizationAlgorithmFactory.getFullyIncrementalAlgorithm();
+            algo.init(traces);
+            for (TmfEventDependency match : matches) {
+                algo.addMatch(match);
+            }
+            algo.matchingEnded();
+            for (ITmfTrace trace : traces) {
+                assertNotNull(algo.getTimestampTransform(trace));
+            }
+            pm.stop();
+        }
+        pm.commit();
+
+        for (ITmfTrace trace : traces) {
+            trace.dispose();
+        }
+    }
+
+    /*
+     * Create the matches of packets sent between hosts whose clocks have
+     * different offsets and drifts. Each host exchanges packets with a few
+     * peers.
+     */
+    private static List<TmfEventDependency> createMatches(List<ITmfTrace> traces, int nbMatches) {
+        Random random = new Random(0);
+        int nbHosts = traces.size();
+        long[] offsets = new long[nbHosts];
+        double[] drifts = new double[nbHosts];
+        for (int i = 0; i < nbHosts; i++) {
+            offsets[i] = random.nextInt(1000000000);
+            drifts[i] = 1.0 + (random.nextDouble() - 0.5) * 1e-5;
+        }
+
+        List<TmfEventDependency> matches = new ArrayList<>(nbMatches);
+        long time = 0;
+        for (int i = 0; i < nbMatches; i++) {
+            time += 1 + random.nextInt(1000);
+            int sender = random.nextInt(nbHosts);
+            int receiver = (sender + 1 + random.nextInt(NB_PEERS)) % nbHosts;
+            if (random.nextBoolean()) {
+                int tmp = sender;
+                sender = receiver;
+                receiver = tmp;
+            }
+            long latency = 10000 + random.nextInt(50000);
+            long sendTime = (long) (time * drifts[sender]) + offsets[sender];
+            long receiveTime = (long) ((time + latency) * drifts[receiver]) + offsets[receiver];
+            ITmfEvent send = new TmfEvent(traces.get(sender), ITmfContext.UNKNOWN_RANK, new TmfNanoTimestamp(sendTime), null, null);
+            ITmfEvent receive = new TmfEvent(traces.get(receiver), ITmfContext.UNKNOWN_RANK, new TmfNanoTimestamp(receiveTime), null, null);
+            matches.add(new TmfEventDependency(send, receive));
+        }
+        return matches;
+    }
+
     private static void runCpuTest(@NonNull TmfExperiment experiment, String testName, int loop_count) {
         Performance perf = Performance.getDefault();
         PerformanceMeter pm = perf.createPerformanceMeter(TEST_ID + testName + TIME);
@@ -26,6 +26,12 @@ public class LttngKernelExecutionGraph extends TmfGraphBuilderModule {
      */
     public static final String ANALYSIS_ID = "org.eclipse.tracecompass.lttng2.kernel.core.execgraph"; //$NON-NLS-1$
 
+    /**
+     * Window of the graph kept in memory while it is built. The events only
+     * modify the recent vertices, so the older ones are spilled to disk.
+     */
+    private static final long MEMORY_WINDOW = 10_000_000_000L;
+
     @Override
     public boolean canExecute(ITmfTrace trace) {
         /**
@@ -44,6 +50,11 @@ public class LttngKernelExecutionGraph extends TmfGraphBuilderModule {
         return new LttngKernelExecGraphProvider(trace);
     }
 
+    @Override
+    protected long getMemoryWindow() {
+        return MEMORY_WINDOW;
+    }
+
     @Override
     protected String getFullHelpText() {
         return super.getFullHelpText();
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.lttng2.kernel.core.analysis.graph.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.eclipse.tracecompass.analysis.graph.core.base.IGraphWorker;
+import org.eclipse.tracecompass.analysis.graph.core.base.IGraphWorkerSerializer;
+import org.eclipse.tracecompass.analysis.os.linux.core.model.HostThread;
+
+/**
+ * Serializer of the {@link LttngWorker} of the execution graph. Only the
+ * identity of the worker is saved, its status is only used while the graph is
+ * built.
+ */
+public class LttngWorkerSerializer implements IGraphWorkerSerializer {
+
+    @Override
+    public void writeWorker(DataOutput out, IGraphWorker worker) throws IOException {
+        if (!(worker instanceof LttngWorker)) {
+            throw new IOException("Unsupported worker " + worker); //$NON-NLS-1$
+        }
+        LttngWorker lttngWorker = (LttngWorker) worker;
+        HostThread hostThread = lttngWorker.getHostThread();
+        out.writeUTF(hostThread.getHost());
+        out.writeInt(hostThread.getTid());
+        out.writeUTF(lttngWorker.getName());
+        out.writeLong(lttngWorker.getStart());
+    }
+
+    @Override
+    public IGraphWorker readWorker(DataInput in) throws IOException {
+        String host = in.readUTF();
+        int tid = in.readInt();
+        String name = in.readUTF();
+        long start = in.readLong();
+        return new LttngWorker(new HostThread(host, tid), name, start);
+    }
+}
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.lttng2.ust.core.tests.analysis.debuginfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.eclipse.tracecompass.internal.lttng2.ust.core.analysis.debuginfo.ElfSymbolizer;
+import org.eclipse.tracecompass.internal.lttng2.ust.core.analysis.debuginfo.FileOffsetMapper;
+import org.eclipse.tracecompass.tmf.core.event.lookup.TmfCallsite;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * Tests for the {@link ElfSymbolizer} and {@link FileOffsetMapper}, using a
+ * small ELF file with a symbol table and a DWARF 4 line table, and optionally
+ * inlined subroutine entries.
+ */
+@SuppressWarnings("javadoc")
+public class ElfSymbolizerTest {
+
+    private static final int SECTION_HEADER_SIZE = 64;
+
+    private File fFile;
+
+    @Before
+    public void setUp() throws IOException {
+        fFile = File.createTempFile("binary", ".so");
+        Files.write(fFile.toPath(), buildElf(false));
+    }
+
+    @After
+    public void tearDown() {
+        fFile.delete();
+    }
+
+    /**
+     * Build an ELF64 file with a "foo" function at 0x1000-0x1020, whose
+     * instructions come from lines 10 (0x1000-0x1010) and 12 (0x1010-0x1020)
+     * of "src/a.c". With inlined subroutines, the instructions at
+     * 0x1010-0x1018 and 0x1018-0x101c come from inlined functions.
+     */
+    private static byte[] buildElf(boolean inlined) {
+        byte[] shstrtab = "\0.shstrtab\0.symtab\0.strtab\0.debug_line\0.debug_info\0.debug_abbrev\0.debug_ranges\0".getBytes(StandardCharsets.UTF_8);
+        byte[] strtab = "\0foo\0".getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer symtab = ByteBuffer.allocate(48).order(ByteOrder.LITTLE_ENDIAN);
+        symtab.position(24);
+        /* st_name, st_info (global function), st_other, st_shndx */
+        symtab.putInt(1).put((byte) 0x12).put((byte) 0).putShort((short) 1);
+        symtab.putLong(0x1000).putLong(0x20);
+
+        ByteBuffer header = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        /* min_inst_length, max_ops, default_is_stmt, line_base, line_range, opcode_base */
+        header.put((byte) 1).put((byte) 1).put((byte) 1).put((byte) -5).put((byte) 14).put((byte) 13);
+        header.put(new byte[] { 0, 1, 1, 1, 1, 0, 0, 0, 1, 0, 0, 1 });
+        header.put("src\0\0a.c\0".getBytes(StandardCharsets.UTF_8)).put(new byte[] { 1, 0, 0, 0 });
+        header.flip();
+
+        ByteBuffer program = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        /* set_address 0x1000, advance_line 9, copy */
+        program.put(new byte[] { 0, 9, 2 }).putLong(0x1000).put(new byte[] { 3, 9, 1 });
+        /* advance_pc 16, advance_line 2, copy */
+        program.put(new byte[] { 2, 16, 3, 2, 1 });
+        /* advance_pc 16, end_sequence */
+        program.put(new byte[] { 2, 16, 0, 1, 1 });
+        program.flip();
+
+        ByteBuffer debugLine = ByteBuffer.allocate(10 + header.limit() + program.limit()).order(ByteOrder.LITTLE_ENDIAN);
+        debugLine.putInt(debugLine.capacity() - 4).putShort((short) 4).putInt(header.limit());
+        debugLine.put(header).put(program);
+
+        byte[][] sections = { shstrtab, symtab.array(), strtab, debugLine.array() };
+        int[] names = { 1, 11, 19, 27, 39, 51, 65 };
+        int[] types = { 3, 2, 3, 1, 1, 1, 1 };
+        if (inlined) {
+            ByteBuffer debugInfo = ByteBuffer.allocate(36).order(ByteOrder.LITTLE_ENDIAN);
+            /* unit_length, version, debug_abbrev_offset, address_size */
+            debugInfo.putInt(32).putShort((short) 4).putInt(0).put((byte) 8);
+            /* Compilation unit, with its low_pc */
+            debugInfo.put((byte) 1).putLong(0);
+            /* Inlined subroutine with low_pc and a high_pc offset */
+            debugInfo.put((byte) 2).putLong(0x1010).put((byte) 8);
+            /* Inlined subroutine with a range list, and the end of the children */
+            debugInfo.put((byte) 3).putInt(0).put((byte) 0);
+
+            /* compile_unit (low_pc addr), inlined_subroutine (low_pc addr, high_pc data1), inlined_subroutine (ranges sec_offset) */
+            byte[] debugAbbrev = { 1, 0x11, 1, 0x11, 1, 0, 0, 2, 0x1d, 0, 0x11, 1, 0x12, 0x0b, 0, 0, 3, 0x1d, 0, 0x55, 0x17, 0, 0, 0 };
+
+            ByteBuffer debugRanges = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+            debugRanges.putLong(0x1018).putLong(0x101c).putLong(0).putLong(0);
+
+            sections = new byte[][] { shstrtab, symtab.array(), strtab, debugLine.array(), debugInfo.array(), debugAbbrev, debugRanges.array() };
+        }
+        int dataSize = 0;
+        for (byte[] section : sections) {
+            dataSize += section.length;
+        }
+        int shoff = 64 + dataSize;
+        ByteBuffer elf = ByteBuffer.allocate(shoff + SECTION_HEADER_SIZE * (sections.length + 1)).order(ByteOrder.LITTLE_ENDIAN);
+        elf.putInt(0x464c457f).put((byte) 2).put((byte) 1).put((byte) 1);
+        elf.putLong(0x28, shoff);
+        elf.putShort(0x3a, (short) SECTION_HEADER_SIZE);
+        elf.putShort(0x3c, (short) (sections.length + 1));
+        elf.putShort(0x3e, (short) 1);
+
+        int offset = 64;
+        for (int i = 0; i < sections.length; i++) {
+            elf.position(offset);
+            elf.put(sections[i]);
+            int pos = shoff + SECTION_HEADER_SIZE * (i + 1);
+            elf.putInt(pos, names[i]);
+            elf.putInt(pos + 4, types[i]);
+            elf.putLong(pos + 0x18, offset);
+            elf.putLong(pos + 0x20, sections[i].length);
+            offset += sections[i].length;
+        }
+        return elf.array();
+    }
+
+    @Test
+    public void testSymbols() throws IOException {
+        ElfSymbolizer symbolizer = ElfSymbolizer.load(fFile);
+        assertEquals("foo", symbolizer.getFunctionName(0x1000));
+        assertEquals("foo", symbolizer.getFunctionName(0x101f));
+        assertNull(symbolizer.getFunctionName(0xfff));
+        assertNull(symbolizer.getFunctionName(0x1020));
+    }
+
+    @Test
+    public void testLines() throws IOException {
+        ElfSymbolizer symbolizer = ElfSymbolizer.load(fFile);
+        assertTrue(symbolizer.hasLineInfo());
+        assertEquals(new TmfCallsite("src/a.c", null, 10), symbolizer.getCallsite(0x1000));
+        assertEquals(new TmfCallsite("src/a.c", null, 10), symbolizer.getCallsite(0x100f));
+        assertEquals(new TmfCallsite("src/a.c", null, 12), symbolizer.getCallsite(0x1010));
+        assertNull(symbolizer.getCallsite(0xfff));
+        /* After the end of the sequence */
+        assertNull(symbolizer.getCallsite(0x1020));
+    }
+
+    @Test
+    public void testNotInlined() throws IOException {
+        ElfSymbolizer symbolizer = ElfSymbolizer.load(fFile);
+        assertFalse(symbolizer.isInlined(0x1000));
+        assertFalse(symbolizer.isInlined(0x1010));
+    }
+
+    @Test
+    public void testInlined() throws IOException {
+        Files.write(fFile.toPath(), buildElf(true));
+        ElfSymbolizer symbolizer = ElfSymbolizer.load(fFile);
+        assertFalse(symbolizer.isInlined(0x100f));
+        assertTrue(symbolizer.isInlined(0x1010));
+        assertTrue(symbolizer.isInlined(0x101b));
+        assertFalse(symbolizer.isInlined(0x101c));
+
+        /* The line table still gives the innermost location */
+        assertEquals(new TmfCallsite("src/a.c", null, 12), symbolizer.getCallsite(0x1010));
+    }
+
+    @Test
+    public void testInvalidFile() throws IOException {
+        Files.write(fFile.toPath(), "not an ELF file".getBytes(StandardCharsets.UTF_8));
+        try {
+            ElfSymbolizer.load(fFile);
+            fail();
+        } catch (IOException e) {
+            /* Expected */
+        }
+    }
+
+    @Test
+    public void testFileOffsetMapper() {
+        /* The callsites have the name of the function containing the offset */
+        Iterable<TmfCallsite> callsites = FileOffsetMapper.getCallsiteFromOffset(fFile, 0x1010);
+        assertNotNull(callsites);
+        assertEquals(new TmfCallsite("src/a.c", "foo", 12), Iterables.getOnlyElement(callsites));
+
+        callsites = FileOffsetMapper.getCallsiteFromOffset(fFile, 0x1000);
+        assertNotNull(callsites);
+        assertEquals(new TmfCallsite("src/a.c", "foo", 10), Iterables.getOnlyElement(callsites));
+
+        callsites = FileOffsetMapper.getCallsiteFromOffset(fFile, 0x2000);
+        assertNotNull(callsites);
+        assertTrue(Iterables.isEmpty(callsites));
+
+        assertNull(FileOffsetMapper.getCallsiteFromOffset(new File(fFile.getPath() + ".missing"), 0x1000));
+    }
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.lttng2.ust.core.tests.analysis.debuginfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.eclipse.tracecompass.internal.lttng2.ust.core.analysis.debuginfo.UstDebugInfoLoadedBinaryFile;
+import org.eclipse.tracecompass.internal.lttng2.ust.core.analysis.debuginfo.UstDebugInfoMappingIndex;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
+import org.eclipse.tracecompass.statesystem.core.StateSystemFactory;
+import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
+import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link UstDebugInfoMappingIndex}, built from a state system
+ * with the layout of the debug info analysis.
+ */
+@SuppressWarnings("javadoc")
+public class UstDebugInfoMappingIndexTest {
+
+    private static final String LIB_A = "/usr/lib/liba.so";
+    private static final String LIB_B = "/usr/lib/libb.so";
+    private static final String LIB_C = "/usr/lib/libc.so";
+
+    private UstDebugInfoMappingIndex fIndex;
+
+    @Before
+    public void setUp() throws AttributeNotFoundException, StateSystemDisposedException {
+        ITmfStateSystemBuilder ss = StateSystemFactory.newStateSystem(StateHistoryBackendFactory.createInMemoryBackend("test", 0));
+
+        /* liba is loaded at 0x1000 from 10 to 50, its build ID comes at 11 */
+        int baddrA = ss.getQuarkAbsoluteAndAdd("1000", "4096");
+        ss.modifyAttribute(10, TmfStateValue.newValueLong(0x5000), baddrA);
+        ss.modifyAttribute(11, TmfStateValue.newValueString(LIB_A), ss.getQuarkRelativeAndAdd(baddrA, "aaaa"));
+        ss.removeAttribute(50, baddrA);
+
+        /* libb is loaded at 0x3000 from 60, inside the old range of liba */
+        int baddrB = ss.getQuarkAbsoluteAndAdd("1000", "12288");
+        ss.modifyAttribute(60, TmfStateValue.newValueLong(0x4000), baddrB);
+        ss.modifyAttribute(60, TmfStateValue.newValueString(LIB_B), ss.getQuarkRelativeAndAdd(baddrB, "bbbb"));
+
+        /* libc is loaded at 0x1000 from 70, replacing liba */
+        ss.modifyAttribute(70, TmfStateValue.newValueLong(0x2000), baddrA);
+        ss.modifyAttribute(70, TmfStateValue.newValueString(LIB_C), ss.getQuarkRelativeAndAdd(baddrA, "cccc"));
+
+        /* Another process has liba at the same address */
+        int baddrA2 = ss.getQuarkAbsoluteAndAdd("2000", "4096");
+        ss.modifyAttribute(0, TmfStateValue.newValueLong(0x5000), baddrA2);
+        ss.modifyAttribute(0, TmfStateValue.newValueString(LIB_A), ss.getQuarkRelativeAndAdd(baddrA2, "aaaa"));
+
+        ss.closeHistory(100);
+        fIndex = UstDebugInfoMappingIndex.create(ss);
+    }
+
+    private void assertFile(String filePath, String buildId, long baseAddress, long ts, long vpid, long ip) {
+        UstDebugInfoLoadedBinaryFile file = fIndex.getMatchingFile(ts, vpid, ip);
+        assertNotNull(file);
+        assertEquals(filePath, file.getFilePath());
+        assertEquals(buildId, file.getBuildId());
+        assertEquals(baseAddress, file.getBaseAddress());
+    }
+
+    @Test
+    public void testMatchingFile() {
+        assertFile(LIB_A, "aaaa", 0x1000, 11, 1000, 0x1000);
+        assertFile(LIB_A, "aaaa", 0x1000, 49, 1000, 0x4fff);
+        assertFile(LIB_B, "bbbb", 0x3000, 60, 1000, 0x3500);
+        assertFile(LIB_C, "cccc", 0x1000, 100, 1000, 0x1500);
+        assertFile(LIB_A, "aaaa", 0x1000, 80, 2000, 0x3500);
+    }
+
+    @Test
+    public void testAddressAboveMapping() {
+        /* 0x3500 was part of liba, above the unmapped libb */
+        assertFile(LIB_A, "aaaa", 0x1000, 20, 1000, 0x3500);
+        assertNull(fIndex.getMatchingFile(80, 1000, 0x4500));
+        assertNull(fIndex.getMatchingFile(80, 1000, 0x2500));
+    }
+
+    @Test
+    public void testNoMapping() {
+        /* Build ID not known yet */
+        assertNull(fIndex.getMatchingFile(10, 1000, 0x1500));
+        /* Unloaded */
+        assertNull(fIndex.getMatchingFile(55, 1000, 0x1500));
+        /* Below all mappings */
+        assertNull(fIndex.getMatchingFile(20, 1000, 0x500));
+        /* Unknown process */
+        assertNull(fIndex.getMatchingFile(20, 3000, 0x1500));
+    }
+}
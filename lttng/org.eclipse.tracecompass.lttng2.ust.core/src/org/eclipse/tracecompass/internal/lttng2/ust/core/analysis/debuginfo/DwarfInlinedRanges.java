@@ -0,0 +1,464 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.lttng2.ust.core.analysis.debuginfo;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Address ranges of the inlined function instances of a binary, decoded from
+ * the DW_TAG_inlined_subroutine entries of the DWARF (versions 2 to 5)
+ * ".debug_info" section.
+ *
+ * The line table only gives the innermost source location of an address. The
+ * locations of the calls that were inlined are only found in these entries,
+ * so the addresses in these ranges need another way to be resolved.
+ *
+ * The ranges are merged and kept in sorted arrays. If some ranges could not be
+ * decoded, for example because they are in a separate debug file, the ranges
+ * are incomplete and any address should be considered possibly inlined.
+ */
+public final class DwarfInlinedRanges {
+
+    /* Tags */
+    private static final int DW_TAG_COMPILE_UNIT = 0x11;
+    private static final int DW_TAG_INLINED_SUBROUTINE = 0x1d;
+    private static final int DW_TAG_PARTIAL_UNIT = 0x3c;
+
+    /* Attributes */
+    private static final int DW_AT_LOW_PC = 0x11;
+    private static final int DW_AT_HIGH_PC = 0x12;
+    private static final int DW_AT_RANGES = 0x55;
+
+    /* Attribute forms */
+    private static final int DW_FORM_ADDR = 0x01;
+    private static final int DW_FORM_DATA2 = 0x05;
+    private static final int DW_FORM_DATA4 = 0x06;
+    private static final int DW_FORM_DATA8 = 0x07;
+    private static final int DW_FORM_DATA1 = 0x0b;
+    private static final int DW_FORM_UDATA = 0x0f;
+    private static final int DW_FORM_SEC_OFFSET = 0x17;
+    private static final int DW_FORM_IMPLICIT_CONST = 0x21;
+
+    /* Unit types of DWARF 5 */
+    private static final int DW_UT_COMPILE = 1;
+    private static final int DW_UT_TYPE = 2;
+    private static final int DW_UT_PARTIAL = 3;
+    private static final int DW_UT_SPLIT_TYPE = 6;
+
+    /* Range list entries of DWARF 5 */
+    private static final int DW_RLE_END_OF_LIST = 0;
+    private static final int DW_RLE_BASE_ADDRESSX = 1;
+    private static final int DW_RLE_STARTX_ENDX = 2;
+    private static final int DW_RLE_STARTX_LENGTH = 3;
+    private static final int DW_RLE_OFFSET_PAIR = 4;
+    private static final int DW_RLE_BASE_ADDRESS = 5;
+    private static final int DW_RLE_START_END = 6;
+    private static final int DW_RLE_START_LENGTH = 7;
+
+    private final long[] fStarts;
+    private final long[] fEnds;
+    private final boolean fComplete;
+
+    private DwarfInlinedRanges(long[] starts, long[] ends, boolean complete) {
+        fStarts = starts;
+        fEnds = ends;
+        fComplete = complete;
+    }
+
+    /**
+     * Check if an address may be part of an inlined function instance
+     *
+     * @param address
+     *            The address, as seen in the binary
+     * @return True if the address is in an inlined function instance, or if
+     *         the ranges are incomplete
+     */
+    public boolean isInlined(long address) {
+        if (!fComplete) {
+            return true;
+        }
+        int index = Arrays.binarySearch(fStarts, address);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return (index >= 0 && address < fEnds[index]);
+    }
+
+    /**
+     * Get whether all the inlined ranges of the binary could be decoded
+     *
+     * @return If the ranges are complete
+     */
+    public boolean isComplete() {
+        return fComplete;
+    }
+
+    // ------------------------------------------------------------------------
+    // Parsing
+    // ------------------------------------------------------------------------
+
+    /** The attributes of an abbreviation, and their forms */
+    private static class Abbreviation {
+        private final int fTag;
+        private final int[] fAttributes;
+        private final int[] fForms;
+        private final long[] fImplicitConsts;
+
+        public Abbreviation(int tag, int[] attributes, int[] forms, long[] implicitConsts) {
+            fTag = tag;
+            fAttributes = attributes;
+            fForms = forms;
+            fImplicitConsts = implicitConsts;
+        }
+    }
+
+    /**
+     * Decode the ranges of the inlined subroutine entries of the
+     * ".debug_info" section of an ELF file.
+     *
+     * @param elf
+     *            The ELF file
+     * @return The inlined ranges, or null if the file has no ".debug_info"
+     *         section
+     * @throws IOException
+     *             If the debug sections cannot be read
+     */
+    public static @Nullable DwarfInlinedRanges read(ElfFile elf) throws IOException {
+        ByteBuffer debugInfo = elf.getSection(".debug_info"); //$NON-NLS-1$
+        ByteBuffer debugAbbrev = elf.getSection(".debug_abbrev"); //$NON-NLS-1$
+        if (debugInfo == null || debugAbbrev == null) {
+            return null;
+        }
+        Reader reader = new Reader(debugAbbrev, elf.getSection(".debug_ranges"), elf.getSection(".debug_rnglists")); //$NON-NLS-1$ //$NON-NLS-2$
+        ByteBuffer buffer = debugInfo.duplicate().order(debugInfo.order());
+        while (buffer.remaining() > 4) {
+            long length = Integer.toUnsignedLong(buffer.getInt());
+            boolean dwarf64 = (length == 0xffffffffL);
+            if (dwarf64) {
+                length = buffer.getLong();
+            }
+            if (length <= 0 || length > buffer.remaining()) {
+                reader.fComplete = false;
+                break;
+            }
+            int end = buffer.position() + (int) length;
+            ByteBuffer unit = buffer.duplicate().order(buffer.order());
+            unit.limit(end);
+            try {
+                reader.readUnit(unit, dwarf64);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                /* Invalid or unsupported unit */
+                reader.fComplete = false;
+            }
+            buffer.position(end);
+        }
+        return reader.build();
+    }
+
+    private static class Reader {
+
+        private final ByteBuffer fAbbrev;
+        private final @Nullable ByteBuffer fRanges;
+        private final @Nullable ByteBuffer fRngLists;
+        private final Map<Long, Map<Long, Abbreviation>> fAbbreviationTables = new HashMap<>();
+
+        private long[] fStarts = new long[64];
+        private long[] fEnds = new long[64];
+        private int fSize = 0;
+        private boolean fComplete = true;
+
+        public Reader(ByteBuffer abbrev, @Nullable ByteBuffer ranges, @Nullable ByteBuffer rngLists) {
+            fAbbrev = abbrev;
+            fRanges = ranges;
+            fRngLists = rngLists;
+        }
+
+        public void readUnit(ByteBuffer unit, boolean dwarf64) {
+            int version = Short.toUnsignedInt(unit.getShort());
+            long abbrevOffset;
+            int addressSize;
+            if (version >= 5) {
+                int unitType = Byte.toUnsignedInt(unit.get());
+                if (unitType != DW_UT_COMPILE && unitType != DW_UT_PARTIAL) {
+                    /*
+                     * Type units have no code, the code of skeleton units is
+                     * described in a separate file
+                     */
+                    if (unitType != DW_UT_TYPE && unitType != DW_UT_SPLIT_TYPE) {
+                        fComplete = false;
+                    }
+                    return;
+                }
+                addressSize = Byte.toUnsignedInt(unit.get());
+                abbrevOffset = dwarf64 ? unit.getLong() : Integer.toUnsignedLong(unit.getInt());
+            } else if (version >= 2) {
+                abbrevOffset = dwarf64 ? unit.getLong() : Integer.toUnsignedLong(unit.getInt());
+                addressSize = Byte.toUnsignedInt(unit.get());
+            } else {
+                throw new IllegalArgumentException("Unsupported DWARF version " + version); //$NON-NLS-1$
+            }
+            Map<Long, Abbreviation> abbreviations = getAbbreviations(abbrevOffset);
+
+            long baseAddress = 0;
+            while (unit.hasRemaining()) {
+                long code = DwarfLineTable.readUleb(unit);
+                if (code == 0) {
+                    /* End of the children of an entry */
+                    continue;
+                }
+                Abbreviation abbreviation = abbreviations.get(code);
+                if (abbreviation == null) {
+                    throw new IllegalArgumentException("Unknown abbreviation " + code); //$NON-NLS-1$
+                }
+                boolean isUnit = (abbreviation.fTag == DW_TAG_COMPILE_UNIT || abbreviation.fTag == DW_TAG_PARTIAL_UNIT);
+                boolean isInlined = (abbreviation.fTag == DW_TAG_INLINED_SUBROUTINE);
+                long lowPc = -1;
+                long highPc = -1;
+                boolean highPcIsOffset = false;
+                long ranges = -1;
+                for (int i = 0; i < abbreviation.fAttributes.length; i++) {
+                    int attribute = abbreviation.fAttributes[i];
+                    int form = abbreviation.fForms[i];
+                    if (!(isUnit || isInlined)) {
+                        skip(unit, form, dwarf64, version, addressSize);
+                    } else if (attribute == DW_AT_LOW_PC && form == DW_FORM_ADDR) {
+                        lowPc = readAddress(unit, addressSize);
+                    } else if (attribute == DW_AT_HIGH_PC && form == DW_FORM_ADDR) {
+                        highPc = readAddress(unit, addressSize);
+                    } else if (attribute == DW_AT_HIGH_PC && isConstantForm(form)) {
+                        highPc = (form == DW_FORM_IMPLICIT_CONST ? abbreviation.fImplicitConsts[i] : readConstant(unit, form));
+                        highPcIsOffset = true;
+                    } else if (attribute == DW_AT_RANGES && (form == DW_FORM_SEC_OFFSET || form == DW_FORM_DATA4 || form == DW_FORM_DATA8)) {
+                        ranges = (form == DW_FORM_DATA8 || (form == DW_FORM_SEC_OFFSET && dwarf64)) ? unit.getLong() : Integer.toUnsignedLong(unit.getInt());
+                    } else {
+                        if (isInlined && (attribute == DW_AT_LOW_PC || attribute == DW_AT_HIGH_PC || attribute == DW_AT_RANGES)) {
+                            /* For example an index in the address table */
+                            fComplete = false;
+                        }
+                        skip(unit, form, dwarf64, version, addressSize);
+                    }
+                }
+                if (isUnit && lowPc >= 0) {
+                    baseAddress = lowPc;
+                }
+                if (isInlined) {
+                    if (ranges >= 0) {
+                        if (version >= 5) {
+                            readRngList(ranges, baseAddress, addressSize);
+                        } else {
+                            readRanges(ranges, baseAddress, addressSize);
+                        }
+                    } else if (lowPc >= 0 && highPc >= 0) {
+                        add(lowPc, highPcIsOffset ? lowPc + highPc : highPc);
+                    }
+                }
+            }
+        }
+
+        private void skip(ByteBuffer unit, int form, boolean dwarf64, int version, int addressSize) {
+            if (form != DW_FORM_IMPLICIT_CONST) {
+                DwarfLineTable.skipForm(unit, form, dwarf64, version, addressSize);
+            }
+        }
+
+        private Map<Long, Abbreviation> getAbbreviations(long offset) {
+            Map<Long, Abbreviation> abbreviations = fAbbreviationTables.get(offset);
+            if (abbreviations != null) {
+                return abbreviations;
+            }
+            abbreviations = new HashMap<>();
+            ByteBuffer abbrev = fAbbrev.duplicate().order(fAbbrev.order());
+            abbrev.position((int) offset);
+            while (true) {
+                long code = DwarfLineTable.readUleb(abbrev);
+                if (code == 0) {
+                    break;
+                }
+                int tag = (int) DwarfLineTable.readUleb(abbrev);
+                /* Children flag */
+                abbrev.get();
+                int[] attributes = new int[8];
+                int[] forms = new int[8];
+                long[] implicitConsts = new long[8];
+                int nb = 0;
+                while (true) {
+                    int attribute = (int) DwarfLineTable.readUleb(abbrev);
+                    int form = (int) DwarfLineTable.readUleb(abbrev);
+                    if (attribute == 0 && form == 0) {
+                        break;
+                    }
+                    if (nb == attributes.length) {
+                        attributes = Arrays.copyOf(attributes, nb * 2);
+                        forms = Arrays.copyOf(forms, nb * 2);
+                        implicitConsts = Arrays.copyOf(implicitConsts, nb * 2);
+                    }
+                    attributes[nb] = attribute;
+                    forms[nb] = form;
+                    if (form == DW_FORM_IMPLICIT_CONST) {
+                        implicitConsts[nb] = DwarfLineTable.readSleb(abbrev);
+                    }
+                    nb++;
+                }
+                abbreviations.put(code, new Abbreviation(tag, Arrays.copyOf(attributes, nb), Arrays.copyOf(forms, nb), Arrays.copyOf(implicitConsts, nb)));
+            }
+            fAbbreviationTables.put(offset, abbreviations);
+            return abbreviations;
+        }
+
+        /**
+         * Read a range list of ".debug_ranges", before DWARF 5
+         */
+        private void readRanges(long offset, long unitBaseAddress, int addressSize) {
+            ByteBuffer section = fRanges;
+            if (section == null) {
+                fComplete = false;
+                return;
+            }
+            ByteBuffer ranges = section.duplicate().order(section.order());
+            ranges.position((int) offset);
+            long maxAddress = (addressSize == 8 ? -1L : 0xffffffffL);
+            long baseAddress = unitBaseAddress;
+            while (true) {
+                long start = readAddress(ranges, addressSize);
+                long end = readAddress(ranges, addressSize);
+                if (start == 0 && end == 0) {
+                    return;
+                }
+                if (start == maxAddress) {
+                    baseAddress = end;
+                } else {
+                    add(baseAddress + start, baseAddress + end);
+                }
+            }
+        }
+
+        /**
+         * Read a range list of ".debug_rnglists", from DWARF 5
+         */
+        private void readRngList(long offset, long unitBaseAddress, int addressSize) {
+            ByteBuffer section = fRngLists;
+            if (section == null) {
+                fComplete = false;
+                return;
+            }
+            ByteBuffer ranges = section.duplicate().order(section.order());
+            ranges.position((int) offset);
+            long baseAddress = unitBaseAddress;
+            while (true) {
+                int kind = Byte.toUnsignedInt(ranges.get());
+                switch (kind) {
+                case DW_RLE_END_OF_LIST:
+                    return;
+                case DW_RLE_BASE_ADDRESSX:
+                    /* The entries using the address table are not supported */
+                    DwarfLineTable.readUleb(ranges);
+                    fComplete = false;
+                    break;
+                case DW_RLE_STARTX_ENDX:
+                case DW_RLE_STARTX_LENGTH:
+                    DwarfLineTable.readUleb(ranges);
+                    DwarfLineTable.readUleb(ranges);
+                    fComplete = false;
+                    break;
+                case DW_RLE_OFFSET_PAIR: {
+                    long start = DwarfLineTable.readUleb(ranges);
+                    long end = DwarfLineTable.readUleb(ranges);
+                    add(baseAddress + start, baseAddress + end);
+                    break;
+                }
+                case DW_RLE_BASE_ADDRESS:
+                    baseAddress = readAddress(ranges, addressSize);
+                    break;
+                case DW_RLE_START_END: {
+                    long start = readAddress(ranges, addressSize);
+                    add(start, readAddress(ranges, addressSize));
+                    break;
+                }
+                case DW_RLE_START_LENGTH: {
+                    long start = readAddress(ranges, addressSize);
+                    add(start, start + DwarfLineTable.readUleb(ranges));
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Invalid range list entry " + kind); //$NON-NLS-1$
+                }
+            }
+        }
+
+        private void add(long start, long end) {
+            if (end <= start) {
+                return;
+            }
+            if (fSize == fStarts.length) {
+                fStarts = Arrays.copyOf(fStarts, fSize * 2);
+                fEnds = Arrays.copyOf(fEnds, fSize * 2);
+            }
+            fStarts[fSize] = start;
+            fEnds[fSize] = end;
+            fSize++;
+        }
+
+        public DwarfInlinedRanges build() {
+            /* Sort the ranges by start address, then merge the overlapping ones */
+            Integer[] order = new Integer[fSize];
+            for (int i = 0; i < fSize; i++) {
+                order[i] = i;
+            }
+            final long[] starts = fStarts;
+            Arrays.sort(order, (a, b) -> Long.compare(starts[a], starts[b]));
+            long[] mergedStarts = new long[fSize];
+            long[] mergedEnds = new long[fSize];
+            int nb = 0;
+            for (int i = 0; i < fSize; i++) {
+                long start = fStarts[order[i]];
+                long end = fEnds[order[i]];
+                if (nb > 0 && start <= mergedEnds[nb - 1]) {
+                    mergedEnds[nb - 1] = Math.max(mergedEnds[nb - 1], end);
+                } else {
+                    mergedStarts[nb] = start;
+                    mergedEnds[nb] = end;
+                    nb++;
+                }
+            }
+            return new DwarfInlinedRanges(Arrays.copyOf(mergedStarts, nb), Arrays.copyOf(mergedEnds, nb), fComplete);
+        }
+    }
+
+    private static long readAddress(ByteBuffer buffer, int addressSize) {
+        return (addressSize == 8 ? buffer.getLong() : Integer.toUnsignedLong(buffer.getInt()));
+    }
+
+    private static boolean isConstantForm(int form) {
+        return (form == DW_FORM_DATA1 || form == DW_FORM_DATA2 || form == DW_FORM_DATA4 ||
+                form == DW_FORM_DATA8 || form == DW_FORM_UDATA || form == DW_FORM_IMPLICIT_CONST);
+    }
+
+    private static long readConstant(ByteBuffer buffer, int form) {
+        switch (form) {
+        case DW_FORM_DATA1:
+            return Byte.toUnsignedLong(buffer.get());
+        case DW_FORM_DATA2:
+            return Short.toUnsignedLong(buffer.getShort());
+        case DW_FORM_DATA4:
+            return Integer.toUnsignedLong(buffer.getInt());
+        case DW_FORM_DATA8:
+            return buffer.getLong();
+        default:
+            return DwarfLineTable.readUleb(buffer);
+        }
+    }
+}
@@ -0,0 +1,743 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.lttng2.ust.core.analysis.debuginfo;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Line number information of a binary, decoded from the DWARF (versions 2 to
+ * 5) ".debug_line" section.
+ *
+ * The rows of all the line number programs are kept in arrays sorted by
+ * address. The end of each sequence is kept as a row without file, so that
+ * addresses between sequences are not attributed to the preceding line.
+ */
+public final class DwarfLineTable {
+
+    private static final int NO_FILE = -1;
+
+    /* Standard opcodes */
+    private static final int DW_LNS_COPY = 1;
+    private static final int DW_LNS_ADVANCE_PC = 2;
+    private static final int DW_LNS_ADVANCE_LINE = 3;
+    private static final int DW_LNS_SET_FILE = 4;
+    private static final int DW_LNS_CONST_ADD_PC = 8;
+    private static final int DW_LNS_FIXED_ADVANCE_PC = 9;
+
+    /* Extended opcodes */
+    private static final int DW_LNE_END_SEQUENCE = 1;
+    private static final int DW_LNE_SET_ADDRESS = 2;
+    private static final int DW_LNE_DEFINE_FILE = 3;
+
+    /* Entry formats of DWARF 5 line table headers */
+    private static final int DW_LNCT_PATH = 1;
+    private static final int DW_LNCT_DIRECTORY_INDEX = 2;
+
+    /* Attributes of compilation units */
+    private static final int DW_AT_STMT_LIST = 0x10;
+    private static final int DW_AT_COMP_DIR = 0x1b;
+
+    /* Attribute forms */
+    private static final int DW_FORM_ADDR = 0x01;
+    private static final int DW_FORM_BLOCK2 = 0x03;
+    private static final int DW_FORM_BLOCK4 = 0x04;
+    private static final int DW_FORM_DATA2 = 0x05;
+    private static final int DW_FORM_DATA4 = 0x06;
+    private static final int DW_FORM_DATA8 = 0x07;
+    private static final int DW_FORM_STRING = 0x08;
+    private static final int DW_FORM_BLOCK = 0x09;
+    private static final int DW_FORM_BLOCK1 = 0x0a;
+    private static final int DW_FORM_DATA1 = 0x0b;
+    private static final int DW_FORM_FLAG = 0x0c;
+    private static final int DW_FORM_SDATA = 0x0d;
+    private static final int DW_FORM_STRP = 0x0e;
+    private static final int DW_FORM_UDATA = 0x0f;
+    private static final int DW_FORM_REF_ADDR = 0x10;
+    private static final int DW_FORM_REF1 = 0x11;
+    private static final int DW_FORM_REF2 = 0x12;
+    private static final int DW_FORM_REF4 = 0x13;
+    private static final int DW_FORM_REF8 = 0x14;
+    private static final int DW_FORM_REF_UDATA = 0x15;
+    private static final int DW_FORM_INDIRECT = 0x16;
+    private static final int DW_FORM_SEC_OFFSET = 0x17;
+    private static final int DW_FORM_EXPRLOC = 0x18;
+    private static final int DW_FORM_FLAG_PRESENT = 0x19;
+    private static final int DW_FORM_STRX = 0x1a;
+    private static final int DW_FORM_ADDRX = 0x1b;
+    private static final int DW_FORM_REF_SUP4 = 0x1c;
+    private static final int DW_FORM_STRP_SUP = 0x1d;
+    private static final int DW_FORM_DATA16 = 0x1e;
+    private static final int DW_FORM_LINE_STRP = 0x1f;
+    private static final int DW_FORM_REF_SIG8 = 0x20;
+    private static final int DW_FORM_IMPLICIT_CONST = 0x21;
+    private static final int DW_FORM_LOCLISTX = 0x22;
+    private static final int DW_FORM_RNGLISTX = 0x23;
+    private static final int DW_FORM_REF_SUP8 = 0x24;
+    private static final int DW_FORM_STRX1 = 0x25;
+    private static final int DW_FORM_STRX2 = 0x26;
+    private static final int DW_FORM_STRX3 = 0x27;
+    private static final int DW_FORM_STRX4 = 0x28;
+    private static final int DW_FORM_ADDRX1 = 0x29;
+    private static final int DW_FORM_ADDRX2 = 0x2a;
+    private static final int DW_FORM_ADDRX3 = 0x2b;
+    private static final int DW_FORM_ADDRX4 = 0x2c;
+    private static final int DW_FORM_GNU_REF_ALT = 0x1f20;
+    private static final int DW_FORM_GNU_STRP_ALT = 0x1f21;
+
+    private final long[] fAddresses;
+    private final int[] fFiles;
+    private final int[] fLines;
+    private final String[] fFileNames;
+
+    private DwarfLineTable(long[] addresses, int[] files, int[] lines, String[] fileNames) {
+        fAddresses = addresses;
+        fFiles = files;
+        fLines = lines;
+        fFileNames = fileNames;
+    }
+
+    /**
+     * Find the row of the line table that contains an address.
+     *
+     * @param address
+     *            The address, as seen in the binary
+     * @return The row index, or -1 if there is no line information for this
+     *         address
+     */
+    public int findRow(long address) {
+        /* Last row whose address is lower or equal */
+        int low = 0;
+        int high = fAddresses.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (fAddresses[mid] <= address) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int row = low - 1;
+        if (row < 0 || fFiles[row] == NO_FILE) {
+            return -1;
+        }
+        return row;
+    }
+
+    /**
+     * Get the source file of a row.
+     *
+     * @param row
+     *            The row index, as returned by {@link #findRow}
+     * @return The file name, including its directory if it is known
+     */
+    public String getFileName(int row) {
+        return fFileNames[fFiles[row]];
+    }
+
+    /**
+     * Get the line number of a row.
+     *
+     * @param row
+     *            The row index, as returned by {@link #findRow}
+     * @return The line number
+     */
+    public int getLineNumber(int row) {
+        return fLines[row];
+    }
+
+    /**
+     * Get the number of rows in the table, including the ends of sequences.
+     *
+     * @return The number of rows
+     */
+    public int size() {
+        return fAddresses.length;
+    }
+
+    // ------------------------------------------------------------------------
+    // Parsing
+    // ------------------------------------------------------------------------
+
+    /**
+     * Decode the line number programs of the ".debug_line" section of an ELF
+     * file. Units that cannot be decoded are skipped.
+     *
+     * @param elf
+     *            The ELF file
+     * @return The line table, or null if the file has no ".debug_line"
+     *         section
+     * @throws IOException
+     *             If the debug sections cannot be read
+     */
+    public static @Nullable DwarfLineTable read(ElfFile elf) throws IOException {
+        ByteBuffer debugLine = elf.getSection(".debug_line"); //$NON-NLS-1$
+        if (debugLine == null) {
+            return null;
+        }
+        int addressSize = elf.is64Bit() ? 8 : 4;
+        ByteBuffer debugStr = elf.getSection(".debug_str"); //$NON-NLS-1$
+        Map<Long, String> compDirs = readCompilationDirs(elf, debugStr, addressSize);
+        Parser parser = new Parser(elf.getSection(".debug_line_str"), debugStr, addressSize); //$NON-NLS-1$
+        ByteBuffer buffer = debugLine.duplicate().order(debugLine.order());
+        while (buffer.remaining() > 4) {
+            long offset = buffer.position();
+            long length = Integer.toUnsignedLong(buffer.getInt());
+            boolean dwarf64 = (length == 0xffffffffL);
+            if (dwarf64) {
+                length = buffer.getLong();
+            }
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            int end = buffer.position() + (int) length;
+            ByteBuffer unit = buffer.duplicate().order(buffer.order());
+            unit.limit(end);
+            try {
+                parser.parseUnit(unit, dwarf64, compDirs.getOrDefault(offset, "")); //$NON-NLS-1$
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                /* Invalid or unsupported unit, keep its complete sequences */
+                parser.dropIncompleteSequence();
+            }
+            buffer.position(end);
+        }
+        return parser.build();
+    }
+
+    /**
+     * Before DWARF 5, the compilation directory, to which the file names of
+     * the line table are relative, is only found in the compilation unit
+     * entries of ".debug_info".
+     *
+     * @return The compilation directories, by offset of their line table
+     */
+    private static Map<Long, String> readCompilationDirs(ElfFile elf, @Nullable ByteBuffer debugStr, int addressSize) throws IOException {
+        Map<Long, String> compDirs = new HashMap<>();
+        ByteBuffer debugInfo = elf.getSection(".debug_info"); //$NON-NLS-1$
+        ByteBuffer debugAbbrev = elf.getSection(".debug_abbrev"); //$NON-NLS-1$
+        if (debugInfo == null || debugAbbrev == null) {
+            return compDirs;
+        }
+        ByteBuffer buffer = debugInfo.duplicate().order(debugInfo.order());
+        try {
+            while (buffer.remaining() > 4) {
+                long length = Integer.toUnsignedLong(buffer.getInt());
+                boolean dwarf64 = (length == 0xffffffffL);
+                if (dwarf64) {
+                    length = buffer.getLong();
+                }
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                int end = buffer.position() + (int) length;
+                int version = Short.toUnsignedInt(buffer.getShort());
+                if (version >= 2 && version < 5) {
+                    long abbrevOffset = dwarf64 ? buffer.getLong() : Integer.toUnsignedLong(buffer.getInt());
+                    int unitAddressSize = Byte.toUnsignedInt(buffer.get());
+                    readCompilationDir(buffer, debugAbbrev, (int) abbrevOffset, debugStr, dwarf64, version, unitAddressSize, compDirs);
+                }
+                buffer.position(end);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            /* Keep the directories found so far */
+        }
+        return compDirs;
+    }
+
+    private static void readCompilationDir(ByteBuffer unit, ByteBuffer debugAbbrev, int abbrevOffset,
+            @Nullable ByteBuffer debugStr, boolean dwarf64, int version, int addressSize, Map<Long, String> compDirs) {
+        long code = readUleb(unit);
+        /* Find the abbreviation of the first entry, the compilation unit */
+        ByteBuffer abbrev = debugAbbrev.duplicate().order(debugAbbrev.order());
+        abbrev.position(abbrevOffset);
+        while (true) {
+            long abbrevCode = readUleb(abbrev);
+            if (abbrevCode == 0) {
+                return;
+            }
+            /* Tag and children flag */
+            readUleb(abbrev);
+            abbrev.get();
+            if (abbrevCode == code) {
+                break;
+            }
+            while (readUleb(abbrev) != 0 | readUleb(abbrev) != 0) {
+                /* Skip the attributes of other abbreviations */
+            }
+        }
+
+        long stmtList = -1;
+        String compDir = null;
+        while (true) {
+            int attribute = (int) readUleb(abbrev);
+            int form = (int) readUleb(abbrev);
+            if (attribute == 0 && form == 0) {
+                break;
+            }
+            if (attribute == DW_AT_STMT_LIST && (form == DW_FORM_SEC_OFFSET || form == DW_FORM_DATA4 || form == DW_FORM_DATA8)) {
+                stmtList = (form == DW_FORM_SEC_OFFSET && dwarf64) || form == DW_FORM_DATA8 ? unit.getLong() : Integer.toUnsignedLong(unit.getInt());
+            } else if (attribute == DW_AT_COMP_DIR && form == DW_FORM_STRING) {
+                compDir = readString(unit);
+            } else if (attribute == DW_AT_COMP_DIR && form == DW_FORM_STRP && debugStr != null) {
+                compDir = ElfFile.readString(debugStr, (int) (dwarf64 ? unit.getLong() : Integer.toUnsignedLong(unit.getInt())));
+            } else {
+                skipForm(unit, form, dwarf64, version, addressSize);
+            }
+        }
+        if (stmtList >= 0 && compDir != null) {
+            compDirs.put(stmtList, compDir);
+        }
+    }
+
+    static void skipForm(ByteBuffer unit, int form, boolean dwarf64, int version, int addressSize) {
+        int offsetSize = dwarf64 ? 8 : 4;
+        int size;
+        switch (form) {
+        case DW_FORM_FLAG_PRESENT:
+        case DW_FORM_IMPLICIT_CONST:
+            size = 0;
+            break;
+        case DW_FORM_DATA1:
+        case DW_FORM_REF1:
+        case DW_FORM_FLAG:
+        case DW_FORM_STRX1:
+        case DW_FORM_ADDRX1:
+            size = 1;
+            break;
+        case DW_FORM_DATA2:
+        case DW_FORM_REF2:
+        case DW_FORM_STRX2:
+        case DW_FORM_ADDRX2:
+            size = 2;
+            break;
+        case DW_FORM_STRX3:
+        case DW_FORM_ADDRX3:
+            size = 3;
+            break;
+        case DW_FORM_DATA4:
+        case DW_FORM_REF4:
+        case DW_FORM_REF_SUP4:
+        case DW_FORM_STRX4:
+        case DW_FORM_ADDRX4:
+            size = 4;
+            break;
+        case DW_FORM_DATA8:
+        case DW_FORM_REF8:
+        case DW_FORM_REF_SIG8:
+        case DW_FORM_REF_SUP8:
+            size = 8;
+            break;
+        case DW_FORM_DATA16:
+            size = 16;
+            break;
+        case DW_FORM_ADDR:
+            size = addressSize;
+            break;
+        case DW_FORM_REF_ADDR:
+            size = (version == 2 ? addressSize : offsetSize);
+            break;
+        case DW_FORM_STRP:
+        case DW_FORM_LINE_STRP:
+        case DW_FORM_SEC_OFFSET:
+        case DW_FORM_STRP_SUP:
+        case DW_FORM_GNU_REF_ALT:
+        case DW_FORM_GNU_STRP_ALT:
+            size = offsetSize;
+            break;
+        case DW_FORM_SDATA:
+            readSleb(unit);
+            size = 0;
+            break;
+        case DW_FORM_UDATA:
+        case DW_FORM_REF_UDATA:
+        case DW_FORM_STRX:
+        case DW_FORM_ADDRX:
+        case DW_FORM_LOCLISTX:
+        case DW_FORM_RNGLISTX:
+            readUleb(unit);
+            size = 0;
+            break;
+        case DW_FORM_STRING:
+            readString(unit);
+            size = 0;
+            break;
+        case DW_FORM_BLOCK1:
+            size = Byte.toUnsignedInt(unit.get());
+            break;
+        case DW_FORM_BLOCK2:
+            size = Short.toUnsignedInt(unit.getShort());
+            break;
+        case DW_FORM_BLOCK4:
+            size = unit.getInt();
+            break;
+        case DW_FORM_BLOCK:
+        case DW_FORM_EXPRLOC:
+            size = (int) readUleb(unit);
+            break;
+        case DW_FORM_INDIRECT:
+            skipForm(unit, (int) readUleb(unit), dwarf64, version, addressSize);
+            size = 0;
+            break;
+        default:
+            throw new IllegalArgumentException("Unsupported form " + form); //$NON-NLS-1$
+        }
+        unit.position(unit.position() + size);
+    }
+
+    private static class Parser {
+
+        private final @Nullable ByteBuffer fLineStr;
+        private final @Nullable ByteBuffer fStr;
+        private final int fAddressSize;
+
+        private final Map<String, Integer> fFileIds = new HashMap<>();
+        private final List<String> fFileNames = new ArrayList<>();
+
+        private long[] fAddresses = new long[1024];
+        private int[] fFiles = new int[1024];
+        private int[] fLines = new int[1024];
+        private int fSize = 0;
+        /* Start row and end row (exclusive) of each complete sequence */
+        private final List<int[]> fSequences = new ArrayList<>();
+
+        public Parser(@Nullable ByteBuffer lineStr, @Nullable ByteBuffer str, int addressSize) {
+            fLineStr = lineStr;
+            fStr = str;
+            fAddressSize = addressSize;
+        }
+
+        public void parseUnit(ByteBuffer unit, boolean dwarf64, String compDir) {
+            int version = Short.toUnsignedInt(unit.getShort());
+            if (version < 2 || version > 5) {
+                return;
+            }
+            int addressSize = fAddressSize;
+            if (version >= 5) {
+                addressSize = Byte.toUnsignedInt(unit.get());
+                /* segment_selector_size */
+                unit.get();
+            }
+            long headerLength = dwarf64 ? unit.getLong() : Integer.toUnsignedLong(unit.getInt());
+            int programStart = unit.position() + (int) headerLength;
+            int minInstLength = Byte.toUnsignedInt(unit.get());
+            if (version >= 4) {
+                /* maximum_operations_per_instruction, VLIW is not supported */
+                unit.get();
+            }
+            /* default_is_stmt, all the rows are used */
+            unit.get();
+            int lineBase = unit.get();
+            int lineRange = Byte.toUnsignedInt(unit.get());
+            int opcodeBase = Byte.toUnsignedInt(unit.get());
+            int[] opcodeLengths = new int[opcodeBase];
+            for (int i = 1; i < opcodeBase; i++) {
+                opcodeLengths[i] = Byte.toUnsignedInt(unit.get());
+            }
+            if (lineRange == 0) {
+                return;
+            }
+
+            /* Directory 0 is the compilation directory */
+            List<String> dirs = new ArrayList<>();
+            List<Integer> files = new ArrayList<>();
+            String unitDir = compDir;
+            if (version >= 5) {
+                for (Entry entry : readEntries(unit, dwarf64)) {
+                    dirs.add(entry.fPath);
+                }
+                if (!dirs.isEmpty()) {
+                    unitDir = dirs.get(0);
+                    dirs.set(0, ""); //$NON-NLS-1$
+                }
+                for (Entry entry : readEntries(unit, dwarf64)) {
+                    files.add(getFileId(unitDir, getDir(dirs, entry.fDirIndex), entry.fPath));
+                }
+            } else {
+                dirs.add(""); //$NON-NLS-1$
+                for (String dir = readString(unit); !dir.isEmpty(); dir = readString(unit)) {
+                    dirs.add(dir);
+                }
+                /* File indexes start at 1 */
+                files.add(NO_FILE);
+                for (String name = readString(unit); !name.isEmpty(); name = readString(unit)) {
+                    int dirIndex = (int) readUleb(unit);
+                    readUleb(unit);
+                    readUleb(unit);
+                    files.add(getFileId(unitDir, getDir(dirs, dirIndex), name));
+                }
+            }
+
+            unit.position(programStart);
+            runProgram(unit, version, minInstLength, lineBase, lineRange, opcodeBase, opcodeLengths, addressSize, files, unitDir);
+        }
+
+        private void runProgram(ByteBuffer unit, int version, int minInstLength, int lineBase,
+                int lineRange, int opcodeBase, int[] opcodeLengths, int addressSize, List<Integer> files, String unitDir) {
+            long address = 0;
+            int file = 1;
+            int line = 1;
+            int sequenceStart = fSize;
+
+            while (unit.hasRemaining()) {
+                int opcode = Byte.toUnsignedInt(unit.get());
+                if (opcode >= opcodeBase) {
+                    int adjusted = opcode - opcodeBase;
+                    address += (adjusted / lineRange) * minInstLength;
+                    line += lineBase + (adjusted % lineRange);
+                    addRow(address, fileId(files, file), line);
+                } else if (opcode == 0) {
+                    int length = (int) readUleb(unit);
+                    int next = unit.position() + length;
+                    int subOpcode = Byte.toUnsignedInt(unit.get());
+                    switch (subOpcode) {
+                    case DW_LNE_END_SEQUENCE:
+                        addRow(address, NO_FILE, 0);
+                        endSequence(sequenceStart);
+                        sequenceStart = fSize;
+                        address = 0;
+                        file = 1;
+                        line = 1;
+                        break;
+                    case DW_LNE_SET_ADDRESS:
+                        address = (addressSize == 8 ? unit.getLong() : Integer.toUnsignedLong(unit.getInt()));
+                        break;
+                    case DW_LNE_DEFINE_FILE:
+                        if (version < 5) {
+                            files.add(getFileId(unitDir, "", readString(unit))); //$NON-NLS-1$
+                        }
+                        break;
+                    default:
+                        break;
+                    }
+                    unit.position(next);
+                } else if (opcode == DW_LNS_COPY) {
+                    addRow(address, fileId(files, file), line);
+                } else if (opcode == DW_LNS_ADVANCE_PC) {
+                    address += readUleb(unit) * minInstLength;
+                } else if (opcode == DW_LNS_ADVANCE_LINE) {
+                    line += (int) readSleb(unit);
+                } else if (opcode == DW_LNS_SET_FILE) {
+                    file = (int) readUleb(unit);
+                } else if (opcode == DW_LNS_CONST_ADD_PC) {
+                    address += ((255 - opcodeBase) / lineRange) * minInstLength;
+                } else if (opcode == DW_LNS_FIXED_ADVANCE_PC) {
+                    address += Short.toUnsignedInt(unit.getShort());
+                } else {
+                    /* Other standard opcodes only modify state we do not use */
+                    for (int i = 0; i < opcodeLengths[opcode]; i++) {
+                        readUleb(unit);
+                    }
+                }
+            }
+            dropIncompleteSequence();
+        }
+
+        public void dropIncompleteSequence() {
+            fSize = (fSequences.isEmpty() ? 0 : fSequences.get(fSequences.size() - 1)[1]);
+        }
+
+        private static int fileId(List<Integer> files, int file) {
+            if (file < 0 || file >= files.size()) {
+                return NO_FILE;
+            }
+            return files.get(file);
+        }
+
+        private void addRow(long address, int file, int line) {
+            if (fSize == fAddresses.length) {
+                fAddresses = Arrays.copyOf(fAddresses, fSize * 2);
+                fFiles = Arrays.copyOf(fFiles, fSize * 2);
+                fLines = Arrays.copyOf(fLines, fSize * 2);
+            }
+            fAddresses[fSize] = address;
+            fFiles[fSize] = file;
+            fLines[fSize] = line;
+            fSize++;
+        }
+
+        private void endSequence(int start) {
+            long first = fAddresses[start];
+            /*
+             * Sequences of functions discarded by the linker are left at
+             * address 0 (or -1), they would hide the real code.
+             */
+            if (first == 0 || first == -1 || fAddresses[fSize - 1] < first) {
+                fSize = start;
+                return;
+            }
+            fSequences.add(new int[] { start, fSize });
+        }
+
+        private static String getDir(List<String> dirs, int index) {
+            return (index < dirs.size() ? dirs.get(index) : ""); //$NON-NLS-1$
+        }
+
+        private int getFileId(String compDir, String dir, String name) {
+            String path = appendPath(dir, name);
+            path = appendPath(compDir, path);
+            Integer id = fFileIds.get(path);
+            if (id == null) {
+                id = fFileNames.size();
+                fFileNames.add(path);
+                fFileIds.put(path, id);
+            }
+            return id;
+        }
+
+        private static String appendPath(String dir, String path) {
+            if (dir.isEmpty() || path.startsWith("/")) { //$NON-NLS-1$
+                return path;
+            }
+            return dir + '/' + path;
+        }
+
+        private List<Entry> readEntries(ByteBuffer unit, boolean dwarf64) {
+            int formatCount = Byte.toUnsignedInt(unit.get());
+            long[] format = new long[formatCount * 2];
+            for (int i = 0; i < format.length; i++) {
+                format[i] = readUleb(unit);
+            }
+            int count = (int) readUleb(unit);
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry();
+                for (int j = 0; j < formatCount; j++) {
+                    int contentType = (int) format[j * 2];
+                    int form = (int) format[j * 2 + 1];
+                    if (contentType == DW_LNCT_PATH) {
+                        entry.fPath = readStringForm(unit, form, dwarf64);
+                    } else if (contentType == DW_LNCT_DIRECTORY_INDEX) {
+                        entry.fDirIndex = (int) readDataForm(unit, form);
+                    } else {
+                        skipForm(unit, form, dwarf64, 5, fAddressSize);
+                    }
+                }
+                entries.add(entry);
+            }
+            return entries;
+        }
+
+        private String readStringForm(ByteBuffer unit, int form, boolean dwarf64) {
+            switch (form) {
+            case DW_FORM_STRING:
+                return readString(unit);
+            case DW_FORM_LINE_STRP:
+                return readStrp(fLineStr, dwarf64 ? unit.getLong() : Integer.toUnsignedLong(unit.getInt()));
+            case DW_FORM_STRP:
+                return readStrp(fStr, dwarf64 ? unit.getLong() : Integer.toUnsignedLong(unit.getInt()));
+            default:
+                throw new IllegalArgumentException("Unsupported string form " + form); //$NON-NLS-1$
+            }
+        }
+
+        private static String readStrp(@Nullable ByteBuffer section, long offset) {
+            if (section == null || offset >= section.limit()) {
+                throw new IllegalArgumentException("Invalid string offset " + offset); //$NON-NLS-1$
+            }
+            return ElfFile.readString(section, (int) offset);
+        }
+
+        private static long readDataForm(ByteBuffer unit, int form) {
+            switch (form) {
+            case DW_FORM_DATA1:
+                return Byte.toUnsignedLong(unit.get());
+            case DW_FORM_DATA2:
+                return Short.toUnsignedLong(unit.getShort());
+            case DW_FORM_DATA4:
+                return Integer.toUnsignedLong(unit.getInt());
+            case DW_FORM_DATA8:
+                return unit.getLong();
+            case DW_FORM_UDATA:
+                return readUleb(unit);
+            default:
+                throw new IllegalArgumentException("Unsupported data form " + form); //$NON-NLS-1$
+            }
+        }
+
+        public DwarfLineTable build() {
+            /* Sequences are sorted internally, sort them between themselves */
+            fSequences.sort((s1, s2) -> Long.compare(fAddresses[s1[0]], fAddresses[s2[0]]));
+            long[] addresses = new long[fSize];
+            int[] files = new int[fSize];
+            int[] lines = new int[fSize];
+            int pos = 0;
+            for (int[] sequence : fSequences) {
+                int length = sequence[1] - sequence[0];
+                System.arraycopy(fAddresses, sequence[0], addresses, pos, length);
+                System.arraycopy(fFiles, sequence[0], files, pos, length);
+                System.arraycopy(fLines, sequence[0], lines, pos, length);
+                pos += length;
+            }
+            return new DwarfLineTable(Arrays.copyOf(addresses, pos), Arrays.copyOf(files, pos),
+                    Arrays.copyOf(lines, pos), fFileNames.toArray(new String[fFileNames.size()]));
+        }
+    }
+
+    private static class Entry {
+        private String fPath = ""; //$NON-NLS-1$
+        private int fDirIndex = 0;
+    }
+
+    // ------------------------------------------------------------------------
+    // Encoding helpers
+    // ------------------------------------------------------------------------
+
+    static String readString(ByteBuffer buffer) {
+        int start = buffer.position();
+        while (buffer.get() != 0) {
+            /* Find the terminating null character */
+        }
+        byte[] bytes = new byte[buffer.position() - start - 1];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static long readUleb(ByteBuffer buffer) {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            if (shift < 64) {
+                result |= (long) (b & 0x7f) << shift;
+            }
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+
+    static long readSleb(ByteBuffer buffer) {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            if (shift < 64) {
+                result |= (long) (b & 0x7f) << shift;
+            }
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        if (shift < 64 && (b & 0x40) != 0) {
+            result |= -1L << shift;
+        }
+        return result;
+    }
+}
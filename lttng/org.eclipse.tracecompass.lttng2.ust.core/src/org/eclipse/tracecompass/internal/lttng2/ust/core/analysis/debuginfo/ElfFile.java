@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.lttng2.ust.core.analysis.debuginfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Minimal reader of ELF binaries, giving access to their sections by name. The
+ * file is memory-mapped, the sections are views on the mapping.
+ */
+public final class ElfFile {
+
+    private static final int ELF_MAGIC = 0x7f454c46;
+    private static final int ELFCLASS64 = 2;
+    private static final int ELFDATA2MSB = 2;
+
+    private static final int SHT_NOBITS = 8;
+    private static final long SHF_COMPRESSED = 0x800;
+    private static final int ELFCOMPRESS_ZLIB = 1;
+
+    private final ByteBuffer fBuffer;
+    private final boolean f64Bit;
+    private final Map<String, SectionHeader> fSections = new HashMap<>();
+
+    private static class SectionHeader {
+        private final int fType;
+        private final long fFlags;
+        private final int fOffset;
+        private final int fSize;
+
+        public SectionHeader(int type, long flags, int offset, int size) {
+            fType = type;
+            fFlags = flags;
+            fOffset = offset;
+            fSize = size;
+        }
+    }
+
+    private ElfFile(ByteBuffer buffer) throws IOException {
+        fBuffer = buffer;
+        if (buffer.remaining() < 0x34 || buffer.getInt(0) != ELF_MAGIC) {
+            throw new IOException("Not an ELF file"); //$NON-NLS-1$
+        }
+        f64Bit = (buffer.get(4) == ELFCLASS64);
+        buffer.order(buffer.get(5) == ELFDATA2MSB ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            long shoff = f64Bit ? buffer.getLong(0x28) : Integer.toUnsignedLong(buffer.getInt(0x20));
+            int shentsize = Short.toUnsignedInt(buffer.getShort(f64Bit ? 0x3a : 0x2e));
+            int shnum = Short.toUnsignedInt(buffer.getShort(f64Bit ? 0x3c : 0x30));
+            int shstrndx = Short.toUnsignedInt(buffer.getShort(f64Bit ? 0x3e : 0x32));
+            if (shoff == 0 || shnum == 0 || shstrndx >= shnum) {
+                return;
+            }
+            SectionHeader[] headers = new SectionHeader[shnum];
+            int[] names = new int[shnum];
+            for (int i = 0; i < shnum; i++) {
+                int pos = toInt(shoff + (long) i * shentsize);
+                names[i] = buffer.getInt(pos);
+                int type = buffer.getInt(pos + 4);
+                if (f64Bit) {
+                    headers[i] = new SectionHeader(type, buffer.getLong(pos + 8),
+                            toInt(buffer.getLong(pos + 0x18)), toInt(buffer.getLong(pos + 0x20)));
+                } else {
+                    headers[i] = new SectionHeader(type, Integer.toUnsignedLong(buffer.getInt(pos + 8)),
+                            toInt(Integer.toUnsignedLong(buffer.getInt(pos + 0x10))), toInt(Integer.toUnsignedLong(buffer.getInt(pos + 0x14))));
+                }
+            }
+            SectionHeader strtab = headers[shstrndx];
+            for (int i = 0; i < shnum; i++) {
+                String name = readString(buffer, strtab.fOffset + names[i]);
+                fSections.putIfAbsent(name, headers[i]);
+            }
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new IOException("Invalid ELF section headers", e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Memory-map an ELF file and read its section headers.
+     *
+     * @param file
+     *            The binary file
+     * @return The ELF file
+     * @throws IOException
+     *             If the file cannot be read or is not a valid ELF file
+     */
+    public static ElfFile open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new ElfFile(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Get whether this is a 64-bit (ELFCLASS64) file.
+     *
+     * @return If addresses are 64-bit long
+     */
+    public boolean is64Bit() {
+        return f64Bit;
+    }
+
+    /**
+     * Get the contents of a section, uncompressed if needed.
+     *
+     * @param name
+     *            The section name, for example ".debug_line"
+     * @return A buffer positioned at the start of the section, with the byte
+     *         order of the file, or null if there is no such section
+     * @throws IOException
+     *             If the section is out of the file or cannot be
+     *             uncompressed
+     */
+    public @Nullable ByteBuffer getSection(String name) throws IOException {
+        SectionHeader header = fSections.get(name);
+        if (header == null || header.fType == SHT_NOBITS) {
+            return null;
+        }
+        if (header.fOffset < 0 || header.fSize < 0 || header.fOffset + header.fSize > fBuffer.capacity()) {
+            throw new IOException("Section " + name + " is out of the file"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        ByteBuffer section = fBuffer.duplicate();
+        section.position(header.fOffset).limit(header.fOffset + header.fSize);
+        section = section.slice().order(fBuffer.order());
+        if ((header.fFlags & SHF_COMPRESSED) != 0) {
+            return uncompress(section);
+        }
+        return section;
+    }
+
+    private ByteBuffer uncompress(ByteBuffer section) throws IOException {
+        int type = section.getInt();
+        long size;
+        if (f64Bit) {
+            section.getInt();
+            size = section.getLong();
+            section.getLong();
+        } else {
+            size = Integer.toUnsignedLong(section.getInt());
+            section.getInt();
+        }
+        if (type != ELFCOMPRESS_ZLIB) {
+            throw new IOException("Unsupported section compression"); //$NON-NLS-1$
+        }
+        byte[] input = new byte[section.remaining()];
+        section.get(input);
+        byte[] output = new byte[toInt(size)];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            inflater.inflate(output);
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(output).order(fBuffer.order());
+    }
+
+    /**
+     * Read a null-terminated UTF-8 string at a given position of a buffer.
+     *
+     * @param buffer
+     *            The buffer
+     * @param position
+     *            The position of the first character
+     * @return The string
+     */
+    public static String readString(ByteBuffer buffer, int position) {
+        int end = position;
+        while (buffer.get(end) != 0) {
+            end++;
+        }
+        byte[] bytes = new byte[end - position];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(position + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int toInt(long value) throws IOException {
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Offset out of range: " + value); //$NON-NLS-1$
+        }
+        return (int) value;
+    }
+}
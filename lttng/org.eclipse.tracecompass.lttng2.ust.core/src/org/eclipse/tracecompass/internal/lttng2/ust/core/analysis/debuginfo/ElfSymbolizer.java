@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.lttng2.ust.core.analysis.debuginfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.tmf.core.event.lookup.TmfCallsite;
+
+/**
+ * Resolves addresses of a binary to function names and source locations,
+ * using the ELF symbol table and the DWARF line table of the file itself.
+ * The line table only gives the innermost source location of inlined code,
+ * the addresses of inlined code can be identified with {@link #isInlined}.
+ *
+ * Everything is read once when the symbolizer is created, lookups are binary
+ * searches in sorted arrays.
+ */
+public final class ElfSymbolizer {
+
+    private static final int STT_FUNC = 2;
+    private static final int STT_GNU_IFUNC = 10;
+    private static final int SHN_UNDEF = 0;
+
+    private final long[] fSymbolAddresses;
+    private final long[] fSymbolSizes;
+    private final String[] fSymbolNames;
+    private final @Nullable DwarfLineTable fLineTable;
+    private final @Nullable DwarfInlinedRanges fInlinedRanges;
+
+    private ElfSymbolizer(long[] symbolAddresses, long[] symbolSizes, String[] symbolNames,
+            @Nullable DwarfLineTable lineTable, @Nullable DwarfInlinedRanges inlinedRanges) {
+        fSymbolAddresses = symbolAddresses;
+        fSymbolSizes = symbolSizes;
+        fSymbolNames = symbolNames;
+        fLineTable = lineTable;
+        fInlinedRanges = inlinedRanges;
+    }
+
+    /**
+     * Read the symbols and the line table of a binary file.
+     *
+     * @param file
+     *            The binary (executable or library)
+     * @return The symbolizer for this file
+     * @throws IOException
+     *             If the file cannot be read or is not a valid ELF file
+     */
+    public static ElfSymbolizer load(File file) throws IOException {
+        return create(ElfFile.open(file));
+    }
+
+    private static ElfSymbolizer create(ElfFile elf) throws IOException {
+        ByteBuffer symtab = elf.getSection(".symtab"); //$NON-NLS-1$
+        ByteBuffer strtab = elf.getSection(".strtab"); //$NON-NLS-1$
+        if (symtab == null || strtab == null) {
+            symtab = elf.getSection(".dynsym"); //$NON-NLS-1$
+            strtab = elf.getSection(".dynstr"); //$NON-NLS-1$
+        }
+
+        long[] addresses = new long[0];
+        long[] sizes = new long[0];
+        String[] names = new String[0];
+        if (symtab != null && strtab != null) {
+            int entrySize = elf.is64Bit() ? 24 : 16;
+            int count = symtab.limit() / entrySize;
+            addresses = new long[count];
+            sizes = new long[count];
+            names = new String[count];
+            int nb = 0;
+            try {
+                for (int i = 0; i < count; i++) {
+                    int pos = i * entrySize;
+                    int name = symtab.getInt(pos);
+                    int info;
+                    int shndx;
+                    long value;
+                    long size;
+                    if (elf.is64Bit()) {
+                        info = symtab.get(pos + 4);
+                        shndx = Short.toUnsignedInt(symtab.getShort(pos + 6));
+                        value = symtab.getLong(pos + 8);
+                        size = symtab.getLong(pos + 16);
+                    } else {
+                        value = Integer.toUnsignedLong(symtab.getInt(pos + 4));
+                        size = Integer.toUnsignedLong(symtab.getInt(pos + 8));
+                        info = symtab.get(pos + 12);
+                        shndx = Short.toUnsignedInt(symtab.getShort(pos + 14));
+                    }
+                    int type = info & 0xf;
+                    if ((type != STT_FUNC && type != STT_GNU_IFUNC) || shndx == SHN_UNDEF || value == 0) {
+                        continue;
+                    }
+                    addresses[nb] = value;
+                    sizes[nb] = size;
+                    names[nb] = ElfFile.readString(strtab, name);
+                    nb++;
+                }
+            } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+                throw new IOException("Invalid symbol table", e); //$NON-NLS-1$
+            }
+            /* Sort by address, keeping the first of the aliases */
+            Integer[] order = new Integer[nb];
+            for (int i = 0; i < nb; i++) {
+                order[i] = i;
+            }
+            final long[] unsorted = addresses;
+            Arrays.sort(order, Comparator.comparingLong(i -> unsorted[i]));
+            long[] sortedAddresses = new long[nb];
+            long[] sortedSizes = new long[nb];
+            String[] sortedNames = new String[nb];
+            int unique = 0;
+            for (int i = 0; i < nb; i++) {
+                int index = order[i];
+                if (unique > 0 && sortedAddresses[unique - 1] == addresses[index]) {
+                    continue;
+                }
+                sortedAddresses[unique] = addresses[index];
+                sortedSizes[unique] = sizes[index];
+                sortedNames[unique] = names[index];
+                unique++;
+            }
+            addresses = Arrays.copyOf(sortedAddresses, unique);
+            sizes = Arrays.copyOf(sortedSizes, unique);
+            names = Arrays.copyOf(sortedNames, unique);
+        }
+
+        return new ElfSymbolizer(addresses, sizes, names, DwarfLineTable.read(elf), DwarfInlinedRanges.read(elf));
+    }
+
+    /**
+     * Get whether the binary has DWARF line information. If it does not,
+     * {@link #getCallsite} will never find a source location.
+     *
+     * @return If the binary has a line table
+     */
+    public boolean hasLineInfo() {
+        DwarfLineTable lineTable = fLineTable;
+        return (lineTable != null && lineTable.size() > 0);
+    }
+
+    /**
+     * Get whether an address may be in a function instance that was inlined
+     * in another function. The source location from {@link #getCallsite} is
+     * then the one of the inlined code, not the one of the calling function.
+     *
+     * @param address
+     *            The address, as seen in the binary
+     * @return True if the address is in inlined code, or if it could not be
+     *         determined
+     */
+    public boolean isInlined(long address) {
+        DwarfInlinedRanges inlinedRanges = fInlinedRanges;
+        return (inlinedRanges != null && inlinedRanges.isInlined(address));
+    }
+
+    /**
+     * Get the name of the function containing an address.
+     *
+     * @param address
+     *            The address, as seen in the binary
+     * @return The (possibly mangled) function name, or null if no symbol
+     *         contains this address
+     */
+    public @Nullable String getFunctionName(long address) {
+        int index = Arrays.binarySearch(fSymbolAddresses, address);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        if (index < 0) {
+            return null;
+        }
+        long size = fSymbolSizes[index];
+        if (size != 0 && address - fSymbolAddresses[index] >= size) {
+            return null;
+        }
+        return fSymbolNames[index];
+    }
+
+    /**
+     * Get the source location of an address, from the line table. For inlined
+     * code, this is the innermost location.
+     *
+     * @param address
+     *            The address, as seen in the binary
+     * @return The callsite, with the file name and the line number, or null
+     *         if there is no line information for this address
+     */
+    public @Nullable TmfCallsite getCallsite(long address) {
+        DwarfLineTable lineTable = fLineTable;
+        if (lineTable == null) {
+            return null;
+        }
+        int row = lineTable.findRow(address);
+        if (row < 0) {
+            return null;
+        }
+        return new TmfCallsite(lineTable.getFileName(row), null, lineTable.getLineNumber(row));
+    }
+}
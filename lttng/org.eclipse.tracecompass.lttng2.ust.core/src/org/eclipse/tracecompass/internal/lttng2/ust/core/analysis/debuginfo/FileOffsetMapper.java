@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015 EfficiOS Inc., Alexandre Montplaisir
+ * Copyright (c) 2015, 2016 EfficiOS Inc., Alexandre Montplaisir
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -14,24 +14,92 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.internal.lttng2.ust.core.Activator;
 import org.eclipse.tracecompass.tmf.core.event.lookup.TmfCallsite;
 
 /**
  * Utility class to get file name, function/symbol name and line number from a
  * given offset. In TMF this is represented as a {@link TmfCallsite}.
  *
+ * The line tables of the binaries are read in-process (see
+ * {@link ElfSymbolizer}). addr2line is used for binaries without DWARF line
+ * information of their own, for example when it is in a separate debug file,
+ * and for the offsets in inlined code, whose calling locations are not in the
+ * line table.
+ *
  * @author Alexandre Montplaisir
  */
 public final class FileOffsetMapper {
 
     private static final String DISCRIMINATOR = "\\(discriminator.*\\)"; //$NON-NLS-1$
     private static final String ADDR2LINE_EXECUTABLE = "addr2line"; //$NON-NLS-1$
+    private static final String HEX_PREFIX = "0x"; //$NON-NLS-1$
+
+    private static final int MAX_CACHED_BINARIES = 16;
+    private static final int MAX_CACHED_CALLSITES = 10000;
+
+    /** Symbol tables of the last binaries that were looked at, by path */
+    private static final Map<String, Binary> BINARY_CACHE = new LinkedHashMap<String, Binary>(MAX_CACHED_BINARIES, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Binary> eldest) {
+            return size() > MAX_CACHED_BINARIES;
+        }
+    };
+
+    /** Last resolved callsites */
+    private static final Map<CallsiteKey, Iterable<TmfCallsite>> CALLSITE_CACHE = new LinkedHashMap<CallsiteKey, Iterable<TmfCallsite>>(MAX_CACHED_CALLSITES, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CallsiteKey, Iterable<TmfCallsite>> eldest) {
+            return size() > MAX_CACHED_CALLSITES;
+        }
+    };
+
+    private static class Binary {
+        private final long fLastModified;
+        private final @Nullable ElfSymbolizer fSymbolizer;
+
+        public Binary(long lastModified, @Nullable ElfSymbolizer symbolizer) {
+            fLastModified = lastModified;
+            fSymbolizer = symbolizer;
+        }
+    }
+
+    private static class CallsiteKey {
+        private final String fPath;
+        private final long fOffset;
+
+        public CallsiteKey(String path, long offset) {
+            fPath = path;
+            fOffset = offset;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * fPath.hashCode() + Long.hashCode(fOffset);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (!(obj instanceof CallsiteKey)) {
+                return false;
+            }
+            CallsiteKey other = (CallsiteKey) obj;
+            return (fOffset == other.fOffset && fPath.equals(other.fPath));
+        }
+    }
 
     private FileOffsetMapper() {}
 
@@ -42,6 +110,9 @@ public final class FileOffsetMapper {
      * multiple call sites. This is why we can return more than one callsite per
      * call.
      *
+     * The last callsite, the one in the function that was not inlined, has
+     * the name of that function if the binary has a symbol table.
+     *
      * @param file
      *            The binary file to look at
      * @param offset
@@ -53,15 +124,86 @@ public final class FileOffsetMapper {
         if (!Files.exists((file.toPath()))) {
             return null;
         }
-        return getCallsiteFromOffsetWithAddr2line(file, offset);
+        String path = file.getAbsolutePath();
+        CallsiteKey key = new CallsiteKey(path, offset);
+        synchronized (CALLSITE_CACHE) {
+            Iterable<TmfCallsite> callsites = CALLSITE_CACHE.get(key);
+            if (callsites != null) {
+                return callsites;
+            }
+        }
+        Iterable<TmfCallsite> callsites = getCallsites(file, path, offset);
+        if (callsites != null) {
+            synchronized (CALLSITE_CACHE) {
+                CALLSITE_CACHE.put(key, callsites);
+            }
+        }
+        return callsites;
+    }
+
+    private static @Nullable Iterable<TmfCallsite> getCallsites(File file, String path, long offset) {
+        ElfSymbolizer symbolizer = getSymbolizer(file, path);
+        if (symbolizer == null) {
+            return getCallsiteFromOffsetWithAddr2line(file, offset);
+        }
+        String functionName = symbolizer.getFunctionName(offset);
+        if (symbolizer.hasLineInfo() && !symbolizer.isInlined(offset)) {
+            TmfCallsite callsite = symbolizer.getCallsite(offset);
+            if (callsite == null) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new TmfCallsite(callsite.getFileName(), functionName, callsite.getLineNumber()));
+        }
+
+        /* The line table only has the innermost location of inlined code */
+        List<TmfCallsite> callsites = getCallsiteFromOffsetWithAddr2line(file, offset);
+        if (callsites != null && !callsites.isEmpty() && functionName != null) {
+            /* The symbol is the function in which the code was inlined */
+            int last = callsites.size() - 1;
+            TmfCallsite callsite = callsites.get(last);
+            callsites.set(last, new TmfCallsite(callsite.getFileName(), functionName, callsite.getLineNumber()));
+        }
+        return callsites;
+    }
+
+    /**
+     * Get the symbolizer of a binary, reading it if it was not read since it
+     * was last modified.
+     */
+    private static @Nullable ElfSymbolizer getSymbolizer(File file, String path) {
+        long lastModified = file.lastModified();
+        synchronized (BINARY_CACHE) {
+            Binary binary = BINARY_CACHE.get(path);
+            if (binary != null && binary.fLastModified == lastModified) {
+                return binary.fSymbolizer;
+            }
+        }
+        ElfSymbolizer symbolizer = null;
+        try {
+            symbolizer = ElfSymbolizer.load(file);
+        } catch (IOException e) {
+            Activator.getDefault().logWarning("Could not read the symbols of " + path, e); //$NON-NLS-1$
+        }
+        synchronized (BINARY_CACHE) {
+            BINARY_CACHE.put(path, new Binary(lastModified, symbolizer));
+            if (lastModified != file.lastModified()) {
+                /* The file changed while we were reading it */
+                BINARY_CACHE.remove(path);
+            }
+        }
+        /* Previous callsites of this file may be stale */
+        synchronized (CALLSITE_CACHE) {
+            CALLSITE_CACHE.keySet().removeIf(key -> key.fPath.equals(path));
+        }
+        return symbolizer;
     }
 
-    private static @Nullable Iterable<TmfCallsite> getCallsiteFromOffsetWithAddr2line(File file, long offset) {
-        List<TmfCallsite> callsites = new LinkedList<>();
+    private static @Nullable List<TmfCallsite> getCallsiteFromOffsetWithAddr2line(File file, long offset) {
+        List<TmfCallsite> callsites = new ArrayList<>();
 
         // FIXME Could eventually use CDT's Addr2line class once it imlements --inlines
         List<String> output = getOutputFromCommand(Arrays.asList(
-                ADDR2LINE_EXECUTABLE, "-i", "-e", file.toString(), "0x" + Long.toHexString(offset)));  //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$
+                ADDR2LINE_EXECUTABLE, "-i", "-e", file.toString(), HEX_PREFIX + Long.toHexString(offset)));  //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$
 
         if (output == null) {
             /* Command returned an error */
@@ -92,8 +234,9 @@ public final class FileOffsetMapper {
 
             Process p = builder.start();
             try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream()));) {
-                int ret = p.waitFor();
+                /* Read the output first, it could fill the pipe */
                 List<String> lines = br.lines().collect(Collectors.toList());
+                int ret = p.waitFor();
 
                 return (ret == 0 ? lines : null);
             }
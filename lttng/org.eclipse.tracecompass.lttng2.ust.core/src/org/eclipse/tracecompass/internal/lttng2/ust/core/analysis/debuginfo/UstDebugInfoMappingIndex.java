@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.lttng2.ust.core.analysis.debuginfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.StateSystemUtils;
+import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+
+/**
+ * Index of the memory mappings of the binaries loaded by each process, built
+ * once from the state system of the debug info analysis (see
+ * {@link UstDebugInfoStateProvider} for its layout).
+ *
+ * The mappings are kept in flat arrays, sorted by VPID, then base address,
+ * then start time, so that resolving an instruction pointer only takes a few
+ * binary searches and does not allocate any object.
+ */
+public final class UstDebugInfoMappingIndex {
+
+    /** Sorted VPIDs, and index of the first base address of each one */
+    private final long[] fVpids;
+    private final int[] fVpidStarts;
+
+    /** Sorted base addresses, and index of the first mapping of each one */
+    private final long[] fBaddrs;
+    private final int[] fBaddrStarts;
+
+    /** Mappings, sorted by start time for each base address */
+    private final long[] fStartTimes;
+    private final long[] fEndTimes;
+    private final long[] fEndAddrs;
+    private final UstDebugInfoLoadedBinaryFile[] fFiles;
+
+    private UstDebugInfoMappingIndex(Builder builder) {
+        fVpids = builder.fVpids.toArray();
+        fVpidStarts = builder.fVpidStarts.toIntArray();
+        fBaddrs = builder.fBaddrs.toArray();
+        fBaddrStarts = builder.fBaddrStarts.toIntArray();
+        fStartTimes = builder.fStartTimes.toArray();
+        fEndTimes = builder.fEndTimes.toArray();
+        fEndAddrs = builder.fEndAddrs.toArray();
+        fFiles = builder.fFiles.toArray(new UstDebugInfoLoadedBinaryFile[builder.fFiles.size()]);
+    }
+
+    /**
+     * Build the index from a completed debug info state system.
+     *
+     * @param ss
+     *            The state system of the debug info analysis
+     * @return The index of all the memory mappings in the state system
+     * @throws StateSystemDisposedException
+     *             If the state system was disposed while it was read
+     */
+    public static UstDebugInfoMappingIndex create(ITmfStateSystem ss) throws StateSystemDisposedException {
+        Builder builder = new Builder();
+        long start = ss.getStartTime();
+        long end = ss.getCurrentEndTime();
+        try {
+            for (int vpidQuark : sortByName(ss, ss.getSubAttributes(-1, false))) {
+                builder.addVpid(Long.parseLong(ss.getAttributeName(vpidQuark)));
+                for (int baddrQuark : sortByName(ss, ss.getSubAttributes(vpidQuark, false))) {
+                    long baddr = Long.parseLong(ss.getAttributeName(baddrQuark));
+                    builder.addBaddr(baddr);
+                    List<ITmfStateInterval> baddrIntervals = StateSystemUtils.queryHistoryRange(ss, baddrQuark, start, end);
+                    List<Mapping> mappings = new ArrayList<>();
+                    for (int buildIdQuark : ss.getSubAttributes(baddrQuark, false)) {
+                        String buildId = ss.getAttributeName(buildIdQuark);
+                        List<ITmfStateInterval> buildIdIntervals = StateSystemUtils.queryHistoryRange(ss, buildIdQuark, start, end);
+                        addMappings(mappings, baddr, buildId, baddrIntervals, buildIdIntervals);
+                    }
+                    mappings.sort((m1, m2) -> Long.compare(m1.fStart, m2.fStart));
+                    mappings.forEach(builder::addMapping);
+                }
+            }
+        } catch (AttributeNotFoundException e) {
+            /* We're only using quarks we've obtained from the state system */
+            throw new IllegalStateException(e);
+        }
+        return new UstDebugInfoMappingIndex(builder);
+    }
+
+    /**
+     * A mapping is valid where both the base address attribute (whose value is
+     * the end address) and one of its build ID attributes (whose value is the
+     * file path) are non-null.
+     */
+    private static void addMappings(List<Mapping> mappings, long baddr, String buildId,
+            List<ITmfStateInterval> baddrIntervals, List<ITmfStateInterval> buildIdIntervals) {
+        int i = 0;
+        for (ITmfStateInterval buildIdInterval : buildIdIntervals) {
+            if (buildIdInterval.getStateValue().isNull()) {
+                continue;
+            }
+            String filePath = buildIdInterval.getStateValue().unboxStr();
+            UstDebugInfoLoadedBinaryFile file = new UstDebugInfoLoadedBinaryFile(baddr, filePath, buildId);
+            while (i < baddrIntervals.size() && baddrIntervals.get(i).getEndTime() < buildIdInterval.getStartTime()) {
+                i++;
+            }
+            for (int j = i; j < baddrIntervals.size(); j++) {
+                ITmfStateInterval baddrInterval = baddrIntervals.get(j);
+                if (baddrInterval.getStartTime() > buildIdInterval.getEndTime()) {
+                    break;
+                }
+                if (!baddrInterval.getStateValue().isNull()) {
+                    long start = Math.max(baddrInterval.getStartTime(), buildIdInterval.getStartTime());
+                    long end = Math.min(baddrInterval.getEndTime(), buildIdInterval.getEndTime());
+                    mappings.add(new Mapping(start, end, baddrInterval.getStateValue().unboxLong(), file));
+                }
+            }
+        }
+    }
+
+    private static List<Integer> sortByName(ITmfStateSystem ss, List<Integer> quarks) {
+        List<Integer> sorted = new ArrayList<>(quarks);
+        sorted.sort((q1, q2) -> Long.compare(Long.parseLong(ss.getAttributeName(q1)), Long.parseLong(ss.getAttributeName(q2))));
+        return sorted;
+    }
+
+    /**
+     * Get the binary file (executable or library) that was mapped at a given
+     * instruction pointer, at a given time.
+     *
+     * @param ts
+     *            The timestamp
+     * @param vpid
+     *            The VPID of the process we are querying for
+     * @param ip
+     *            The instruction pointer
+     * @return The loaded binary, or null if no binary is known to be mapped at
+     *         this address at this time
+     */
+    public @Nullable UstDebugInfoLoadedBinaryFile getMatchingFile(long ts, long vpid, long ip) {
+        int vpidIndex = Arrays.binarySearch(fVpids, vpid);
+        if (vpidIndex < 0) {
+            return null;
+        }
+        int first = fVpidStarts[vpidIndex];
+        int baddrIndex = Arrays.binarySearch(fBaddrs, first, fVpidStarts[vpidIndex + 1], ip);
+        if (baddrIndex < 0) {
+            baddrIndex = -baddrIndex - 2;
+        }
+        /*
+         * The mappings valid at a given time do not overlap, so only the
+         * highest base address below 'ip' that is mapped at that time can
+         * contain it. Base addresses that are not mapped at that time are
+         * skipped.
+         */
+        for (; baddrIndex >= first; baddrIndex--) {
+            int mapping = findMapping(baddrIndex, ts);
+            if (mapping >= 0) {
+                return (ip < fEndAddrs[mapping] ? fFiles[mapping] : null);
+            }
+        }
+        return null;
+    }
+
+    private int findMapping(int baddrIndex, long ts) {
+        int from = fBaddrStarts[baddrIndex];
+        int to = fBaddrStarts[baddrIndex + 1];
+        int index = Arrays.binarySearch(fStartTimes, from, to, ts);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        if (index < from || fEndTimes[index] < ts) {
+            return -1;
+        }
+        return index;
+    }
+
+    // ------------------------------------------------------------------------
+    // Helper classes
+    // ------------------------------------------------------------------------
+
+    private static class Mapping {
+        private final long fStart;
+        private final long fEnd;
+        private final long fEndAddr;
+        private final UstDebugInfoLoadedBinaryFile fFile;
+
+        public Mapping(long start, long end, long endAddr, UstDebugInfoLoadedBinaryFile file) {
+            fStart = start;
+            fEnd = end;
+            fEndAddr = endAddr;
+            fFile = file;
+        }
+    }
+
+    private static class Builder {
+        private final LongList fVpids = new LongList();
+        private final LongList fVpidStarts = new LongList();
+        private final LongList fBaddrs = new LongList();
+        private final LongList fBaddrStarts = new LongList();
+        private final LongList fStartTimes = new LongList();
+        private final LongList fEndTimes = new LongList();
+        private final LongList fEndAddrs = new LongList();
+        private final List<UstDebugInfoLoadedBinaryFile> fFiles = new ArrayList<>();
+
+        public Builder() {
+            fVpidStarts.add(0);
+            fBaddrStarts.add(0);
+        }
+
+        public void addVpid(long vpid) {
+            fVpids.add(vpid);
+            fVpidStarts.add(fVpidStarts.get(fVpidStarts.size() - 1));
+        }
+
+        public void addBaddr(long baddr) {
+            fBaddrs.add(baddr);
+            fBaddrStarts.add(fBaddrStarts.get(fBaddrStarts.size() - 1));
+            fVpidStarts.increment(fVpidStarts.size() - 1);
+        }
+
+        public void addMapping(Mapping mapping) {
+            fStartTimes.add(mapping.fStart);
+            fEndTimes.add(mapping.fEnd);
+            fEndAddrs.add(mapping.fEndAddr);
+            fFiles.add(mapping.fFile);
+            fBaddrStarts.increment(fBaddrStarts.size() - 1);
+        }
+    }
+
+    private static class LongList {
+        private long[] fArray = new long[16];
+        private int fSize = 0;
+
+        public void add(long value) {
+            if (fSize == fArray.length) {
+                fArray = Arrays.copyOf(fArray, fSize * 2);
+            }
+            fArray[fSize++] = value;
+        }
+
+        public long get(int index) {
+            return fArray[index];
+        }
+
+        public void increment(int index) {
+            fArray[index]++;
+        }
+
+        public int size() {
+            return fSize;
+        }
+
+        public long[] toArray() {
+            return Arrays.copyOf(fArray, fSize);
+        }
+
+        public int[] toIntArray() {
+            int[] array = new int[fSize];
+            for (int i = 0; i < fSize; i++) {
+                array[i] = (int) fArray[i];
+            }
+            return array;
+        }
+    }
+}
@@ -14,15 +14,13 @@ import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.NavigableSet;
-import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.stream.Collectors;
 
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.internal.lttng2.ust.core.analysis.debuginfo.UstDebugInfoBinaryFile;
 import org.eclipse.tracecompass.internal.lttng2.ust.core.analysis.debuginfo.UstDebugInfoLoadedBinaryFile;
+import org.eclipse.tracecompass.internal.lttng2.ust.core.analysis.debuginfo.UstDebugInfoMappingIndex;
 import org.eclipse.tracecompass.internal.lttng2.ust.core.analysis.debuginfo.UstDebugInfoStateProvider;
 import org.eclipse.tracecompass.lttng2.ust.core.trace.LttngUstTrace;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
@@ -30,7 +28,6 @@ import org.eclipse.tracecompass.statesystem.core.StateSystemUtils;
 import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
 import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
 import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
-import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
 import org.eclipse.tracecompass.tmf.core.analysis.TmfAnalysisRequirement;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfAnalysisException;
 import org.eclipse.tracecompass.tmf.core.statesystem.ITmfStateProvider;
@@ -54,6 +51,8 @@ public class UstDebugInfoAnalysisModule extends TmfStateSystemAnalysisModule {
      */
     public static final String ID = "org.eclipse.linuxtools.lttng2.ust.analysis.debuginfo"; //$NON-NLS-1$
 
+    private volatile @Nullable UstDebugInfoMappingIndex fMappingIndex = null;
+
     @Override
     protected ITmfStateProvider createStateProvider() {
         return new UstDebugInfoStateProvider(checkNotNull(getTrace()));
@@ -176,71 +175,34 @@ public class UstDebugInfoAnalysisModule extends TmfStateSystemAnalysisModule {
      *         and its build ID.
      */
     @Nullable UstDebugInfoLoadedBinaryFile getMatchingFile(long ts, long vpid, long ip) {
-        waitForCompletion();
-        final ITmfStateSystem ss = checkNotNull(getStateSystem());
-
-        List<Integer> possibleBaddrQuarks = ss.getQuarks(String.valueOf(vpid), "*"); //$NON-NLS-1$
-
-        /* Get the most probable base address from all the known ones */
-        NavigableSet<Long> possibleBaddrs = possibleBaddrQuarks.stream()
-            .map(quark -> {
-                String baddrStr = ss.getAttributeName(quark.intValue());
-                return checkNotNull(Long.valueOf(baddrStr));
-            })
-            .collect(Collectors.toCollection(TreeSet::new));
-
-        final Long potentialBaddr = possibleBaddrs.floor(ip);
-        if (potentialBaddr == null) {
+        UstDebugInfoMappingIndex index = getMappingIndex();
+        if (index == null) {
             return null;
         }
+        return index.getMatchingFile(ts, vpid, ip);
+    }
 
-        /* Make sure the 'ip' fits in the expected memory range */
-        try {
-            final List<ITmfStateInterval> fullState = ss.queryFullState(ts);
-
-            final int baddrQuark = ss.getQuarkAbsolute(String.valueOf(vpid), String.valueOf(potentialBaddr));
-            final long endAddr = fullState.get(baddrQuark).getStateValue().unboxLong();
-
-            if (!(ip < endAddr)) {
-                /*
-                 * Not the correct memory range after all. We do not have
-                 * information about the library that was loaded here.
-                 */
-                return null;
-            }
-
-            /*
-             * We've found the correct base address, now to determine what
-             * library was loaded there at that time.
-             */
-            List<Integer> buildIds = ss.getSubAttributes(baddrQuark, false);
-            Optional<Integer> potentialBuildIdQuark = buildIds.stream()
-                .filter(id -> {
-                    int quark = id.intValue();
-                    ITmfStateValue value = fullState.get(quark).getStateValue();
-                    return (!value.isNull());
-                })
-                .findFirst();
-
-            if (!potentialBuildIdQuark.isPresent()) {
-                /* We didn't have the information after all. */
-                return null;
+    /**
+     * Get the index of the memory mappings, building it from the state system
+     * the first time it is needed.
+     */
+    private @Nullable UstDebugInfoMappingIndex getMappingIndex() {
+        UstDebugInfoMappingIndex index = fMappingIndex;
+        if (index != null) {
+            return index;
+        }
+        waitForCompletion();
+        synchronized (this) {
+            index = fMappingIndex;
+            if (index == null) {
+                try {
+                    index = UstDebugInfoMappingIndex.create(checkNotNull(getStateSystem()));
+                } catch (StateSystemDisposedException e) {
+                    return null;
+                }
+                fMappingIndex = index;
             }
-
-            /* Ok, we have everything we need! Return the information. */
-            long baddr = Long.parseLong(ss.getAttributeName(baddrQuark));
-
-            int buildIdQuark = potentialBuildIdQuark.get().intValue();
-            String buildId = ss.getAttributeName(buildIdQuark);
-            String filePath = fullState.get(buildIdQuark).getStateValue().unboxStr();
-            return new UstDebugInfoLoadedBinaryFile(baddr, filePath, buildId);
-
-        } catch (AttributeNotFoundException e) {
-            /* We're only using quarks we've checked for. */
-            throw new IllegalStateException(e);
-        } catch (StateSystemDisposedException e) {
-            return null;
+            return index;
         }
-
     }
 }
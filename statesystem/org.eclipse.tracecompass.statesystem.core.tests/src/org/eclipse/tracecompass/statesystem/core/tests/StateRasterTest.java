@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.statesystem.core.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.internal.statesystem.core.backend.historytree.HistoryTreeBackend;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
+import org.eclipse.tracecompass.statesystem.core.StateRaster;
+import org.eclipse.tracecompass.statesystem.core.StateSystemFactory;
+import org.eclipse.tracecompass.statesystem.core.StateSystemUtils;
+import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
+import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Test the {@link StateRaster} class and the range queries, compared to full
+ * and single queries of the same state system
+ */
+@SuppressWarnings("javadoc")
+@RunWith(Parameterized.class)
+public class StateRasterTest {
+
+    private static final @NonNull String SSID = "test";
+    private static final long START_TIME = 1000L;
+    private static final long END_TIME = 1000000L;
+    private static final int NB_QUARKS = 10;
+
+    private final ITmfStateSystemBuilder fStateSystem;
+    private final List<@NonNull Integer> fQuarks = new ArrayList<>();
+    private File fFile;
+
+    @Parameters(name = "HistoryTree={0}")
+    public static Collection<Boolean> parameters() {
+        return Arrays.asList(Boolean.FALSE, Boolean.TRUE);
+    }
+
+    public StateRasterTest(Boolean historyTree) throws Exception {
+        IStateHistoryBackend backend;
+        if (historyTree) {
+            fFile = File.createTempFile("raster", ".ht");
+            /* Small nodes, so the intervals are spread in many nodes */
+            backend = new HistoryTreeBackend(SSID, fFile, 0, START_TIME, 4096, 2);
+        } else {
+            backend = StateHistoryBackendFactory.createInMemoryBackend(SSID, START_TIME);
+        }
+        fStateSystem = StateSystemFactory.newStateSystem(backend);
+        Random random = new Random(1);
+        for (int i = 0; i < NB_QUARKS; i++) {
+            fQuarks.add(fStateSystem.getQuarkAbsoluteAndAdd(SSID, Integer.toString(i)));
+        }
+        for (long t = START_TIME; t < END_TIME; t += 1 + random.nextInt(200)) {
+            int quark = fQuarks.get(random.nextInt(NB_QUARKS));
+            fStateSystem.modifyAttribute(t, TmfStateValue.newValueInt(random.nextInt(4)), quark);
+        }
+        fStateSystem.closeHistory(END_TIME);
+    }
+
+    @After
+    public void tearDown() {
+        fStateSystem.dispose();
+        if (fFile != null) {
+            fFile.delete();
+        }
+    }
+
+    private static void assertSameInterval(ITmfStateInterval expected, ITmfStateInterval actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getStartTime(), actual.getStartTime());
+        assertEquals(expected.getEndTime(), actual.getEndTime());
+        assertEquals(expected.getAttribute(), actual.getAttribute());
+        assertEquals(expected.getStateValue(), actual.getStateValue());
+    }
+
+    @Test
+    public void testQueryRange() throws Exception {
+        int quark = fQuarks.get(3);
+        long start = 300000;
+        long end = 310000;
+        TreeMap<Long, ITmfStateInterval> intervals = new TreeMap<>();
+        fStateSystem.queryRange(Arrays.asList(quark), start, end, interval -> {
+            assertEquals(quark, interval.getAttribute());
+            intervals.put(interval.getStartTime(), interval);
+        });
+        List<ITmfStateInterval> expected = StateSystemUtils.queryHistoryRange(fStateSystem, quark, start, end);
+        assertEquals(expected.size(), intervals.size());
+        int i = 0;
+        for (ITmfStateInterval interval : intervals.values()) {
+            assertSameInterval(expected.get(i++), interval);
+        }
+    }
+
+    @Test
+    public void testRaster() throws Exception {
+        for (long resolution : new long[] { 1, 37, 500, 20000 }) {
+            long start = 200000;
+            long end = start + 1000 * resolution + resolution / 2;
+            List<@NonNull Integer> quarks = fQuarks.subList(2, 7);
+            StateRaster raster = StateRaster.query(fStateSystem, quarks, start, end, resolution);
+            assertEquals(end, raster.getSampleTime(raster.getNbSamples() - 1));
+            for (int sample = 0; sample < raster.getNbSamples(); sample++) {
+                List<ITmfStateInterval> fullState = fStateSystem.queryFullState(raster.getSampleTime(sample));
+                for (int quark : quarks) {
+                    assertSameInterval(fullState.get(quark), raster.getInterval(quark, sample));
+                }
+                assertNull(raster.getInterval(fQuarks.get(0), sample));
+            }
+        }
+    }
+
+    @Test
+    public void testRuns() throws Exception {
+        long resolution = 1000;
+        StateRaster raster = StateRaster.query(fStateSystem, fQuarks, START_TIME, END_TIME, resolution);
+        for (int quark : fQuarks) {
+            List<ITmfStateInterval> runs = raster.getRuns(quark);
+            assertTrue(runs.size() <= raster.getNbSamples());
+            for (int run = 0; run < runs.size(); run++) {
+                /* Each run starts at the first sample in its interval */
+                int sample = raster.getFirstSample(quark, run);
+                ITmfStateInterval interval = runs.get(run);
+                assertTrue(interval.intersects(raster.getSampleTime(sample)));
+                assertTrue(sample == 0 || !interval.intersects(raster.getSampleTime(sample - 1)));
+            }
+        }
+    }
+
+    @Test
+    public void testSingleSample() throws Exception {
+        StateRaster raster = StateRaster.query(fStateSystem, fQuarks, 5000, 5000, 100);
+        assertEquals(1, raster.getNbSamples());
+        for (int quark : fQuarks) {
+            assertSameInterval(fStateSystem.querySingleState(5000, quark), raster.getInterval(quark, 0));
+        }
+    }
+}
@@ -20,10 +20,12 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
@@ -638,6 +640,40 @@ public class StateSystem implements ITmfStateSystemBuilder {
         return ret;
     }
 
+    @Override
+    public void queryRange(Collection<@NonNull Integer> quarks, long start, long end,
+            Consumer<@NonNull ITmfStateInterval> consumer)
+            throws AttributeNotFoundException, TimeRangeException,
+            StateSystemDisposedException {
+        if (isDisposed) {
+            throw new StateSystemDisposedException();
+        }
+        if (start > end) {
+            throw new TimeRangeException(getSSID() + " Start:" + start + ", End:" + end); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        for (int quark : quarks) {
+            if (quark < 0 || quark >= getNbAttributes()) {
+                throw new AttributeNotFoundException(getSSID() + " Quark:" + quark); //$NON-NLS-1$
+            }
+        }
+
+        /* Query the storage backend */
+        backend.doRangeQuery(quarks, start, end, consumer);
+
+        /*
+         * If we are currently building the history, also send the "ongoing"
+         * states which are not yet written to the history.
+         */
+        if (transState.isActive()) {
+            for (int quark : quarks) {
+                ITmfStateInterval interval = transState.getIntervalAt(end, quark);
+                if (interval != null) {
+                    consumer.accept(interval);
+                }
+            }
+        }
+    }
+
     //--------------------------------------------------------------------------
     //        Debug methods
     //--------------------------------------------------------------------------
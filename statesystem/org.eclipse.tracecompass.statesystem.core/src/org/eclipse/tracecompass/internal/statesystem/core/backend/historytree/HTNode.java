@@ -20,9 +20,11 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
@@ -482,6 +484,37 @@ public abstract class HTNode {
         }
     }
 
+    /**
+     * Send the intervals of this node for a set of attributes that intersect a
+     * time range to a consumer.
+     *
+     * @param quarks
+     *            The attributes, as a set of quarks
+     * @param start
+     *            The start of the time range
+     * @param end
+     *            The end of the time range
+     * @param consumer
+     *            The consumer of the intervals
+     * @throws TimeRangeException
+     *             If 'start' is invalid
+     */
+    public void writeInfoFromNode(BitSet quarks, long start, long end, Consumer<@NonNull ITmfStateInterval> consumer)
+            throws TimeRangeException {
+        fRwl.readLock().lock();
+        try {
+            /* The intervals that end before 'start' are skipped */
+            for (int i = getStartIndexFor(start); i < fIntervals.size(); i++) {
+                HTInterval interval = fIntervals.get(i);
+                if (interval.getStartTime() <= end && quarks.get(interval.getAttribute())) {
+                    consumer.accept(interval);
+                }
+            }
+        } finally {
+            fRwl.readLock().unlock();
+        }
+    }
+
     /**
      * Get a single Interval from the information in this node If the
      * key/timestamp pair cannot be found, we return null.
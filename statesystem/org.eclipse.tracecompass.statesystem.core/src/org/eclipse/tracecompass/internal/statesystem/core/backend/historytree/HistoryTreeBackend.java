@@ -20,7 +20,12 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.tracecompass.internal.statesystem.core.Activator;
@@ -254,6 +259,44 @@ public class HistoryTreeBackend implements IStateHistoryBackend {
         return getRelevantInterval(t, attributeQuark);
     }
 
+    @Override
+    public void doRangeQuery(Collection<@NonNull Integer> quarks, long start, long end,
+            Consumer<@NonNull ITmfStateInterval> consumer)
+            throws TimeRangeException, StateSystemDisposedException {
+        checkValidTime(start);
+        checkValidTime(end);
+        BitSet quarkSet = new BitSet();
+        for (int quark : quarks) {
+            quarkSet.set(quark);
+        }
+
+        /* Read each node that intersects the range once, from the root down */
+        Deque<HTNode> queue = new ArrayDeque<>();
+        queue.add(fSht.getRootNode());
+        try {
+            while (!queue.isEmpty()) {
+                HTNode currentNode = queue.remove();
+                currentNode.writeInfoFromNode(quarkSet, start, end, consumer);
+                if (currentNode.getNodeType() == HTNode.NodeType.CORE) {
+                    CoreNode coreNode = (CoreNode) currentNode;
+                    int nbChildren = coreNode.getNbChildren();
+                    for (int i = 0; i < nbChildren; i++) {
+                        long childStart = coreNode.getChildStart(i);
+                        long childEnd = (i + 1 < nbChildren) ? coreNode.getChildStart(i + 1) - 1 : Long.MAX_VALUE;
+                        if (childStart > end) {
+                            break;
+                        }
+                        if (childEnd >= start) {
+                            queue.add(fSht.readNode(coreNode.getChild(i)));
+                        }
+                    }
+                }
+            }
+        } catch (ClosedChannelException e) {
+            throw new StateSystemDisposedException(e);
+        }
+    }
+
     private void checkValidTime(long t) {
         long startTime = getStartTime();
         long endTime = getEndTime();
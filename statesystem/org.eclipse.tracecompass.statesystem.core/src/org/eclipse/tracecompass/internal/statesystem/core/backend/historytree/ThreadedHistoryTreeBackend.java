@@ -16,7 +16,11 @@ package org.eclipse.tracecompass.internal.statesystem.core.backend.historytree;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.tracecompass.common.core.collect.BufferedBlockingQueue;
@@ -256,6 +260,30 @@ public final class ThreadedHistoryTreeBackend extends HistoryTreeBackend
         }
     }
 
+    @Override
+    public void doRangeQuery(Collection<@NonNull Integer> quarks, long start, long end,
+            Consumer<@NonNull ITmfStateInterval> consumer)
+            throws TimeRangeException, StateSystemDisposedException {
+        super.doRangeQuery(quarks, start, end, consumer);
+
+        if (isFinishedBuilding()) {
+            return;
+        }
+
+        /*
+         * Also send the intervals that are still in the queue. Some of them
+         * may have been inserted in the tree during the query, in which case
+         * they are sent twice.
+         */
+        Set<Integer> quarkSet = new HashSet<>(quarks);
+        for (ITmfStateInterval interval : intervalQueue) {
+            if (quarkSet.contains(interval.getAttribute()) &&
+                    interval.getStartTime() <= end && interval.getEndTime() >= start) {
+                consumer.accept(interval);
+            }
+        }
+    }
+
     @Override
     public ITmfStateInterval doSingularQuery(long t, int attributeQuark)
             throws TimeRangeException, StateSystemDisposedException {
@@ -12,7 +12,9 @@
 
 package org.eclipse.tracecompass.statesystem.core;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
@@ -408,4 +410,36 @@ public interface ITmfStateSystem {
      */
     @NonNull ITmfStateInterval querySingleState(long t, int attributeQuark)
             throws AttributeNotFoundException, StateSystemDisposedException;
+
+    /**
+     * Range query method. It sends all the intervals of a set of attributes
+     * that intersect a time range to a consumer, in no particular order,
+     * reading the state history only once for all the attributes.
+     *
+     * It should be used instead of repeated queryFullState() calls when only
+     * a few attributes are needed over a time range. While the history is
+     * being built, an interval can be sent more than once, or not at all if it
+     * is being written to the history. See {@link StateRaster} for sampled
+     * results that do not have these limitations.
+     *
+     * @param quarks
+     *            The attributes to query
+     * @param start
+     *            The start of the time range
+     * @param end
+     *            The end of the time range
+     * @param consumer
+     *            The consumer of the intervals
+     * @throws TimeRangeException
+     *             If the time range is outside of the range of the state
+     *             history
+     * @throws AttributeNotFoundException
+     *             If one of the requested quarks does not exist in the model
+     * @throws StateSystemDisposedException
+     *             If the query is sent after the state system has been disposed
+     * @since 2.0
+     */
+    void queryRange(@NonNull Collection<@NonNull Integer> quarks, long start, long end,
+            @NonNull Consumer<@NonNull ITmfStateInterval> consumer)
+            throws AttributeNotFoundException, StateSystemDisposedException;
 }
\ No newline at end of file
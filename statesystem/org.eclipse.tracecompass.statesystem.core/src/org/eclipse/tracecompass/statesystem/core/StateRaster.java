@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.statesystem.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+
+/**
+ * The states of a set of attributes, sampled at a given resolution over a
+ * time range. The samples are taken at the start time, then every
+ * 'resolution' time units, and at the end time.
+ *
+ * The states are stored per attribute and run-length encoded: each run is an
+ * interval that contains one or more consecutive sample times. The raster is
+ * computed with a single range query over the state history, instead of one
+ * full query per sample time.
+ *
+ * @since 2.0
+ */
+@NonNullByDefault
+public final class StateRaster {
+
+    private static final Comparator<ITmfStateInterval> START_COMPARATOR = (a, b) -> Long.compare(a.getStartTime(), b.getStartTime());
+
+    private final long fStart;
+    private final long fEnd;
+    private final long fResolution;
+    private final int fNbSamples;
+    private final Map<Integer, Runs> fRuns = new HashMap<>();
+
+    /**
+     * The runs of an attribute, with the index of the first sample of each run
+     */
+    private static final class Runs {
+        private final int[] fFirstSamples;
+        private final List<ITmfStateInterval> fIntervals;
+
+        public Runs(int[] firstSamples, List<ITmfStateInterval> intervals) {
+            fFirstSamples = firstSamples;
+            fIntervals = intervals;
+        }
+    }
+
+    private StateRaster(long start, long end, long resolution) {
+        fStart = start;
+        fEnd = end;
+        fResolution = resolution;
+        long nbSamples = (end - start + resolution - 1) / resolution + 1;
+        if (nbSamples > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many samples: " + nbSamples); //$NON-NLS-1$
+        }
+        fNbSamples = (int) nbSamples;
+    }
+
+    /**
+     * Compute the raster of a set of attributes
+     *
+     * @param ss
+     *            The state system
+     * @param quarks
+     *            The attributes
+     * @param start
+     *            The start time
+     * @param end
+     *            The end time
+     * @param resolution
+     *            The time between two samples
+     * @return The state raster
+     * @throws TimeRangeException
+     *             If the time range is outside of the range of the state
+     *             history
+     * @throws AttributeNotFoundException
+     *             If one of the quarks does not exist in the model
+     * @throws StateSystemDisposedException
+     *             If the state system is disposed during the query
+     */
+    public static StateRaster query(ITmfStateSystem ss, Collection<Integer> quarks, long start, long end, long resolution)
+            throws AttributeNotFoundException, StateSystemDisposedException {
+        if (start > end) {
+            throw new TimeRangeException(ss.getSSID() + " Start:" + start + ", End:" + end); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        StateRaster raster = new StateRaster(start, end, Math.max(1, resolution));
+
+        /* Only keep the intervals that contain at least one sample */
+        Map<Integer, List<ITmfStateInterval>> sampled = new HashMap<>();
+        for (Integer quark : quarks) {
+            sampled.put(quark, new ArrayList<>());
+        }
+        ss.queryRange(quarks, start, end, interval -> {
+            int sample = raster.getFirstSampleAfter(interval.getStartTime());
+            if (sample < raster.fNbSamples && raster.getSampleTime(sample) <= interval.getEndTime()) {
+                List<ITmfStateInterval> intervals = sampled.get(interval.getAttribute());
+                if (intervals != null) {
+                    intervals.add(interval);
+                }
+            }
+        });
+
+        for (Map.Entry<Integer, List<ITmfStateInterval>> entry : sampled.entrySet()) {
+            int quark = entry.getKey();
+            raster.fRuns.put(quark, raster.encode(ss, quark, entry.getValue()));
+        }
+        return raster;
+    }
+
+    /**
+     * Encode the intervals of an attribute, which can contain duplicates and
+     * can miss some intervals while the history is being built. The missing
+     * samples are queried individually.
+     */
+    private Runs encode(ITmfStateSystem ss, int quark, List<ITmfStateInterval> intervals)
+            throws AttributeNotFoundException, StateSystemDisposedException {
+        Collections.sort(intervals, START_COMPARATOR);
+        int[] firstSamples = new int[Math.min(fNbSamples, intervals.size() + 1)];
+        List<ITmfStateInterval> runs = new ArrayList<>(firstSamples.length);
+        int index = 0;
+        int sample = 0;
+        while (sample < fNbSamples) {
+            long time = getSampleTime(sample);
+            while (index < intervals.size() && intervals.get(index).getEndTime() < time) {
+                index++;
+            }
+            ITmfStateInterval interval;
+            if (index < intervals.size() && intervals.get(index).getStartTime() <= time) {
+                interval = intervals.get(index);
+            } else {
+                interval = ss.querySingleState(time, quark);
+            }
+            if (runs.size() == firstSamples.length) {
+                firstSamples = Arrays.copyOf(firstSamples, Math.min(fNbSamples, 2 * firstSamples.length));
+            }
+            firstSamples[runs.size()] = sample;
+            runs.add(interval);
+            if (interval.getEndTime() >= fEnd) {
+                break;
+            }
+            sample = getFirstSampleAfter(interval.getEndTime() + 1);
+        }
+        return new Runs(Arrays.copyOf(firstSamples, runs.size()), runs);
+    }
+
+    /**
+     * Get the index of the first sample at or after a time
+     */
+    private int getFirstSampleAfter(long time) {
+        if (time <= fStart) {
+            return 0;
+        }
+        if (time > fEnd) {
+            return fNbSamples;
+        }
+        return (int) ((time - fStart + fResolution - 1) / fResolution);
+    }
+
+    /**
+     * @return The start time
+     */
+    public long getStartTime() {
+        return fStart;
+    }
+
+    /**
+     * @return The end time
+     */
+    public long getEndTime() {
+        return fEnd;
+    }
+
+    /**
+     * @return The time between two samples
+     */
+    public long getResolution() {
+        return fResolution;
+    }
+
+    /**
+     * @return The number of samples
+     */
+    public int getNbSamples() {
+        return fNbSamples;
+    }
+
+    /**
+     * Get the time of a sample
+     *
+     * @param sample
+     *            The sample index
+     * @return The sample time
+     */
+    public long getSampleTime(int sample) {
+        return Math.min(fEnd, fStart + sample * fResolution);
+    }
+
+    /**
+     * @return The attributes of this raster
+     */
+    public Set<Integer> getQuarks() {
+        return Collections.unmodifiableSet(fRuns.keySet());
+    }
+
+    /**
+     * Get the runs of an attribute, which are its distinct intervals that
+     * contain a sample time, in chronological order
+     *
+     * @param quark
+     *            The attribute
+     * @return The runs, or an empty list if the attribute is not in this
+     *         raster
+     */
+    public List<ITmfStateInterval> getRuns(int quark) {
+        Runs runs = fRuns.get(quark);
+        if (runs == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(runs.fIntervals);
+    }
+
+    /**
+     * Get the index of the first sample of a run of an attribute
+     *
+     * @param quark
+     *            The attribute
+     * @param run
+     *            The run index
+     * @return The index of the first sample of that run
+     * @throws IndexOutOfBoundsException
+     *             If the attribute is not in this raster or if the run index
+     *             is out of bounds
+     */
+    public int getFirstSample(int quark, int run) {
+        Runs runs = fRuns.get(quark);
+        if (runs == null) {
+            throw new IndexOutOfBoundsException("Quark:" + quark); //$NON-NLS-1$
+        }
+        return runs.fFirstSamples[run];
+    }
+
+    /**
+     * Get the state of an attribute at a sample time
+     *
+     * @param quark
+     *            The attribute
+     * @param sample
+     *            The sample index
+     * @return The interval that contains the sample time, or null if the
+     *         attribute is not in this raster
+     */
+    public @Nullable ITmfStateInterval getInterval(int quark, int sample) {
+        Runs runs = fRuns.get(quark);
+        if (runs == null || sample < 0 || sample >= fNbSamples) {
+            return null;
+        }
+        int run = Arrays.binarySearch(runs.fFirstSamples, sample);
+        if (run < 0) {
+            run = -run - 2;
+        }
+        return runs.fIntervals.get(run);
+    }
+}
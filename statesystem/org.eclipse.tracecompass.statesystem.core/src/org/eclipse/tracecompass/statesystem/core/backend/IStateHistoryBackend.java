@@ -15,7 +15,9 @@ package org.eclipse.tracecompass.statesystem.core.backend;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.PrintWriter;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
@@ -185,6 +187,51 @@ public interface IStateHistoryBackend {
             throws TimeRangeException, AttributeNotFoundException,
             StateSystemDisposedException;
 
+    /**
+     * Range query method. Send all the intervals of a set of attributes that
+     * intersect a time range to a consumer, in no particular order. The
+     * default implementation follows each attribute with singular queries,
+     * backends that can read all the attributes in one pass should override
+     * it.
+     *
+     * @param quarks
+     *            The attributes to query
+     * @param start
+     *            The start of the time range, which must be valid
+     * @param end
+     *            The end of the time range, which must be valid
+     * @param consumer
+     *            The consumer of the intervals. While the history is being
+     *            built, an interval can be sent more than once, or not at all
+     *            if it is not yet stored in this backend.
+     * @throws TimeRangeException
+     *             If the time range is invalid
+     * @throws AttributeNotFoundException
+     *             If a quark was invalid
+     * @throws StateSystemDisposedException
+     *             If the state system is disposed while a request is ongoing.
+     * @since 2.0
+     */
+    default void doRangeQuery(@NonNull Collection<@NonNull Integer> quarks, long start, long end,
+            @NonNull Consumer<@NonNull ITmfStateInterval> consumer)
+            throws TimeRangeException, AttributeNotFoundException,
+            StateSystemDisposedException {
+        for (int quark : quarks) {
+            long t = start;
+            while (t <= end) {
+                ITmfStateInterval interval = doSingularQuery(t, quark);
+                if (interval == null) {
+                    break;
+                }
+                consumer.accept(interval);
+                if (interval.getEndTime() == Long.MAX_VALUE) {
+                    break;
+                }
+                t = interval.getEndTime() + 1;
+            }
+        }
+    }
+
     /**
      * Debug method to print the contents of the history backend.
      *
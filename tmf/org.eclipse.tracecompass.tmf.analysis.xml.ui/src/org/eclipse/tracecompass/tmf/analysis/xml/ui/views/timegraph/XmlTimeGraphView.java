@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014 École Polytechnique de Montréal
+ * Copyright (c) 2014, 2016 École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -471,6 +471,12 @@ public class XmlTimeGraphView extends AbstractTimeGraphView {
         }
     }
 
+    @Override
+    protected boolean isEntryZoomIndependent() {
+        /* The events of an entry are queried from its own display attribute */
+        return true;
+    }
+
     @Override
     protected List<ITimeEvent> getEventList(TimeGraphEntry entry, long startTime, long endTime, long resolution, IProgressMonitor monitor) {
         if (!(entry instanceof XmlEntry)) {
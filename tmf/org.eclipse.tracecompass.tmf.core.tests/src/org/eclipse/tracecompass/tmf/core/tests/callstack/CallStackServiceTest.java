@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.tests.callstack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.tracecompass.internal.tmf.core.callstack.CallGraphNode;
+import org.eclipse.tracecompass.internal.tmf.core.callstack.CallStackService;
+import org.eclipse.tracecompass.internal.tmf.core.callstack.FunctionCall;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
+import org.eclipse.tracecompass.statesystem.core.StateSystemFactory;
+import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
+import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
+import org.eclipse.tracecompass.statesystem.core.statevalue.TmfStateValue;
+import org.eclipse.tracecompass.tmf.core.callstack.CallStackStateProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link CallStackService} class, using a state system with
+ * the layout of the {@link CallStackStateProvider}.
+ */
+@SuppressWarnings("javadoc")
+public class CallStackServiceTest {
+
+    private static final ITmfStateValue MAIN = TmfStateValue.newValueString("main");
+    private static final ITmfStateValue FOO = TmfStateValue.newValueString("foo");
+    private static final ITmfStateValue BAR = TmfStateValue.newValueString("bar");
+
+    private ITmfStateSystemBuilder fSs;
+    private int fThread1;
+    private int fThread2;
+
+    @Before
+    public void setUp() throws AttributeNotFoundException, StateSystemDisposedException {
+        fSs = StateSystemFactory.newStateSystem(StateHistoryBackendFactory.createInMemoryBackend("test", 0));
+
+        /* main [0, 100) calls foo [10, 20) and bar [30, 50), bar calls foo [35, 40) */
+        fThread1 = fSs.getQuarkAbsoluteAndAdd(CallStackStateProvider.THREADS, "1", CallStackStateProvider.CALL_STACK);
+        /* main [0, 60) calls foo [5, 15) */
+        fThread2 = fSs.getQuarkAbsoluteAndAdd(CallStackStateProvider.THREADS, "2", CallStackStateProvider.CALL_STACK);
+
+        fSs.pushAttribute(0, MAIN, fThread1);
+        fSs.pushAttribute(0, MAIN, fThread2);
+        fSs.pushAttribute(5, FOO, fThread2);
+        fSs.pushAttribute(10, FOO, fThread1);
+        fSs.popAttribute(15, fThread2);
+        fSs.popAttribute(20, fThread1);
+        fSs.pushAttribute(30, BAR, fThread1);
+        fSs.pushAttribute(35, FOO, fThread1);
+        fSs.popAttribute(40, fThread1);
+        fSs.popAttribute(50, fThread1);
+        fSs.popAttribute(60, fThread2);
+        fSs.popAttribute(100, fThread1);
+        fSs.closeHistory(200);
+    }
+
+    private static void assertCall(FunctionCall call, int depth, long entry, long exit, ITmfStateValue value) {
+        assertEquals(depth, call.getDepth());
+        assertEquals(entry, call.getEntryTime());
+        assertEquals(exit, call.getExitTime());
+        assertEquals(value, call.getValue());
+    }
+
+    private static void assertNode(CallGraphNode node, long total, long self, long calls) {
+        assertNotNull(node);
+        assertEquals(total, node.getTotalTime());
+        assertEquals(self, node.getSelfTime());
+        assertEquals(calls, node.getNbCalls());
+    }
+
+    @Test
+    public void testStackIntervals() throws AttributeNotFoundException, StateSystemDisposedException {
+        List<List<ITmfStateInterval>> levels = CallStackService.queryStackIntervals(fSs, fThread1, 0, 200);
+        assertEquals(3, levels.size());
+        for (List<ITmfStateInterval> level : levels) {
+            /* The intervals cover the range without gaps */
+            long time = 0;
+            for (ITmfStateInterval interval : level) {
+                assertEquals(time, interval.getStartTime());
+                time = interval.getEndTime() + 1;
+            }
+            assertTrue(time > 200);
+        }
+    }
+
+    @Test
+    public void testFunctionCalls() throws AttributeNotFoundException, StateSystemDisposedException {
+        List<FunctionCall> calls = CallStackService.queryFunctionCalls(fSs, fThread1, 0, 200);
+        assertEquals(4, calls.size());
+        assertCall(calls.get(0), 1, 0, 100, MAIN);
+        assertCall(calls.get(1), 2, 10, 20, FOO);
+        assertCall(calls.get(2), 2, 30, 50, BAR);
+        assertCall(calls.get(3), 3, 35, 40, FOO);
+
+        /* Calls that intersect the range are not clipped */
+        calls = CallStackService.queryFunctionCalls(fSs, fThread1, 45, 60);
+        assertEquals(2, calls.size());
+        assertCall(calls.get(0), 1, 0, 100, MAIN);
+        assertCall(calls.get(1), 2, 30, 50, BAR);
+    }
+
+    @Test
+    public void testAggregate() throws AttributeNotFoundException, StateSystemDisposedException {
+        CallGraphNode root = CallStackService.aggregate(fSs, fThread1, 0, 200);
+        assertEquals(100, root.getTotalTime());
+        CallGraphNode main = root.getChild(MAIN);
+        assertNode(main, 100, 70, 1);
+        assertNode(main.getChild(FOO), 10, 10, 1);
+        CallGraphNode bar = main.getChild(BAR);
+        assertNode(bar, 20, 15, 1);
+        assertNode(bar.getChild(FOO), 5, 5, 1);
+
+        /* Only the time inside the range is counted */
+        root = CallStackService.aggregate(fSs, fThread1, 15, 45);
+        main = root.getChild(MAIN);
+        assertNode(main, 31, 10, 1);
+        assertNode(main.getChild(FOO), 5, 5, 1);
+        assertNode(main.getChild(BAR), 16, 11, 1);
+    }
+
+    @Test
+    public void testAggregateThreads() throws AttributeNotFoundException, StateSystemDisposedException {
+        CallGraphNode root = CallStackService.aggregate(fSs, Arrays.asList(fThread1, fThread2), 0, 200);
+        assertEquals(160, root.getTotalTime());
+        assertEquals(1, root.getChildren().size());
+        CallGraphNode main = root.getChild(MAIN);
+        assertNode(main, 160, 120, 2);
+        assertNode(main.getChild(FOO), 20, 20, 2);
+        assertNode(main.getChild(BAR), 20, 15, 1);
+    }
+}
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.tests.callstack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.eclipse.tracecompass.internal.tmf.core.callstack.FunctionNameMapper;
+import org.eclipse.tracecompass.internal.tmf.core.callstack.SymbolIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link SymbolIndex} class.
+ */
+@SuppressWarnings("javadoc")
+public class SymbolIndexTest {
+
+    private static final File NM_OUTPUT = Paths.get("..", "..", "tmf", "org.eclipse.tracecompass.tmf.core.tests",
+            "testfiles", "callstack", "nm-output-example").toFile();
+
+    private File fCacheDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        fCacheDirectory = Files.createTempDirectory("symbols").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = fCacheDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        fCacheDirectory.delete();
+    }
+
+    @Test
+    public void testNmFile() throws IOException {
+        SymbolIndex index = SymbolIndex.readNmTextFile(NM_OUTPUT, false);
+        assertEquals(28, index.size());
+        assertEquals("main", index.getExactName(0x400756));
+        assertEquals("Bar<int, int>* foo<int, int>(int, int)", index.getExactName(0x4007c2));
+        /* The last of the symbols at the same address is kept */
+        assertEquals("data_start", index.getExactName(0x601048));
+        assertNull(index.getExactName(0x400757));
+    }
+
+    @Test
+    public void testNmFileFunctions() throws IOException {
+        SymbolIndex index = SymbolIndex.readNmTextFile(NM_OUTPUT, true);
+        assertEquals(16, index.size());
+        assertEquals("main", index.getExactName(0x400756));
+        assertEquals("Bar<int, int>* foo<int, int>(int, int)", index.getExactName(0x4007c2));
+        /* Data and BSS symbols are not kept */
+        assertNull(index.getExactName(0x601050));
+        assertNull(index.getExactName(0x601198));
+    }
+
+    @Test
+    public void testNearestName() throws IOException {
+        /* Without sizes, only the exact symbol addresses are resolved */
+        SymbolIndex index = SymbolIndex.readNmTextFile(NM_OUTPUT, true);
+        assertEquals("main", index.getNearestName(0x400756));
+        assertNull(index.getNearestName(0x40076f));
+        assertEquals("__static_initialization_and_destruction_0(int, int)", index.getNearestName(0x400770));
+        assertNull(index.getNearestName(Long.MAX_VALUE));
+        assertNull(index.getNearestName(0x400000));
+    }
+
+    @Test
+    public void testNmFileSizes() throws IOException {
+        File mapping = new File(fCacheDirectory, "mapping.txt");
+        String contents = "0000000000001000 0000000000000010 T foo\n" +
+                "0000000000001010 0000000000000008 t bar\n" +
+                "0000000000001020 W baz\n" +
+                "0000000000002000 0000000000000100 D table\n" +
+                "0000000000003000 0000000000000010 b buffer\n" +
+                "                 U undefined\n";
+        Files.write(mapping.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+
+        SymbolIndex index = SymbolIndex.readNmTextFile(mapping, true);
+        assertEquals(3, index.size());
+        assertEquals(0x10, index.getSize(0));
+        assertEquals(0, index.getSize(2));
+        assertEquals("foo", index.getNearestName(0x1000));
+        assertEquals("foo", index.getNearestName(0x100f));
+        assertEquals("bar", index.getNearestName(0x1017));
+        /* Between functions */
+        assertNull(index.getNearestName(0x1018));
+        /* Unknown size */
+        assertEquals("baz", index.getNearestName(0x1020));
+        assertNull(index.getNearestName(0x1021));
+        /* Data symbols */
+        assertNull(index.getNearestName(0x2000));
+        assertNull(index.getNearestName(0x3008));
+
+        index = SymbolIndex.readNmTextFile(mapping, false);
+        assertEquals(5, index.size());
+        assertEquals("table", index.getNearestName(0x20ff));
+        assertNull(index.getNearestName(0x2100));
+    }
+
+    @Test
+    public void testBuilder() {
+        SymbolIndex.Builder builder = new SymbolIndex.Builder();
+        builder.add(0x3000, 0x10, "c");
+        builder.add(0x1000, 0x10, "a");
+        builder.add(0xffffffff00000000L, 0x2000, "kernel");
+        builder.add(0x2000, 0x1000, "b");
+        builder.add(0x1000, 0x20, "alias");
+        SymbolIndex index = builder.build();
+
+        assertEquals(4, index.size());
+        assertEquals(0x1000, index.getAddress(0));
+        assertEquals("alias", index.getName(0));
+        assertEquals(0x20, index.getSize(0));
+        assertEquals(0xffffffff00000000L, index.getAddress(3));
+        assertEquals("alias", index.getNearestName(0x101f));
+        assertEquals("b", index.getNearestName(0x2fff));
+        assertEquals("c", index.getNearestName(0x300f));
+        assertNull(index.getNearestName(0x3010));
+        /* Addresses are unsigned */
+        assertNull(index.getNearestName(0x7fffffffffffffffL));
+        assertEquals("kernel", index.getNearestName(0xffffffff00001000L));
+        assertNull(index.getNearestName(0xffffffff00002000L));
+        assertNull(index.getNearestName(0xfff));
+
+        assertEquals(0, new SymbolIndex.Builder().build().size());
+    }
+
+    @Test
+    public void testCache() throws IOException {
+        SymbolIndex index = SymbolIndex.readNmTextFile(NM_OUTPUT, false);
+        File cacheFile = new File(fCacheDirectory, "nm.idx");
+        index.writeCache(cacheFile, NM_OUTPUT);
+
+        SymbolIndex cached = SymbolIndex.readCache(cacheFile, NM_OUTPUT);
+        assertNotNull(cached);
+        assertEquals(index.size(), cached.size());
+        for (int i = 0; i < index.size(); i++) {
+            assertEquals(index.getAddress(i), cached.getAddress(i));
+            assertEquals(index.getSize(i), cached.getSize(i));
+            assertEquals(index.getName(i), cached.getName(i));
+        }
+
+        /* The cache does not apply to another file */
+        File other = new File(fCacheDirectory, "other");
+        Files.copy(NM_OUTPUT.toPath(), other.toPath());
+        other.setLastModified(NM_OUTPUT.lastModified());
+        assertNull(SymbolIndex.readCache(cacheFile, other));
+
+        /* Truncated cache */
+        byte[] contents = Files.readAllBytes(cacheFile.toPath());
+        Files.write(cacheFile.toPath(), Arrays.copyOf(contents, contents.length / 2));
+        assertNull(SymbolIndex.readCache(cacheFile, NM_OUTPUT));
+    }
+
+    @Test
+    public void testGetIndex() throws IOException {
+        File mapping = new File(fCacheDirectory, "mapping.txt");
+        Files.write(mapping.toPath(), ("0000000000001000 0000000000001000 T foo\n" +
+                "0000000000002000 0000000000000010 T bar\n" +
+                "0000000000003000 0000000000000010 D data\n").getBytes(StandardCharsets.UTF_8));
+
+        SymbolIndex index = FunctionNameMapper.getIndex(mapping, false, fCacheDirectory);
+        assertNotNull(index);
+        assertEquals("foo", index.getNearestName(0x1fff));
+        /* Only the functions are indexed */
+        assertEquals(2, index.size());
+        assertEquals(2, fCacheDirectory.listFiles().length);
+
+        /* A modified file invalidates the cache */
+        Files.write(mapping.toPath(), "0000000000001000 0000000000001000 T baz\n".getBytes(StandardCharsets.UTF_8));
+        mapping.setLastModified(mapping.lastModified() + 2000);
+        index = FunctionNameMapper.getIndex(mapping, false, fCacheDirectory);
+        assertNotNull(index);
+        assertEquals(1, index.size());
+        assertEquals("baz", index.getNearestName(0x1fff));
+
+        assertTrue(mapping.delete());
+        assertNull(FunctionNameMapper.getIndex(mapping, false, fCacheDirectory));
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2014 Ericsson
+ * Copyright (c) 2009, 2016 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -19,7 +19,10 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
 
 import org.eclipse.tracecompass.internal.tmf.core.component.TmfProviderManager;
 import org.eclipse.tracecompass.tmf.core.component.ITmfEventProvider;
@@ -249,6 +252,144 @@ public class TmfEventProviderTest {
         }
     }
 
+    /**
+     * Test a request that joins a coalesced request while it is being
+     * serviced. It should receive the events from the joining point, followed
+     * by the events it missed.
+     *
+     * @throws InterruptedException
+     *             If the test is interrupted
+     */
+    @Test
+    public void testLateJoinRequest() throws InterruptedException {
+        final int NB_EVENTS = 10000;
+        final int NUMBER_EVENTS_BEFORE_JOIN = 100;
+
+        final Vector<ITmfEvent> requestedEventsReq1 = new Vector<>();
+        final Vector<ITmfEvent> requestedEventsReq2 = new Vector<>();
+        final CountDownLatch joinPointReached = new CountDownLatch(1);
+        final CountDownLatch joined = new CountDownLatch(1);
+
+        ITmfEventProvider[] eventProviders = TmfProviderManager.getProviders(ITmfEvent.class,
+                TmfEventProviderStub.class);
+        ITmfEventProvider provider = eventProviders[0];
+
+        TmfTimeRange range = new TmfTimeRange(TmfTimestamp.BIG_BANG, TmfTimestamp.BIG_CRUNCH);
+
+        final TmfEventRequest request1 = new TmfEventRequest(ITmfEvent.class,
+                range, 0, TmfEventRequest.ALL_DATA, ExecutionType.FOREGROUND) {
+            @Override
+            public void handleData(ITmfEvent event) {
+                super.handleData(event);
+                requestedEventsReq1.add(event);
+                if (getNbRead() == NUMBER_EVENTS_BEFORE_JOIN) {
+                    joinPointReached.countDown();
+                    try {
+                        joined.await();
+                    } catch (InterruptedException e) {
+                        cancel();
+                    }
+                }
+            }
+        };
+
+        final TmfEventRequest request2 = new TmfEventRequest(ITmfEvent.class,
+                range, 0, TmfEventRequest.ALL_DATA, ExecutionType.FOREGROUND) {
+            @Override
+            public void handleData(ITmfEvent event) {
+                super.handleData(event);
+                requestedEventsReq2.add(event);
+            }
+
+            @Override
+            public boolean isLateJoinAllowed() {
+                return true;
+            }
+        };
+
+        // Synchronize the first request so that it is coalesced
+        ((TmfEventProviderStub) provider).startSynch(new TmfStartSynchSignal(0));
+        provider.sendRequest(request1);
+        ((TmfEventProviderStub) provider).endSynch(new TmfEndSynchSignal(0));
+
+        joinPointReached.await();
+        provider.sendRequest(request2);
+        assertTrue("isRunning", request2.isRunning());
+        joined.countDown();
+
+        request1.waitForCompletion();
+        request2.waitForCompletion();
+
+        assertEquals("nbEvents", NB_EVENTS, requestedEventsReq1.size());
+        assertFalse("isCancelled", request1.isCancelled());
+
+        // The second request starts at the joining point, then catches up
+        assertEquals("nbEvents", NB_EVENTS, requestedEventsReq2.size());
+        assertFalse("isCancelled", request2.isCancelled());
+        assertEquals("First event", NUMBER_EVENTS_BEFORE_JOIN + 1, requestedEventsReq2.get(0).getTimestamp().getValue());
+        assertEquals("Catch-up event", 1, requestedEventsReq2.get(NB_EVENTS - NUMBER_EVENTS_BEFORE_JOIN).getTimestamp().getValue());
+
+        Set<Long> timestamps = new HashSet<>();
+        for (ITmfEvent event : requestedEventsReq2) {
+            timestamps.add(event.getTimestamp().getValue());
+        }
+        assertEquals("Distinct events", NB_EVENTS, timestamps.size());
+    }
+
+    /**
+     * Test that a foreground request sent while a batch is held runs without
+     * releasing the held background requests, which wait for the end of the
+     * outermost batch.
+     *
+     * @throws InterruptedException
+     *             If the test is interrupted
+     */
+    @Test
+    public void testForegroundRequestDuringBatch() throws InterruptedException {
+        final int NB_EVENTS = 1000;
+
+        ITmfEventProvider[] eventProviders = TmfProviderManager.getProviders(ITmfEvent.class,
+                TmfEventProviderStub.class);
+        ITmfEventProvider provider = eventProviders[0];
+
+        TmfTimeRange range = new TmfTimeRange(TmfTimestamp.BIG_BANG, TmfTimestamp.BIG_CRUNCH);
+
+        final TmfEventRequest background = new TmfEventRequest(ITmfEvent.class,
+                range, 0, NB_EVENTS, ExecutionType.BACKGROUND) {
+        };
+        final TmfEventRequest foreground = new TmfEventRequest(ITmfEvent.class,
+                range, 0, NB_EVENTS, ExecutionType.FOREGROUND) {
+        };
+
+        // Two nested batches
+        provider.notifyPendingBatch(true);
+        provider.notifyPendingBatch(true);
+        try {
+            // The background request is held for the batch
+            provider.sendRequest(background);
+            assertFalse("isRunning", background.isRunning());
+
+            // The foreground request runs alongside the batch
+            provider.sendRequest(foreground);
+            foreground.waitForCompletion();
+            assertEquals("nbEvents", NB_EVENTS, foreground.getNbRead());
+            assertFalse("isRunning", background.isRunning());
+            assertFalse("isCompleted", background.isCompleted());
+
+            // The end of the inner batch does not release the outer one
+            provider.notifyPendingBatch(false);
+            assertFalse("isRunning", background.isRunning());
+            assertFalse("isCompleted", background.isCompleted());
+        } finally {
+            provider.notifyPendingBatch(false);
+        }
+
+        background.waitForCompletion();
+        assertEquals("nbEvents", NB_EVENTS, background.getNbRead());
+        assertFalse("isCancelled", foreground.isCancelled());
+        assertFalse("isCancelled", background.isCancelled());
+    }
+
     private static void getSyntheticData(final TmfTimeRange range,
             final int nbEvents) throws InterruptedException {
 
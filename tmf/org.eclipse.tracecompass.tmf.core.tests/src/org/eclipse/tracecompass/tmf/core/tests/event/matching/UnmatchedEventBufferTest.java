@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.tests.event.matching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+
+import org.eclipse.tracecompass.internal.tmf.core.event.matching.UnmatchedEventBuffer;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.event.TmfEvent;
+import org.eclipse.tracecompass.tmf.core.event.matching.IEventMatchingKey;
+import org.eclipse.tracecompass.tmf.core.event.matching.TcpEventKey;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfNanoTimestamp;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.tests.stubs.trace.TmfTraceStub;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link UnmatchedEventBuffer} class
+ */
+@SuppressWarnings("javadoc")
+public class UnmatchedEventBufferTest {
+
+    private static final class StringKey implements IEventMatchingKey {
+        private final String fKey;
+
+        public StringKey(String key) {
+            fKey = key;
+        }
+
+        @Override
+        public int hashCode() {
+            return fKey.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof StringKey) && fKey.equals(((StringKey) obj).fKey);
+        }
+    }
+
+    private static ITmfEvent createEvent(ITmfTrace trace, long time) {
+        return new TmfEvent(trace, ITmfContext.UNKNOWN_RANK, new TmfNanoTimestamp(time), null, null);
+    }
+
+    @Test
+    public void testTcpKeys() {
+        UnmatchedEventBuffer buffer = new UnmatchedEventBuffer(Long.MAX_VALUE, 1000);
+        ITmfEvent event1 = createEvent(null, 1);
+        ITmfEvent event2 = createEvent(null, 2);
+        assertTrue(buffer.add(new TcpEventKey(1, 2, 3), event1));
+        assertTrue(buffer.add(new TcpEventKey(1, 2, 4), event2));
+        assertEquals(2, buffer.size());
+
+        assertNull(buffer.remove(new TcpEventKey(2, 1, 3)));
+        assertSame(event1, buffer.remove(new TcpEventKey(1, 2, 3)));
+        assertNull(buffer.remove(new TcpEventKey(1, 2, 3)));
+        assertSame(event2, buffer.remove(new TcpEventKey(1, 2, 4)));
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.getNbExpired());
+    }
+
+    @Test
+    public void testManyTcpKeys() {
+        int nbKeys = 100000;
+        UnmatchedEventBuffer buffer = new UnmatchedEventBuffer(Long.MAX_VALUE, nbKeys);
+        ITmfEvent[] events = new ITmfEvent[nbKeys];
+        for (int i = 0; i < nbKeys; i++) {
+            events[i] = createEvent(null, i);
+            /* Sequence numbers of consecutive packets collide often */
+            assertTrue(buffer.add(new TcpEventKey(i * 1448L, i % 7, 0x18), events[i]));
+        }
+        assertEquals(nbKeys, buffer.size());
+
+        /* Remove every other key, then check that the others are still found */
+        for (int i = 0; i < nbKeys; i += 2) {
+            assertSame(events[i], buffer.remove(new TcpEventKey(i * 1448L, i % 7, 0x18)));
+        }
+        for (int i = 1; i < nbKeys; i += 2) {
+            assertSame(events[i], buffer.remove(new TcpEventKey(i * 1448L, i % 7, 0x18)));
+        }
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testOtherKeys() {
+        UnmatchedEventBuffer buffer = new UnmatchedEventBuffer(Long.MAX_VALUE, 1000);
+        ITmfEvent event = createEvent(null, 1);
+        assertTrue(buffer.add(new StringKey("a"), event));
+        assertEquals(1, buffer.size());
+        assertNull(buffer.remove(new StringKey("b")));
+        assertSame(event, buffer.remove(new StringKey("a")));
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testFirstEventKept() {
+        UnmatchedEventBuffer buffer = new UnmatchedEventBuffer(Long.MAX_VALUE, 1000);
+        ITmfEvent event1 = createEvent(null, 1);
+        ITmfEvent event2 = createEvent(null, 2);
+        assertTrue(buffer.add(new TcpEventKey(1, 2, 3), event1));
+        assertFalse(buffer.add(new TcpEventKey(1, 2, 3), event2));
+        assertEquals(1, buffer.size());
+        assertSame(event1, buffer.remove(new TcpEventKey(1, 2, 3)));
+    }
+
+    @Test
+    public void testHorizon() {
+        UnmatchedEventBuffer buffer = new UnmatchedEventBuffer(100, 1000);
+        buffer.add(new TcpEventKey(1, 0, 0), createEvent(null, 0));
+        buffer.add(new TcpEventKey(2, 0, 0), createEvent(null, 50));
+        buffer.add(new TcpEventKey(3, 0, 0), createEvent(null, 120));
+        /* The first event is more than 100ns older than the last one */
+        assertEquals(2, buffer.size());
+        assertEquals(1, buffer.getNbExpired());
+        assertNull(buffer.remove(new TcpEventKey(1, 0, 0)));
+
+        /* Removed events do not count as expired */
+        buffer.remove(new TcpEventKey(2, 0, 0));
+        buffer.expire(1000);
+        assertEquals(0, buffer.size());
+        assertEquals(2, buffer.getNbExpired());
+    }
+
+    @Test
+    public void testCapacity() {
+        UnmatchedEventBuffer buffer = new UnmatchedEventBuffer(Long.MAX_VALUE, 2);
+        ITmfEvent event2 = createEvent(null, 2);
+        ITmfEvent event3 = createEvent(null, 3);
+        buffer.add(new TcpEventKey(1, 0, 0), createEvent(null, 1));
+        buffer.add(new StringKey("2"), event2);
+        buffer.add(new TcpEventKey(3, 0, 0), event3);
+        assertEquals(2, buffer.size());
+        assertEquals(1, buffer.getNbExpired());
+        assertNull(buffer.remove(new TcpEventKey(1, 0, 0)));
+        assertSame(event2, buffer.remove(new StringKey("2")));
+        assertSame(event3, buffer.remove(new TcpEventKey(3, 0, 0)));
+    }
+
+    @Test
+    public void testSameKeyOtherTrace() {
+        ITmfTrace trace1 = new TmfTraceStub();
+        ITmfTrace trace2 = new TmfTraceStub();
+        try {
+            UnmatchedEventBuffer buffer = new UnmatchedEventBuffer(Long.MAX_VALUE, 1000);
+            ITmfEvent event1 = createEvent(trace1, 1);
+            ITmfEvent event2 = createEvent(trace2, 2);
+            /* The same packet seen by two traces, for instance a host and its guest */
+            assertTrue(buffer.add(new TcpEventKey(1, 2, 3), event1));
+            assertTrue(buffer.add(new TcpEventKey(1, 2, 3), event2));
+            assertFalse(buffer.add(new TcpEventKey(1, 2, 3), createEvent(trace1, 3)));
+            assertTrue(buffer.add(new StringKey("a"), event1));
+            assertTrue(buffer.add(new StringKey("a"), event2));
+            assertEquals(4, buffer.size());
+
+            /* The first event added is matched first */
+            assertSame(event1, buffer.remove(new TcpEventKey(1, 2, 3)));
+            assertSame(event2, buffer.remove(new TcpEventKey(1, 2, 3)));
+            assertNull(buffer.remove(new TcpEventKey(1, 2, 3)));
+            assertSame(event1, buffer.remove(new StringKey("a")));
+            assertSame(event2, buffer.remove(new StringKey("a")));
+            assertEquals(0, buffer.size());
+        } finally {
+            trace1.dispose();
+            trace2.dispose();
+        }
+    }
+
+    @Test
+    public void testMatchedEventsReleased() {
+        UnmatchedEventBuffer buffer = new UnmatchedEventBuffer(Long.MAX_VALUE, 1000);
+        /* A lost packet, never matched, is the oldest event */
+        ITmfEvent lost = createEvent(null, 0);
+        buffer.add(new TcpEventKey(0, 0, 0), lost);
+
+        WeakReference<ITmfEvent> matched = null;
+        for (int i = 1; i <= 100000; i++) {
+            ITmfEvent event = createEvent(null, i);
+            if (i == 1) {
+                matched = new WeakReference<>(event);
+            }
+            buffer.add(new TcpEventKey(i, 0, 0), event);
+            assertSame(event, buffer.remove(new TcpEventKey(i, 0, 0)));
+        }
+        assertEquals(1, buffer.size());
+        assertEquals(0, buffer.getNbExpired());
+
+        /* The matched events are not kept behind the lost one */
+        assertNotNull(matched);
+        for (int i = 0; i < 10 && matched.get() != null; i++) {
+            System.gc();
+        }
+        assertNull(matched.get());
+        assertSame(lost, buffer.remove(new TcpEventKey(0, 0, 0)));
+    }
+
+    @Test
+    public void testSizePerTrace() {
+        ITmfTrace trace1 = new TmfTraceStub();
+        ITmfTrace trace2 = new TmfTraceStub();
+        try {
+            UnmatchedEventBuffer buffer = new UnmatchedEventBuffer(Long.MAX_VALUE, 1000);
+            buffer.add(new TcpEventKey(1, 0, 0), createEvent(trace1, 1));
+            buffer.add(new TcpEventKey(2, 0, 0), createEvent(trace2, 2));
+            buffer.add(new TcpEventKey(3, 0, 0), createEvent(trace1, 3));
+            assertEquals(2, buffer.size(trace1));
+            assertEquals(1, buffer.size(trace2));
+
+            buffer.remove(new TcpEventKey(3, 0, 0));
+            assertEquals(1, buffer.size(trace1));
+            buffer.clear();
+            assertEquals(0, buffer.size(trace1));
+        } finally {
+            trace1.dispose();
+            trace2.dispose();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.tests.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.internal.tmf.core.filter.TmfCollapseFilter;
+import org.eclipse.tracecompass.internal.tmf.core.filter.TmfFilterCompiler;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEventField;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEventType;
+import org.eclipse.tracecompass.tmf.core.event.TmfEvent;
+import org.eclipse.tracecompass.tmf.core.event.TmfEventField;
+import org.eclipse.tracecompass.tmf.core.event.TmfEventType;
+import org.eclipse.tracecompass.tmf.core.event.aspect.ITmfEventAspect;
+import org.eclipse.tracecompass.tmf.core.event.aspect.TmfContentFieldAspect;
+import org.eclipse.tracecompass.tmf.core.filter.ITmfFilter;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterAndNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterCompareNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterCompareNode.Type;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterContainsNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterEqualsNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterMatchesNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterOrNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterRootNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterTraceTypeNode;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfNanoTimestamp;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.tests.stubs.trace.TmfTraceStub;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+/**
+ * Test suite for the {@link TmfFilterCompiler} class. The compiled filters
+ * must give the same results as the filter trees they are compiled from.
+ */
+@SuppressWarnings("javadoc")
+public class TmfFilterCompilerTest {
+
+    private static final @NonNull ITmfTrace TRACE = new TmfTraceStub();
+    private static final @NonNull String FIELD = "field";
+    private static final @NonNull String NAME = "name";
+    private static final ITmfEventType EVENT_TYPE = new TmfEventType("Type", TmfEventField.makeRoot(new String[] { FIELD, NAME }));
+    private static final int NB_EVENTS = 10000;
+
+    @AfterClass
+    public static void disposeTrace() {
+        TRACE.dispose();
+    }
+
+    private static List<ITmfEvent> createEvents() {
+        List<ITmfEvent> events = new ArrayList<>();
+        for (int i = 0; i < NB_EVENTS; i++) {
+            ITmfEventField[] fields = new ITmfEventField[] {
+                    new TmfEventField(FIELD, Long.valueOf(i % 100), null),
+                    new TmfEventField(NAME, (i % 3 == 0 ? "sched_switch" : "Syscall_Entry"), null) };
+            ITmfEventField content = new TmfEventField(ITmfEventField.ROOT_FIELD_ID, null, fields);
+            events.add(new TmfEvent(TRACE, i, new TmfNanoTimestamp(i), EVENT_TYPE, content));
+        }
+        return events;
+    }
+
+    private static void assertSameResults(ITmfFilter filter) {
+        ITmfFilter compiled = TmfFilterCompiler.compile(filter);
+        assertNotSame(filter, compiled);
+        /* Enough events for the junctions to be re-ordered a few times */
+        for (ITmfEvent event : createEvents()) {
+            assertEquals(event.toString(), filter.matches(event), compiled.matches(event));
+        }
+    }
+
+    @Test
+    public void testConditions() {
+        TmfFilterRootNode root = new TmfFilterRootNode();
+        TmfFilterOrNode or = new TmfFilterOrNode(root);
+
+        TmfFilterAndNode and = new TmfFilterAndNode(or);
+        TmfFilterCompareNode compare = new TmfFilterCompareNode(and);
+        compare.setEventAspect(new TmfContentFieldAspect(FIELD, FIELD));
+        compare.setType(Type.NUM);
+        compare.setValue("50");
+        compare.setResult(-1);
+        TmfFilterMatchesNode matches = new TmfFilterMatchesNode(and);
+        matches.setEventAspect(new TmfContentFieldAspect(NAME, NAME));
+        matches.setRegex("sched_.*");
+
+        TmfFilterContainsNode contains = new TmfFilterContainsNode(or);
+        contains.setEventAspect(new TmfContentFieldAspect(NAME, NAME));
+        contains.setValue("entry");
+        contains.setIgnoreCase(true);
+        contains.setNot(true);
+
+        TmfFilterEqualsNode equals = new TmfFilterEqualsNode(or);
+        equals.setEventAspect(new TmfContentFieldAspect(FIELD, FIELD));
+        equals.setValue("99");
+
+        assertSameResults(root);
+
+        and.setNot(true);
+        assertSameResults(root);
+
+        or.setNot(true);
+        assertSameResults(root);
+    }
+
+    @Test
+    public void testCompare() {
+        TmfFilterRootNode root = new TmfFilterRootNode();
+        TmfFilterAndNode and = new TmfFilterAndNode(root);
+        TmfFilterCompareNode timestamp = new TmfFilterCompareNode(and);
+        timestamp.setEventAspect(ITmfEventAspect.BaseAspects.TIMESTAMP);
+        timestamp.setType(Type.TIMESTAMP);
+        timestamp.setValue("0.000005000");
+        timestamp.setResult(1);
+        TmfFilterCompareNode alpha = new TmfFilterCompareNode(and);
+        alpha.setEventAspect(new TmfContentFieldAspect(NAME, NAME));
+        alpha.setType(Type.ALPHA);
+        alpha.setValue("T");
+        alpha.setResult(-1);
+        TmfFilterCompareNode num = new TmfFilterCompareNode(and);
+        num.setEventAspect(new TmfContentFieldAspect(FIELD, FIELD));
+        num.setType(Type.NUM);
+        num.setValue("12.5");
+        num.setResult(1);
+
+        assertSameResults(root);
+    }
+
+    @Test
+    public void testTraceType() {
+        TmfFilterRootNode root = new TmfFilterRootNode();
+        TmfFilterTraceTypeNode traceType = new TmfFilterTraceTypeNode(root);
+        traceType.setTraceClass(TmfTraceStub.class);
+        TmfFilterEqualsNode equals = new TmfFilterEqualsNode(traceType);
+        equals.setEventAspect(new TmfContentFieldAspect(FIELD, FIELD));
+        equals.setValue("42");
+
+        assertSameResults(root);
+
+        traceType.setTraceClass(ITmfTrace.class);
+        assertSameResults(root);
+    }
+
+    @Test
+    public void testNotCompilable() {
+        ITmfFilter collapse = new TmfCollapseFilter();
+        assertSame(collapse, TmfFilterCompiler.compile(collapse));
+    }
+}
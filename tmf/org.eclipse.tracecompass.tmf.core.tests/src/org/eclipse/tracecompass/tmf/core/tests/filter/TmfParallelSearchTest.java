@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.tests.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.tracecompass.internal.tmf.core.filter.TmfParallelSearch;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.event.aspect.ITmfEventAspect;
+import org.eclipse.tracecompass.tmf.core.filter.ITmfFilter;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterMatchesNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterRootNode;
+import org.eclipse.tracecompass.tmf.core.tests.shared.TmfTestTrace;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTrace;
+import org.eclipse.tracecompass.tmf.core.util.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test suite for the {@link TmfParallelSearch} class. The results must be the
+ * same as a sequential read of the trace.
+ */
+@SuppressWarnings("javadoc")
+public class TmfParallelSearchTest {
+
+    private static final TmfTestTrace TEST_TRACE = TmfTestTrace.A_TEST_10K;
+
+    private ITmfTrace fTrace;
+    private ITmfFilter fFilter;
+    private List<Long> fExpected;
+
+    @Before
+    public void setUp() {
+        fTrace = TEST_TRACE.getTrace();
+        ((TmfTrace) fTrace).indexTrace(true);
+
+        TmfFilterRootNode root = new TmfFilterRootNode();
+        TmfFilterMatchesNode matches = new TmfFilterMatchesNode(root);
+        matches.setEventAspect(ITmfEventAspect.BaseAspects.TIMESTAMP);
+        matches.setRegex(".*3");
+        fFilter = root;
+
+        fExpected = new ArrayList<>();
+        ITmfContext context = fTrace.seekEvent(0);
+        ITmfEvent event = fTrace.getNext(context);
+        for (long rank = 0; event != null; rank++) {
+            if (fFilter.matches(event)) {
+                fExpected.add(rank);
+            }
+            event = fTrace.getNext(context);
+        }
+        context.dispose();
+        assertTrue(fExpected.size() > 2);
+    }
+
+    @After
+    public void tearDown() {
+        TEST_TRACE.dispose();
+    }
+
+    @Test
+    public void testFindAll() {
+        final List<Long> ranks = new ArrayList<>();
+        final long[] checked = new long[1];
+        TmfParallelSearch search = new TmfParallelSearch(fTrace, fFilter);
+        boolean complete = search.findAll(0, fTrace.getNbEvents(), new NullProgressMonitor(), new TmfParallelSearch.IMatchHandler() {
+            @Override
+            public void handleMatch(long rank) {
+                assertTrue(rank >= checked[0]);
+                ranks.add(rank);
+            }
+
+            @Override
+            public void handleChecked(long rank) {
+                assertTrue(rank > checked[0]);
+                checked[0] = rank;
+            }
+        });
+        assertTrue(complete);
+        assertEquals(fTrace.getNbEvents(), checked[0]);
+        assertEquals(fExpected, ranks);
+    }
+
+    @Test
+    public void testFindNext() {
+        TmfParallelSearch search = new TmfParallelSearch(fTrace, fFilter);
+        long start = fExpected.get(1) - 1;
+        Pair<Long, ITmfEvent> found = search.findNext(start, fTrace.getNbEvents(), new NullProgressMonitor());
+        assertNotNull(found);
+        assertEquals(fExpected.get(1), found.getFirst());
+
+        long last = fExpected.get(fExpected.size() - 1);
+        assertNull(search.findNext(last + 1, fTrace.getNbEvents(), new NullProgressMonitor()));
+    }
+
+    @Test
+    public void testFindPrevious() {
+        TmfParallelSearch search = new TmfParallelSearch(fTrace, fFilter);
+        long end = fExpected.get(fExpected.size() - 2) + 1;
+        Pair<Long, ITmfEvent> found = search.findPrevious(0, end, new NullProgressMonitor());
+        assertNotNull(found);
+        assertEquals(fExpected.get(fExpected.size() - 2), found.getFirst());
+
+        assertNull(search.findPrevious(0, fExpected.get(0), new NullProgressMonitor()));
+    }
+
+    @Test
+    public void testSequentialFilter() {
+        /* A filter that cannot be compiled is evaluated in order */
+        final ITmfFilter filter = fFilter;
+        ITmfFilter wrapper = new ITmfFilter() {
+            @Override
+            public boolean matches(ITmfEvent event) {
+                return filter.matches(event);
+            }
+        };
+        final List<Long> ranks = new ArrayList<>();
+        TmfParallelSearch search = new TmfParallelSearch(fTrace, wrapper);
+        search.findAll(0, fTrace.getNbEvents(), new NullProgressMonitor(), new TmfParallelSearch.IMatchHandler() {
+            @Override
+            public void handleMatch(long rank) {
+                ranks.add(rank);
+            }
+
+            @Override
+            public void handleChecked(long rank) {
+            }
+        });
+        assertEquals(fExpected, ranks);
+    }
+}
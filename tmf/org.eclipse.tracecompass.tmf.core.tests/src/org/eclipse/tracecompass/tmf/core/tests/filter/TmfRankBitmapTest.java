@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.tests.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.eclipse.tracecompass.internal.tmf.core.filter.TmfRankBitmap;
+import org.junit.Test;
+
+/**
+ * Test suite for the {@link TmfRankBitmap} class, compared to a sorted set
+ */
+@SuppressWarnings("javadoc")
+public class TmfRankBitmapTest {
+
+    private static final long RANGE = 1 << 20;
+
+    /**
+     * Fill a bitmap and its reference set, with dense and sparse chunks
+     */
+    private static TmfRankBitmap fill(TreeSet<Long> expected, long seed, int density) {
+        Random random = new Random(seed);
+        TmfRankBitmap bitmap = new TmfRankBitmap();
+        for (long rank = 0; rank < RANGE; rank++) {
+            /* Alternate between sparse and dense regions */
+            int percent = ((rank >>> 16) % 2 == 0) ? 1 : density;
+            if (random.nextInt(100) < percent) {
+                bitmap.add(rank);
+                expected.add(rank);
+            }
+        }
+        return bitmap;
+    }
+
+    private static void assertSameRanks(TreeSet<Long> expected, TmfRankBitmap bitmap) {
+        assertEquals(expected.size(), bitmap.getCardinality());
+        List<Long> ranks = new ArrayList<>(expected);
+        for (int i = 0; i < ranks.size(); i += 97) {
+            assertEquals(ranks.get(i).longValue(), bitmap.select(i));
+        }
+        assertEquals(-1, bitmap.select(ranks.size()));
+        for (long rank = 0; rank < RANGE; rank += 7) {
+            assertEquals(expected.contains(rank), bitmap.contains(rank));
+        }
+    }
+
+    @Test
+    public void testAdd() {
+        TreeSet<Long> expected = new TreeSet<>();
+        TmfRankBitmap bitmap = fill(expected, 1, 50);
+        assertSameRanks(expected, bitmap);
+
+        /* Out of order and duplicate ranks */
+        bitmap.add(3);
+        bitmap.add(3);
+        bitmap.add(RANGE * 4);
+        expected.add(3L);
+        expected.add(RANGE * 4);
+        assertSameRanks(expected, bitmap);
+        assertTrue(bitmap.contains(RANGE * 4));
+        assertFalse(bitmap.contains(-1));
+    }
+
+    @Test
+    public void testAndOr() {
+        TreeSet<Long> first = new TreeSet<>();
+        TreeSet<Long> second = new TreeSet<>();
+        TmfRankBitmap firstBitmap = fill(first, 2, 90);
+        TmfRankBitmap secondBitmap = fill(second, 3, 5);
+
+        TreeSet<Long> and = new TreeSet<>(first);
+        and.retainAll(second);
+        assertSameRanks(and, TmfRankBitmap.and(firstBitmap, secondBitmap));
+        assertSameRanks(and, TmfRankBitmap.and(secondBitmap, firstBitmap));
+
+        TreeSet<Long> or = new TreeSet<>(first);
+        or.addAll(second);
+        assertSameRanks(or, TmfRankBitmap.or(firstBitmap, secondBitmap));
+        assertSameRanks(or, TmfRankBitmap.or(secondBitmap, firstBitmap));
+
+        /* The operands are not modified */
+        assertSameRanks(first, firstBitmap);
+        assertSameRanks(second, secondBitmap);
+    }
+
+    @Test
+    public void testSerialization() throws IOException {
+        TreeSet<Long> expected = new TreeSet<>();
+        TmfRankBitmap bitmap = fill(expected, 4, 30);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            bitmap.writeTo(out);
+        }
+        /* Much smaller than one long per rank */
+        assertTrue(bytes.size() < expected.size() * 2);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertSameRanks(expected, TmfRankBitmap.readFrom(in));
+        }
+    }
+
+    @Test
+    public void testCopy() {
+        TreeSet<Long> expected = new TreeSet<>();
+        TmfRankBitmap bitmap = fill(expected, 5, 60);
+        TmfRankBitmap copy = new TmfRankBitmap(bitmap);
+        copy.add(RANGE + 1);
+        assertSameRanks(expected, bitmap);
+        assertFalse(bitmap.contains(RANGE + 1));
+        assertTrue(copy.contains(RANGE + 1));
+    }
+}
@@ -18,10 +18,14 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.tmf.core.analysis.IAnalysisModule;
+import org.eclipse.tracecompass.tmf.core.analysis.TmfAnalysisManager;
 import org.eclipse.tracecompass.tmf.core.signal.TmfSignalManager;
 import org.eclipse.tracecompass.tmf.core.signal.TmfTraceOpenedSignal;
 import org.eclipse.tracecompass.tmf.core.statesystem.TmfStateSystemAnalysisModule;
@@ -49,6 +53,7 @@ public class StateSystemAnalysisModuleTest {
     public static final String MODULE_SS = "org.eclipse.linuxtools.tmf.core.tests.analysis.sstest";
 
     private TmfStateSystemAnalysisModule module;
+    private TmfTraceStub fTrace;
 
     /**
      * Setup test trace
@@ -58,6 +63,7 @@ public class StateSystemAnalysisModuleTest {
         TmfTraceStub trace = (TmfTraceStub) TmfTestTrace.A_TEST_10K.getTrace();
         TmfSignalManager.deregister(trace);
         trace.traceOpened(new TmfTraceOpenedSignal(this, trace, null));
+        fTrace = trace;
 
         module = (TmfStateSystemAnalysisModule) trace.getAnalysisModule(MODULE_SS);
     }
@@ -99,6 +105,22 @@ public class StateSystemAnalysisModuleTest {
         assertNotNull(module.getStateSystem());
     }
 
+    /**
+     * Test scheduling the module in a batch with
+     * {@link TmfAnalysisManager#scheduleModules}, the requests are released
+     * once the module is initialized.
+     */
+    @Test
+    public void testScheduleModules() {
+        assertNull(module.getStateSystem());
+        IStatus status = TmfAnalysisManager.scheduleModules(fTrace, Collections.<IAnalysisModule> singletonList(module));
+        assertTrue("Scheduling succeeded", status.isOK());
+
+        assertTrue("Module completed", module.waitForCompletion());
+        ITmfStateSystem ss = module.getStateSystem();
+        assertNotNull(ss);
+    }
+
     /**
      * Test that helper returns the right properties
      */
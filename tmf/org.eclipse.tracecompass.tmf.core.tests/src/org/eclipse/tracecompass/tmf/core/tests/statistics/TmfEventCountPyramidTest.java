@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.tests.statistics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+import org.eclipse.tracecompass.internal.tmf.core.statistics.TmfEventCountPyramid;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test suite for the {@link TmfEventCountPyramid} class, compared to exact
+ * counts of the same events
+ */
+@SuppressWarnings("javadoc")
+public class TmfEventCountPyramidTest {
+
+    private static final int NB_EVENTS = 200000;
+    private static final long START = 1000000;
+    private static final long DURATION = 1L << 32;
+    private static final int DURATION_STEP = (int) (2 * DURATION / NB_EVENTS);
+
+    private long[] fTimestamps;
+    private TmfEventCountPyramid fPyramid;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(1);
+        fTimestamps = new long[NB_EVENTS];
+        fPyramid = new TmfEventCountPyramid(1 << 14);
+        long ts = START;
+        for (int i = 0; i < NB_EVENTS; i++) {
+            /* The event rate varies, so the bins are not uniform */
+            int step = DURATION_STEP / (1 + (i / 10000) % 4);
+            ts += random.nextInt(step);
+            fTimestamps[i] = ts;
+            fPyramid.add(ts);
+        }
+    }
+
+    private long[] exactQuery(long start, long end, int nb) {
+        long increment = (end - start) / nb;
+        long[] counts = new long[nb];
+        for (long ts : fTimestamps) {
+            if (ts < start || ts >= end) {
+                continue;
+            }
+            int bucket = (int) Math.min(nb - 1, (ts - start) / increment);
+            counts[bucket]++;
+        }
+        return counts;
+    }
+
+    private static void assertClose(long[] expected, long[] actual) {
+        assertEquals(expected.length, actual.length);
+        long total = 0;
+        long actualTotal = 0;
+        for (int i = 0; i < expected.length; i++) {
+            total += expected[i];
+            actualTotal += actual[i];
+        }
+        /* Only the bins at the edges of the buckets are interpolated */
+        for (int i = 0; i < expected.length; i++) {
+            assertTrue(Math.abs(expected[i] - actual[i]) <= Math.max(expected[i] / 10, total / expected.length / 10 + 2));
+        }
+        assertTrue(Math.abs(total - actualTotal) <= total / 100 + 2);
+    }
+
+    @Test
+    public void testFullRange() {
+        assertEquals(NB_EVENTS, fPyramid.getNbEvents());
+        long end = fTimestamps[NB_EVENTS - 1] + 1;
+        long[] counts = fPyramid.query(START, end, 100);
+        assertNotNull(counts);
+        assertClose(exactQuery(START, end, 100), counts);
+    }
+
+    @Test
+    public void testSubRange() {
+        long start = fTimestamps[NB_EVENTS / 4];
+        long end = fTimestamps[NB_EVENTS / 2];
+        long[] counts = fPyramid.query(start, end, 50);
+        assertNotNull(counts);
+        assertClose(exactQuery(start, end, 50), counts);
+    }
+
+    @Test
+    public void testOutsideRange() {
+        long end = fTimestamps[NB_EVENTS - 1];
+        long[] counts = fPyramid.query(end + DURATION, end + 2 * DURATION, 10);
+        assertNotNull(counts);
+        assertArrayEquals(new long[10], counts);
+    }
+
+    @Test
+    public void testTooPrecise() {
+        /* Buckets shorter than the bins cannot be answered */
+        long start = fTimestamps[NB_EVENTS / 2];
+        assertNull(fPyramid.query(start, start + 100, 100));
+    }
+
+    @Test
+    public void testSaveLoad() throws IOException {
+        File file = File.createTempFile("pyramid", ".pyramid");
+        try {
+            TmfEventCountPyramid.save(file, Collections.singletonMap("event", fPyramid));
+            Map<String, TmfEventCountPyramid> loaded = TmfEventCountPyramid.load(file);
+            assertNotNull(loaded);
+            TmfEventCountPyramid pyramid = loaded.get("event");
+            assertNotNull(pyramid);
+            assertEquals(NB_EVENTS, pyramid.getNbEvents());
+            long end = fTimestamps[NB_EVENTS - 1] + 1;
+            assertArrayEquals(fPyramid.query(START, end, 64), pyramid.query(START, end, 64));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.core.tests.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.Random;
+
+import org.eclipse.tracecompass.internal.tmf.core.statistics.TmfEventTypeCountIndex;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
+import org.eclipse.tracecompass.statesystem.core.StateSystemBuilderUtils;
+import org.eclipse.tracecompass.statesystem.core.StateSystemFactory;
+import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
+import org.eclipse.tracecompass.tmf.core.statistics.TmfStateStatistics;
+import org.eclipse.tracecompass.tmf.core.statistics.TmfStateStatistics.Attributes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test suite for the {@link TmfEventTypeCountIndex} class, compared to the
+ * event type counts read from the state system
+ */
+@SuppressWarnings("javadoc")
+public class TmfEventTypeCountIndexTest {
+
+    private static final long START = 1000;
+    private static final int NB_EVENTS = 20000;
+    private static final String[] TYPES = { "sched_switch", "irq_entry", "irq_exit", "rare" };
+
+    private ITmfStateSystemBuilder fTypesSS;
+    private TmfStateStatistics fStatistics;
+    private long fEnd;
+
+    @Before
+    public void setUp() throws Exception {
+        fTypesSS = StateSystemFactory.newStateSystem(StateHistoryBackendFactory.createInMemoryBackend("types", START));
+        ITmfStateSystemBuilder totalsSS = StateSystemFactory.newStateSystem(StateHistoryBackendFactory.createInMemoryBackend("totals", START));
+        Random random = new Random(1);
+        long ts = START;
+        for (int i = 0; i < NB_EVENTS; i++) {
+            ts += 1 + random.nextInt(100);
+            String type = TYPES[(i % 1000 == 0) ? 3 : random.nextInt(3)];
+            int quark = fTypesSS.getQuarkAbsoluteAndAdd(Attributes.EVENT_TYPES, type);
+            StateSystemBuilderUtils.incrementAttributeInt(fTypesSS, ts, quark, 1);
+        }
+        fEnd = ts + 10;
+        fTypesSS.closeHistory(fEnd);
+        totalsSS.closeHistory(fEnd);
+        fStatistics = new TmfStateStatistics(totalsSS, fTypesSS);
+    }
+
+    @After
+    public void tearDown() {
+        fStatistics.dispose();
+    }
+
+    private TmfEventTypeCountIndex build() {
+        TmfEventTypeCountIndex index = TmfEventTypeCountIndex.build(fTypesSS, Attributes.EVENT_TYPES, Integer.MAX_VALUE);
+        assertNotNull(index);
+        return index;
+    }
+
+    private void assertSameCounts(TmfEventTypeCountIndex index) {
+        Random random = new Random(2);
+        for (int i = 0; i < 200; i++) {
+            long start = START - 50 + random.nextInt((int) (fEnd - START + 100));
+            long end = start + random.nextInt((int) (fEnd - START));
+            assertEquals(fStatistics.getEventTypesInRange(start, end), index.getCounts(start, end));
+        }
+        assertEquals(fStatistics.getEventTypesInRange(START, fEnd), index.getCounts(START, fEnd));
+        assertEquals(fStatistics.getEventTypesInRange(fEnd + 1, fEnd + 100), index.getCounts(fEnd + 1, fEnd + 100));
+    }
+
+    @Test
+    public void testCounts() {
+        TmfEventTypeCountIndex index = build();
+        assertEquals(START, index.getStartTime());
+        assertEquals(fEnd, index.getEndTime());
+        assertSameCounts(index);
+
+        Map<String, Long> total = index.getCounts(START, fEnd);
+        long sum = 0;
+        for (long count : total.values()) {
+            sum += count;
+        }
+        assertEquals(NB_EVENTS, sum);
+        assertEquals(TYPES.length, total.size());
+    }
+
+    @Test
+    public void testMaxChanges() {
+        assertNull(TmfEventTypeCountIndex.build(fTypesSS, Attributes.EVENT_TYPES, NB_EVENTS / 2));
+        assertNull(TmfEventTypeCountIndex.build(fTypesSS, "unknown", Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        File file = File.createTempFile("statistics", ".idx");
+        try {
+            build().save(file);
+            assertTrue(file.length() > 0);
+            TmfEventTypeCountIndex loaded = TmfEventTypeCountIndex.load(file, START, fEnd);
+            assertNotNull(loaded);
+            assertEquals(START, loaded.getStartTime());
+            assertEquals(fEnd, loaded.getEndTime());
+            assertSameCounts(loaded);
+
+            /* An index for another time range is not loaded */
+            assertNull(TmfEventTypeCountIndex.load(file, START, fEnd + 1));
+        } finally {
+            file.delete();
+        }
+        assertNull(TmfEventTypeCountIndex.load(file, START, fEnd));
+    }
+
+    @Test
+    public void testTruncatedFile() throws Exception {
+        File file = File.createTempFile("statistics", ".idx");
+        try {
+            build().save(file);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(raf.length() - 1);
+            }
+            assertNull(TmfEventTypeCountIndex.load(file, START, fEnd));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2014 École Polytechnique de Montréal
+ * Copyright (c) 2013, 2016 École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -23,6 +23,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -192,6 +193,61 @@ public class SyncTest {
         assertEquals("SyncAlgorithmFullyIncremental [Between t1 and t2 [ alpha 1 beta 2.5 ]]", syncAlgo.toString());
     }
 
+    /**
+     * Testing the fully incremental synchronization algorithm with enough
+     * matches between several hosts for the convex hulls to be updated in
+     * parallel
+     */
+    @Test
+    public void testManyMatches() {
+        int nbHosts = 4;
+        TmfTraceStub[] traces = new TmfTraceStub[nbHosts];
+        for (int i = 0; i < nbHosts; i++) {
+            traces[i] = new TmfTraceStub();
+            traces[i].init("host" + i);
+        }
+
+        SynchronizationAlgorithm syncAlgo = SynchronizationAlgorithmFactory.getFullyIncrementalAlgorithm();
+        syncAlgo.init(Arrays.asList(traces));
+
+        /*
+         * Each host exchanges packets with the next one, the clock of host i
+         * is ahead by i * 10000
+         */
+        for (int n = 0; n < 50000; n++) {
+            long time = n * 1000;
+            int sender = n % nbHosts;
+            int receiver = (sender + 1) % nbHosts;
+            if ((n / nbHosts) % 2 == 0) {
+                int tmp = sender;
+                sender = receiver;
+                receiver = tmp;
+            }
+            long latency = 100 + (n * 7) % 50;
+            addSyncMatch(syncAlgo, traces[sender], time + sender * 10000, traces[receiver], time + latency + receiver * 10000);
+        }
+        syncAlgo.matchingEnded();
+
+        assertEquals(nbHosts * (nbHosts - 1) / 2, syncAlgo.getStats().size());
+        for (int i = 0; i < nbHosts; i++) {
+            TmfTraceStub next = traces[(i + 1) % nbHosts];
+            assertEquals(SyncQuality.ACCURATE, syncAlgo.getSynchronizationQuality(traces[i], next));
+        }
+        assertEquals(SyncQuality.ABSENT, syncAlgo.getSynchronizationQuality(traces[0], traces[2]));
+
+        /* The same instant on every host is synchronized within the latency */
+        long time = 25000000;
+        long reference = syncAlgo.getTimestampTransform(traces[0]).transform(time);
+        for (int i = 1; i < nbHosts; i++) {
+            long synced = syncAlgo.getTimestampTransform(traces[i]).transform(time + i * 10000);
+            assertTrue(Math.abs(synced - reference) < 150);
+        }
+
+        for (TmfTraceStub trace : traces) {
+            trace.dispose();
+        }
+    }
+
     private static void addSyncMatch(SynchronizationAlgorithm algo, ITmfTrace sender, long sendTs, ITmfTrace receiver, long receiveTs) {
         algo.addMatch(
                 new TmfEventDependency(
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.callstack;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
+
+/**
+ * Node of a flame graph: the calls of a function from a given call path,
+ * aggregated. The total time includes the time spent in the callees, the self
+ * time does not.
+ *
+ * The root node has no function, its total time is the sum of the total time
+ * of the first level functions.
+ */
+@NonNullByDefault
+public final class CallGraphNode {
+
+    private final @Nullable ITmfStateValue fValue;
+    private final Map<ITmfStateValue, CallGraphNode> fChildren = new LinkedHashMap<>();
+    private long fTotalTime = 0;
+    private long fSelfTime = 0;
+    private long fNbCalls = 0;
+
+    /**
+     * Create a root node
+     */
+    public CallGraphNode() {
+        fValue = null;
+    }
+
+    private CallGraphNode(ITmfStateValue value) {
+        fValue = value;
+    }
+
+    /**
+     * @return The function name or address, or null for the root node
+     */
+    public @Nullable ITmfStateValue getValue() {
+        return fValue;
+    }
+
+    /**
+     * @return The time spent in the function and its callees
+     */
+    public long getTotalTime() {
+        return fTotalTime;
+    }
+
+    /**
+     * @return The time spent in the function itself
+     */
+    public long getSelfTime() {
+        return fSelfTime;
+    }
+
+    /**
+     * @return The number of calls aggregated in this node
+     */
+    public long getNbCalls() {
+        return fNbCalls;
+    }
+
+    /**
+     * @return The nodes of the functions called from this one
+     */
+    public Collection<CallGraphNode> getChildren() {
+        return Collections.unmodifiableCollection(fChildren.values());
+    }
+
+    /**
+     * Get the node of a function called from this one
+     *
+     * @param value
+     *            The function name or address
+     * @return The node, or null if this function was not called from here
+     */
+    public @Nullable CallGraphNode getChild(ITmfStateValue value) {
+        return fChildren.get(value);
+    }
+
+    /**
+     * Add a call to a function called from this one
+     *
+     * @param value
+     *            The function name or address
+     * @param duration
+     *            The duration of the call
+     * @return The node of the called function
+     */
+    CallGraphNode addCall(ITmfStateValue value, long duration) {
+        CallGraphNode child = fChildren.computeIfAbsent(value, CallGraphNode::new);
+        child.fTotalTime += duration;
+        child.fNbCalls++;
+        return child;
+    }
+
+    /**
+     * Compute the self times of this node and its descendants, once all the
+     * calls are added. The total time of the root node is computed too.
+     */
+    void computeSelfTimes() {
+        long childrenTime = 0;
+        for (CallGraphNode child : fChildren.values()) {
+            child.computeSelfTimes();
+            childrenTime += child.fTotalTime;
+        }
+        if (fValue == null) {
+            fTotalTime = childrenTime;
+        }
+        fSelfTime = fTotalTime - childrenTime;
+    }
+
+    /**
+     * Add the times and calls of another node, and of its descendants, to this
+     * node
+     *
+     * @param other
+     *            The node to merge in this one
+     */
+    void merge(CallGraphNode other) {
+        fTotalTime += other.fTotalTime;
+        fSelfTime += other.fSelfTime;
+        fNbCalls += other.fNbCalls;
+        for (Map.Entry<ITmfStateValue, CallGraphNode> entry : other.fChildren.entrySet()) {
+            fChildren.computeIfAbsent(entry.getKey(), CallGraphNode::new).merge(entry.getValue());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CallGraphNode[value=" + fValue + ", total=" + fTotalTime + //$NON-NLS-1$ //$NON-NLS-2$
+                ", self=" + fSelfTime + ", calls=" + fNbCalls + ']'; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.callstack;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.StateRaster;
+import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+import org.eclipse.tracecompass.tmf.core.callstack.CallStackStateProvider;
+
+/**
+ * Queries of the call stacks of a state system with the layout of the
+ * {@link CallStackStateProvider}. The stack levels of a thread are read
+ * together, with a single range query over the state history, instead of one
+ * query per level and per time.
+ */
+@NonNullByDefault
+public final class CallStackService {
+
+    private static final Comparator<ITmfStateInterval> START_COMPARATOR = (a, b) -> Long.compare(a.getStartTime(), b.getStartTime());
+    private static final Comparator<FunctionCall> CALL_COMPARATOR = Comparator
+            .comparingLong(FunctionCall::getEntryTime)
+            .thenComparingInt(FunctionCall::getDepth);
+
+    private CallStackService() {}
+
+    /**
+     * Get the attributes of the levels of a call stack, from the bottom of
+     * the stack (depth 1) to the deepest level reached
+     *
+     * @param ss
+     *            The state system
+     * @param callStackQuark
+     *            The call stack attribute of a thread
+     * @return The level attributes
+     * @throws AttributeNotFoundException
+     *             If the call stack attribute does not exist
+     */
+    public static List<Integer> getStackLevels(ITmfStateSystem ss, int callStackQuark) throws AttributeNotFoundException {
+        return ss.getSubAttributes(callStackQuark, false);
+    }
+
+    /**
+     * Sample all the levels of a call stack at a resolution, for display.
+     *
+     * @param ss
+     *            The state system
+     * @param callStackQuark
+     *            The call stack attribute of a thread
+     * @param start
+     *            The start time
+     * @param end
+     *            The end time, inclusive
+     * @param resolution
+     *            The time between two samples
+     * @return The raster of the level attributes
+     * @throws AttributeNotFoundException
+     *             If the call stack attribute does not exist
+     * @throws StateSystemDisposedException
+     *             If the state system is disposed during the query
+     */
+    public static StateRaster querySampledLevels(ITmfStateSystem ss, int callStackQuark, long start, long end, long resolution)
+            throws AttributeNotFoundException, StateSystemDisposedException {
+        return StateRaster.query(ss, getStackLevels(ss, callStackQuark), start, end, resolution);
+    }
+
+    /**
+     * Get all the intervals, null ones included, of every level of a call
+     * stack over a time range. The intervals of each level are complete and in
+     * chronological order.
+     *
+     * @param ss
+     *            The state system
+     * @param callStackQuark
+     *            The call stack attribute of a thread
+     * @param start
+     *            The start time
+     * @param end
+     *            The end time, inclusive
+     * @return The intervals of each level, in order of depth
+     * @throws AttributeNotFoundException
+     *             If the call stack attribute does not exist
+     * @throws StateSystemDisposedException
+     *             If the state system is disposed during the query
+     */
+    public static List<List<ITmfStateInterval>> queryStackIntervals(ITmfStateSystem ss, int callStackQuark, long start, long end)
+            throws AttributeNotFoundException, StateSystemDisposedException {
+        if (start > end) {
+            throw new TimeRangeException(ss.getSSID() + " Start:" + start + ", End:" + end); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        List<Integer> levels = getStackLevels(ss, callStackQuark);
+        Map<Integer, List<ITmfStateInterval>> intervals = new HashMap<>();
+        for (Integer level : levels) {
+            intervals.put(level, new ArrayList<>());
+        }
+        ss.queryRange(levels, start, end, interval -> {
+            List<ITmfStateInterval> list = intervals.get(interval.getAttribute());
+            if (list != null) {
+                list.add(interval);
+            }
+        });
+
+        List<List<ITmfStateInterval>> result = new ArrayList<>(levels.size());
+        for (Integer level : levels) {
+            List<ITmfStateInterval> list = intervals.get(level);
+            if (list != null) {
+                result.add(complete(ss, level, list, start, end));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sort the intervals of an attribute and remove the duplicates. While the
+     * history is being built, some intervals can be missed by the range query,
+     * they are queried individually.
+     */
+    private static List<ITmfStateInterval> complete(ITmfStateSystem ss, int quark, List<ITmfStateInterval> intervals, long start, long end)
+            throws AttributeNotFoundException, StateSystemDisposedException {
+        intervals.sort(START_COMPARATOR);
+        List<ITmfStateInterval> result = new ArrayList<>(intervals.size());
+        long time = start;
+        int index = 0;
+        while (time <= end) {
+            while (index < intervals.size() && intervals.get(index).getEndTime() < time) {
+                index++;
+            }
+            ITmfStateInterval interval;
+            if (index < intervals.size() && intervals.get(index).getStartTime() <= time) {
+                interval = intervals.get(index);
+            } else {
+                interval = ss.querySingleState(time, quark);
+            }
+            result.add(interval);
+            if (interval.getEndTime() == Long.MAX_VALUE) {
+                break;
+            }
+            time = interval.getEndTime() + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Get the function calls of all the levels of a call stack that intersect
+     * a time range. The entry and exit times are not clipped to the range.
+     *
+     * @param ss
+     *            The state system
+     * @param callStackQuark
+     *            The call stack attribute of a thread
+     * @param start
+     *            The start time
+     * @param end
+     *            The end time, inclusive
+     * @return The function calls, ordered by entry time, then by depth
+     * @throws AttributeNotFoundException
+     *             If the call stack attribute does not exist
+     * @throws StateSystemDisposedException
+     *             If the state system is disposed during the query
+     */
+    public static List<FunctionCall> queryFunctionCalls(ITmfStateSystem ss, int callStackQuark, long start, long end)
+            throws AttributeNotFoundException, StateSystemDisposedException {
+        List<FunctionCall> calls = new ArrayList<>();
+        int depth = 1;
+        for (List<ITmfStateInterval> level : queryStackIntervals(ss, callStackQuark, start, end)) {
+            for (ITmfStateInterval interval : level) {
+                if (!interval.getStateValue().isNull()) {
+                    calls.add(new FunctionCall(depth, interval.getStartTime(), interval.getEndTime() + 1, interval.getStateValue()));
+                }
+            }
+            depth++;
+        }
+        calls.sort(CALL_COMPARATOR);
+        return calls;
+    }
+
+    /**
+     * Aggregate the function calls of a call stack over a time range in a
+     * flame graph. Calls that cross the bounds of the range only count for the
+     * time inside the range.
+     *
+     * @param ss
+     *            The state system
+     * @param callStackQuark
+     *            The call stack attribute of a thread
+     * @param start
+     *            The start time
+     * @param end
+     *            The end time, inclusive
+     * @return The root of the flame graph
+     * @throws AttributeNotFoundException
+     *             If the call stack attribute does not exist
+     * @throws StateSystemDisposedException
+     *             If the state system is disposed during the query
+     */
+    public static CallGraphNode aggregate(ITmfStateSystem ss, int callStackQuark, long start, long end)
+            throws AttributeNotFoundException, StateSystemDisposedException {
+        CallGraphNode root = new CallGraphNode();
+        Deque<FunctionCall> stack = new ArrayDeque<>();
+        Deque<CallGraphNode> nodes = new ArrayDeque<>();
+        for (FunctionCall call : queryFunctionCalls(ss, callStackQuark, start, end)) {
+            while (!stack.isEmpty() && stack.peek().getDepth() >= call.getDepth()) {
+                stack.pop();
+                nodes.pop();
+            }
+            CallGraphNode parent = (nodes.isEmpty() ? root : nodes.peek());
+            long duration = Math.min(call.getExitTime(), end + 1) - Math.max(call.getEntryTime(), start);
+            stack.push(call);
+            nodes.push(parent.addCall(call.getValue(), duration));
+        }
+        root.computeSelfTimes();
+        return root;
+    }
+
+    /**
+     * Aggregate the function calls of several call stacks, for example of all
+     * the threads of a trace, in a single flame graph. The call stacks are
+     * queried and aggregated in parallel.
+     *
+     * @param ss
+     *            The state system
+     * @param callStackQuarks
+     *            The call stack attributes of the threads
+     * @param start
+     *            The start time
+     * @param end
+     *            The end time, inclusive
+     * @return The root of the flame graph
+     * @throws AttributeNotFoundException
+     *             If one of the call stack attributes does not exist
+     * @throws StateSystemDisposedException
+     *             If the state system is disposed during the query
+     */
+    public static CallGraphNode aggregate(ITmfStateSystem ss, Collection<Integer> callStackQuarks, long start, long end)
+            throws AttributeNotFoundException, StateSystemDisposedException {
+        CallGraphNode root = new CallGraphNode();
+        int nbThreads = Math.min(callStackQuarks.size(), Runtime.getRuntime().availableProcessors());
+        if (nbThreads <= 1) {
+            for (int quark : callStackQuarks) {
+                root.merge(aggregate(ss, quark, start, end));
+            }
+            return root;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        try {
+            List<Future<CallGraphNode>> futures = new ArrayList<>();
+            for (int quark : callStackQuarks) {
+                futures.add(executor.submit(() -> aggregate(ss, quark, start, end)));
+            }
+            for (Future<CallGraphNode> future : futures) {
+                root.merge(future.get());
+            }
+            return root;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StateSystemDisposedException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof AttributeNotFoundException) {
+                throw (AttributeNotFoundException) cause;
+            }
+            if (cause instanceof StateSystemDisposedException) {
+                throw (StateSystemDisposedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
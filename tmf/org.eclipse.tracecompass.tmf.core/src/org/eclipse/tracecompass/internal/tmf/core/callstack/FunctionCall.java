@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.callstack;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
+
+/**
+ * A function call of a call stack: the interval during which a function was
+ * at a given depth of the stack.
+ */
+@NonNullByDefault
+public final class FunctionCall {
+
+    private final int fDepth;
+    private final long fEntryTime;
+    private final long fExitTime;
+    private final ITmfStateValue fValue;
+
+    /**
+     * Constructor
+     *
+     * @param depth
+     *            The depth in the call stack, starting at 1
+     * @param entryTime
+     *            The function entry time
+     * @param exitTime
+     *            The function exit time, exclusive
+     * @param value
+     *            The function name or address, as stored in the call stack
+     */
+    public FunctionCall(int depth, long entryTime, long exitTime, ITmfStateValue value) {
+        fDepth = depth;
+        fEntryTime = entryTime;
+        fExitTime = exitTime;
+        fValue = value;
+    }
+
+    /**
+     * @return The depth in the call stack, starting at 1
+     */
+    public int getDepth() {
+        return fDepth;
+    }
+
+    /**
+     * @return The function entry time
+     */
+    public long getEntryTime() {
+        return fEntryTime;
+    }
+
+    /**
+     * @return The function exit time, exclusive
+     */
+    public long getExitTime() {
+        return fExitTime;
+    }
+
+    /**
+     * @return The time spent in the function and its callees
+     */
+    public long getDuration() {
+        return fExitTime - fEntryTime;
+    }
+
+    /**
+     * @return The function name or address, as stored in the call stack
+     */
+    public ITmfStateValue getValue() {
+        return fValue;
+    }
+
+    @Override
+    public String toString() {
+        return "FunctionCall[depth=" + fDepth + ", entry=" + fEntryTime + //$NON-NLS-1$ //$NON-NLS-2$
+                ", exit=" + fExitTime + ", value=" + fValue + ']'; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
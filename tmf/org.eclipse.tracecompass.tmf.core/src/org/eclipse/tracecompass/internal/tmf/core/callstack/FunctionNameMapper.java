@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2015 Ericsson
+ * Copyright (c) 2013, 2016 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -13,18 +13,13 @@
 
 package org.eclipse.tracecompass.internal.tmf.core.callstack;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.cdt.core.IBinaryParser;
@@ -50,7 +45,9 @@ public final class FunctionNameMapper {
 
     private FunctionNameMapper() {}
 
-    private static final Pattern REMOVE_ZEROS_PATTERN = Pattern.compile("^0+(?!$)"); //$NON-NLS-1$
+    private static final String CACHE_DIRECTORY = "symbol-cache"; //$NON-NLS-1$
+    private static final String NM_CACHE_SUFFIX = ".nm.idx"; //$NON-NLS-1$
+    private static final String BINARY_CACHE_SUFFIX = ".bin.idx"; //$NON-NLS-1$
 
     /**
      * Get the function name mapping from a text file obtained by doing
@@ -64,30 +61,11 @@ public final class FunctionNameMapper {
      * @return A map&lt;address, function name&gt; of the results
      */
     public static @Nullable Map<String, String> mapFromNmTextFile(File mappingFile) {
-        Map<String, String> map = new HashMap<>();
-
-        try (FileReader fr = new FileReader(mappingFile);
-                BufferedReader reader = new BufferedReader(fr);) {
-            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
-                line = line.trim();
-                /* Only lines with 3 elements contain addresses */
-                String[] elems = line.split(" ", 3); //$NON-NLS-1$
-                if (elems.length == 3) {
-                    String address = stripLeadingZeros(elems[0]);
-                    String name = elems[elems.length - 1];
-                    map.put(address, name);
-                }
-            }
-        } catch (FileNotFoundException e) {
-            return null;
-        } catch (IOException e) {
-            /* Stop reading the file at this point */
-        }
-
-        if (map.isEmpty()) {
+        SymbolIndex index = indexFromNmTextFile(mappingFile, false);
+        if (index == null) {
             return null;
         }
-        return ImmutableMap.copyOf(map);
+        return toMap(index);
     }
 
     /**
@@ -98,29 +76,120 @@ public final class FunctionNameMapper {
      * @return A map&lt;address, function name&gt; of the results
      */
     public static @Nullable Map<String, String> mapFromBinaryFile(File file) {
-        Map<String, String> map = new HashMap<>();
+        return toMap(indexFromBinaryFile(file, false));
+    }
+
+    /**
+     * Get the symbol index of a text file obtained from nm, see
+     * {@link #mapFromNmTextFile}.
+     *
+     * @param mappingFile
+     *            The file to import
+     * @param functionsOnly
+     *            True to only keep the function symbols
+     * @return The symbol index, or null if the file does not exist or
+     *         contains no symbol
+     */
+    public static @Nullable SymbolIndex indexFromNmTextFile(File mappingFile, boolean functionsOnly) {
+        if (!mappingFile.isFile()) {
+            return null;
+        }
+        SymbolIndex index;
+        try {
+            index = SymbolIndex.readNmTextFile(mappingFile, functionsOnly);
+        } catch (IOException e) {
+            Activator.logError("Error reading symbol mapping file " + mappingFile, e); //$NON-NLS-1$
+            return null;
+        }
+        return (index.size() == 0 ? null : index);
+    }
+
+    /**
+     * Get the symbol index of an executable binary.
+     *
+     * @param file
+     *            The file to import
+     * @param functionsOnly
+     *            True to only keep the function symbols
+     * @return The symbol index, empty if the file is not a supported binary
+     */
+    public static SymbolIndex indexFromBinaryFile(File file, boolean functionsOnly) {
         IBinaryParser.IBinaryObject binaryObject = getBinaryObject(file);
-        if (binaryObject != null) {
-            ISymbol[] symbols = binaryObject.getSymbols();
-            for (ISymbol symbol : symbols) {
-                String address = symbol.getAddress().toHexAddressString();
-                /* Remove "0x" */
-                address = address.substring(2);
-                /* Strip the leading zeroes from the address */
-                address = stripLeadingZeros(address);
-                map.put(address, symbol.getName());
+        if (binaryObject == null) {
+            return SymbolIndex.EMPTY;
+        }
+        SymbolIndex.Builder builder = new SymbolIndex.Builder();
+        for (ISymbol symbol : binaryObject.getSymbols()) {
+            if (functionsOnly && symbol.getType() != ISymbol.FUNCTION) {
+                continue;
             }
+            /* The size is the one of the symbol table entry (st_size) */
+            builder.add(symbol.getAddress().getValue().longValue(), symbol.getSize(), symbol.getName());
         }
-
-        return ImmutableMap.copyOf(map);
+        return builder.build();
     }
 
+    /**
+     * Get the index of the function symbols of a nm output or binary file,
+     * using the compiled index cached in the state location of this plug-in
+     * if it is up to date with the file.
+     *
+     * @param file
+     *            The nm output or binary file
+     * @param isBinary
+     *            If the file is a binary, false if it is nm output
+     * @return The symbol index, or null if no symbol could be read
+     */
+    public static @Nullable SymbolIndex getIndex(File file, boolean isBinary) {
+        File cacheDirectory = Activator.getDefault().getStateLocation().append(CACHE_DIRECTORY).toFile();
+        return getIndex(file, isBinary, cacheDirectory);
+    }
 
     /**
-     * Strip the leading zeroes from the address
-     * */
-    private static String stripLeadingZeros(String address) {
-        return REMOVE_ZEROS_PATTERN.matcher(address).replaceFirst(""); //$NON-NLS-1$
+     * Get the index of the function symbols of a nm output or binary file,
+     * using the compiled index cached in the given directory if it is up to
+     * date with the file. The cache is written after the file is read.
+     *
+     * @param file
+     *            The nm output or binary file
+     * @param isBinary
+     *            If the file is a binary, false if it is nm output
+     * @param cacheDirectory
+     *            The directory of the cache files
+     * @return The symbol index, or null if no symbol could be read
+     */
+    public static @Nullable SymbolIndex getIndex(File file, boolean isBinary, File cacheDirectory) {
+        if (!file.isFile()) {
+            return null;
+        }
+        String path = file.getAbsolutePath();
+        File cacheFile = new File(cacheDirectory, Integer.toHexString(path.hashCode()) +
+                (isBinary ? BINARY_CACHE_SUFFIX : NM_CACHE_SUFFIX));
+
+        SymbolIndex index = SymbolIndex.readCache(cacheFile, file);
+        if (index != null) {
+            return (index.size() == 0 ? null : index);
+        }
+        index = (isBinary ? indexFromBinaryFile(file, true) : indexFromNmTextFile(file, true));
+        if (index == null || index.size() == 0) {
+            return null;
+        }
+        try {
+            if (cacheDirectory.isDirectory() || cacheDirectory.mkdirs()) {
+                index.writeCache(cacheFile, file);
+            }
+        } catch (IOException e) {
+            Activator.logWarning("Error writing symbol cache file " + cacheFile, e); //$NON-NLS-1$
+        }
+        return index;
+    }
+
+    private static Map<String, String> toMap(SymbolIndex index) {
+        ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+        for (int i = 0; i < index.size(); i++) {
+            builder.put(Long.toHexString(index.getAddress(i)), index.getName(i));
+        }
+        return builder.build();
     }
 
     private static IBinaryParser.@Nullable IBinaryObject getBinaryObject(File file) {
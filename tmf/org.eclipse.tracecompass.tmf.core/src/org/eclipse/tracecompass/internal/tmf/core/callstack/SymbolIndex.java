@@ -0,0 +1,537 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.callstack;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Sorted index of symbol addresses, sizes and names. The addresses and sizes
+ * are kept in primitive arrays, and every distinct name is stored only once,
+ * so that mappings of millions of symbols stay compact.
+ *
+ * Lookups are binary searches, either for an exact symbol address or for the
+ * symbol containing an address, which is the nearest one below it if the
+ * address is within its size.
+ *
+ * An index can be saved to a compiled cache file, which is much faster to load
+ * than the original nm output or binary.
+ */
+public final class SymbolIndex {
+
+    /** An index without any symbol */
+    public static final SymbolIndex EMPTY = new SymbolIndex(new long[0], new long[0], new String[0]);
+
+    private static final int CACHE_MAGIC = 0x53594d58;
+    private static final int CACHE_VERSION = 2;
+
+    private final long[] fAddresses;
+    private final long[] fSizes;
+    private final String[] fNames;
+
+    private SymbolIndex(long[] addresses, long[] sizes, String[] names) {
+        fAddresses = addresses;
+        fSizes = sizes;
+        fNames = names;
+    }
+
+    /**
+     * Builder of symbol indexes. Symbols can be added in any order. When the
+     * same address is added more than once, the last name and size are kept.
+     */
+    public static class Builder {
+
+        private final Map<String, String> fInternedNames = new HashMap<>();
+        private long[] fAddresses = new long[1024];
+        private long[] fSizes = new long[1024];
+        private String[] fNames = new String[1024];
+        private int fSize = 0;
+        private boolean fSorted = true;
+
+        /**
+         * Add a symbol of unknown size
+         *
+         * @param address
+         *            The symbol address
+         * @param name
+         *            The symbol name
+         */
+        public void add(long address, String name) {
+            add(address, 0, name);
+        }
+
+        /**
+         * Add a symbol
+         *
+         * @param address
+         *            The symbol address
+         * @param size
+         *            The symbol size, or 0 if it is unknown
+         * @param name
+         *            The symbol name
+         */
+        public void add(long address, long size, String name) {
+            if (fSize == fAddresses.length) {
+                fAddresses = Arrays.copyOf(fAddresses, fSize * 2);
+                fSizes = Arrays.copyOf(fSizes, fSize * 2);
+                fNames = Arrays.copyOf(fNames, fSize * 2);
+            }
+            if (fSize > 0 && Long.compareUnsigned(address, fAddresses[fSize - 1]) < 0) {
+                fSorted = false;
+            }
+            String interned = fInternedNames.putIfAbsent(name, name);
+            fAddresses[fSize] = address;
+            fSizes[fSize] = size;
+            fNames[fSize] = (interned == null ? name : interned);
+            fSize++;
+        }
+
+        /**
+         * Build the index
+         *
+         * @return The symbol index
+         */
+        public SymbolIndex build() {
+            if (fSize == 0) {
+                return EMPTY;
+            }
+            /*
+             * Addresses are unsigned: flipping the sign bit lets the signed
+             * sort and binary searches order them correctly.
+             */
+            long[] keys = new long[fSize];
+            for (int i = 0; i < fSize; i++) {
+                keys[i] = fAddresses[i] ^ Long.MIN_VALUE;
+            }
+            if (!fSorted) {
+                Arrays.sort(keys);
+            }
+            int unique = 0;
+            for (int i = 0; i < fSize; i++) {
+                if (unique == 0 || keys[unique - 1] != keys[i]) {
+                    keys[unique++] = keys[i];
+                }
+            }
+            keys = Arrays.copyOf(keys, unique);
+            long[] sizes = new long[unique];
+            String[] names = new String[unique];
+            if (fSorted) {
+                int index = -1;
+                for (int i = 0; i < fSize; i++) {
+                    if (index < 0 || keys[index] != (fAddresses[i] ^ Long.MIN_VALUE)) {
+                        index++;
+                    }
+                    sizes[index] = fSizes[i];
+                    names[index] = fNames[i];
+                }
+            } else {
+                /* Later symbols overwrite the earlier ones at the same address */
+                for (int i = 0; i < fSize; i++) {
+                    int index = Arrays.binarySearch(keys, fAddresses[i] ^ Long.MIN_VALUE);
+                    sizes[index] = fSizes[i];
+                    names[index] = fNames[i];
+                }
+            }
+            for (int i = 0; i < unique; i++) {
+                keys[i] ^= Long.MIN_VALUE;
+            }
+            return new SymbolIndex(keys, sizes, names);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Lookups
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the number of distinct symbol addresses
+     *
+     * @return The number of symbols
+     */
+    public int size() {
+        return fAddresses.length;
+    }
+
+    /**
+     * Get the address of the symbol at a given position, in increasing
+     * (unsigned) order of addresses
+     *
+     * @param index
+     *            The position of the symbol
+     * @return The symbol address
+     */
+    public long getAddress(int index) {
+        return fAddresses[index];
+    }
+
+    /**
+     * Get the size of the symbol at a given position, in increasing
+     * (unsigned) order of addresses
+     *
+     * @param index
+     *            The position of the symbol
+     * @return The symbol size, or 0 if it is unknown
+     */
+    public long getSize(int index) {
+        return fSizes[index];
+    }
+
+    /**
+     * Get the name of the symbol at a given position, in increasing
+     * (unsigned) order of addresses
+     *
+     * @param index
+     *            The position of the symbol
+     * @return The symbol name
+     */
+    public String getName(int index) {
+        return fNames[index];
+    }
+
+    /**
+     * Get the name of the symbol at exactly the given address
+     *
+     * @param address
+     *            The address
+     * @return The symbol name, or null if no symbol starts at this address
+     */
+    public @Nullable String getExactName(long address) {
+        int index = search(address);
+        return (index >= 0 ? fNames[index] : null);
+    }
+
+    /**
+     * Get the name of the symbol containing an address, which is the symbol
+     * at the highest address lower than or equal to it, if the address is
+     * within the size of that symbol. For a symbol of unknown size, only its
+     * exact address is known to be part of it.
+     *
+     * @param address
+     *            The address
+     * @return The symbol name, or null if no symbol contains the address
+     */
+    public @Nullable String getNearestName(long address) {
+        int index = search(address);
+        if (index >= 0) {
+            return fNames[index];
+        }
+        index = -index - 2;
+        if (index < 0) {
+            return null;
+        }
+        long size = fSizes[index];
+        if (size == 0 || Long.compareUnsigned(address - fAddresses[index], size) >= 0) {
+            return null;
+        }
+        return fNames[index];
+    }
+
+    /**
+     * Binary search in the addresses, compared as unsigned values. Same return
+     * value as {@link Arrays#binarySearch(long[], long)}.
+     */
+    private int search(long address) {
+        int low = 0;
+        int high = fAddresses.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Long.compareUnsigned(fAddresses[mid], address);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // ------------------------------------------------------------------------
+    // nm output parsing
+    // ------------------------------------------------------------------------
+
+    /**
+     * Read the symbols of a text file obtained by doing
+     *
+     * <pre>
+     * nm[--demangle][--print-size][binary] &gt; file.txt
+     * </pre>
+     *
+     * Only the lines with an address, an optional size, a type and a name are
+     * used. Lines of undefined symbols, which have no address, are skipped.
+     * The symbol sizes are only known if nm was run with --print-size (-S).
+     *
+     * @param mappingFile
+     *            The file to read
+     * @param functionsOnly
+     *            True to only keep the symbols in the text (code) section,
+     *            false to keep all the symbols
+     * @return The symbol index
+     * @throws IOException
+     *             If the file cannot be read
+     */
+    public static SymbolIndex readNmTextFile(File mappingFile, boolean functionsOnly) throws IOException {
+        Builder builder = new Builder();
+        try (InputStream in = new FileInputStream(mappingFile)) {
+            byte[] buffer = new byte[1 << 16];
+            byte[] line = new byte[256];
+            int lineLength = 0;
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n') {
+                        parseNmLine(line, lineLength, functionsOnly, builder);
+                        lineLength = 0;
+                    } else {
+                        if (lineLength == line.length) {
+                            line = Arrays.copyOf(line, lineLength * 2);
+                        }
+                        line[lineLength++] = b;
+                    }
+                }
+            }
+            parseNmLine(line, lineLength, functionsOnly, builder);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Parse a "address [size] type name" line. The name can contain spaces.
+     */
+    private static void parseNmLine(byte[] line, int length, boolean functionsOnly, Builder builder) {
+        int end = length;
+        while (end > 0 && isSpace(line[end - 1])) {
+            end--;
+        }
+        int pos = 0;
+        while (pos < end && isSpace(line[pos])) {
+            pos++;
+        }
+
+        /* Address */
+        int tokenEnd = nextSpace(line, pos, end);
+        if (!isHex(line, pos, tokenEnd)) {
+            return;
+        }
+        long address = parseHex(line, pos, tokenEnd);
+        pos = tokenEnd + 1;
+
+        /* Size, if any, then the one-letter type */
+        long size = 0;
+        tokenEnd = nextSpace(line, pos, end);
+        if (tokenEnd - pos > 1) {
+            if (!isHex(line, pos, tokenEnd)) {
+                return;
+            }
+            size = parseHex(line, pos, tokenEnd);
+            pos = tokenEnd + 1;
+            tokenEnd = nextSpace(line, pos, end);
+        }
+        if (tokenEnd - pos != 1 || tokenEnd >= end) {
+            return;
+        }
+        if (functionsOnly && !isTextType(line[pos])) {
+            return;
+        }
+        pos = tokenEnd;
+
+        /* Name, everything after the separator */
+        pos++;
+        if (pos >= end) {
+            return;
+        }
+        builder.add(address, size, new String(line, pos, end - pos, StandardCharsets.UTF_8));
+    }
+
+    private static int nextSpace(byte[] line, int start, int end) {
+        int pos = start;
+        while (pos < end && line[pos] != ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Check if a token is an hexadecimal value of 1 to 16 digits
+     */
+    private static boolean isHex(byte[] line, int start, int end) {
+        if (start >= end || end - start > 16) {
+            return false;
+        }
+        for (int pos = start; pos < end; pos++) {
+            if (Character.digit(line[pos], 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseHex(byte[] line, int start, int end) {
+        long value = 0;
+        for (int pos = start; pos < end; pos++) {
+            value = (value << 4) | Character.digit(line[pos], 16);
+        }
+        return value;
+    }
+
+    /**
+     * Check if a nm symbol type is a symbol in the text (code) section, global
+     * or local, including the weak symbols
+     */
+    private static boolean isTextType(byte type) {
+        return (type == 'T' || type == 't' || type == 'W' || type == 'w');
+    }
+
+    private static boolean isSpace(byte b) {
+        return (b == ' ' || b == '\t' || b == '\r');
+    }
+
+    // ------------------------------------------------------------------------
+    // Compiled cache files
+    // ------------------------------------------------------------------------
+
+    /**
+     * Save this index to a cache file. The size and modification time of the
+     * source file are recorded, so that the cache can be invalidated when the
+     * source changes. The file is written completely before replacing any
+     * previous cache file.
+     *
+     * @param cacheFile
+     *            The cache file to write
+     * @param source
+     *            The nm output or binary file this index was built from
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    public void writeCache(File cacheFile, File source) throws IOException {
+        /* Distinct names, in order of first use */
+        Map<String, Integer> nameIds = new HashMap<>();
+        int[] ids = new int[fNames.length];
+        for (int i = 0; i < fNames.length; i++) {
+            Integer id = nameIds.putIfAbsent(fNames[i], nameIds.size());
+            ids[i] = (id == null ? nameIds.size() - 1 : id);
+        }
+        byte[][] names = new byte[nameIds.size()][];
+        for (Map.Entry<String, Integer> entry : nameIds.entrySet()) {
+            names[entry.getValue()] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] path = source.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+
+        File tmpFile = new File(cacheFile.getPath() + ".tmp"); //$NON-NLS-1$
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmpFile.toPath()), 1 << 16);
+                DataOutputStream out = new DataOutputStream(os)) {
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(CACHE_VERSION);
+            out.writeLong(source.length());
+            out.writeLong(source.lastModified());
+            out.writeInt(path.length);
+            out.write(path);
+            out.writeInt(fAddresses.length);
+            out.writeInt(names.length);
+            for (long address : fAddresses) {
+                out.writeLong(address);
+            }
+            for (long size : fSizes) {
+                out.writeLong(size);
+            }
+            for (int id : ids) {
+                out.writeInt(id);
+            }
+            int offset = 0;
+            for (byte[] name : names) {
+                out.writeInt(offset);
+                offset += name.length;
+            }
+            out.writeInt(offset);
+            for (byte[] name : names) {
+                out.write(name);
+            }
+        }
+        Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Load an index from a cache file written by {@link #writeCache}.
+     *
+     * @param cacheFile
+     *            The cache file to read
+     * @param source
+     *            The nm output or binary file the index should correspond to
+     * @return The symbol index, or null if there is no valid cache file for
+     *         the current version of the source file
+     */
+    public static @Nullable SymbolIndex readCache(File cacheFile, File source) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != CACHE_MAGIC || buffer.getInt() != CACHE_VERSION ||
+                    buffer.getLong() != source.length() || buffer.getLong() != source.lastModified()) {
+                return null;
+            }
+            byte[] path = new byte[buffer.getInt()];
+            buffer.get(path);
+            if (!source.getAbsolutePath().equals(new String(path, StandardCharsets.UTF_8))) {
+                return null;
+            }
+            int count = buffer.getInt();
+            int nameCount = buffer.getInt();
+
+            long[] addresses = new long[count];
+            buffer.asLongBuffer().get(addresses);
+            buffer.position(buffer.position() + count * Long.BYTES);
+            long[] sizes = new long[count];
+            buffer.asLongBuffer().get(sizes);
+            buffer.position(buffer.position() + count * Long.BYTES);
+            int[] ids = new int[count];
+            buffer.asIntBuffer().get(ids);
+            buffer.position(buffer.position() + count * Integer.BYTES);
+            int[] offsets = new int[nameCount + 1];
+            buffer.asIntBuffer().get(offsets);
+            buffer.position(buffer.position() + offsets.length * Integer.BYTES);
+            byte[] strings = new byte[offsets[nameCount]];
+            buffer.get(strings);
+
+            String[] distinctNames = new String[nameCount];
+            for (int i = 0; i < nameCount; i++) {
+                distinctNames[i] = new String(strings, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+            }
+            String[] names = new String[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = distinctNames[ids[i]];
+            }
+            return new SymbolIndex(addresses, sizes, names);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            /* Unreadable or truncated cache, it will be rebuilt */
+            return null;
+        }
+    }
+}
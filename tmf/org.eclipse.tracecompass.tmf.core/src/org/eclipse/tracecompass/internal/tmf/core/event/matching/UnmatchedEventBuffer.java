@@ -0,0 +1,392 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.event.matching;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.event.matching.IEventMatchingKey;
+import org.eclipse.tracecompass.tmf.core.event.matching.TcpEventKey;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+
+/**
+ * Buffer of the events waiting for their match, for one direction. There is at
+ * most one event per trace and key, the first one added.
+ *
+ * The buffer is bounded: events older than a time horizon, relative to the
+ * last added event, expire, and the oldest events are evicted when the buffer
+ * is full. Events are expected to be added in approximately chronological
+ * order.
+ *
+ * TCP keys are stored in an open addressing table of primitive fields, other
+ * keys in a hash map. The events of different traces with the same key are
+ * chained, and all the events are linked in the order they were added, so
+ * matched events are unlinked right away.
+ */
+@NonNullByDefault
+public final class UnmatchedEventBuffer {
+
+    private final long fHorizon;
+    private final int fCapacity;
+
+    private final TcpKeyTable fTcpEntries = new TcpKeyTable();
+    private final Map<IEventMatchingKey, Entry> fOtherEntries = new HashMap<>();
+
+    /* Buffered events, in the order they were added */
+    private @Nullable Entry fOldest = null;
+    private @Nullable Entry fNewest = null;
+    private int fSize = 0;
+    private long fNbExpired = 0;
+
+    private static final class Entry {
+        private final IEventMatchingKey fKey;
+        private final ITmfEvent fEvent;
+        private final long fTime;
+        /* Next event of another trace with the same key */
+        private @Nullable Entry fNextSameKey = null;
+        private @Nullable Entry fPrevious = null;
+        private @Nullable Entry fNext = null;
+
+        public Entry(IEventMatchingKey key, ITmfEvent event, long time) {
+            fKey = key;
+            fEvent = event;
+            fTime = time;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param horizon
+     *            The time after which an unmatched event expires, in
+     *            nanoseconds, or {@link Long#MAX_VALUE} for no time limit
+     * @param capacity
+     *            The maximum number of events in the buffer
+     */
+    public UnmatchedEventBuffer(long horizon, int capacity) {
+        if (horizon < 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Horizon:" + horizon + ", Capacity:" + capacity); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        fHorizon = horizon;
+        fCapacity = capacity;
+    }
+
+    /**
+     * Add an event, unless an event of the same trace with the same key is
+     * already waiting. Events that are too old are expired first.
+     *
+     * @param key
+     *            The key of the event
+     * @param event
+     *            The event
+     * @return If the event was added
+     */
+    public boolean add(IEventMatchingKey key, ITmfEvent event) {
+        long time = event.getTimestamp().toNanos();
+        expire(time);
+        Entry head = get(key);
+        Entry last = null;
+        for (Entry entry = head; entry != null; entry = entry.fNextSameKey) {
+            if (entry.fEvent.getTrace() == event.getTrace()) {
+                return false;
+            }
+            last = entry;
+        }
+        Entry entry = new Entry(key, event, time);
+        if (last == null) {
+            put(key, entry);
+        } else {
+            last.fNextSameKey = entry;
+        }
+
+        /* Link the entry as the newest one */
+        Entry newest = fNewest;
+        entry.fPrevious = newest;
+        if (newest == null) {
+            fOldest = entry;
+        } else {
+            newest.fNext = entry;
+        }
+        fNewest = entry;
+        fSize++;
+
+        while (fSize > fCapacity) {
+            evictOldest();
+        }
+        return true;
+    }
+
+    /**
+     * Remove an event waiting with a key, to match it. If events of several
+     * traces wait with this key, the first one added is removed.
+     *
+     * @param key
+     *            The key
+     * @return The event, or null if no event with this key is waiting
+     */
+    public @Nullable ITmfEvent remove(IEventMatchingKey key) {
+        Entry head = get(key);
+        if (head == null) {
+            return null;
+        }
+        removeEntry(head);
+        return head.fEvent;
+    }
+
+    private @Nullable Entry get(IEventMatchingKey key) {
+        if (key instanceof TcpEventKey) {
+            return fTcpEntries.get((TcpEventKey) key);
+        }
+        return fOtherEntries.get(key);
+    }
+
+    private void put(IEventMatchingKey key, Entry entry) {
+        if (key instanceof TcpEventKey) {
+            fTcpEntries.put((TcpEventKey) key, entry);
+        } else {
+            fOtherEntries.put(key, entry);
+        }
+    }
+
+    private void removeKey(IEventMatchingKey key) {
+        if (key instanceof TcpEventKey) {
+            fTcpEntries.remove((TcpEventKey) key);
+        } else {
+            fOtherEntries.remove(key);
+        }
+    }
+
+    /* Unlink an entry from its key chain and from the insertion order */
+    private void removeEntry(Entry entry) {
+        Entry head = get(entry.fKey);
+        if (head == entry) {
+            Entry next = entry.fNextSameKey;
+            if (next == null) {
+                removeKey(entry.fKey);
+            } else {
+                put(entry.fKey, next);
+            }
+        } else {
+            Entry previous = head;
+            while (previous != null && previous.fNextSameKey != entry) {
+                previous = previous.fNextSameKey;
+            }
+            if (previous != null) {
+                previous.fNextSameKey = entry.fNextSameKey;
+            }
+        }
+        entry.fNextSameKey = null;
+
+        Entry previous = entry.fPrevious;
+        Entry next = entry.fNext;
+        if (previous == null) {
+            fOldest = next;
+        } else {
+            previous.fNext = next;
+        }
+        if (next == null) {
+            fNewest = previous;
+        } else {
+            next.fPrevious = previous;
+        }
+        entry.fPrevious = null;
+        entry.fNext = null;
+        fSize--;
+    }
+
+    /**
+     * Expire the events older than the horizon
+     *
+     * @param time
+     *            The current time, in nanoseconds
+     */
+    public void expire(long time) {
+        if (fHorizon == Long.MAX_VALUE) {
+            return;
+        }
+        long limit = time - fHorizon;
+        Entry oldest = fOldest;
+        while (oldest != null && oldest.fTime < limit) {
+            evictOldest();
+            oldest = fOldest;
+        }
+    }
+
+    private void evictOldest() {
+        Entry oldest = fOldest;
+        if (oldest != null) {
+            removeEntry(oldest);
+            fNbExpired++;
+        }
+    }
+
+    /**
+     * Remove all the events. The count of expired events is not reset.
+     */
+    public void clear() {
+        fTcpEntries.clear();
+        fOtherEntries.clear();
+        fOldest = null;
+        fNewest = null;
+        fSize = 0;
+    }
+
+    /**
+     * @return The number of events waiting for their match
+     */
+    public int size() {
+        return fSize;
+    }
+
+    /**
+     * Get the number of events of a trace waiting for their match
+     *
+     * @param trace
+     *            The trace
+     * @return The number of events
+     */
+    public int size(ITmfTrace trace) {
+        int count = 0;
+        for (Entry entry = fOldest; entry != null; entry = entry.fNext) {
+            if (entry.fEvent.getTrace() == trace) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of events that expired or were evicted without being
+     *         matched
+     */
+    public long getNbExpired() {
+        return fNbExpired;
+    }
+
+    /**
+     * Open addressing hash table of TCP keys, with linear probing. The key
+     * fields are stored in primitive arrays.
+     */
+    private static final class TcpKeyTable {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private long[] fSeqs = new long[INITIAL_CAPACITY];
+        private long[] fAcks = new long[INITIAL_CAPACITY];
+        private long[] fFlags = new long[INITIAL_CAPACITY];
+        private @Nullable Entry[] fEntries = new @Nullable Entry[INITIAL_CAPACITY];
+        private int fSize = 0;
+
+        private static int hash(long seq, long ack, long flags) {
+            long h = seq * 0x9E3779B97F4A7C15L;
+            h = (h ^ ack) * 0xC2B2AE3D27D4EB4FL;
+            h = (h ^ flags) * 0x165667B19E3779F9L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        private int indexOf(long seq, long ack, long flags) {
+            int mask = fEntries.length - 1;
+            int i = hash(seq, ack, flags) & mask;
+            while (fEntries[i] != null) {
+                if (fSeqs[i] == seq && fAcks[i] == ack && fFlags[i] == flags) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -(i + 1);
+        }
+
+        public @Nullable Entry get(TcpEventKey key) {
+            int i = indexOf(key.getSequence(), key.getAck(), key.getFlags());
+            return (i >= 0 ? fEntries[i] : null);
+        }
+
+        public void put(TcpEventKey key, Entry entry) {
+            if (2 * (fSize + 1) > fEntries.length) {
+                resize(2 * fEntries.length);
+            }
+            int i = indexOf(key.getSequence(), key.getAck(), key.getFlags());
+            if (i < 0) {
+                i = -i - 1;
+                fSize++;
+            }
+            fSeqs[i] = key.getSequence();
+            fAcks[i] = key.getAck();
+            fFlags[i] = key.getFlags();
+            fEntries[i] = entry;
+        }
+
+        public @Nullable Entry remove(TcpEventKey key) {
+            int i = indexOf(key.getSequence(), key.getAck(), key.getFlags());
+            if (i < 0) {
+                return null;
+            }
+            Entry entry = fEntries[i];
+            fSize--;
+            /* Shift back the following entries of the probe sequence */
+            int mask = fEntries.length - 1;
+            int hole = i;
+            int j = (i + 1) & mask;
+            while (fEntries[j] != null) {
+                int home = hash(fSeqs[j], fAcks[j], fFlags[j]) & mask;
+                /* Move the entry if the hole is between its home and itself */
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    fSeqs[hole] = fSeqs[j];
+                    fAcks[hole] = fAcks[j];
+                    fFlags[hole] = fFlags[j];
+                    fEntries[hole] = fEntries[j];
+                    hole = j;
+                }
+                j = (j + 1) & mask;
+            }
+            fEntries[hole] = null;
+            return entry;
+        }
+
+        private void resize(int capacity) {
+            long[] seqs = fSeqs;
+            long[] acks = fAcks;
+            long[] flags = fFlags;
+            @Nullable Entry[] entries = fEntries;
+            fSeqs = new long[capacity];
+            fAcks = new long[capacity];
+            fFlags = new long[capacity];
+            fEntries = new @Nullable Entry[capacity];
+            int mask = capacity - 1;
+            for (int j = 0; j < entries.length; j++) {
+                if (entries[j] != null) {
+                    int i = hash(seqs[j], acks[j], flags[j]) & mask;
+                    while (fEntries[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    fSeqs[i] = seqs[j];
+                    fAcks[i] = acks[j];
+                    fFlags[i] = flags[j];
+                    fEntries[i] = entries[j];
+                }
+            }
+        }
+
+        public void clear() {
+            fSeqs = new long[INITIAL_CAPACITY];
+            fAcks = new long[INITIAL_CAPACITY];
+            fFlags = new long[INITIAL_CAPACITY];
+            fEntries = new @Nullable Entry[INITIAL_CAPACITY];
+            fSize = 0;
+        }
+
+        public int size() {
+            return fSize;
+        }
+    }
+}
@@ -0,0 +1,694 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.filter;
+
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.event.aspect.ITmfEventAspect;
+import org.eclipse.tracecompass.tmf.core.filter.ITmfFilter;
+import org.eclipse.tracecompass.tmf.core.filter.model.ITmfFilterTreeNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterAndNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterCompareNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterContainsNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterEqualsNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterMatchesNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterOrNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterRootNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterTraceTypeNode;
+import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfNanoTimestamp;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestampFormat;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+
+/**
+ * Compiles a filter tree into a flat predicate that gives the same result as
+ * {@link ITmfFilterTreeNode#matches(ITmfEvent)}, but is cheaper to evaluate on
+ * every event of a trace:
+ * <ul>
+ * <li>the constants of the conditions (numbers, timestamps, regular
+ * expressions, upper case strings) are parsed once, at compilation;</li>
+ * <li>each event aspect is resolved at most once per event, even if several
+ * conditions use it;</li>
+ * <li>the children of the and/or nodes are evaluated in an order that adapts
+ * to their cost and to how often they decide the result, so that the
+ * evaluation short-circuits as early as possible.</li>
+ * </ul>
+ * A compiled filter is a snapshot of the tree: it must be compiled again if
+ * the tree is modified. Nodes of unknown types are evaluated by calling their
+ * own {@link ITmfFilterTreeNode#matches(ITmfEvent)} method, and the and/or
+ * nodes that contain them keep their original evaluation order, since such
+ * nodes may have state.
+ */
+public final class TmfFilterCompiler {
+
+    /** Number of evaluations of a junction between re-orderings */
+    private static final int REORDER_PERIOD = 4096;
+
+    /** Placeholder for an aspect that resolved to null */
+    private static final Object NULL_VALUE = new Object();
+
+    /* Relative costs of the conditions, to order them before any statistics */
+    private static final int COST_TRACE_TYPE = 1;
+    private static final int COST_EQUALS = 2;
+    private static final int COST_COMPARE = 3;
+    private static final int COST_CONTAINS = 4;
+    private static final int COST_MATCHES = 10;
+    private static final int COST_UNKNOWN = 20;
+
+    private TmfFilterCompiler() {
+    }
+
+    /**
+     * Compile a filter.
+     *
+     * @param filter
+     *            The filter to compile
+     * @return The compiled filter, or the filter itself if it is not a filter
+     *         tree that can be compiled
+     */
+    public static ITmfFilter compile(ITmfFilter filter) {
+        if (filter == null || !isCompilable(filter)) {
+            return filter;
+        }
+        List<ITmfEventAspect> aspects = new ArrayList<>();
+        CompiledNode root = compileNode((ITmfFilterTreeNode) filter, aspects);
+        return new CompiledFilter(root, aspects.size());
+    }
+
+    private static boolean isCompilable(ITmfFilter filter) {
+        Class<?> filterClass = filter.getClass();
+        return filterClass == TmfFilterRootNode.class ||
+                filterClass == TmfFilterNode.class ||
+                filterClass == TmfFilterAndNode.class ||
+                filterClass == TmfFilterOrNode.class ||
+                filterClass == TmfFilterTraceTypeNode.class;
+    }
+
+    // ------------------------------------------------------------------------
+    // Compilation
+    // ------------------------------------------------------------------------
+
+    private static CompiledNode compileNode(ITmfFilterTreeNode node, List<ITmfEventAspect> aspects) {
+        /*
+         * Only the exact classes are compiled, sub-classes may override
+         * matches()
+         */
+        Class<?> nodeClass = node.getClass();
+        if (nodeClass == TmfFilterRootNode.class) {
+            return new Junction(compileChildren(node, aspects), false, false, true);
+        } else if (nodeClass == TmfFilterNode.class) {
+            return new Junction(compileChildren(node, aspects), true, true, false);
+        } else if (nodeClass == TmfFilterAndNode.class) {
+            boolean not = ((TmfFilterAndNode) node).isNot();
+            return new Junction(compileChildren(node, aspects), false, false ^ not, true ^ not);
+        } else if (nodeClass == TmfFilterOrNode.class) {
+            boolean not = ((TmfFilterOrNode) node).isNot();
+            /* Same result as TmfFilterOrNode when no child matches */
+            return new Junction(compileChildren(node, aspects), true, true ^ not, false);
+        } else if (nodeClass == TmfFilterTraceTypeNode.class) {
+            TmfFilterTraceTypeNode traceTypeNode = (TmfFilterTraceTypeNode) node;
+            Junction children = new Junction(compileChildren(node, aspects), false, false, true);
+            return new TraceTypeCondition(traceTypeNode.getTraceClass(), traceTypeNode.getTraceTypeId(), children);
+        } else if (nodeClass == TmfFilterEqualsNode.class) {
+            TmfFilterEqualsNode equalsNode = (TmfFilterEqualsNode) node;
+            return new EqualsCondition(getSlot(equalsNode.getEventAspect(), aspects), equalsNode.getEventAspect(),
+                    equalsNode.isNot(), equalsNode.getValue(), equalsNode.isIgnoreCase());
+        } else if (nodeClass == TmfFilterContainsNode.class) {
+            TmfFilterContainsNode containsNode = (TmfFilterContainsNode) node;
+            return new ContainsCondition(getSlot(containsNode.getEventAspect(), aspects), containsNode.getEventAspect(),
+                    containsNode.isNot(), containsNode.getValue(), containsNode.isIgnoreCase());
+        } else if (nodeClass == TmfFilterMatchesNode.class) {
+            TmfFilterMatchesNode matchesNode = (TmfFilterMatchesNode) node;
+            return new MatchesCondition(getSlot(matchesNode.getEventAspect(), aspects), matchesNode.getEventAspect(),
+                    matchesNode.isNot(), matchesNode.getRegex());
+        } else if (nodeClass == TmfFilterCompareNode.class) {
+            TmfFilterCompareNode compareNode = (TmfFilterCompareNode) node;
+            return CompareCondition.create(getSlot(compareNode.getEventAspect(), aspects), compareNode.getEventAspect(),
+                    compareNode);
+        }
+        return new NodeCondition(node);
+    }
+
+    private static CompiledNode[] compileChildren(ITmfFilterTreeNode node, List<ITmfEventAspect> aspects) {
+        ITmfFilterTreeNode[] children = node.getChildren();
+        CompiledNode[] compiled = new CompiledNode[children.length];
+        for (int i = 0; i < children.length; i++) {
+            compiled[i] = compileNode(children[i], aspects);
+        }
+        return compiled;
+    }
+
+    /**
+     * Get the index of an aspect in the per-event resolved values, so that
+     * conditions on the same aspect share its resolved value.
+     */
+    private static int getSlot(ITmfEventAspect aspect, List<ITmfEventAspect> aspects) {
+        if (aspect == null) {
+            return -1;
+        }
+        int slot = aspects.indexOf(aspect);
+        if (slot < 0) {
+            aspects.add(aspect);
+            slot = aspects.size() - 1;
+        }
+        return slot;
+    }
+
+    // ------------------------------------------------------------------------
+    // Compiled filter
+    // ------------------------------------------------------------------------
+
+    private static final class CompiledFilter implements ITmfFilter {
+
+        private final CompiledNode fRoot;
+        private final int fNbAspects;
+
+        public CompiledFilter(CompiledNode root, int nbAspects) {
+            fRoot = root;
+            fNbAspects = nbAspects;
+        }
+
+        @Override
+        public boolean matches(ITmfEvent event) {
+            if (event == null) {
+                return false;
+            }
+            return fRoot.matches(event, new Object[fNbAspects]);
+        }
+    }
+
+    /**
+     * A compiled node, evaluated with the aspect values already resolved for
+     * the event.
+     */
+    private abstract static class CompiledNode {
+
+        public abstract boolean matches(ITmfEvent event, Object[] values);
+
+        /**
+         * @return The relative cost of evaluating this node
+         */
+        public abstract int getCost();
+
+        /**
+         * @return true if the node has no side effect, so that it can be
+         *         evaluated in any order, or not at all
+         */
+        public boolean isPure() {
+            return true;
+        }
+    }
+
+    /**
+     * An and/or node. The children are evaluated until one of them returns
+     * the short-circuit value.
+     */
+    private static final class Junction extends CompiledNode {
+
+        private final boolean fShortCircuitOn;
+        private final boolean fShortCircuitResult;
+        private final boolean fExhaustedResult;
+        private final int fCost;
+        private final boolean fIsPure;
+
+        /*
+         * Replaced as a whole when re-ordered, the evaluation uses a snapshot.
+         * The statistics are not synchronized, they only need to be
+         * approximate.
+         */
+        private volatile Branch[] fBranches;
+        private int fNbEvaluations = 0;
+
+        public Junction(CompiledNode[] children, boolean shortCircuitOn, boolean shortCircuitResult, boolean exhaustedResult) {
+            fShortCircuitOn = shortCircuitOn;
+            fShortCircuitResult = shortCircuitResult;
+            fExhaustedResult = exhaustedResult;
+            Branch[] branches = new Branch[children.length];
+            int cost = 0;
+            boolean isPure = true;
+            for (int i = 0; i < children.length; i++) {
+                branches[i] = new Branch(children[i]);
+                cost += children[i].getCost();
+                isPure &= children[i].isPure();
+            }
+            fCost = cost;
+            fIsPure = isPure;
+            if (isPure) {
+                /* Start with the cheapest children first */
+                Arrays.sort(branches, Comparator.comparingInt(branch -> branch.fNode.getCost()));
+            }
+            fBranches = branches;
+        }
+
+        @Override
+        public boolean matches(ITmfEvent event, Object[] values) {
+            Branch[] branches = fBranches;
+            if (fIsPure && ++fNbEvaluations % REORDER_PERIOD == 0) {
+                reorder(branches);
+            }
+            for (Branch branch : branches) {
+                branch.fNbEvaluated++;
+                if (branch.fNode.matches(event, values) == fShortCircuitOn) {
+                    branch.fNbDecided++;
+                    return fShortCircuitResult;
+                }
+            }
+            return fExhaustedResult;
+        }
+
+        /**
+         * Order the children by expected cost to reach a decision: a child
+         * that is cheap and often decides the result is evaluated first.
+         */
+        private void reorder(Branch[] branches) {
+            if (branches.length < 2) {
+                return;
+            }
+            Branch[] reordered = Arrays.copyOf(branches, branches.length);
+            for (Branch branch : reordered) {
+                branch.updateScore();
+            }
+            Arrays.sort(reordered, Comparator.comparingDouble(branch -> branch.fScore));
+            fBranches = reordered;
+        }
+
+        @Override
+        public int getCost() {
+            return fCost;
+        }
+
+        @Override
+        public boolean isPure() {
+            return fIsPure;
+        }
+    }
+
+    private static final class Branch {
+
+        private final CompiledNode fNode;
+        private int fNbEvaluated = 0;
+        private int fNbDecided = 0;
+        private double fScore = 0;
+
+        public Branch(CompiledNode node) {
+            fNode = node;
+        }
+
+        public void updateScore() {
+            /* Add-one smoothing so that a child is never ruled out */
+            double decideRatio = (fNbDecided + 1.0) / (fNbEvaluated + 2.0);
+            fScore = fNode.getCost() / decideRatio;
+            fNbEvaluated = 0;
+            fNbDecided = 0;
+        }
+    }
+
+    private static final class TraceTypeCondition extends CompiledNode {
+
+        private final Class<? extends ITmfTrace> fTraceClass;
+        private final String fTraceTypeId;
+        private final CompiledNode fChildren;
+
+        public TraceTypeCondition(Class<? extends ITmfTrace> traceClass, String traceTypeId, CompiledNode children) {
+            fTraceClass = traceClass;
+            fTraceTypeId = traceTypeId;
+            fChildren = children;
+        }
+
+        @Override
+        public boolean matches(ITmfEvent event, Object[] values) {
+            ITmfTrace trace = event.getTrace();
+            if (!trace.getClass().equals(fTraceClass)) {
+                return false;
+            }
+            if (fTraceTypeId != null && !fTraceTypeId.equals(trace.getTraceTypeId())) {
+                return false;
+            }
+            return fChildren.matches(event, values);
+        }
+
+        @Override
+        public int getCost() {
+            return COST_TRACE_TYPE + fChildren.getCost();
+        }
+
+        @Override
+        public boolean isPure() {
+            return fChildren.isPure();
+        }
+    }
+
+    /**
+     * Base class of the conditions on the value of an event aspect
+     */
+    private abstract static class AspectCondition extends CompiledNode {
+
+        private final int fSlot;
+        private final ITmfEventAspect fAspect;
+
+        public AspectCondition(int slot, ITmfEventAspect aspect) {
+            fSlot = slot;
+            fAspect = aspect;
+        }
+
+        /**
+         * @return The resolved value of the aspect for this event, or null if
+         *         there is no aspect or no value
+         */
+        protected Object resolve(ITmfEvent event, Object[] values) {
+            if (fSlot < 0) {
+                return null;
+            }
+            Object value = values[fSlot];
+            if (value == null) {
+                value = fAspect.resolve(event);
+                values[fSlot] = (value == null ? NULL_VALUE : value);
+                return value;
+            }
+            return (value == NULL_VALUE ? null : value);
+        }
+    }
+
+    private static final class EqualsCondition extends AspectCondition {
+
+        private final boolean fNot;
+        private final String fValue;
+        private final boolean fIgnoreCase;
+
+        public EqualsCondition(int slot, ITmfEventAspect aspect, boolean not, String value, boolean ignoreCase) {
+            super(slot, aspect);
+            fNot = not;
+            fValue = value;
+            fIgnoreCase = ignoreCase;
+        }
+
+        @Override
+        public boolean matches(ITmfEvent event, Object[] values) {
+            Object value = resolve(event, values);
+            if (value == null) {
+                return false ^ fNot;
+            }
+            String valueString = value.toString();
+            if (fIgnoreCase) {
+                return valueString.equalsIgnoreCase(fValue) ^ fNot;
+            }
+            return valueString.equals(fValue) ^ fNot;
+        }
+
+        @Override
+        public int getCost() {
+            return COST_EQUALS;
+        }
+    }
+
+    private static final class ContainsCondition extends AspectCondition {
+
+        private final boolean fNot;
+        private final String fValue;
+        private final boolean fIgnoreCase;
+
+        public ContainsCondition(int slot, ITmfEventAspect aspect, boolean not, String value, boolean ignoreCase) {
+            super(slot, aspect);
+            fNot = not;
+            fIgnoreCase = ignoreCase;
+            fValue = (ignoreCase && value != null ? value.toUpperCase() : value);
+        }
+
+        @Override
+        public boolean matches(ITmfEvent event, Object[] values) {
+            Object value = resolve(event, values);
+            if (value == null || fValue == null) {
+                return false ^ fNot;
+            }
+            String valueString = value.toString();
+            if (fIgnoreCase) {
+                return valueString.toUpperCase().contains(fValue) ^ fNot;
+            }
+            return valueString.contains(fValue) ^ fNot;
+        }
+
+        @Override
+        public int getCost() {
+            return COST_CONTAINS;
+        }
+    }
+
+    private static final class MatchesCondition extends AspectCondition {
+
+        private final boolean fNot;
+        private final Pattern fPattern;
+
+        public MatchesCondition(int slot, ITmfEventAspect aspect, boolean not, String regex) {
+            super(slot, aspect);
+            fNot = not;
+            Pattern pattern = null;
+            if (regex != null) {
+                try {
+                    pattern = Pattern.compile(regex, Pattern.DOTALL);
+                } catch (PatternSyntaxException e) {
+                    pattern = null;
+                }
+            }
+            fPattern = pattern;
+        }
+
+        @Override
+        public boolean matches(ITmfEvent event, Object[] values) {
+            if (fPattern == null) {
+                return false ^ fNot;
+            }
+            Object value = resolve(event, values);
+            if (value == null) {
+                return false ^ fNot;
+            }
+            CharSequence chars = (value instanceof CharSequence ? (CharSequence) value : value.toString());
+            return fPattern.matcher(chars).find() ^ fNot;
+        }
+
+        @Override
+        public int getCost() {
+            return COST_MATCHES;
+        }
+    }
+
+    /**
+     * Comparison with a constant that was parsed once at compilation
+     */
+    private abstract static class CompareCondition extends AspectCondition {
+
+        private static final String TIMESTAMP_PATTERN = "T.SSSSSSSSS"; //$NON-NLS-1$
+
+        protected final boolean fNot;
+        protected final int fResult;
+
+        public CompareCondition(int slot, ITmfEventAspect aspect, boolean not, int result) {
+            super(slot, aspect);
+            fNot = not;
+            fResult = result;
+        }
+
+        public static CompiledNode create(int slot, ITmfEventAspect aspect, TmfFilterCompareNode node) {
+            String constant = node.getValue();
+            boolean not = node.isNot();
+            int result = node.getResult();
+            if (constant == null) {
+                return new NodeCondition(node);
+            }
+            switch (node.getType()) {
+            case NUM:
+                Number number = toNumber(constant);
+                if (number instanceof Double) {
+                    return new DoubleCompareCondition(slot, aspect, not, result, number.doubleValue());
+                } else if (number != null) {
+                    return new LongCompareCondition(slot, aspect, not, result, number.longValue(), number.doubleValue());
+                }
+                return new NodeCondition(node);
+            case ALPHA:
+                return new AlphaCompareCondition(slot, aspect, not, result, constant);
+            case TIMESTAMP:
+                TmfTimestampFormat format = new TmfTimestampFormat(TIMESTAMP_PATTERN);
+                ITmfTimestamp timestamp = toTimestamp(constant, format);
+                if (timestamp != null) {
+                    return new TimestampCompareCondition(slot, aspect, not, result, timestamp, format);
+                }
+                return new NodeCondition(node);
+            default:
+                return new NodeCondition(node);
+            }
+        }
+
+        protected static Number toNumber(Object value) {
+            if (value instanceof Number) {
+                return (Number) value;
+            }
+            try {
+                return Long.decode(value.toString());
+            } catch (NumberFormatException e) {
+            }
+            try {
+                return NumberFormat.getInstance().parse(value.toString());
+            } catch (ParseException e) {
+            }
+            return null;
+        }
+
+        protected static ITmfTimestamp toTimestamp(Object value, TmfTimestampFormat format) {
+            if (value instanceof ITmfTimestamp) {
+                return (ITmfTimestamp) value;
+            }
+            try {
+                return new TmfNanoTimestamp(format.parseValue(value.toString()));
+            } catch (ParseException e) {
+            }
+            return null;
+        }
+
+        @Override
+        public int getCost() {
+            return COST_COMPARE;
+        }
+    }
+
+    private static final class LongCompareCondition extends CompareCondition {
+
+        private final long fLongConstant;
+        private final double fDoubleConstant;
+
+        public LongCompareCondition(int slot, ITmfEventAspect aspect, boolean not, int result, long longConstant, double doubleConstant) {
+            super(slot, aspect, not, result);
+            fLongConstant = longConstant;
+            fDoubleConstant = doubleConstant;
+        }
+
+        @Override
+        public boolean matches(ITmfEvent event, Object[] values) {
+            Object value = resolve(event, values);
+            if (value == null) {
+                return false;
+            }
+            /* Fast path for the integer values, no conversion needed */
+            if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                return (Long.compare(((Number) value).longValue(), fLongConstant) == fResult) ^ fNot;
+            }
+            Number number = toNumber(value);
+            if (number instanceof Double || number instanceof Float) {
+                return (Double.compare(number.doubleValue(), fDoubleConstant) == fResult) ^ fNot;
+            } else if (number != null) {
+                return (Long.compare(number.longValue(), fLongConstant) == fResult) ^ fNot;
+            }
+            return false;
+        }
+    }
+
+    private static final class DoubleCompareCondition extends CompareCondition {
+
+        private final double fConstant;
+
+        public DoubleCompareCondition(int slot, ITmfEventAspect aspect, boolean not, int result, double constant) {
+            super(slot, aspect, not, result);
+            fConstant = constant;
+        }
+
+        @Override
+        public boolean matches(ITmfEvent event, Object[] values) {
+            Object value = resolve(event, values);
+            if (value == null) {
+                return false;
+            }
+            Number number = toNumber(value);
+            if (number != null) {
+                return (Double.compare(number.doubleValue(), fConstant) == fResult) ^ fNot;
+            }
+            return false;
+        }
+    }
+
+    private static final class AlphaCompareCondition extends CompareCondition {
+
+        private final String fConstant;
+
+        public AlphaCompareCondition(int slot, ITmfEventAspect aspect, boolean not, int result, String constant) {
+            super(slot, aspect, not, result);
+            fConstant = constant;
+        }
+
+        @Override
+        public boolean matches(ITmfEvent event, Object[] values) {
+            Object value = resolve(event, values);
+            if (value == null) {
+                return false;
+            }
+            int comp = (int) Math.signum(value.toString().compareTo(fConstant));
+            return (comp == fResult) ^ fNot;
+        }
+    }
+
+    private static final class TimestampCompareCondition extends CompareCondition {
+
+        private final ITmfTimestamp fConstant;
+        private final TmfTimestampFormat fFormat;
+
+        public TimestampCompareCondition(int slot, ITmfEventAspect aspect, boolean not, int result, ITmfTimestamp constant, TmfTimestampFormat format) {
+            super(slot, aspect, not, result);
+            fConstant = constant;
+            fFormat = format;
+        }
+
+        @Override
+        public boolean matches(ITmfEvent event, Object[] values) {
+            Object value = resolve(event, values);
+            if (value == null) {
+                return false;
+            }
+            ITmfTimestamp timestamp = toTimestamp(value, fFormat);
+            if (timestamp != null) {
+                int comp = (int) Math.signum(timestamp.compareTo(fConstant));
+                return (comp == fResult) ^ fNot;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Node of a type the compiler does not know, evaluated by the node itself
+     */
+    private static final class NodeCondition extends CompiledNode {
+
+        private final ITmfFilterTreeNode fNode;
+
+        public NodeCondition(ITmfFilterTreeNode node) {
+            fNode = node;
+        }
+
+        @Override
+        public boolean matches(ITmfEvent event, Object[] values) {
+            return fNode.matches(event);
+        }
+
+        @Override
+        public int getCost() {
+            return COST_UNKNOWN;
+        }
+
+        @Override
+        public boolean isPure() {
+            return false;
+        }
+    }
+}
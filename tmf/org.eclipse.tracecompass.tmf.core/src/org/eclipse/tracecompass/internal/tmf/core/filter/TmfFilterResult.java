@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.filter;
+
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.filter.ITmfFilter;
+
+/**
+ * The result of a filter on the first events of a trace: the ranks of the
+ * matching events among the events that were checked.
+ */
+public class TmfFilterResult {
+
+    private final TmfRankBitmap fRanks;
+    private final long fNbChecked;
+
+    /**
+     * Constructor
+     *
+     * @param ranks
+     *            The ranks of the matching events
+     * @param nbChecked
+     *            The number of events checked, from rank 0
+     */
+    public TmfFilterResult(TmfRankBitmap ranks, long nbChecked) {
+        fRanks = ranks;
+        fNbChecked = nbChecked;
+    }
+
+    /**
+     * @return The ranks of the matching events
+     */
+    public TmfRankBitmap getRanks() {
+        return fRanks;
+    }
+
+    /**
+     * @return The number of events checked, from rank 0
+     */
+    public long getNbChecked() {
+        return fNbChecked;
+    }
+
+    /**
+     * Get a filter that looks up the rank of the events checked by this
+     * result, and falls back to the given filter for other events. The
+     * returned filter uses its own copy of the ranks.
+     *
+     * @param filter
+     *            The filter for the events that were not checked
+     * @return The filter
+     */
+    public ITmfFilter asFilter(final ITmfFilter filter) {
+        final TmfRankBitmap ranks = new TmfRankBitmap(fRanks);
+        final long nbChecked = fNbChecked;
+        return new ITmfFilter() {
+            @Override
+            public boolean matches(ITmfEvent event) {
+                long rank = event.getRank();
+                if (rank >= 0 && rank < nbChecked) {
+                    return ranks.contains(rank);
+                }
+                return filter.matches(event);
+            }
+        };
+    }
+}
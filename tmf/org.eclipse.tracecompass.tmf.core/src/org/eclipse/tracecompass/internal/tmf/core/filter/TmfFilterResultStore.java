@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.internal.tmf.core.Activator;
+import org.eclipse.tracecompass.tmf.core.filter.model.ITmfFilterTreeNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterAndNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterOrNode;
+import org.eclipse.tracecompass.tmf.core.filter.model.TmfFilterRootNode;
+import org.eclipse.tracecompass.tmf.core.filter.xml.TmfFilterXMLWriter;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Store of the filter results of a trace. The results are kept as rank
+ * bitmaps in the supplementary files folder of the trace, keyed by the XML
+ * serialization of the filter tree, so that applying a filter again does not
+ * need to read the trace.
+ *
+ * When there is no result for a junction of the filter tree, the results of
+ * its children are combined if they are all available.
+ */
+public class TmfFilterResultStore {
+
+    private static final String DIRECTORY = "filters"; //$NON-NLS-1$
+    private static final String EXTENSION = ".ranks"; //$NON-NLS-1$
+    private static final int VERSION = 1;
+    private static final int MAX_CACHED_RESULTS = 16;
+
+    private final ITmfTrace fTrace;
+    private final File fDirectory;
+    private final Map<String, TmfFilterResult> fResults = new LinkedHashMap<String, TmfFilterResult>(MAX_CACHED_RESULTS, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TmfFilterResult> eldest) {
+            return size() > MAX_CACHED_RESULTS;
+        }
+    };
+
+    /**
+     * Constructor
+     *
+     * @param trace
+     *            The trace of the filter results
+     */
+    public TmfFilterResultStore(ITmfTrace trace) {
+        fTrace = trace;
+        fDirectory = new File(TmfTraceManager.getSupplementaryFileDir(trace) + DIRECTORY);
+    }
+
+    /**
+     * @return The trace of the filter results
+     */
+    public ITmfTrace getTrace() {
+        return fTrace;
+    }
+
+    /**
+     * Check if the results of a filter can be stored. A filter that depends on
+     * the previous events, like the collapse filter, cannot.
+     *
+     * @param filter
+     *            The filter
+     * @return true if the results of the filter can be stored
+     */
+    public static boolean isStorable(@Nullable Object filter) {
+        if (!(filter instanceof ITmfFilterTreeNode) || filter instanceof TmfCollapseFilter) {
+            return false;
+        }
+        for (ITmfFilterTreeNode child : ((ITmfFilterTreeNode) filter).getChildren()) {
+            if (!isStorable(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the canonical serialization of a filter tree, which is the key of
+     * its results
+     *
+     * @param filter
+     *            The filter tree
+     * @return The serialization, or null if the filter could not be
+     *         serialized
+     */
+    public static @Nullable String getKey(ITmfFilterTreeNode filter) {
+        try {
+            Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+            Element element = document.createElement(DIRECTORY);
+            document.appendChild(element);
+            TmfFilterXMLWriter.buildXMLTree(document, filter, element);
+            StringWriter writer = new StringWriter();
+            TransformerFactory.newInstance().newTransformer().transform(new DOMSource(document), new StreamResult(writer));
+            return writer.toString();
+        } catch (ParserConfigurationException | TransformerException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the results of a filter, either stored for that filter or combined
+     * from the results of its children.
+     *
+     * @param filter
+     *            The filter
+     * @return A copy of the results, or null if they are not available
+     */
+    public synchronized @Nullable TmfFilterResult get(ITmfFilterTreeNode filter) {
+        TmfFilterResult result = getResult(filter);
+        if (result == null || result.getNbChecked() > fTrace.getNbEvents()) {
+            return null;
+        }
+        return new TmfFilterResult(new TmfRankBitmap(result.getRanks()), result.getNbChecked());
+    }
+
+    /**
+     * Store the results of a filter
+     *
+     * @param filter
+     *            The filter
+     * @param ranks
+     *            The ranks of the matching events, which are copied
+     * @param nbChecked
+     *            The number of events checked, from rank 0
+     */
+    public synchronized void put(ITmfFilterTreeNode filter, TmfRankBitmap ranks, long nbChecked) {
+        if (!isStorable(filter)) {
+            return;
+        }
+        String key = getKey(filter);
+        if (key == null) {
+            return;
+        }
+        TmfFilterResult result = new TmfFilterResult(new TmfRankBitmap(ranks), nbChecked);
+        fResults.put(key, result);
+        write(key, result);
+    }
+
+    private @Nullable TmfFilterResult getResult(ITmfFilterTreeNode filter) {
+        if (!isStorable(filter)) {
+            return null;
+        }
+        String key = getKey(filter);
+        if (key == null) {
+            return null;
+        }
+        TmfFilterResult result = fResults.get(key);
+        if (result == null) {
+            result = read(key);
+            if (result != null) {
+                fResults.put(key, result);
+            }
+        }
+        if (result == null) {
+            result = combine(filter);
+        }
+        return result;
+    }
+
+    private @Nullable TmfFilterResult combine(ITmfFilterTreeNode filter) {
+        boolean and;
+        if (filter instanceof TmfFilterRootNode) {
+            and = true;
+        } else if (filter instanceof TmfFilterAndNode && !((TmfFilterAndNode) filter).isNot()) {
+            and = true;
+        } else if (filter instanceof TmfFilterOrNode && !((TmfFilterOrNode) filter).isNot()) {
+            and = false;
+        } else if (filter instanceof TmfFilterNode) {
+            and = false;
+        } else {
+            return null;
+        }
+        List<ITmfFilterTreeNode> children = Arrays.asList(filter.getChildren());
+        if (children.isEmpty()) {
+            return null;
+        }
+        TmfRankBitmap ranks = null;
+        long nbChecked = -1;
+        for (ITmfFilterTreeNode child : children) {
+            TmfFilterResult result = getResult(child);
+            /* The results can only be combined over the same events */
+            if (result == null || (nbChecked >= 0 && result.getNbChecked() != nbChecked)) {
+                return null;
+            }
+            nbChecked = result.getNbChecked();
+            if (ranks == null) {
+                ranks = result.getRanks();
+            } else {
+                ranks = and ? TmfRankBitmap.and(ranks, result.getRanks()) : TmfRankBitmap.or(ranks, result.getRanks());
+            }
+        }
+        return (ranks == null) ? null : new TmfFilterResult(ranks, nbChecked);
+    }
+
+    private File getFile(String key) {
+        StringBuilder name = new StringBuilder();
+        try {
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8))) { //$NON-NLS-1$
+                name.append(String.format("%02x", b)); //$NON-NLS-1$
+            }
+        } catch (NoSuchAlgorithmException e) {
+            name.append(Integer.toHexString(key.hashCode()));
+        }
+        return new File(fDirectory, name.append(EXTENSION).toString());
+    }
+
+    private @Nullable TmfFilterResult read(String key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            byte[] storedKey = new byte[in.readInt()];
+            in.readFully(storedKey);
+            /* The file name is a hash, check that it is the same filter */
+            if (!key.equals(new String(storedKey, StandardCharsets.UTF_8))) {
+                return null;
+            }
+            long nbChecked = in.readLong();
+            return new TmfFilterResult(TmfRankBitmap.readFrom(in), nbChecked);
+        } catch (IOException | NegativeArraySizeException e) {
+            Activator.logWarning("Could not read the filter results " + file, e); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    private void write(String key, TmfFilterResult result) {
+        if (!fDirectory.exists() && !fDirectory.mkdirs()) {
+            return;
+        }
+        File file = getFile(key);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(VERSION);
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(keyBytes.length);
+            out.write(keyBytes);
+            out.writeLong(result.getNbChecked());
+            result.getRanks().writeTo(out);
+        } catch (IOException e) {
+            Activator.logWarning("Could not write the filter results " + file, e); //$NON-NLS-1$
+            file.delete();
+        }
+    }
+}
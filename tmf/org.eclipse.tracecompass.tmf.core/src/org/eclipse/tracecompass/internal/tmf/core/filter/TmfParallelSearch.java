@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.filter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.internal.tmf.core.Activator;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.filter.ITmfFilter;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.util.Pair;
+
+/**
+ * Search engine that splits a range of events of a trace in partitions
+ * aligned on the checkpoints of the trace index, and evaluates the filters on
+ * each partition in parallel, each with its own context. The results of the
+ * partitions are consumed in order, so a match is returned as soon as the
+ * partitions before it are done.
+ *
+ * The filters are compiled for each partition with {@link TmfFilterCompiler}.
+ * If a filter cannot be compiled, it may keep a state between events (like
+ * the collapse filter), so the partitions are evaluated one at a time, in
+ * order.
+ */
+public class TmfParallelSearch {
+
+    /**
+     * Handler of the matching events, called in rank order
+     */
+    public interface IMatchHandler {
+        /**
+         * Handle a matching event
+         *
+         * @param rank
+         *            The rank of the matching event
+         */
+        void handleMatch(long rank);
+
+        /**
+         * Handle the end of a partition
+         *
+         * @param rank
+         *            The rank (exclusive) up to which all the events were
+         *            checked
+         */
+        void handleChecked(long rank);
+    }
+
+    private enum Mode {
+        FIRST, LAST, ALL
+    }
+
+    /** Number of partitions per thread, to balance uneven partitions */
+    private static final int PARTITIONS_PER_THREAD = 4;
+    /** Maximum size of a partition, in checkpoints */
+    private static final int MAX_PARTITION_CHECKPOINTS = 64;
+
+    private final ITmfTrace fTrace;
+    private final List<ITmfFilter> fFilters = new ArrayList<>();
+    private final int fNbThreads;
+
+    /**
+     * Constructor
+     *
+     * @param trace
+     *            The trace to search
+     * @param filters
+     *            The filters that an event must all match, null filters are
+     *            ignored
+     */
+    public TmfParallelSearch(ITmfTrace trace, @Nullable ITmfFilter... filters) {
+        fTrace = trace;
+        boolean parallel = true;
+        for (ITmfFilter filter : filters) {
+            if (filter != null) {
+                fFilters.add(filter);
+                parallel &= (TmfFilterCompiler.compile(filter) != filter);
+            }
+        }
+        fNbThreads = parallel ? Math.max(1, Runtime.getRuntime().availableProcessors()) : 1;
+    }
+
+    /**
+     * Find the first matching event in a range of ranks
+     *
+     * @param start
+     *            The start rank (inclusive)
+     * @param end
+     *            The end rank (exclusive)
+     * @param monitor
+     *            The progress monitor, to cancel the search
+     * @return The rank and the event of the first match, or null if there is
+     *         no match or the search was cancelled
+     */
+    public @Nullable Pair<Long, ITmfEvent> findNext(long start, long end, IProgressMonitor monitor) {
+        return find(start, end, Mode.FIRST, monitor);
+    }
+
+    /**
+     * Find the last matching event in a range of ranks
+     *
+     * @param start
+     *            The start rank (inclusive)
+     * @param end
+     *            The end rank (exclusive)
+     * @param monitor
+     *            The progress monitor, to cancel the search
+     * @return The rank and the event of the last match, or null if there is
+     *         no match or the search was cancelled
+     */
+    public @Nullable Pair<Long, ITmfEvent> findPrevious(long start, long end, IProgressMonitor monitor) {
+        return find(start, end, Mode.LAST, monitor);
+    }
+
+    /**
+     * Find all the matching events in a range of ranks
+     *
+     * @param start
+     *            The start rank (inclusive)
+     * @param end
+     *            The end rank (exclusive)
+     * @param monitor
+     *            The progress monitor, to cancel the search
+     * @param handler
+     *            The handler of the matches, called in rank order from the
+     *            calling thread
+     * @return true if the whole range was searched, false if the search was
+     *         cancelled or failed
+     */
+    public boolean findAll(long start, long end, IProgressMonitor monitor, final IMatchHandler handler) {
+        return run(start, end, Mode.ALL, monitor, partition -> {
+            for (int i = 0; i < partition.fNbMatches; i++) {
+                handler.handleMatch(partition.fMatches[i]);
+            }
+            handler.handleChecked(partition.fChecked);
+            return true;
+        });
+    }
+
+    private @Nullable Pair<Long, ITmfEvent> find(long start, long end, Mode mode, IProgressMonitor monitor) {
+        final List<Pair<Long, ITmfEvent>> result = new ArrayList<>(1);
+        run(start, end, mode, monitor, partition -> {
+            ITmfEvent event = partition.fEvent;
+            if (event != null) {
+                result.add(new Pair<>(Long.valueOf(partition.fRank), event));
+                return false;
+            }
+            return true;
+        });
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    @FunctionalInterface
+    private interface PartitionConsumer {
+        /* Returns false to stop the search */
+        boolean accept(Partition partition);
+    }
+
+    private boolean run(long start, long end, Mode mode, IProgressMonitor monitor, PartitionConsumer consumer) {
+        List<Partition> partitions = getPartitions(start, end, mode, monitor);
+        if (mode == Mode.LAST) {
+            Collections.reverse(partitions);
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(fNbThreads);
+        Deque<Future<Partition>> pending = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next < partitions.size() || !pending.isEmpty()) {
+                /* Bound the partitions in flight, their matches are kept */
+                while (next < partitions.size() && pending.size() < fNbThreads * 2) {
+                    Partition partition = partitions.get(next++);
+                    partition.fStop = stop;
+                    pending.add(executor.submit(partition));
+                }
+                Partition partition = pending.removeFirst().get();
+                if (!partition.fComplete || monitor.isCanceled()) {
+                    return false;
+                }
+                if (!consumer.accept(partition)) {
+                    return true;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            Activator.logError("Error searching trace " + fTrace.getName(), e.getCause()); //$NON-NLS-1$
+            return false;
+        } finally {
+            stop.set(true);
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Partition> getPartitions(long start, long end, Mode mode, IProgressMonitor monitor) {
+        List<Partition> partitions = new ArrayList<>();
+        if (start >= end) {
+            return partitions;
+        }
+        /* Partition boundaries are on checkpoints, which are cheap to seek */
+        long checkpoint = Math.max(1, fTrace.getCacheSize());
+        long size = (end - start) / (fNbThreads * PARTITIONS_PER_THREAD);
+        size = Math.max(1, (size + checkpoint - 1) / checkpoint) * checkpoint;
+        size = Math.min(size, checkpoint * MAX_PARTITION_CHECKPOINTS);
+        long partitionStart = start;
+        while (partitionStart < end) {
+            long partitionEnd = Math.min(end, (partitionStart / size + 1) * size);
+            partitions.add(new Partition(partitionStart, partitionEnd, mode, monitor));
+            partitionStart = partitionEnd;
+        }
+        return partitions;
+    }
+
+    private List<ITmfFilter> createFilters() {
+        if (fNbThreads == 1) {
+            return fFilters;
+        }
+        /* The compiled filters are not thread-safe, compile them per partition */
+        List<ITmfFilter> filters = new ArrayList<>(fFilters.size());
+        for (ITmfFilter filter : fFilters) {
+            filters.add(TmfFilterCompiler.compile(filter));
+        }
+        return filters;
+    }
+
+    private class Partition implements Callable<Partition> {
+        private final long fStart;
+        private final long fEnd;
+        private final Mode fMode;
+        private final IProgressMonitor fMonitor;
+        private AtomicBoolean fStop = new AtomicBoolean();
+
+        private boolean fComplete = false;
+        private long fChecked;
+        private long fRank = -1;
+        private @Nullable ITmfEvent fEvent = null;
+        private long[] fMatches = new long[0];
+        private int fNbMatches = 0;
+
+        public Partition(long start, long end, Mode mode, IProgressMonitor monitor) {
+            fStart = start;
+            fEnd = end;
+            fMode = mode;
+            fMonitor = monitor;
+            fChecked = start;
+        }
+
+        @Override
+        public Partition call() {
+            List<ITmfFilter> filters = createFilters();
+            ITmfContext context = fTrace.seekEvent(fStart);
+            try {
+                long rank = fStart;
+                while (rank < fEnd) {
+                    if (fStop.get() || fMonitor.isCanceled()) {
+                        return this;
+                    }
+                    ITmfEvent event = fTrace.getNext(context);
+                    if (event == null) {
+                        break;
+                    }
+                    if (matches(filters, event)) {
+                        fRank = rank;
+                        fEvent = event;
+                        if (fMode == Mode.FIRST) {
+                            break;
+                        } else if (fMode == Mode.ALL) {
+                            fEvent = null;
+                            if (fNbMatches == fMatches.length) {
+                                fMatches = Arrays.copyOf(fMatches, Math.max(16, fNbMatches * 2));
+                            }
+                            fMatches[fNbMatches++] = rank;
+                        }
+                    }
+                    rank++;
+                }
+                fChecked = rank;
+                fComplete = true;
+                return this;
+            } finally {
+                context.dispose();
+            }
+        }
+
+        private boolean matches(List<ITmfFilter> filters, ITmfEvent event) {
+            for (ITmfFilter filter : filters) {
+                if (!filter.matches(event)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
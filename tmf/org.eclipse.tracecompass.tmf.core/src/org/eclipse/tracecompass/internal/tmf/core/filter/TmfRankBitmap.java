@@ -0,0 +1,514 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.filter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compressed set of event ranks, in the style of a Roaring bitmap. The ranks
+ * are split in chunks of 2^16 ranks. A chunk with few ranks is stored as a
+ * sorted array of 16-bit values, a dense chunk is stored as a plain bitmap.
+ *
+ * This class is not thread-safe.
+ */
+public class TmfRankBitmap {
+
+    private static final int MAGIC = 0x54524231; // "TRB1"
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    /** Maximum cardinality of an array chunk, equal in size to a bitmap chunk */
+    private static final int MAX_ARRAY_SIZE = 4096;
+    private static final int BITMAP_WORDS = (1 << CHUNK_BITS) / Long.SIZE;
+
+    private int[] fKeys;
+    private Chunk[] fChunks;
+    private int fSize;
+
+    /**
+     * Constructor for an empty bitmap
+     */
+    public TmfRankBitmap() {
+        fKeys = new int[4];
+        fChunks = new Chunk[4];
+        fSize = 0;
+    }
+
+    /**
+     * Copy constructor
+     *
+     * @param other
+     *            The bitmap to copy
+     */
+    public TmfRankBitmap(TmfRankBitmap other) {
+        fKeys = Arrays.copyOf(other.fKeys, Math.max(other.fSize, 4));
+        fChunks = new Chunk[fKeys.length];
+        for (int i = 0; i < other.fSize; i++) {
+            fChunks[i] = other.fChunks[i].copy();
+        }
+        fSize = other.fSize;
+    }
+
+    /**
+     * Add a rank to this bitmap. Adding ranks in increasing order is the
+     * fastest.
+     *
+     * @param rank
+     *            The rank, must be positive
+     */
+    public void add(long rank) {
+        if (rank < 0) {
+            throw new IllegalArgumentException();
+        }
+        int key = (int) (rank >>> CHUNK_BITS);
+        char low = (char) (rank & CHUNK_MASK);
+        int i;
+        if (fSize > 0 && fKeys[fSize - 1] == key) {
+            i = fSize - 1;
+        } else {
+            i = Arrays.binarySearch(fKeys, 0, fSize, key);
+            if (i < 0) {
+                i = -i - 1;
+                insertChunk(i, key, new ArrayChunk());
+            }
+        }
+        fChunks[i] = fChunks[i].add(low);
+    }
+
+    /**
+     * Check if a rank is in this bitmap
+     *
+     * @param rank
+     *            The rank
+     * @return true if the rank was added to this bitmap
+     */
+    public boolean contains(long rank) {
+        if (rank < 0) {
+            return false;
+        }
+        int i = Arrays.binarySearch(fKeys, 0, fSize, (int) (rank >>> CHUNK_BITS));
+        return i >= 0 && fChunks[i].contains((char) (rank & CHUNK_MASK));
+    }
+
+    /**
+     * @return The number of ranks in this bitmap
+     */
+    public long getCardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < fSize; i++) {
+            cardinality += fChunks[i].getCardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * Get the rank at a given position in this bitmap, in increasing order.
+     *
+     * @param index
+     *            The position, starting at 0
+     * @return The rank, or -1 if the index is out of bounds
+     */
+    public long select(long index) {
+        if (index < 0) {
+            return -1;
+        }
+        long remaining = index;
+        for (int i = 0; i < fSize; i++) {
+            int cardinality = fChunks[i].getCardinality();
+            if (remaining < cardinality) {
+                return ((long) fKeys[i] << CHUNK_BITS) | fChunks[i].select((int) remaining);
+            }
+            remaining -= cardinality;
+        }
+        return -1;
+    }
+
+    /**
+     * Compute the intersection of two bitmaps
+     *
+     * @param first
+     *            The first bitmap
+     * @param second
+     *            The second bitmap
+     * @return A new bitmap with the ranks present in both bitmaps
+     */
+    public static TmfRankBitmap and(TmfRankBitmap first, TmfRankBitmap second) {
+        TmfRankBitmap result = new TmfRankBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < first.fSize && j < second.fSize) {
+            if (first.fKeys[i] < second.fKeys[j]) {
+                i++;
+            } else if (first.fKeys[i] > second.fKeys[j]) {
+                j++;
+            } else {
+                Chunk chunk = first.fChunks[i].and(second.fChunks[j]);
+                if (chunk.getCardinality() > 0) {
+                    result.insertChunk(result.fSize, first.fKeys[i], chunk);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compute the union of two bitmaps
+     *
+     * @param first
+     *            The first bitmap
+     * @param second
+     *            The second bitmap
+     * @return A new bitmap with the ranks present in either bitmap
+     */
+    public static TmfRankBitmap or(TmfRankBitmap first, TmfRankBitmap second) {
+        TmfRankBitmap result = new TmfRankBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < first.fSize || j < second.fSize) {
+            if (j >= second.fSize || (i < first.fSize && first.fKeys[i] < second.fKeys[j])) {
+                result.insertChunk(result.fSize, first.fKeys[i], first.fChunks[i].copy());
+                i++;
+            } else if (i >= first.fSize || first.fKeys[i] > second.fKeys[j]) {
+                result.insertChunk(result.fSize, second.fKeys[j], second.fChunks[j].copy());
+                j++;
+            } else {
+                result.insertChunk(result.fSize, first.fKeys[i], first.fChunks[i].or(second.fChunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Write this bitmap to an output
+     *
+     * @param out
+     *            The output
+     * @throws IOException
+     *             If an error occurs writing to the output
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(fSize);
+        for (int i = 0; i < fSize; i++) {
+            out.writeInt(fKeys[i]);
+            fChunks[i].writeTo(out);
+        }
+    }
+
+    /**
+     * Read a bitmap previously written with {@link #writeTo(DataOutput)}
+     *
+     * @param in
+     *            The input
+     * @return The bitmap
+     * @throws IOException
+     *             If an error occurs reading the input, or if the input does
+     *             not contain a valid bitmap
+     */
+    public static TmfRankBitmap readFrom(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Invalid rank bitmap"); //$NON-NLS-1$
+        }
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Invalid rank bitmap size: " + size); //$NON-NLS-1$
+        }
+        TmfRankBitmap bitmap = new TmfRankBitmap();
+        for (int i = 0; i < size; i++) {
+            int key = in.readInt();
+            if (bitmap.fSize > 0 && key <= bitmap.fKeys[bitmap.fSize - 1]) {
+                throw new IOException("Unsorted rank bitmap chunk: " + key); //$NON-NLS-1$
+            }
+            bitmap.insertChunk(bitmap.fSize, key, readChunk(in));
+        }
+        return bitmap;
+    }
+
+    private void insertChunk(int i, int key, Chunk chunk) {
+        if (fSize == fKeys.length) {
+            fKeys = Arrays.copyOf(fKeys, fSize * 2);
+            fChunks = Arrays.copyOf(fChunks, fSize * 2);
+        }
+        System.arraycopy(fKeys, i, fKeys, i + 1, fSize - i);
+        System.arraycopy(fChunks, i, fChunks, i + 1, fSize - i);
+        fKeys[i] = key;
+        fChunks[i] = chunk;
+        fSize++;
+    }
+
+    private static Chunk readChunk(DataInput in) throws IOException {
+        boolean isBitmap = in.readBoolean();
+        int cardinality = in.readInt();
+        if (isBitmap) {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                words[i] = in.readLong();
+            }
+            return new BitmapChunk(words, cardinality);
+        }
+        if (cardinality < 0 || cardinality > MAX_ARRAY_SIZE) {
+            throw new IOException("Invalid rank bitmap chunk cardinality: " + cardinality); //$NON-NLS-1$
+        }
+        char[] values = new char[Math.max(cardinality, 4)];
+        for (int i = 0; i < cardinality; i++) {
+            values[i] = in.readChar();
+        }
+        return new ArrayChunk(values, cardinality);
+    }
+
+    // ------------------------------------------------------------------------
+    // Chunks
+    // ------------------------------------------------------------------------
+
+    private abstract static class Chunk {
+        abstract Chunk add(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int getCardinality();
+
+        abstract char select(int index);
+
+        abstract Chunk and(Chunk other);
+
+        abstract Chunk or(Chunk other);
+
+        abstract Chunk copy();
+
+        abstract BitmapChunk toBitmap();
+
+        abstract void writeTo(DataOutput out) throws IOException;
+    }
+
+    private static final class ArrayChunk extends Chunk {
+        private char[] fValues;
+        private int fCardinality;
+
+        ArrayChunk() {
+            this(new char[4], 0);
+        }
+
+        ArrayChunk(char[] values, int cardinality) {
+            fValues = values;
+            fCardinality = cardinality;
+        }
+
+        @Override
+        Chunk add(char value) {
+            int i;
+            if (fCardinality == 0 || fValues[fCardinality - 1] < value) {
+                i = fCardinality;
+            } else {
+                i = Arrays.binarySearch(fValues, 0, fCardinality, value);
+                if (i >= 0) {
+                    return this;
+                }
+                i = -i - 1;
+            }
+            if (fCardinality >= MAX_ARRAY_SIZE) {
+                return toBitmap().add(value);
+            }
+            if (fCardinality == fValues.length) {
+                fValues = Arrays.copyOf(fValues, Math.max(4, Math.min(fCardinality * 2, MAX_ARRAY_SIZE)));
+            }
+            System.arraycopy(fValues, i, fValues, i + 1, fCardinality - i);
+            fValues[i] = value;
+            fCardinality++;
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(fValues, 0, fCardinality, value) >= 0;
+        }
+
+        @Override
+        int getCardinality() {
+            return fCardinality;
+        }
+
+        @Override
+        char select(int index) {
+            return fValues[index];
+        }
+
+        @Override
+        Chunk and(Chunk other) {
+            char[] values = new char[Math.max(fCardinality, 4)];
+            int cardinality = 0;
+            for (int i = 0; i < fCardinality; i++) {
+                if (other.contains(fValues[i])) {
+                    values[cardinality++] = fValues[i];
+                }
+            }
+            return new ArrayChunk(values, cardinality);
+        }
+
+        @Override
+        Chunk or(Chunk other) {
+            if (other instanceof BitmapChunk) {
+                return other.or(this);
+            }
+            ArrayChunk array = (ArrayChunk) other;
+            char[] values = new char[fCardinality + array.fCardinality];
+            int i = 0;
+            int j = 0;
+            int cardinality = 0;
+            while (i < fCardinality || j < array.fCardinality) {
+                if (j >= array.fCardinality || (i < fCardinality && fValues[i] < array.fValues[j])) {
+                    values[cardinality++] = fValues[i++];
+                } else if (i >= fCardinality || fValues[i] > array.fValues[j]) {
+                    values[cardinality++] = array.fValues[j++];
+                } else {
+                    values[cardinality++] = fValues[i++];
+                    j++;
+                }
+            }
+            ArrayChunk result = new ArrayChunk(values, cardinality);
+            return (cardinality > MAX_ARRAY_SIZE) ? result.toBitmap() : result;
+        }
+
+        @Override
+        Chunk copy() {
+            return new ArrayChunk(Arrays.copyOf(fValues, Math.max(fCardinality, 4)), fCardinality);
+        }
+
+        @Override
+        BitmapChunk toBitmap() {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < fCardinality; i++) {
+                words[fValues[i] >>> 6] |= 1L << fValues[i];
+            }
+            return new BitmapChunk(words, fCardinality);
+        }
+
+        @Override
+        void writeTo(DataOutput out) throws IOException {
+            out.writeBoolean(false);
+            out.writeInt(fCardinality);
+            for (int i = 0; i < fCardinality; i++) {
+                out.writeChar(fValues[i]);
+            }
+        }
+    }
+
+    private static final class BitmapChunk extends Chunk {
+        private final long[] fWords;
+        private int fCardinality;
+
+        BitmapChunk(long[] words, int cardinality) {
+            fWords = words;
+            fCardinality = cardinality;
+        }
+
+        @Override
+        Chunk add(char value) {
+            long word = fWords[value >>> 6];
+            long bit = 1L << value;
+            if ((word & bit) == 0) {
+                fWords[value >>> 6] = word | bit;
+                fCardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (fWords[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int getCardinality() {
+            return fCardinality;
+        }
+
+        @Override
+        char select(int index) {
+            int remaining = index;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                int count = Long.bitCount(fWords[i]);
+                if (remaining < count) {
+                    long word = fWords[i];
+                    for (int j = 0; j < remaining; j++) {
+                        word &= word - 1;
+                    }
+                    return (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                }
+                remaining -= count;
+            }
+            throw new IndexOutOfBoundsException();
+        }
+
+        @Override
+        Chunk and(Chunk other) {
+            if (other instanceof ArrayChunk) {
+                return other.and(this);
+            }
+            BitmapChunk bitmap = (BitmapChunk) other;
+            long[] words = new long[BITMAP_WORDS];
+            int cardinality = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                words[i] = fWords[i] & bitmap.fWords[i];
+                cardinality += Long.bitCount(words[i]);
+            }
+            if (cardinality > MAX_ARRAY_SIZE) {
+                return new BitmapChunk(words, cardinality);
+            }
+            /* Sparse result, convert back to an array */
+            char[] values = new char[Math.max(cardinality, 4)];
+            int k = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[k++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayChunk(values, cardinality);
+        }
+
+        @Override
+        Chunk or(Chunk other) {
+            long[] words = Arrays.copyOf(fWords, BITMAP_WORDS);
+            long[] otherWords = other.toBitmap().fWords;
+            int cardinality = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                words[i] |= otherWords[i];
+                cardinality += Long.bitCount(words[i]);
+            }
+            return new BitmapChunk(words, cardinality);
+        }
+
+        @Override
+        Chunk copy() {
+            return new BitmapChunk(Arrays.copyOf(fWords, BITMAP_WORDS), fCardinality);
+        }
+
+        @Override
+        BitmapChunk toBitmap() {
+            return this;
+        }
+
+        @Override
+        void writeTo(DataOutput out) throws IOException {
+            out.writeBoolean(true);
+            out.writeInt(fCardinality);
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                out.writeLong(fWords[i]);
+            }
+        }
+    }
+}
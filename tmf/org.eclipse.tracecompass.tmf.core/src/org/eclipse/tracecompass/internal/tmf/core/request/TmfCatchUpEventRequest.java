@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.request;
+
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
+import org.eclipse.tracecompass.tmf.core.request.TmfEventRequest;
+
+/**
+ * Request that reads the events a late-joining request missed, from its start
+ * up to the rank at which it was attached to an in-flight coalesced request.
+ * The events are forwarded to the late-joining request, which is completed
+ * along with this request.
+ *
+ * @see TmfCoalescedEventRequest#joinRequest
+ */
+public class TmfCatchUpEventRequest extends TmfEventRequest {
+
+    /** The late-joining request to complete */
+    private final ITmfEventRequest fRequest;
+
+    /** The rank (exclusive) at which the late-joining request was attached */
+    private final long fEndRank;
+
+    /**
+     * Constructor
+     *
+     * @param request
+     *            The late-joining request
+     * @param endRank
+     *            The rank from which the request was serviced by the in-flight
+     *            request, which is the end (exclusive) of this request
+     */
+    public TmfCatchUpEventRequest(ITmfEventRequest request, long endRank) {
+        super(request.getDataType(),
+                request.getRange(),
+                request.getIndex(),
+                getNbEventsBetween(request.getIndex(), endRank),
+                request.getExecType());
+        fRequest = request;
+        fEndRank = endRank;
+        setProviderFilter(request.getProviderFilter());
+    }
+
+    private static int getNbEventsBetween(long startRank, long endRank) {
+        return (int) Math.max(0, Math.min(endRank - startRank, ALL_DATA));
+    }
+
+    /**
+     * @return The late-joining request completed by this request
+     */
+    public ITmfEventRequest getRequest() {
+        return fRequest;
+    }
+
+    @Override
+    public void setStartIndex(int index) {
+        /* The provider seeked by time, the end rank does not move */
+        super.setStartIndex(index);
+        fNbRequested = getNbEventsBetween(index, fEndRank);
+    }
+
+    @Override
+    public void handleData(ITmfEvent event) {
+        super.handleData(event);
+        if (!fRequest.isCompleted()) {
+            fRequest.handleData(event);
+        }
+    }
+
+    @Override
+    public void handleSuccess() {
+        super.handleSuccess();
+        fRequest.done();
+    }
+
+    @Override
+    public void handleFailure() {
+        super.handleFailure();
+        fRequest.fail();
+    }
+
+    @Override
+    public void handleCancel() {
+        super.handleCancel();
+        if (!fRequest.isCompleted()) {
+            fRequest.cancel();
+        }
+    }
+}
@@ -20,8 +20,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.eclipse.tracecompass.internal.tmf.core.TmfCoreTracer;
+import org.eclipse.tracecompass.tmf.core.component.ITmfEventProvider;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
 import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
 import org.eclipse.tracecompass.tmf.core.request.TmfEventRequest;
@@ -39,8 +42,26 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
     // Attributes
     // ------------------------------------------------------------------------
 
-    /** The list of coalesced requests */
-    private final List<ITmfEventRequest> fRequests = new ArrayList<>();
+    /**
+     * The list of coalesced requests. Late-joining requests can be added while
+     * the events are being dispatched.
+     */
+    private final List<ITmfEventRequest> fRequests = new CopyOnWriteArrayList<>();
+
+    /**
+     * The late-joining requests, with the rank of the first event they receive
+     * from this request.
+     */
+    private final Map<ITmfEventRequest, Long> fLateRequests = new ConcurrentHashMap<>();
+
+    /** The catch-up requests to send once this request is done */
+    private final List<TmfCatchUpEventRequest> fCatchUpRequests = new ArrayList<>();
+
+    /** The provider servicing this request, to send the catch-up requests */
+    private ITmfEventProvider fProvider = null;
+
+    /** Whether requests can no longer join this one */
+    private boolean fJoinClosed = false;
 
     /**
      * We do not use super.fRange, because in the case of coalesced requests,
@@ -184,6 +205,54 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
         }
     }
 
+    /**
+     * Attach a request to this one while it is being serviced. The request
+     * receives the events from the current position of this request, and a
+     * catch-up request is sent to the provider once this request is done, to
+     * deliver the events the request missed before joining.
+     * <p>
+     * Only requests that allow late joining, that are unbounded in number of
+     * events and whose time range ends within the one of this request can join.
+     *
+     * @param request
+     *            The request to attach
+     * @param provider
+     *            The provider servicing this request, to which the catch-up
+     *            request is sent
+     * @return true if the request was attached, false if it must be serviced
+     *         separately
+     */
+    public boolean joinRequest(ITmfEventRequest request, ITmfEventProvider provider) {
+        if (!request.isLateJoinAllowed() ||
+                request.getExecType() != getExecType() ||
+                request.getNbRequested() != ITmfEventRequest.ALL_DATA ||
+                getNbRequested() != ITmfEventRequest.ALL_DATA ||
+                request.getRange().getEndTime().compareTo(fRange.getEndTime()) > 0) {
+            return false;
+        }
+        synchronized (this) {
+            if (fJoinClosed || !isRunning() || isCompleted()) {
+                return false;
+            }
+            /* Rank of the next event to be dispatched */
+            long joinRank = getIndex() + getNbRead();
+            if (joinRank > request.getIndex()) {
+                fLateRequests.put(request, joinRank);
+                fCatchUpRequests.add(new TmfCatchUpEventRequest(request, joinRank));
+            }
+            fProvider = provider;
+            request.start();
+            fRequests.add(request);
+            fRequestsCache.clear();
+
+            if (TmfCoreTracer.isRequestTraced()) {
+                TmfCoreTracer.traceRequest(request.getRequestId(), "LATE-JOINED " + getRequestId() + " at rank " + joinRank); //$NON-NLS-1$ //$NON-NLS-2$
+                TmfCoreTracer.traceRequest(getRequestId(), "now contains " + getSubRequestIds()); //$NON-NLS-1$
+            }
+        }
+        return true;
+    }
+
     /**
      * @return The list of IDs of the sub-requests
      */
@@ -206,27 +275,40 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
 
     @Override
     public void handleData(ITmfEvent data) {
-        super.handleData(data);
+        long index;
+        Set<ITmfEventRequest> requests;
 
-        long index = getIndex() + getNbRead() - 1;
+        /* Synchronized with late-joining requests, the sets are not modified */
+        synchronized (this) {
+            super.handleData(data);
 
-        String traceName = data.getTrace().getName();
-        Set<ITmfEventRequest> requests = fRequestsCache.get(traceName);
+            index = getIndex() + getNbRead() - 1;
 
-        if (requests == null) {
-            // Populate requests cache
-            requests = new HashSet<>();
-            for (ITmfEventRequest myRequest : fRequests) {
-                if (myRequest.getProviderFilter().matches(data)) {
-                    requests.add(myRequest);
+            String traceName = data.getTrace().getName();
+            requests = fRequestsCache.get(traceName);
+
+            if (requests == null) {
+                // Populate requests cache
+                requests = new HashSet<>();
+                for (ITmfEventRequest myRequest : fRequests) {
+                    if (myRequest.getProviderFilter().matches(data)) {
+                        requests.add(myRequest);
+                    }
                 }
+                fRequestsCache.put(traceName, requests);
             }
-            fRequestsCache.put(traceName, requests);
         }
 
         // dispatch event to relevant requests
+        boolean hasLateRequests = !fLateRequests.isEmpty();
         for (ITmfEventRequest request : requests) {
             long start = request.getIndex();
+            if (hasLateRequests) {
+                Long joinRank = fLateRequests.get(request);
+                if (joinRank != null) {
+                    start = Math.max(start, joinRank);
+                }
+            }
             if (!request.isCompleted() && index >= start && request.getNbRead() < request.getNbRequested()) {
                 ITmfTimestamp ts = data.getTimestamp();
                 if (request.getRange().contains(ts)) {
@@ -250,16 +332,28 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
 
     @Override
     public void done() {
+        List<ITmfEventRequest> catchUpRequests = closeJoin();
         for (ITmfEventRequest request : fRequests) {
-            if (!request.isCompleted()) {
+            if (!request.isCompleted() && !fLateRequests.containsKey(request)) {
                 request.done();
             }
         }
         super.done();
+
+        /* The late-joining requests are completed by their catch-up request */
+        ITmfEventProvider provider = fProvider;
+        for (ITmfEventRequest catchUpRequest : catchUpRequests) {
+            if (provider == null) {
+                catchUpRequest.cancel();
+            } else {
+                provider.sendRequest(catchUpRequest);
+            }
+        }
     }
 
     @Override
     public void fail() {
+        closeJoin();
         for (ITmfEventRequest request : fRequests) {
             request.fail();
         }
@@ -268,6 +362,7 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
 
     @Override
     public void cancel() {
+        closeJoin();
         for (ITmfEventRequest request : fRequests) {
             if (!request.isCompleted()) {
                 request.cancel();
@@ -276,6 +371,22 @@ public class TmfCoalescedEventRequest extends TmfEventRequest {
         super.cancel();
     }
 
+    /**
+     * Prevent other requests from joining, and get the catch-up requests of
+     * the late-joining requests that are still active.
+     */
+    private synchronized List<ITmfEventRequest> closeJoin() {
+        fJoinClosed = true;
+        List<ITmfEventRequest> catchUpRequests = new ArrayList<>();
+        for (TmfCatchUpEventRequest catchUpRequest : fCatchUpRequests) {
+            if (!catchUpRequest.getRequest().isCompleted()) {
+                catchUpRequests.add(catchUpRequest);
+            }
+        }
+        fCatchUpRequests.clear();
+        return catchUpRequests;
+    }
+
     @Override
     public synchronized boolean isCompleted() {
         // Firstly, check if coalescing request is completed
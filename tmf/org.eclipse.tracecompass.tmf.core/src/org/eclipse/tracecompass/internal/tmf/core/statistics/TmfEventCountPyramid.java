@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.statistics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.internal.tmf.core.Activator;
+
+/**
+ * Multi-resolution event counts over time. The base level counts the events
+ * in bins of a power-of-two duration, which doubles when the events do not
+ * fit in the bins anymore. Each upper level has bins twice as long as the
+ * level below, so a histogram query reads only a few bins per bucket of the
+ * level matching the bucket duration.
+ */
+public class TmfEventCountPyramid {
+
+    private static final int MAGIC = 0x54435031; // "TCP1"
+    /**
+     * Minimum number of bins per histogram bucket. The bins at the edges of a
+     * bucket are interpolated, so the error on a bucket is at most half a bin
+     * at each end.
+     */
+    private static final int MIN_BINS_PER_BUCKET = 16;
+
+    private final int fMaxBins;
+    private long fOrigin;
+    private int fShift = 0;
+    private int fNbBins = 0;
+    private long fNbEvents = 0;
+    private long[] fBase;
+    private long @Nullable [][] fLevels = null;
+
+    /**
+     * Constructor
+     *
+     * @param maxBins
+     *            The maximum number of bins of the base level, rounded up to
+     *            a power of two
+     */
+    public TmfEventCountPyramid(int maxBins) {
+        fMaxBins = Integer.highestOneBit(Math.max(maxBins - 1, 1)) << 1;
+        fBase = new long[Math.min(fMaxBins, 1024)];
+    }
+
+    /**
+     * Count an event
+     *
+     * @param timestamp
+     *            The timestamp of the event, in nanoseconds
+     */
+    public synchronized void add(long timestamp) {
+        if (fNbEvents == 0) {
+            fOrigin = timestamp;
+        }
+        int bin = 0;
+        if (timestamp > fOrigin) {
+            /* Double the bin duration until the event fits */
+            while (((timestamp - fOrigin) >>> fShift) >= fMaxBins) {
+                coarsen();
+            }
+            bin = (int) ((timestamp - fOrigin) >>> fShift);
+        }
+        if (bin >= fBase.length) {
+            fBase = Arrays.copyOf(fBase, Math.min(fMaxBins, Integer.highestOneBit(bin) << 1));
+        }
+        fBase[bin]++;
+        fNbBins = Math.max(fNbBins, bin + 1);
+        fNbEvents++;
+        fLevels = null;
+    }
+
+    private void coarsen() {
+        int nbBins = (fNbBins + 1) / 2;
+        for (int i = 0; i < nbBins; i++) {
+            long count = fBase[2 * i];
+            if (2 * i + 1 < fNbBins) {
+                count += fBase[2 * i + 1];
+            }
+            fBase[i] = count;
+        }
+        Arrays.fill(fBase, nbBins, fNbBins, 0);
+        fNbBins = nbBins;
+        fShift++;
+    }
+
+    /**
+     * @return The number of events counted
+     */
+    public synchronized long getNbEvents() {
+        return fNbEvents;
+    }
+
+    /**
+     * Count the events in a series of equal-sized ranges, like
+     * {@link org.eclipse.tracecompass.tmf.core.statistics.ITmfStatistics#histogramQuery}.
+     * The last range is stretched to the end time.
+     *
+     * @param start
+     *            Start time of the query
+     * @param end
+     *            End time of the query
+     * @param nb
+     *            The number of ranges
+     * @return The number of events in each range, or null if the ranges are
+     *         too short for the resolution of this pyramid
+     */
+    public synchronized long @Nullable [] query(long start, long end, int nb) {
+        long increment = (end - start) / nb;
+        long[] counts = new long[nb];
+        if (fNbEvents == 0) {
+            return counts;
+        }
+        /* Find the coarsest level with enough bins per bucket */
+        int level = -1;
+        while (((1L << (fShift + level + 1)) * MIN_BINS_PER_BUCKET) <= increment && (fNbBins >>> (level + 1)) > 0) {
+            level++;
+        }
+        if (level < 0) {
+            return null;
+        }
+        long[] bins = getLevel(level);
+        int shift = fShift + level;
+
+        Cursor cursor = new Cursor(bins, shift, Math.max(start, fOrigin));
+        long previous = cursor.countBefore(start);
+        for (int i = 0; i < nb; i++) {
+            long time = (i == nb - 1) ? end : start + (i + 1) * increment;
+            long current = cursor.countBefore(time);
+            counts[i] = current - previous;
+            previous = current;
+        }
+        return counts;
+    }
+
+    /**
+     * Cumulative count from the bin of the first queried time, with linear
+     * interpolation inside a bin. Only the differences are meaningful.
+     */
+    private class Cursor {
+        private final long[] fBins;
+        private final int fCursorShift;
+        private int fBin;
+        private long fSum = 0;
+
+        public Cursor(long[] bins, int shift, long start) {
+            fBins = bins;
+            fCursorShift = shift;
+            fBin = (int) Math.min(bins.length, (start - fOrigin) >>> shift);
+        }
+
+        public long countBefore(long time) {
+            if (time <= fOrigin) {
+                return fSum;
+            }
+            long offset = time - fOrigin;
+            while (fBin < fBins.length && ((long) (fBin + 1) << fCursorShift) <= offset) {
+                fSum += fBins[fBin];
+                fBin++;
+            }
+            if (fBin >= fBins.length) {
+                return fSum;
+            }
+            double fraction = (double) (offset - ((long) fBin << fCursorShift)) / (1L << fCursorShift);
+            return fSum + Math.round(fBins[fBin] * fraction);
+        }
+    }
+
+    private long[] getLevel(int level) {
+        long[][] levels = fLevels;
+        if (levels == null) {
+            /* Rebuild the upper levels after new events were counted */
+            int nbLevels = 1;
+            while ((fNbBins >>> nbLevels) > 0) {
+                nbLevels++;
+            }
+            levels = new long[nbLevels][];
+            levels[0] = Arrays.copyOf(fBase, fNbBins);
+            for (int l = 1; l < nbLevels; l++) {
+                long[] lower = levels[l - 1];
+                long[] upper = new long[(lower.length + 1) / 2];
+                for (int i = 0; i < lower.length; i++) {
+                    upper[i / 2] += lower[i];
+                }
+                levels[l] = upper;
+            }
+            fLevels = levels;
+        }
+        return levels[Math.min(level, levels.length - 1)];
+    }
+
+    // ------------------------------------------------------------------------
+    // Persistence
+    // ------------------------------------------------------------------------
+
+    private synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeInt(fMaxBins);
+        out.writeLong(fOrigin);
+        out.writeInt(fShift);
+        out.writeLong(fNbEvents);
+        out.writeInt(fNbBins);
+        for (int i = 0; i < fNbBins; i++) {
+            out.writeLong(fBase[i]);
+        }
+    }
+
+    private static TmfEventCountPyramid readFrom(DataInput in) throws IOException {
+        TmfEventCountPyramid pyramid = new TmfEventCountPyramid(in.readInt());
+        pyramid.fOrigin = in.readLong();
+        pyramid.fShift = in.readInt();
+        pyramid.fNbEvents = in.readLong();
+        int nbBins = in.readInt();
+        if (nbBins < 0 || nbBins > pyramid.fMaxBins || pyramid.fShift < 0 || pyramid.fShift >= Long.SIZE) {
+            throw new IOException("Invalid event count pyramid"); //$NON-NLS-1$
+        }
+        pyramid.fBase = new long[Math.max(nbBins, 1)];
+        for (int i = 0; i < nbBins; i++) {
+            pyramid.fBase[i] = in.readLong();
+        }
+        pyramid.fNbBins = nbBins;
+        return pyramid;
+    }
+
+    /**
+     * Save named pyramids to a file
+     *
+     * @param file
+     *            The file
+     * @param pyramids
+     *            The pyramids, by name
+     */
+    public static void save(File file, Map<String, TmfEventCountPyramid> pyramids) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(pyramids.size());
+            for (Map.Entry<String, TmfEventCountPyramid> entry : pyramids.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().writeTo(out);
+            }
+        } catch (IOException e) {
+            Activator.logWarning("Could not save the event counts " + file, e); //$NON-NLS-1$
+            file.delete();
+        }
+    }
+
+    /**
+     * Load the named pyramids saved in a file
+     *
+     * @param file
+     *            The file
+     * @return The pyramids by name, or null if the file does not exist or is
+     *         invalid
+     */
+    public static @Nullable Map<String, TmfEventCountPyramid> load(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            int size = in.readInt();
+            Map<String, TmfEventCountPyramid> pyramids = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                String name = in.readUTF();
+                pyramids.put(name, readFrom(in));
+            }
+            return pyramids;
+        } catch (IOException e) {
+            Activator.logWarning("Could not load the event counts " + file, e); //$NON-NLS-1$
+            return null;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.core.statistics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.internal.tmf.core.Activator;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
+
+/**
+ * Exact event counts per event type, stored as prefix sums: for each type, the
+ * sorted times at which its count changes and the count from each of these
+ * times on. The number of events of every type in a time range is then found
+ * with two binary searches per type, instead of two full queries of the
+ * "event types" state system.
+ *
+ * The times and counts of all the types are kept in two columns, which are
+ * saved as fixed-size values so that an index loaded from a file is queried
+ * directly in the memory-mapped file.
+ */
+public class TmfEventTypeCountIndex {
+
+    private static final int MAGIC = 0x54434932; // "TCI2"
+
+    private final long fStartTime;
+    private final long fEndTime;
+    private final String[] fTypes;
+    /** The offset of the changes of each type in the columns */
+    private final int[] fOffsets;
+    /** The number of changes of each type */
+    private final int[] fSizes;
+    private final LongBuffer fTimes;
+    private final IntBuffer fCounts;
+
+    private TmfEventTypeCountIndex(long startTime, long endTime, String[] types, int[] sizes, LongBuffer times, IntBuffer counts) {
+        fStartTime = startTime;
+        fEndTime = endTime;
+        fTypes = types;
+        fSizes = sizes;
+        fOffsets = new int[sizes.length];
+        for (int i = 1; i < sizes.length; i++) {
+            fOffsets[i] = fOffsets[i - 1] + sizes[i - 1];
+        }
+        fTimes = times;
+        fCounts = counts;
+    }
+
+    /**
+     * The count changes of one type, in growable primitive columns
+     */
+    private static final class Changes {
+        private long[] fChangeTimes;
+        private int[] fChangeCounts;
+        private int fSize = 0;
+
+        public Changes(int capacity) {
+            fChangeTimes = new long[Math.max(capacity, 1)];
+            fChangeCounts = new int[Math.max(capacity, 1)];
+        }
+
+        public void add(long time, int count) {
+            if (fSize == fChangeTimes.length) {
+                int capacity = fSize + (fSize >> 1) + 1;
+                long[] times = new long[capacity];
+                int[] counts = new int[capacity];
+                System.arraycopy(fChangeTimes, 0, times, 0, fSize);
+                System.arraycopy(fChangeCounts, 0, counts, 0, fSize);
+                fChangeTimes = times;
+                fChangeCounts = counts;
+            }
+            fChangeTimes[fSize] = time;
+            fChangeCounts[fSize] = count;
+            fSize++;
+        }
+
+        /**
+         * Sort the changes by time, with a heap sort of the two columns, since
+         * the intervals are not returned in chronological order
+         */
+        public void sort() {
+            for (int i = fSize / 2 - 1; i >= 0; i--) {
+                siftDown(i, fSize);
+            }
+            for (int end = fSize - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+        }
+
+        private void siftDown(int index, int size) {
+            int parent = index;
+            while (true) {
+                int child = 2 * parent + 1;
+                if (child >= size) {
+                    return;
+                }
+                if (child + 1 < size && fChangeTimes[child + 1] > fChangeTimes[child]) {
+                    child++;
+                }
+                if (fChangeTimes[parent] >= fChangeTimes[child]) {
+                    return;
+                }
+                swap(parent, child);
+                parent = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+            long time = fChangeTimes[i];
+            fChangeTimes[i] = fChangeTimes[j];
+            fChangeTimes[j] = time;
+            int count = fChangeCounts[i];
+            fChangeCounts[i] = fChangeCounts[j];
+            fChangeCounts[j] = count;
+        }
+    }
+
+    /**
+     * Build the index from a completed "event types" state system, with a
+     * single range query over its history
+     *
+     * @param ss
+     *            The state system, whose event type attributes are under
+     *            the given attribute
+     * @param eventTypesAttribute
+     *            The name of the attribute containing the event types
+     * @param maxChanges
+     *            The maximum number of count changes to index, over all
+     *            types, which bounds the memory used to build the index
+     * @return The index, or null if the state system has no event types or
+     *         too many count changes
+     */
+    public static @Nullable TmfEventTypeCountIndex build(ITmfStateSystem ss, String eventTypesAttribute, int maxChanges) {
+        int parent = ss.optQuarkAbsolute(eventTypesAttribute);
+        if (parent == ITmfStateSystem.INVALID_ATTRIBUTE) {
+            return null;
+        }
+        List<@NonNull Integer> quarks = ss.getSubAttributes(parent, false);
+        int nbTypes = quarks.size();
+        Map<Integer, Changes> changes = new HashMap<>();
+        int[] nbChanges = { 0 };
+        try {
+            /*
+             * Each event increments the count of its type, so the final count
+             * of a type is its number of changes
+             */
+            long total = 0;
+            for (Integer quark : quarks) {
+                ITmfStateValue value = ss.querySingleState(ss.getCurrentEndTime(), quark).getStateValue();
+                int count = value.isNull() ? 0 : value.unboxInt();
+                total += count;
+                if (total > maxChanges) {
+                    return null;
+                }
+                changes.put(quark, new Changes(count));
+            }
+            ss.queryRange(quarks, ss.getStartTime(), ss.getCurrentEndTime(), interval -> {
+                ITmfStateValue value = interval.getStateValue();
+                Changes typeChanges = changes.get(interval.getAttribute());
+                if (value.isNull() || typeChanges == null || nbChanges[0] > maxChanges) {
+                    return;
+                }
+                typeChanges.add(interval.getStartTime(), value.unboxInt());
+                nbChanges[0]++;
+            });
+        } catch (AttributeNotFoundException | StateSystemDisposedException e) {
+            return null;
+        }
+        if (nbChanges[0] > maxChanges) {
+            return null;
+        }
+
+        String[] types = new String[nbTypes];
+        int[] sizes = new int[nbTypes];
+        long[] times = new long[nbChanges[0]];
+        int[] counts = new int[nbChanges[0]];
+        int offset = 0;
+        for (int i = 0; i < nbTypes; i++) {
+            int quark = quarks.get(i);
+            types[i] = ss.getAttributeName(quark);
+            Changes typeChanges = changes.remove(quark);
+            typeChanges.sort();
+            sizes[i] = typeChanges.fSize;
+            System.arraycopy(typeChanges.fChangeTimes, 0, times, offset, typeChanges.fSize);
+            System.arraycopy(typeChanges.fChangeCounts, 0, counts, offset, typeChanges.fSize);
+            offset += typeChanges.fSize;
+        }
+        return new TmfEventTypeCountIndex(ss.getStartTime(), ss.getCurrentEndTime(), types, sizes, LongBuffer.wrap(times), IntBuffer.wrap(counts));
+    }
+
+    /**
+     * @return The start time of the indexed state system
+     */
+    public long getStartTime() {
+        return fStartTime;
+    }
+
+    /**
+     * @return The end time of the indexed state system
+     */
+    public long getEndTime() {
+        return fEndTime;
+    }
+
+    /**
+     * Count the events of each type in a time range, like
+     * {@link org.eclipse.tracecompass.tmf.core.statistics.ITmfStatistics#getEventTypesInRange}
+     *
+     * @param start
+     *            Start time of the range, inclusive
+     * @param end
+     *            End time of the range, inclusive
+     * @return The number of events of each type in the range, which is empty
+     *         if the range does not intersect the indexed time range
+     */
+    public Map<String, Long> getCounts(long start, long end) {
+        Map<String, Long> map = new HashMap<>();
+        if (Math.max(start, fStartTime) > Math.min(end, fEndTime)) {
+            return map;
+        }
+        for (int i = 0; i < fTypes.length; i++) {
+            long count = countAt(i, end);
+            if (start > fStartTime) {
+                count -= countAt(i, start - 1);
+            }
+            map.put(fTypes[i], count);
+        }
+        return map;
+    }
+
+    /**
+     * Get the count of a type at a time, which is the count of the last change
+     * at or before that time
+     */
+    private long countAt(int type, long time) {
+        /* Find the first change after the time */
+        int low = fOffsets[type];
+        int high = low + fSizes[type];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (fTimes.get(mid) <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return (low == fOffsets[type]) ? 0 : Math.max(fCounts.get(low - 1), 0);
+    }
+
+    // ------------------------------------------------------------------------
+    // Persistence
+    // ------------------------------------------------------------------------
+
+    /**
+     * Save the index to a file
+     *
+     * @param file
+     *            The file
+     */
+    public void save(File file) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(fStartTime);
+            out.writeLong(fEndTime);
+            out.writeInt(fTypes.length);
+            for (int i = 0; i < fTypes.length; i++) {
+                byte[] name = fTypes[i].getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeInt(fSizes[i]);
+            }
+            /* The times column, then the counts column */
+            int nbChanges = fTimes.limit();
+            for (int i = 0; i < nbChanges; i++) {
+                out.writeLong(fTimes.get(i));
+            }
+            for (int i = 0; i < nbChanges; i++) {
+                out.writeInt(fCounts.get(i));
+            }
+        } catch (IOException e) {
+            Activator.logWarning("Could not save the event type counts " + file, e); //$NON-NLS-1$
+            file.delete();
+        }
+    }
+
+    /**
+     * Load an index saved in a file, if it was built for a state system with
+     * the given time range. The index reads its columns directly from the
+     * memory-mapped file.
+     *
+     * @param file
+     *            The file
+     * @param startTime
+     *            The start time of the state system
+     * @param endTime
+     *            The end time of the state system
+     * @return The index, or null if the file does not exist, is invalid or
+     *         is for another time range
+     */
+    public static @Nullable TmfEventTypeCountIndex load(File file, long startTime, long endTime) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileInputStream stream = new FileInputStream(file)) {
+            /* Read the header, and only map the columns if it matches */
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            if (in.readInt() != MAGIC || in.readLong() != startTime || in.readLong() != endTime) {
+                return null;
+            }
+            long headerSize = Integer.BYTES + 2 * Long.BYTES + Integer.BYTES;
+            int nbTypes = in.readInt();
+            if (nbTypes < 0) {
+                throw new IOException("Invalid event type count index"); //$NON-NLS-1$
+            }
+            String[] types = new String[nbTypes];
+            int[] sizes = new int[nbTypes];
+            long nbChanges = 0;
+            for (int i = 0; i < nbTypes; i++) {
+                int length = in.readInt();
+                if (length < 0 || length > file.length()) {
+                    throw new IOException("Invalid event type count index"); //$NON-NLS-1$
+                }
+                byte[] name = new byte[length];
+                in.readFully(name);
+                types[i] = new String(name, StandardCharsets.UTF_8);
+                sizes[i] = in.readInt();
+                if (sizes[i] < 0) {
+                    throw new IOException("Invalid event type count index"); //$NON-NLS-1$
+                }
+                nbChanges += sizes[i];
+                headerSize += 2 * Integer.BYTES + length;
+            }
+            long columnsSize = nbChanges * (Long.BYTES + Integer.BYTES);
+            FileChannel channel = stream.getChannel();
+            if (columnsSize > Integer.MAX_VALUE || headerSize + columnsSize != channel.size()) {
+                throw new IOException("Invalid event type count index"); //$NON-NLS-1$
+            }
+            /* The mapping stays valid once the channel is closed */
+            ByteBuffer columns = channel.map(MapMode.READ_ONLY, headerSize, columnsSize);
+            columns.limit((int) nbChanges * Long.BYTES);
+            LongBuffer times = columns.slice().asLongBuffer();
+            columns.limit((int) columnsSize).position((int) nbChanges * Long.BYTES);
+            IntBuffer counts = columns.slice().asIntBuffer();
+            return new TmfEventTypeCountIndex(startTime, endTime, types, sizes, times, counts);
+        } catch (IOException e) {
+            Activator.logWarning("Could not load the event type counts " + file, e); //$NON-NLS-1$
+            return null;
+        }
+    }
+}
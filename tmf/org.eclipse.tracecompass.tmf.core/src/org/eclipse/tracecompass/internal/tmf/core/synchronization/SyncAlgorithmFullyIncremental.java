@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2014 École Polytechnique de Montréal
+ * Copyright (c) 2013, 2016 École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -15,14 +15,22 @@ package org.eclipse.tracecompass.internal.tmf.core.synchronization;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.MathContext;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import org.eclipse.tracecompass.common.core.NonNullUtils;
 import org.eclipse.tracecompass.internal.tmf.core.synchronization.graph.SyncSpanningTree;
@@ -46,6 +54,11 @@ import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
  * private class, while this public class manages the synchronization between
  * all traces.
  *
+ * When there are many matches, the convex hulls are updated on worker threads,
+ * each thread updating the hulls of a subset of the host pairs, while the
+ * matching continues. The hulls are brought up to date before any result is
+ * read.
+ *
  * @author Geneviève Bastien
  */
 public class SyncAlgorithmFullyIncremental extends SynchronizationAlgorithm {
@@ -57,40 +70,65 @@ public class SyncAlgorithmFullyIncremental extends SynchronizationAlgorithm {
 
     private static final MathContext fMc = MathContext.DECIMAL128;
 
+    /** Number of matches processed before the hulls are updated in parallel */
+    private static final int PARALLEL_THRESHOLD = 10000;
+
     /** @Serial */
     private final List<ConvexHull> fSyncs;
 
+    /** The convex hulls, by reference host, then by other host */
+    private transient Map<String, Map<String, ConvexHull>> fHulls = new HashMap<>();
+
+    private transient HullUpdater fUpdater = null;
+    private transient int fNbDirectMatches = 0;
+
     private transient SyncSpanningTree fTree = null;
 
     /**
      * Initialization of the attributes
      */
     public SyncAlgorithmFullyIncremental() {
-        fSyncs = new LinkedList<>();
+        fSyncs = new ArrayList<>();
     }
 
     /**
      * Function called after all matching has been done, to do any post-match
-     * treatment. For this class, it calculates stats, while the data is
-     * available
+     * treatment. For this class, it waits for the convex hulls to be up to
+     * date and calculates stats, while the data is available
      */
     @Override
     public void matchingEnded() {
+        HullUpdater updater = fUpdater;
+        if (updater != null) {
+            fUpdater = null;
+            try {
+                updater.flush();
+            } finally {
+                updater.shutdown();
+            }
+        }
         getStats();
     }
 
     @Override
     public void init(Collection<ITmfTrace> traces) {
         ITmfTrace[] traceArr = traces.toArray(new ITmfTrace[traces.size()]);
+        if (fUpdater != null) {
+            fUpdater.shutdown();
+            fUpdater = null;
+        }
+        fNbDirectMatches = 0;
         fSyncs.clear();
+        fHulls.clear();
         /* Create a convex hull for all trace pairs */
         // FIXME: is it necessary to make ConvexHull for every pairs up-front?
         // The ConvexHull seems to be created on the fly in processMatch().
         for (int i = 0; i < traceArr.length; i++) {
             for (int j = i + 1; j < traceArr.length; j++) {
-                if (!traceArr[i].getHostId().equals(traceArr[j].getHostId())) {
-                    ConvexHull algo = new ConvexHull(traceArr[i].getHostId(), traceArr[j].getHostId());
-                    fSyncs.add(algo);
+                String host1 = traceArr[i].getHostId();
+                String host2 = traceArr[j].getHostId();
+                if (!host1.equals(host2) && getHull(host1, host2) == null) {
+                    addHull(new ConvexHull(host1, host2));
                 }
             }
         }
@@ -107,20 +145,54 @@ public class SyncAlgorithmFullyIncremental extends SynchronizationAlgorithm {
         }
 
         /* Check if a convex hull algorithm already exists for these 2 hosts */
-        ConvexHull algo = null;
-        for (ConvexHull traceSync : fSyncs) {
-            if (traceSync.isForHosts(host1, host2)) {
-                algo = traceSync;
-            }
-        }
+        ConvexHull algo = getHull(host1, host2);
         if (algo == null) {
             algo = new ConvexHull(host1, host2);
-            fSyncs.add(algo);
+            addHull(algo);
+        }
+
+        HullUpdater updater = fUpdater;
+        if (updater == null && fNbDirectMatches >= PARALLEL_THRESHOLD) {
+            int nbWorkers = Math.min(fSyncs.size(), Runtime.getRuntime().availableProcessors() - 1);
+            if (nbWorkers > 0) {
+                updater = new HullUpdater(nbWorkers);
+                fUpdater = updater;
+            }
+        }
+        if (updater != null) {
+            updater.add(algo, match);
+        } else {
+            fNbDirectMatches++;
+            algo.processMatch(match);
         }
-        algo.processMatch(match);
         invalidateSyncGraph();
     }
 
+    private ConvexHull getHull(String host1, String host2) {
+        Map<String, ConvexHull> hulls = (host1.compareTo(host2) > 0 ? fHulls.get(host2) : fHulls.get(host1));
+        if (hulls == null) {
+            return null;
+        }
+        return (host1.compareTo(host2) > 0 ? hulls.get(host1) : hulls.get(host2));
+    }
+
+    private void addHull(ConvexHull hull) {
+        hull.fIndex = fSyncs.size();
+        fSyncs.add(hull);
+        fHulls.computeIfAbsent(hull.getReferenceHost(), host -> new HashMap<>()).put(hull.getOtherHost(), hull);
+    }
+
+    /**
+     * Wait for the matches received so far to be processed by the convex
+     * hulls, before their results are read
+     */
+    private void waitForHulls() {
+        HullUpdater updater = fUpdater;
+        if (updater != null) {
+            updater.flush();
+        }
+    }
+
     private void invalidateSyncGraph() {
         fTree = null;
     }
@@ -152,6 +224,7 @@ public class SyncAlgorithmFullyIncremental extends SynchronizationAlgorithm {
      * @return The synchronization spanning tree for this synchronization
      */
     private SyncSpanningTree getSyncTree() {
+        waitForHulls();
         if (fTree == null) {
             fTree = new SyncSpanningTree(getRootNode());
             for (ConvexHull traceSync : fSyncs) {
@@ -168,10 +241,10 @@ public class SyncAlgorithmFullyIncremental extends SynchronizationAlgorithm {
 
     @Override
     public SyncQuality getSynchronizationQuality(ITmfTrace trace1, ITmfTrace trace2) {
-        for (ConvexHull traceSync : fSyncs) {
-            if (traceSync.isForHosts(trace1.getHostId(), trace2.getHostId())) {
-                return traceSync.getQuality();
-            }
+        waitForHulls();
+        ConvexHull traceSync = getHull(trace1.getHostId(), trace2.getHostId());
+        if (traceSync != null) {
+            return traceSync.getQuality();
         }
         return SyncQuality.ABSENT;
     }
@@ -189,6 +262,7 @@ public class SyncAlgorithmFullyIncremental extends SynchronizationAlgorithm {
          * sync tree changes synchronization formula. The stats should use the
          * tree instead
          */
+        waitForHulls();
         Map<String, Map<String, Object>> statmap = new LinkedHashMap<>();
         for (ConvexHull traceSync : fSyncs) {
             statmap.put(traceSync.getReferenceHost() + " <==> " + traceSync.getOtherHost(), traceSync.getStats()); //$NON-NLS-1$
@@ -198,9 +272,138 @@ public class SyncAlgorithmFullyIncremental extends SynchronizationAlgorithm {
 
     @Override
     public String toString() {
+        waitForHulls();
         return getClass().getSimpleName() + ' ' + fSyncs.toString();
     }
 
+    private void writeObject(ObjectOutputStream stream) throws IOException {
+        waitForHulls();
+        stream.defaultWriteObject();
+    }
+
+    private void readObject(ObjectInputStream stream)
+            throws IOException, ClassNotFoundException {
+        stream.defaultReadObject();
+
+        /* Initialize transient fields */
+        fHulls = new HashMap<>();
+        for (int i = 0; i < fSyncs.size(); i++) {
+            ConvexHull hull = fSyncs.get(i);
+            hull.fIndex = i;
+            fHulls.computeIfAbsent(hull.getReferenceHost(), host -> new HashMap<>()).put(hull.getOtherHost(), hull);
+        }
+    }
+
+    /**
+     * Updates the convex hulls on worker threads. Each hull is always updated
+     * by the same thread, so the matches of a host pair are processed in the
+     * order they are received. The matches are handed to the threads in
+     * batches, and the number of batches waiting is bounded, so the matching
+     * waits if the hulls fall behind.
+     */
+    private static final class HullUpdater {
+
+        private static final int BATCH_SIZE = 1024;
+        private static final int MAX_PENDING_BATCHES = 4;
+
+        private final ExecutorService[] fWorkers;
+        private final List<List<HullUpdate>> fBatches = new ArrayList<>();
+        /* The last batch submitted to each worker */
+        private final Future<?>[] fLastTasks;
+        private final Semaphore fPendingBatches;
+        private volatile RuntimeException fFailure = null;
+
+        private static final class HullUpdate {
+            private final ConvexHull fHull;
+            private final TmfEventDependency fMatch;
+
+            public HullUpdate(ConvexHull hull, TmfEventDependency match) {
+                fHull = hull;
+                fMatch = match;
+            }
+        }
+
+        public HullUpdater(int nbWorkers) {
+            fWorkers = new ExecutorService[nbWorkers];
+            fLastTasks = new Future<?>[nbWorkers];
+            for (int i = 0; i < nbWorkers; i++) {
+                fWorkers[i] = Executors.newSingleThreadExecutor();
+                fBatches.add(new ArrayList<>(BATCH_SIZE));
+            }
+            fPendingBatches = new Semaphore(nbWorkers * MAX_PENDING_BATCHES);
+        }
+
+        public void add(ConvexHull hull, TmfEventDependency match) {
+            int worker = hull.fIndex % fWorkers.length;
+            List<HullUpdate> batch = fBatches.get(worker);
+            batch.add(new HullUpdate(hull, match));
+            if (batch.size() >= BATCH_SIZE) {
+                submit(worker);
+            }
+        }
+
+        private void submit(int worker) {
+            List<HullUpdate> batch = fBatches.get(worker);
+            fBatches.set(worker, new ArrayList<>(BATCH_SIZE));
+            try {
+                fPendingBatches.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            fLastTasks[worker] = fWorkers[worker].submit(() -> {
+                try {
+                    for (HullUpdate update : batch) {
+                        update.fHull.processMatch(update.fMatch);
+                    }
+                } catch (RuntimeException e) {
+                    fFailure = e;
+                } finally {
+                    fPendingBatches.release();
+                }
+            });
+        }
+
+        /**
+         * Process all the matches received so far and wait for the hulls to be
+         * up to date
+         */
+        public void flush() {
+            for (int i = 0; i < fWorkers.length; i++) {
+                if (!fBatches.get(i).isEmpty()) {
+                    submit(i);
+                }
+            }
+            try {
+                /* A worker runs its batches in order, the last one ends last */
+                for (Future<?> task : fLastTasks) {
+                    if (task != null) {
+                        task.get();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+            RuntimeException failure = fFailure;
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        public void shutdown() {
+            for (ExecutorService worker : fWorkers) {
+                worker.shutdownNow();
+            }
+        }
+    }
+
     /**
      * This is the actual synchronization algorithm between two traces using
      * convex hull
@@ -212,6 +415,9 @@ public class SyncAlgorithmFullyIncremental extends SynchronizationAlgorithm {
         private final String fReferenceHost;
         private final String fOtherHost;
 
+        /** Index of the hull, that determines the thread that updates it */
+        private transient int fIndex = 0;
+
         /**
          * Slopes and ordinate at origin of respectively fLmin, fLmax and the
          * bisector
@@ -507,10 +713,6 @@ public class SyncAlgorithmFullyIncremental extends SynchronizationAlgorithm {
             return fOtherHost;
         }
 
-        public boolean isForHosts(String hostId1, String hostId2) {
-            return ((fReferenceHost.equals(hostId1) && fOtherHost.equals(hostId2)) || (fReferenceHost.equals(hostId2) && fOtherHost.equals(hostId1)));
-        }
-
         private void readObject(ObjectInputStream stream)
                 throws IOException, ClassNotFoundException {
             stream.defaultReadObject();
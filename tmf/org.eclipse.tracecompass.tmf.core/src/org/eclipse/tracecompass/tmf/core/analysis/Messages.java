@@ -57,6 +57,9 @@ public class Messages extends NLS {
     /** Error instantiating parameter provider */
     public static String TmfAnalysisManager_ErrorParameterProvider;
 
+    /** Waiting for the requests of a batch of analyses */
+    public static String TmfAnalysisManager_WaitingForBatch;
+
     /** Impossible to instantiate module from helper */
     public static String TmfAnalysisModuleHelper_ImpossibleToCreateModule;
     static {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2014 École Polytechnique de Montréal
+ * Copyright (c) 2013, 2016 École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -20,12 +20,22 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.osgi.util.NLS;
 import org.eclipse.tracecompass.common.core.NonNullUtils;
 import org.eclipse.tracecompass.internal.tmf.core.Activator;
 import org.eclipse.tracecompass.internal.tmf.core.analysis.TmfAnalysisModuleSources;
 import org.eclipse.tracecompass.internal.tmf.core.analysis.TmfAnalysisParameterProviders;
+import org.eclipse.tracecompass.tmf.core.statesystem.ITmfAnalysisModuleWithStateSystems;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 
 import com.google.common.collect.HashMultimap;
@@ -42,6 +52,12 @@ import com.google.common.collect.Multimap;
 @NonNullByDefault
 public class TmfAnalysisManager {
 
+    /**
+     * Maximum delay (in milliseconds) during which the requests of a batch of
+     * modules are held, waiting for the other modules of the batch
+     */
+    private static final long BATCH_DELAY = 5000;
+
     private static final Multimap<String, IAnalysisModuleHelper> fAnalysisModules = NonNullUtils.checkNotNull(HashMultimap.create());
     private static final Map<String, List<Class<? extends IAnalysisParameterProvider>>> fParameterProviders = new HashMap<>();
     private static final Map<Class<? extends IAnalysisParameterProvider>, IAnalysisParameterProvider> fParamProviderInstances = new HashMap<>();
@@ -227,6 +243,88 @@ public class TmfAnalysisManager {
         return Collections.unmodifiableSet(providerSet);
     }
 
+    /**
+     * Schedule a batch of analysis modules of the same trace, so that they
+     * share a single pass over the trace.
+     * <p>
+     * The event requests of the trace are held while the modules are
+     * scheduled, until all modules with state systems are initialized (their
+     * request is sent) or a maximum delay expires. The held requests are then
+     * coalesced into one request that reads each event once and dispatches it
+     * to every module. Only the background requests are held: a foreground
+     * request sent to the trace meanwhile, for instance by a view, does not
+     * wait for the batch.
+     *
+     * @param trace
+     *            The trace the modules are analyzing
+     * @param modules
+     *            The modules to schedule together
+     * @return An IStatus combining the scheduling status of every module
+     * @since 2.0
+     */
+    public static IStatus scheduleModules(ITmfTrace trace, Iterable<IAnalysisModule> modules) {
+        MultiStatus status = new MultiStatus(Activator.PLUGIN_ID, IStatus.OK, null, null);
+        List<ITmfAnalysisModuleWithStateSystems> toInitialize = new ArrayList<>();
+
+        trace.notifyPendingBatch(true);
+        try {
+            for (IAnalysisModule module : modules) {
+                IStatus moduleStatus = module.schedule();
+                status.add(moduleStatus);
+                if (moduleStatus.isOK() && module instanceof ITmfAnalysisModuleWithStateSystems) {
+                    toInitialize.add((ITmfAnalysisModuleWithStateSystems) module);
+                }
+            }
+        } finally {
+            releaseWhenInitialized(trace, toInitialize);
+        }
+        return status;
+    }
+
+    /**
+     * Release the requests held for a batch of modules once they are all
+     * initialized, or after {@link #BATCH_DELAY}, whichever comes first. A
+     * module may wait for the completion of another one before sending its
+     * request, so the delay prevents the batch from holding the trace forever.
+     */
+    private static void releaseWhenInitialized(final ITmfTrace trace, List<ITmfAnalysisModuleWithStateSystems> modules) {
+        if (modules.isEmpty()) {
+            trace.notifyPendingBatch(false);
+            return;
+        }
+
+        String jobName = checkNotNull(NLS.bind(Messages.TmfAnalysisManager_WaitingForBatch, trace.getName()));
+        final CountDownLatch initialized = new CountDownLatch(modules.size());
+        for (final ITmfAnalysisModuleWithStateSystems module : modules) {
+            Job waitJob = new Job(jobName) {
+                @Override
+                protected IStatus run(@Nullable IProgressMonitor monitor) {
+                    module.waitForInitialization();
+                    initialized.countDown();
+                    return Status.OK_STATUS;
+                }
+            };
+            waitJob.setSystem(true);
+            waitJob.schedule();
+        }
+
+        Job releaseJob = new Job(jobName) {
+            @Override
+            protected IStatus run(@Nullable IProgressMonitor monitor) {
+                try {
+                    initialized.await(BATCH_DELAY, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    trace.notifyPendingBatch(false);
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        releaseJob.setSystem(true);
+        releaseJob.schedule();
+    }
+
     /**
      * Clear the list of modules so that next time, it is computed again from
      * sources
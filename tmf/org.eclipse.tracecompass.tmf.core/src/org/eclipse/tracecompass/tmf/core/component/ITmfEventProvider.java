@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2015 Ericsson
+ * Copyright (c) 2009, 2016 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -49,6 +49,21 @@ public interface ITmfEventProvider extends ITmfComponent {
      */
     void notifyPendingRequest(boolean isIncrement);
 
+    /**
+     * Increments/decrements the counter of requests held for a batch, and fires
+     * the requests if necessary (counter == 0). Unlike
+     * {@link #notifyPendingRequest(boolean)}, only the background requests are
+     * held: a foreground request sent while a batch is held runs alongside it.
+     *
+     * @param isIncrement
+     *            Should we increment (true) or decrement (false) the batch
+     *            counter
+     * @since 2.0
+     */
+    default void notifyPendingBatch(boolean isIncrement) {
+        notifyPendingRequest(isIncrement);
+    }
+
     /**
      * Get the event type this provider handles
      *
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2015 Ericsson
+ * Copyright (c) 2009, 2016 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -70,6 +70,9 @@ public abstract class TmfEventProvider extends TmfComponent implements ITmfEvent
     /** List of coalesced requests */
     private final List<TmfCoalescedEventRequest> fPendingCoalescedRequests = new LinkedList<>();
 
+    /** List of coalesced requests being serviced, that requests can join */
+    private final List<TmfCoalescedEventRequest> fRunningCoalescedRequests = new LinkedList<>();
+
     /** The type of event handled by this provider */
     private Class<? extends ITmfEvent> fType;
 
@@ -81,6 +84,8 @@ public abstract class TmfEventProvider extends TmfComponent implements ITmfEvent
 
     private int fRequestPendingCounter = 0;
 
+    private int fBatchPendingCounter = 0;
+
     private Timer fTimer;
 
     /** Current timer task */
@@ -198,10 +203,15 @@ public abstract class TmfEventProvider extends TmfComponent implements ITmfEvent
                 return;
             }
 
+            if (joinRunningRequest(request)) {
+                return;
+            }
+
             if (request.getExecType() == ExecutionType.FOREGROUND) {
                 if ((fSignalDepth > 0) || (fRequestPendingCounter > 0)) {
                     coalesceEventRequest(request);
                 } else {
+                    /* A held batch only holds the background requests */
                     queueRequest(request);
                 }
                 return;
@@ -237,6 +247,10 @@ public abstract class TmfEventProvider extends TmfComponent implements ITmfEvent
             if (fRequestPendingCounter > 0) {
                 return;
             }
+            if (isTimeout && (fBatchPendingCounter > 0)) {
+                /* The background requests are held for the batch */
+                return;
+            }
 
             if (fPendingCoalescedRequests.size() > 0) {
                 Iterator<TmfCoalescedEventRequest> iter = fPendingCoalescedRequests.iterator();
@@ -280,6 +294,28 @@ public abstract class TmfEventProvider extends TmfComponent implements ITmfEvent
         }
     }
 
+    /**
+     * @since 2.0
+     */
+    @Override
+    public void notifyPendingBatch(boolean isIncrement) {
+        synchronized (fLock) {
+            if (isIncrement) {
+                fBatchPendingCounter++;
+            } else {
+                if (fBatchPendingCounter > 0) {
+                    fBatchPendingCounter--;
+                }
+
+                // fire request if the batch is complete
+                if (fBatchPendingCounter == 0) {
+                    fireRequest(false);
+                    fireRequest(true);
+                }
+            }
+        }
+    }
+
     // ------------------------------------------------------------------------
     // Coalescing
     // ------------------------------------------------------------------------
@@ -333,6 +369,29 @@ public abstract class TmfEventProvider extends TmfComponent implements ITmfEvent
         }
     }
 
+    /*
+     * Attaches a request to a coalesced request being serviced, if the request
+     * allows it. This avoids a new pass over the trace for the events after the
+     * current position of the running request.
+     */
+    private boolean joinRunningRequest(ITmfEventRequest request) {
+        if (!request.isLateJoinAllowed()) {
+            return false;
+        }
+        synchronized (fLock) {
+            Iterator<TmfCoalescedEventRequest> iter = fRunningCoalescedRequests.iterator();
+            while (iter.hasNext()) {
+                TmfCoalescedEventRequest runningRequest = iter.next();
+                if (runningRequest.isCompleted()) {
+                    iter.remove();
+                } else if (runningRequest.joinRequest(request, this)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /*
      * Sends a request with the parent if compatible.
      */
@@ -407,6 +466,18 @@ public abstract class TmfEventProvider extends TmfComponent implements ITmfEvent
             return;
         }
 
+        if (request instanceof TmfCoalescedEventRequest) {
+            synchronized (fLock) {
+                Iterator<TmfCoalescedEventRequest> iter = fRunningCoalescedRequests.iterator();
+                while (iter.hasNext()) {
+                    if (iter.next().isCompleted()) {
+                        iter.remove();
+                    }
+                }
+                fRunningCoalescedRequests.add((TmfCoalescedEventRequest) request);
+            }
+        }
+
         TmfEventThread thread = new TmfEventThread(this, request);
 
         if (TmfCoreTracer.isRequestTraced()) {
@@ -618,6 +689,7 @@ public abstract class TmfEventProvider extends TmfComponent implements ITmfEvent
      */
     private void  clearPendingRequests() {
         fPendingCoalescedRequests.clear();
+        fRunningCoalescedRequests.clear();
     }
 
     /**
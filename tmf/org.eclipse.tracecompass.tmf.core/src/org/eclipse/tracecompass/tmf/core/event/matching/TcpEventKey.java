@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014 École Polytechnique de Montréal
+ * Copyright (c) 2014, 2016 École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -12,14 +12,9 @@
 
 package org.eclipse.tracecompass.tmf.core.event.matching;
 
-import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
-
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
-
 /**
  * Traces can be matched using TCP network packets. To uniquely match a TCP
  * packet from a trace with one from another trace, the three following fields
@@ -34,7 +29,6 @@ import com.google.common.hash.Hashing;
 @NonNullByDefault
 public class TcpEventKey implements IEventMatchingKey {
 
-    private static final HashFunction HF = checkNotNull(Hashing.goodFastHash(32));
     private final long fSeq;
     private final long fAckseq;
     private final long fFlags;
@@ -56,12 +50,37 @@ public class TcpEventKey implements IEventMatchingKey {
         fFlags = flags;
     }
 
+    /**
+     * @return The sequence number of the TCP packet
+     * @since 2.0
+     */
+    public long getSequence() {
+        return fSeq;
+    }
+
+    /**
+     * @return The acknowledgement number of the TCP packet
+     * @since 2.0
+     */
+    public long getAck() {
+        return fAckseq;
+    }
+
+    /**
+     * @return The 16 bits following the acknowledgment
+     * @since 2.0
+     */
+    public long getFlags() {
+        return fFlags;
+    }
+
     @Override
     public int hashCode() {
-        return HF.newHasher()
-                .putLong(fSeq)
-                .putLong(fAckseq)
-                .putLong(fFlags).hash().asInt();
+        /* Keys are hashed for every matched packet, avoid allocating */
+        long h = fSeq * 0x9E3779B97F4A7C15L;
+        h = (h ^ fAckseq) * 0xC2B2AE3D27D4EB4FL;
+        h = (h ^ fFlags) * 0x165667B19E3779F9L;
+        return (int) (h ^ (h >>> 32));
     }
 
     @Override
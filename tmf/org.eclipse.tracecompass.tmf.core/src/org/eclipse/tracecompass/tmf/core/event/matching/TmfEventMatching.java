@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2015 École Polytechnique de Montréal
+ * Copyright (c) 2013, 2016 École Polytechnique de Montréal
  *
  * All rights reserved. This program and the accompanying materials are made
  * available under the terms of the Eclipse Public License v1.0 which
@@ -12,8 +12,6 @@
 
 package org.eclipse.tracecompass.tmf.core.event.matching;
 
-import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
-
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
@@ -26,6 +24,7 @@ import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.tracecompass.internal.tmf.core.Activator;
+import org.eclipse.tracecompass.internal.tmf.core.event.matching.UnmatchedEventBuffer;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
 import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
 import org.eclipse.tracecompass.tmf.core.request.TmfEventRequest;
@@ -34,11 +33,9 @@ import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
 import org.eclipse.tracecompass.tmf.core.trace.experiment.TmfExperiment;
 
-import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Table;
 
 /**
  * Abstract class to extend to match certain type of events in a trace
@@ -49,6 +46,16 @@ public class TmfEventMatching implements ITmfEventMatching {
 
     private static final Set<ITmfMatchEventDefinition> MATCH_DEFINITIONS = new HashSet<>();
 
+    /**
+     * Default maximum number of unmatched events kept per direction
+     *
+     * @since 2.0
+     */
+    public static final int DEFAULT_MAX_UNMATCHED_EVENTS = 1 << 20;
+
+    /** Number of matches between updates of the progress monitor */
+    private static final int MONITOR_UPDATE_MATCHES = 1000;
+
     /**
      * The array of traces to match
      */
@@ -61,15 +68,24 @@ public class TmfEventMatching implements ITmfEventMatching {
 
     private final Multimap<ITmfTrace, ITmfMatchEventDefinition> fMatchMap = HashMultimap.create();
 
+    private long fUnmatchedHorizon = Long.MAX_VALUE;
+    private int fMaxUnmatchedEvents = DEFAULT_MAX_UNMATCHED_EVENTS;
+
     /**
-     * Hashtables for unmatches incoming events
+     * Buffer of unmatched incoming events
      */
-    private final Table<ITmfTrace, IEventMatchingKey, ITmfEvent> fUnmatchedIn = HashBasedTable.create();
+    private UnmatchedEventBuffer fUnmatchedIn = new UnmatchedEventBuffer(fUnmatchedHorizon, fMaxUnmatchedEvents);
 
     /**
-     * Hashtables for unmatches outgoing events
+     * Buffer of unmatched outgoing events
      */
-    private final Table<ITmfTrace, IEventMatchingKey, ITmfEvent> fUnmatchedOut = HashBasedTable.create();
+    private UnmatchedEventBuffer fUnmatchedOut = new UnmatchedEventBuffer(fUnmatchedHorizon, fMaxUnmatchedEvents);
+
+    /* Statistics */
+    private long fNbEvents = 0;
+    private long fNbMatches = 0;
+    private long fMatchingStartTime = 0;
+    private long fMatchingEndTime = 0;
 
     /**
      * Enum for cause and effect types of event
@@ -160,6 +176,42 @@ public class TmfEventMatching implements ITmfEventMatching {
         return ImmutableList.copyOf(fMatchMap.get(trace));
     }
 
+    /**
+     * Set the time after which unmatched events expire, for instance packets
+     * that were lost or not traced on the other end. The time is relative to
+     * the events being matched, and must be longer than the offset between
+     * the clocks of the traces. It applies from the next call to
+     * {@link #initMatching()}.
+     *
+     * @param horizon
+     *            The horizon, in nanoseconds, or {@link Long#MAX_VALUE} for no
+     *            time limit, which is the default
+     * @since 2.0
+     */
+    public void setUnmatchedEventHorizon(long horizon) {
+        if (horizon < 0) {
+            throw new IllegalArgumentException("Negative horizon: " + horizon); //$NON-NLS-1$
+        }
+        fUnmatchedHorizon = horizon;
+    }
+
+    /**
+     * Set the maximum number of unmatched events kept per direction. When this
+     * number is reached, the oldest unmatched events are dropped. It applies
+     * from the next call to {@link #initMatching()}.
+     *
+     * @param maxEvents
+     *            The maximum number of unmatched events, by default
+     *            {@link #DEFAULT_MAX_UNMATCHED_EVENTS}
+     * @since 2.0
+     */
+    public void setMaxUnmatchedEvents(int maxEvents) {
+        if (maxEvents <= 0) {
+            throw new IllegalArgumentException("Invalid maximum: " + maxEvents); //$NON-NLS-1$
+        }
+        fMaxUnmatchedEvents = maxEvents;
+    }
+
     /**
      * Method that initializes any data structure for the event matching. It
      * also assigns to each trace an event matching definition instance that
@@ -169,8 +221,12 @@ public class TmfEventMatching implements ITmfEventMatching {
      */
     public void initMatching() {
         // Initialize the matching infrastructure (unmatched event lists)
-        fUnmatchedIn.clear();
-        fUnmatchedOut.clear();
+        fUnmatchedIn = new UnmatchedEventBuffer(fUnmatchedHorizon, fMaxUnmatchedEvents);
+        fUnmatchedOut = new UnmatchedEventBuffer(fUnmatchedHorizon, fMaxUnmatchedEvents);
+        fNbEvents = 0;
+        fNbMatches = 0;
+        fMatchingStartTime = System.nanoTime();
+        fMatchingEndTime = 0;
 
         fMatches.init(fTraces);
         for (ITmfTrace trace : getIndividualTraces()) {
@@ -186,9 +242,66 @@ public class TmfEventMatching implements ITmfEventMatching {
      * Calls any post matching methods of the processing class
      */
     protected void finalizeMatching() {
+        fMatchingEndTime = System.nanoTime();
         fMatches.matchingEnded();
     }
 
+    /**
+     * Get the number of events that were considered for matching, that is
+     * the events with a matching direction and key
+     *
+     * @return The number of events
+     * @since 2.0
+     */
+    public long getNbProcessedEvents() {
+        return fNbEvents;
+    }
+
+    /**
+     * Get the number of events that were matched, two per match
+     *
+     * @return The number of matched events
+     * @since 2.0
+     */
+    public long getNbMatchedEvents() {
+        return 2 * fNbMatches;
+    }
+
+    /**
+     * Get the number of unmatched events, whether they are still waiting for
+     * their match or they expired
+     *
+     * @return The number of unmatched events
+     * @since 2.0
+     */
+    public long getNbUnmatchedEvents() {
+        return fUnmatchedIn.size() + fUnmatchedOut.size() + getNbExpiredEvents();
+    }
+
+    /**
+     * Get the number of unmatched events that expired or were dropped because
+     * too many events were waiting for their match
+     *
+     * @return The number of expired events
+     * @since 2.0
+     */
+    public long getNbExpiredEvents() {
+        return fUnmatchedIn.getNbExpired() + fUnmatchedOut.getNbExpired();
+    }
+
+    /**
+     * Get the matching throughput, from the initialization of the matching
+     * until it ended, or until now if it is still running
+     *
+     * @return The number of processed events per second
+     * @since 2.0
+     */
+    public double getThroughput() {
+        long end = (fMatchingEndTime == 0 ? System.nanoTime() : fMatchingEndTime);
+        long duration = Math.max(1, end - fMatchingStartTime);
+        return fNbEvents * 1e9 / duration;
+    }
+
     /**
      * Prints stats from the matching
      *
@@ -202,9 +315,13 @@ public class TmfEventMatching implements ITmfEventMatching {
         int i = 0;
         for (ITmfTrace trace : getIndividualTraces()) {
             b.append("Trace " + i++ + ":" + cr + //$NON-NLS-1$ //$NON-NLS-2$
-                    "  " + fUnmatchedIn.row(trace).size() + " unmatched incoming events" + cr + //$NON-NLS-1$ //$NON-NLS-2$
-                    "  " + fUnmatchedOut.row(trace).size() + " unmatched outgoing events" + cr); //$NON-NLS-1$ //$NON-NLS-2$
+                    "  " + fUnmatchedIn.size(trace) + " unmatched incoming events" + cr + //$NON-NLS-1$ //$NON-NLS-2$
+                    "  " + fUnmatchedOut.size(trace) + " unmatched outgoing events" + cr); //$NON-NLS-1$ //$NON-NLS-2$
         }
+        double unmatchedRate = (fNbEvents == 0 ? 0 : (double) getNbUnmatchedEvents() / fNbEvents);
+        b.append(fNbEvents + " events processed, " + (long) getThroughput() + " events/s" + cr + //$NON-NLS-1$ //$NON-NLS-2$
+                "  " + String.format("%.1f", 100 * unmatchedRate) + "% unmatched, " + //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                getNbExpiredEvents() + " expired" + cr); //$NON-NLS-1$
 
         return b.toString();
     }
@@ -223,7 +340,7 @@ public class TmfEventMatching implements ITmfEventMatching {
     public void matchEvent(ITmfEvent event, ITmfTrace trace, @NonNull IProgressMonitor monitor) {
         ITmfMatchEventDefinition def = null;
         Direction evType = null;
-        for (ITmfMatchEventDefinition oneDef : getEventDefinitions(event.getTrace())) {
+        for (ITmfMatchEventDefinition oneDef : fMatchMap.get(event.getTrace())) {
             def = oneDef;
             evType = def.getDirection(event);
             if (evType != null) {
@@ -242,7 +359,7 @@ public class TmfEventMatching implements ITmfEventMatching {
         if (eventKey == null) {
             return;
         }
-        Table<ITmfTrace, IEventMatchingKey, ITmfEvent> unmatchedTbl, companionTbl;
+        UnmatchedEventBuffer unmatchedTbl, companionTbl;
 
         /* Point to the appropriate table */
         switch (evType) {
@@ -257,55 +374,42 @@ public class TmfEventMatching implements ITmfEventMatching {
         default:
             return;
         }
-
-        boolean found = false;
-        TmfEventDependency dep = null;
-        /* Search for the event in the companion table */
-        for (ITmfTrace mTrace : getIndividualTraces()) {
-            if (companionTbl.contains(mTrace, eventKey)) {
-                found = true;
-                ITmfEvent companionEvent = companionTbl.get(mTrace, eventKey);
-
-                /* Remove the element from the companion table */
-                companionTbl.remove(mTrace, eventKey);
-
-                /* Create the dependency object */
-                switch (evType) {
-                case CAUSE:
-                    dep = new TmfEventDependency(companionEvent, event);
-                    break;
-                case EFFECT:
-                    dep = new TmfEventDependency(event, companionEvent);
-                    break;
-                default:
-                    break;
-
-                }
+        fNbEvents++;
+
+        /* Search for the event in the companion table, and remove it */
+        ITmfEvent companionEvent = companionTbl.remove(eventKey);
+        if (companionEvent != null) {
+            /* Create the dependency object */
+            TmfEventDependency dep;
+            switch (evType) {
+            case CAUSE:
+                dep = new TmfEventDependency(companionEvent, event);
+                break;
+            case EFFECT:
+                dep = new TmfEventDependency(event, companionEvent);
+                break;
+            default:
+                return;
+            }
+            getProcessingUnit().addMatch(dep);
+            fNbMatches++;
+            if (fNbMatches % MONITOR_UPDATE_MATCHES == 1) {
+                monitor.subTask(NLS.bind(Messages.TmfEventMatching_MatchesFound, getProcessingUnit().countMatches()));
             }
-        }
-
-        /*
-         * If no companion was found, add the event to the appropriate unMatched
-         * lists
-         */
-        if (found) {
-            getProcessingUnit().addMatch(checkNotNull(dep));
-            monitor.subTask(NLS.bind(Messages.TmfEventMatching_MatchesFound, getProcessingUnit().countMatches()));
         } else {
             /*
-             * If an event is already associated with this key, do not add it
-             * again, we keep the first event chronologically, so if its match
-             * is eventually found, it is associated with the first send or
-             * receive event. At best, it is a good guess, at worst, the match
-             * will be too far off to be accurate. Too bad!
+             * If no companion was found, add the event to the appropriate
+             * unmatched buffer. If an event of this trace is already
+             * associated with this key, do not add it again, we keep the first
+             * event chronologically, so if its match is eventually found, it
+             * is associated with the first send or receive event. At best, it
+             * is a good guess, at worst, the match will be too far off to be
+             * accurate. Too bad!
              *
-             * TODO: maybe instead of just one event, we could have a list of
-             * events as value for the unmatched table. Not necessary right now
-             * though
+             * Events that stay unmatched for too long expire, so lost packets
+             * do not accumulate until the end of the traces.
              */
-            if (!unmatchedTbl.contains(event.getTrace(), eventKey)) {
-                unmatchedTbl.put(event.getTrace(), eventKey, event);
-            }
+            unmatchedTbl.add(eventKey, event);
         }
     }
 
@@ -102,6 +102,23 @@ public interface ITmfEventRequest {
      */
     void setProviderFilter(ITmfFilter filter);
 
+    /**
+     * Indicates if this request can be attached to a coalesced request that is
+     * already being serviced and has read past the start of this request. In
+     * that case, the events are delivered in two chronological segments: first
+     * from the joining point to the end of the request, then from the start of
+     * the request up to the joining point, through a catch-up request.
+     * <p>
+     * Requests that rely on receiving all their events in chronological order
+     * must not allow late joining, which is the default.
+     *
+     * @return true if the request accepts to be serviced out of order
+     * @since 2.0
+     */
+    default boolean isLateJoinAllowed() {
+        return false;
+    }
+
     // ------------------------------------------------------------------------
     // Request state predicates
     // ------------------------------------------------------------------------
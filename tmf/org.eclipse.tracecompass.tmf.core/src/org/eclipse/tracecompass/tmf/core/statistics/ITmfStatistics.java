@@ -52,6 +52,35 @@ public interface ITmfStatistics {
      */
     List<Long> histogramQuery(long start, long end, int nb);
 
+    /**
+     * Run a histogram query on the statistics back-end, like
+     * {@link #histogramQuery(long, long, int)}, returning the number of events
+     * of each sub-range in a primitive array.
+     *
+     * This method will block the caller until the results are returned, so it
+     * should not be called from a signal handler or from the UI thread.
+     *
+     * @param start
+     *            Start time of the query
+     * @param end
+     *            End time of the query
+     * @param nb
+     *            The number of ranges to separate the complete time range into.
+     *            It will be the length of the returned array.
+     * @return The array representing the number of events found in each
+     *         sub-range.
+     * @since 2.0
+     */
+    default long[] histogramQueryArray(long start, long end, int nb) {
+        List<Long> list = histogramQuery(start, end, nb);
+        long[] counts = new long[list.size()];
+        int i = 0;
+        for (Long count : list) {
+            counts[i++] = count;
+        }
+        return counts;
+    }
+
     /**
      * Return the total number of events in the trace.
      *
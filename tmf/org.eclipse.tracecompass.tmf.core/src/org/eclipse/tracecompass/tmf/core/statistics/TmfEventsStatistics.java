@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2014 Ericsson
+ * Copyright (c) 2012, 2016 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -166,6 +166,12 @@ public class TmfEventsStatistics implements ITmfStatistics {
             return total;
         }
 
+        @Override
+        public boolean isLateJoinAllowed() {
+            /* The events can be counted in any order */
+            return true;
+        }
+
         @Override
         public void handleData(final ITmfEvent event) {
             super.handleData(event);
@@ -194,6 +200,11 @@ public class TmfEventsStatistics implements ITmfStatistics {
             return stats;
         }
 
+        @Override
+        public boolean isLateJoinAllowed() {
+            return true;
+        }
+
         @Override
         public void handleData(final ITmfEvent event) {
             super.handleData(event);
@@ -264,6 +275,11 @@ public class TmfEventsStatistics implements ITmfStatistics {
             return results.values();
         }
 
+        @Override
+        public boolean isLateJoinAllowed() {
+            return true;
+        }
+
         @Override
         public void handleData(ITmfEvent event) {
             super.handleData(event);
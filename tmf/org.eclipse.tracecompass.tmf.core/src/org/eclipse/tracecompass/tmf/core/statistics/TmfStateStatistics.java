@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2012, 2015 Ericsson
+ * Copyright (c) 2012, 2016 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -13,12 +13,15 @@
 
 package org.eclipse.tracecompass.tmf.core.statistics;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.internal.tmf.core.statistics.TmfEventCountPyramid;
+import org.eclipse.tracecompass.internal.tmf.core.statistics.TmfEventTypeCountIndex;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
 import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
 import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
@@ -49,6 +52,12 @@ public class TmfStateStatistics implements ITmfStatistics {
     /** The state system for event types */
     private final ITmfStateSystem typesStats;
 
+    /** The precomputed event counts, once complete */
+    private volatile @Nullable TmfEventCountPyramid fTotalsPyramid = null;
+
+    /** The exact event counts per event type, once complete */
+    private volatile @Nullable TmfEventTypeCountIndex fTypesIndex = null;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -96,13 +105,26 @@ public class TmfStateStatistics implements ITmfStatistics {
 
     @Override
     public List<Long> histogramQuery(final long start, final long end, final int nb) {
-        final List<Long> list = new LinkedList<>();
-        final long increment = (end - start) / nb;
+        long[] counts = histogramQueryArray(start, end, nb);
+        final List<Long> list = new ArrayList<>(counts.length);
+        for (long count : counts) {
+            list.add(count);
+        }
+        return list;
+    }
 
+    /**
+     * @since 2.0
+     */
+    @Override
+    public long[] histogramQueryArray(final long start, final long end, final int nb) {
         if (totalsStats.isCancelled()) {
-            return list;
+            return new long[0];
         }
 
+        final long[] counts = new long[nb];
+        final long increment = (end - start) / nb;
+
         /*
          * We will do one state system query per "border", and save the
          * differences between each border.
@@ -110,11 +132,10 @@ public class TmfStateStatistics implements ITmfStatistics {
         long prevTotal = (start == totalsStats.getStartTime()) ? 0 : getEventCountAt(start);
         long curTime = start + increment;
 
-        long curTotal, count;
+        long curTotal;
         for (int i = 0; i < nb - 1; i++) {
             curTotal = getEventCountAt(curTime);
-            count = curTotal - prevTotal;
-            list.add(count);
+            counts[i] = curTotal - prevTotal;
 
             curTime += increment;
             prevTotal = curTotal;
@@ -125,10 +146,37 @@ public class TmfStateStatistics implements ITmfStatistics {
          * the requested range, in case it got truncated down.
          */
         curTotal = getEventCountAt(end);
-        count = curTotal - prevTotal;
-        list.add(count);
+        counts[nb - 1] = curTotal - prevTotal;
 
-        return list;
+        return counts;
+    }
+
+    /**
+     * Run an approximate histogram query, using the event counts precomputed
+     * when the statistics were built instead of the state systems. The counts
+     * at the edges of the buckets are interpolated, so they may differ slightly
+     * from the exact counts of {@link #histogramQueryArray(long, long, int)}.
+     * This is meant for displays, like the histogram, that favor response
+     * time over precision.
+     * The lost events are not part of the precomputed counts, so no counts are
+     * returned for a trace with lost events.
+     *
+     * @param start
+     *            Start time of the query
+     * @param end
+     *            End time of the query
+     * @param nb
+     *            The number of ranges to separate the complete time range into
+     * @return The approximate number of events in each sub-range, or null if
+     *         the precomputed counts are not available or not precise enough
+     * @since 2.0
+     */
+    public long @Nullable [] approximateHistogramQuery(long start, long end, int nb) {
+        TmfEventCountPyramid pyramid = fTotalsPyramid;
+        if (pyramid == null || typesStats.optQuarkAbsolute(Attributes.LOST_EVENTS) != ITmfStateSystem.INVALID_ATTRIBUTE) {
+            return null;
+        }
+        return pyramid.query(start, end, nb);
     }
 
     @Override
@@ -198,6 +246,14 @@ public class TmfStateStatistics implements ITmfStatistics {
 
     @Override
     public Map<String, Long> getEventTypesInRange(long start, long end) {
+        if (typesStats.isCancelled()) {
+            return new HashMap<>();
+        }
+        TmfEventTypeCountIndex index = fTypesIndex;
+        if (index != null) {
+            return index.getCounts(start, end);
+        }
+
         final Map<String, Long> map = new HashMap<>();
         List<Integer> quarks;
 
@@ -289,6 +345,29 @@ public class TmfStateStatistics implements ITmfStatistics {
         return 0;
     }
 
+    /**
+     * Set the event counts precomputed when the statistics were built. They
+     * are only used by the approximate histogram queries.
+     *
+     * @param totals
+     *            The counts of all the events
+     */
+    void setEventCountPyramid(TmfEventCountPyramid totals) {
+        fTotalsPyramid = totals;
+    }
+
+    /**
+     * Set the index of the event counts per event type, built once the
+     * statistics are complete. It is used instead of the state system for the
+     * event type counts in a time range.
+     *
+     * @param index
+     *            The event type count index
+     */
+    void setEventTypeCountIndex(TmfEventTypeCountIndex index) {
+        fTypesIndex = index;
+    }
+
     private static long checkStartTime(long initialStart, ITmfStateSystem ss) {
         long start = initialStart;
         if (start < ss.getStartTime()) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2014 Ericsson
+ * Copyright (c) 2013, 2016 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -12,20 +12,26 @@
 
 package org.eclipse.tracecompass.tmf.core.statistics;
 
+import java.io.File;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.internal.tmf.core.statistics.TmfEventCountPyramid;
+import org.eclipse.tracecompass.internal.tmf.core.statistics.TmfEventTypeCountIndex;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
 import org.eclipse.tracecompass.tmf.core.analysis.TmfAbstractAnalysisModule;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfAnalysisException;
 import org.eclipse.tracecompass.tmf.core.statesystem.ITmfAnalysisModuleWithStateSystems;
 import org.eclipse.tracecompass.tmf.core.statesystem.TmfStateSystemAnalysisModule;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
 
 /**
  * Analysis module to compute the statistics of a trace.
@@ -38,11 +44,23 @@ public class TmfStatisticsModule extends TmfAbstractAnalysisModule
     /** ID of this analysis module */
     public static final @NonNull String ID = "org.eclipse.linuxtools.tmf.core.statistics.analysis"; //$NON-NLS-1$
 
+    /** File name of the saved event count pyramid */
+    private static final String TOTALS_PYRAMID_FILE = "statistics-totals.pyramid"; //$NON-NLS-1$
+    /** File name of the saved event type count index */
+    private static final String TYPES_INDEX_FILE = "statistics-types.idx"; //$NON-NLS-1$
+
+    /**
+     * Maximum number of count changes in the event type count index. The
+     * index is built in memory with 12 bytes per change, so this bounds it to
+     * about 50 MB, and the statistics of larger traces query the state system.
+     */
+    private static final int MAX_INDEX_CHANGES = 1 << 22;
+
     /** The trace's statistics */
     private ITmfStatistics fStatistics = null;
     private boolean fInitializationSucceeded;
 
-    private final TmfStateSystemAnalysisModule totalsModule = new TmfStatisticsTotalsModule();
+    private final TmfStatisticsTotalsModule totalsModule = new TmfStatisticsTotalsModule();
     private final TmfStateSystemAnalysisModule eventTypesModule = new TmfStatisticsEventTypesModule();
 
     private final CountDownLatch fInitialized = new CountDownLatch(1);
@@ -145,7 +163,8 @@ public class TmfStatisticsModule extends TmfAbstractAnalysisModule
             throw new IllegalStateException("TmfStatisticsModule : Sub-modules initialization succeeded but there is a null state system."); //$NON-NLS-1$
         }
 
-        fStatistics = new TmfStateStatistics(totalsSS, eventTypesSS);
+        TmfStateStatistics statistics = new TmfStateStatistics(totalsSS, eventTypesSS);
+        fStatistics = statistics;
 
         /* fStatistics is now set, consider this module initialized */
         analysisReady(true);
@@ -158,9 +177,60 @@ public class TmfStatisticsModule extends TmfAbstractAnalysisModule
                 eventTypesModule.waitForCompletion(monitor))) {
             return false;
         }
+        setEventCountPyramid(trace, statistics);
+        setEventTypeCountIndex(trace, statistics, eventTypesSS);
         return true;
     }
 
+    /**
+     * Give the event type count index to the statistics. It is read from the
+     * saved file if that file matches the state system, otherwise it is built
+     * from the completed state system and saved. The index is then queried
+     * from the mapped file, so that it is not kept in memory.
+     */
+    private static void setEventTypeCountIndex(ITmfTrace trace, TmfStateStatistics statistics, ITmfStateSystem eventTypesSS) {
+        File file = new File(TmfTraceManager.getSupplementaryFileDir(trace) + TYPES_INDEX_FILE);
+        long startTime = eventTypesSS.getStartTime();
+        long endTime = eventTypesSS.getCurrentEndTime();
+        TmfEventTypeCountIndex index = TmfEventTypeCountIndex.load(file, startTime, endTime);
+        if (index == null) {
+            TmfEventTypeCountIndex built = TmfEventTypeCountIndex.build(eventTypesSS, TmfStateStatistics.Attributes.EVENT_TYPES, MAX_INDEX_CHANGES);
+            if (built == null) {
+                return;
+            }
+            built.save(file);
+            index = TmfEventTypeCountIndex.load(file, startTime, endTime);
+            if (index == null) {
+                /* The file could not be saved, keep the index in memory */
+                index = built;
+            }
+        }
+        statistics.setEventTypeCountIndex(index);
+    }
+
+    /**
+     * Give the event count pyramid to the statistics. It is built by the
+     * totals sub-module while it reads the trace, and saved next to its state
+     * system. If the state system was opened from an existing file, the
+     * pyramid is read from the saved file instead.
+     */
+    private void setEventCountPyramid(ITmfTrace trace, TmfStateStatistics statistics) {
+        File totalsFile = new File(TmfTraceManager.getSupplementaryFileDir(trace) + TOTALS_PYRAMID_FILE);
+
+        TmfEventCountPyramid totals = totalsModule.getEventCountPyramid();
+        if (totals.getNbEvents() > 0) {
+            TmfEventCountPyramid.save(totalsFile, Collections.singletonMap("", totals)); //$NON-NLS-1$
+        } else {
+            Map<String, TmfEventCountPyramid> savedTotals = TmfEventCountPyramid.load(totalsFile);
+            TmfEventCountPyramid savedTotal = (savedTotals == null) ? null : savedTotals.get(""); //$NON-NLS-1$
+            if (savedTotal == null) {
+                return;
+            }
+            totals = savedTotal;
+        }
+        statistics.setEventCountPyramid(totals);
+    }
+
     /**
      * Make the module available and set whether the initialization went well or
      * not. If not, no state system is available and
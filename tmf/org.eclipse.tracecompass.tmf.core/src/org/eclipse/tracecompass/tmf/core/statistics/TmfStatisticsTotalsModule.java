@@ -15,6 +15,7 @@ package org.eclipse.tracecompass.tmf.core.statistics;
 import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.internal.tmf.core.statistics.TmfEventCountPyramid;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
 import org.eclipse.tracecompass.statesystem.core.StateSystemBuilderUtils;
 import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
@@ -45,6 +46,11 @@ public class TmfStatisticsTotalsModule extends TmfStateSystemAnalysisModule {
 
     private static final @NonNull String NAME = "TMF Statistics, event totals"; //$NON-NLS-1$
 
+    /** Maximum number of bins of the base level of the event count pyramid */
+    private static final int PYRAMID_BINS = 1 << 20;
+
+    private volatile TmfEventCountPyramid fPyramid = new TmfEventCountPyramid(PYRAMID_BINS);
+
     /**
      * Constructor
      */
@@ -56,9 +62,20 @@ public class TmfStatisticsTotalsModule extends TmfStateSystemAnalysisModule {
 
     @Override
     protected ITmfStateProvider createStateProvider() {
+        fPyramid = new TmfEventCountPyramid(PYRAMID_BINS);
         return new StatsProviderTotals(checkNotNull(getTrace()));
     }
 
+    /**
+     * Get the event count pyramid filled by the state provider, which is empty
+     * if the state system was opened from an existing file.
+     *
+     * @return The event count pyramid
+     */
+    TmfEventCountPyramid getEventCountPyramid() {
+        return fPyramid;
+    }
+
     @Override
     protected String getSsFileName() {
         return "statistics-totals.ht"; //$NON-NLS-1$
@@ -126,6 +143,8 @@ public class TmfStatisticsTotalsModule extends TmfStateSystemAnalysisModule {
                 int quark = ss.getQuarkAbsoluteAndAdd(Attributes.TOTAL);
                 StateSystemBuilderUtils.incrementAttributeInt(ss, ts, quark, 1);
 
+                fPyramid.add(ts);
+
             } catch (StateValueTypeException | TimeRangeException | AttributeNotFoundException e) {
                 e.printStackTrace();
             }
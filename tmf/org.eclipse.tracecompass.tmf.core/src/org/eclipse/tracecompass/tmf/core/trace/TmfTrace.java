@@ -17,10 +17,12 @@
 package org.eclipse.tracecompass.tmf.core.trace;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -298,12 +300,17 @@ public abstract class TmfTrace extends TmfEventProvider implements ITmfTrace, IT
             }
         }
 
-        /* Once all modules are initialized, automatic modules are executed */
+        /*
+         * Once all modules are initialized, automatic modules are executed
+         * together so that they share a single pass over the trace
+         */
+        List<IAnalysisModule> automaticModules = new ArrayList<>();
         for (IAnalysisModule module : getAnalysisModules()) {
             if (module.isAutomatic()) {
-                status.add(module.schedule());
+                automaticModules.add(module);
             }
         }
+        status.add(TmfAnalysisManager.scheduleModules(this, automaticModules));
         return status;
     }
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2015 Ericsson
+ * Copyright (c) 2011, 2016 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -750,6 +750,20 @@ public class HistogramDataModelTest {
         assertEquals(7, result.fMaxCombinedValue);
     }
 
+    /**
+     * Test method for {@link HistogramDataModel#setBucketCounts(long[], ITmfTrace)}.
+     */
+    @Test
+    public void testSetBucketCounts() {
+        final int nbBuckets = 10;
+        HistogramDataModel model = new HistogramDataModel(nbBuckets);
+        model.setTimeRange(100, 139);
+        model.setBucketCounts(new long[] { 0, 2, 0, 3, 0, 0, 0, 0, 0, 0 }, null);
+
+        /* The bounds of the model are the bounds of the non-empty buckets */
+        testModelConsistency(model, nbBuckets, 5, 4, 100, 104, 115, 140);
+    }
+
     /*
      * helpers
      */
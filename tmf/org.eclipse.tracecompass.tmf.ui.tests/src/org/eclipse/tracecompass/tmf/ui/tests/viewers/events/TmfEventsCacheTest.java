@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.ui.tests.viewers.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.exceptions.TmfTraceException;
+import org.eclipse.tracecompass.tmf.core.signal.TmfSignalManager;
+import org.eclipse.tracecompass.tmf.core.tests.TmfCoreTestPlugin;
+import org.eclipse.tracecompass.tmf.core.tests.shared.TmfTestTrace;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.tests.stubs.trace.TmfTraceStub;
+import org.eclipse.tracecompass.tmf.ui.viewers.events.TmfEventsCache;
+import org.eclipse.tracecompass.tmf.ui.viewers.events.TmfEventsTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+/**
+ * Test the {@link TmfEventsCache} class
+ */
+@SuppressWarnings("javadoc")
+public class TmfEventsCacheTest {
+
+    /** Time-out tests after 20 seconds */
+    @Rule
+    public TestRule globalTimeout = new Timeout(20, TimeUnit.SECONDS);
+
+    private static final TmfTestTrace TEST_TRACE = TmfTestTrace.A_TEST_10K;
+    private static final int NB_EVENTS = 10000;
+    private static final int CACHE_SIZE = 100;
+    /** The maximum number of pages of the cache */
+    private static final int MAX_PAGES = 16;
+
+    private TmfTraceStub fTrace;
+    private Shell fShell;
+    private TmfEventsTable fTable;
+    private TmfEventsCache fCache;
+
+    @Before
+    public void setUp() throws TmfTraceException, IOException, URISyntaxException {
+        final URL location = FileLocator.find(TmfCoreTestPlugin.getDefault().getBundle(), new Path(TEST_TRACE.getFullPath()), null);
+        final File test = new File(FileLocator.toFileURL(location).toURI());
+        fTrace = new TmfTraceStub(test.toURI().getPath(), ITmfTrace.DEFAULT_TRACE_CACHE_SIZE, false, null);
+        TmfSignalManager.deregister(fTrace);
+        fTrace.indexTrace(true);
+
+        fShell = new Shell(Display.getDefault());
+        fTable = new TmfEventsTable(fShell, CACHE_SIZE) {
+            @Override
+            public void cacheUpdated(boolean completed) {
+                // The rows are not refreshed, the test peeks in the cache
+            }
+        };
+        fTable.getTable().setItemCount(NB_EVENTS + 1); // +1 for header row
+        fCache = new TmfEventsCache(CACHE_SIZE, fTable);
+        fCache.setTrace(fTrace);
+    }
+
+    @After
+    public void tearDown() {
+        fCache.clear();
+        fTable.dispose();
+        fShell.dispose();
+        fTrace.dispose();
+    }
+
+    /**
+     * Wait until the event at an index is in the cache
+     */
+    private void waitForEvent(int index) throws InterruptedException {
+        while (fCache.peekEvent(index) == null) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Wait until a number of pages were read from the trace, which is counted
+     * after the last event of the pages is stored
+     */
+    private void waitForFetchedPages(long count) throws InterruptedException {
+        while (fCache.getFetchedPageCount() < count) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static long timestampOf(ITmfEvent event) {
+        return event.getTimestamp().getValue();
+    }
+
+    @Test
+    public void testEviction() throws InterruptedException {
+        /* Each miss also reads the next page ahead */
+        for (int number = 0; number < MAX_PAGES; number += 2) {
+            assertNull(fCache.getEvent(number * CACHE_SIZE));
+            waitForFetchedPages(number + 2);
+        }
+        assertEquals(MAX_PAGES / 2, fCache.getMissCount());
+        assertEquals(MAX_PAGES, fCache.getFetchedPageCount());
+        for (int index = 0; index < MAX_PAGES * CACHE_SIZE; index++) {
+            assertNotNull(fCache.peekEvent(index));
+        }
+
+        /* Use the first page, the second one is now the least recently used */
+        assertNotNull(fCache.getEvent(0));
+
+        /* Two more pages evict the two least recently used ones */
+        assertNull(fCache.getEvent(MAX_PAGES * CACHE_SIZE));
+        waitForFetchedPages(MAX_PAGES + 2);
+        assertNotNull(fCache.peekEvent(0));
+        assertNull(fCache.peekEvent(CACHE_SIZE));
+        assertNull(fCache.peekEvent(2 * CACHE_SIZE));
+        for (int number = 3; number < MAX_PAGES + 2; number++) {
+            assertNotNull(fCache.peekEvent(number * CACHE_SIZE));
+        }
+        assertEquals(MAX_PAGES + 2, fCache.getFetchedPageCount());
+
+        /* An evicted page is read again from the trace */
+        assertNull(fCache.getEvent(CACHE_SIZE));
+        waitForEvent(CACHE_SIZE);
+        assertEquals(CACHE_SIZE + 1, timestampOf(fCache.peekEvent(CACHE_SIZE)));
+    }
+
+    @Test
+    public void testReadAhead() throws InterruptedException {
+        int first = 5 * CACHE_SIZE;
+
+        /* A miss reads the page and the next one */
+        assertNull(fCache.getEvent(first));
+        waitForFetchedPages(2);
+        assertEquals(1, fCache.getMissCount());
+        assertEquals(2, fCache.getFetchedPageCount());
+        assertNull(fCache.peekEvent(first - 1));
+
+        /* In the middle of the page, nothing is read ahead */
+        assertNotNull(fCache.getEvent(first + CACHE_SIZE / 2));
+
+        /* Close to the start of the page when scrolling up */
+        assertNotNull(fCache.getEvent(first + CACHE_SIZE / 4 - 1));
+        waitForFetchedPages(3);
+
+        /* Close to the end of the next page when scrolling down */
+        int index = first + CACHE_SIZE + CACHE_SIZE - CACHE_SIZE / 4;
+        assertNotNull(fCache.getEvent(index));
+        waitForFetchedPages(4);
+        assertEquals(4, fCache.getFetchedPageCount());
+        assertEquals(1, fCache.getMissCount());
+        assertEquals(3, fCache.getHitCount());
+
+        for (int i = 4 * CACHE_SIZE; i < 8 * CACHE_SIZE; i++) {
+            assertEquals(i + 1, timestampOf(fCache.peekEvent(i)));
+        }
+    }
+
+    @Test
+    public void testFilter() throws InterruptedException {
+        /* Keep the events with an even timestamp */
+        fCache.applyFilter(event -> timestampOf(event) % 2 == 0);
+        fTable.getTable().setItemCount(NB_EVENTS / 2 + 3); // +1 for header row, +2 for top and bottom filter status rows
+
+        assertNull(fCache.getEvent(0));
+        waitForFetchedPages(2);
+        for (int i = 0; i < 2 * CACHE_SIZE; i++) {
+            assertEquals(2 * (i + 1), timestampOf(fCache.peekEvent(i)));
+        }
+
+        /* The next pages continue where the cached pages end */
+        assertNull(fCache.getEvent(2 * CACHE_SIZE));
+        waitForFetchedPages(4);
+        for (int i = 2 * CACHE_SIZE; i < 4 * CACHE_SIZE; i++) {
+            assertEquals(2 * (i + 1), timestampOf(fCache.peekEvent(i)));
+        }
+
+        /* The index of a rank is found in the cached pages */
+        assertEquals(10, fCache.getFilteredEventIndex(20));
+        assertEquals(11, fCache.getFilteredEventIndex(22));
+
+        /* Clearing the filter clears the cache */
+        fCache.clearFilter();
+        assertNull(fCache.peekEvent(0));
+        fTable.getTable().setItemCount(NB_EVENTS + 1);
+        assertNull(fCache.getEvent(0));
+        waitForEvent(1);
+        assertEquals(2, timestampOf(fCache.peekEvent(1)));
+    }
+}
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.ui.tests.viewers.xycharts;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.eclipse.tracecompass.tmf.ui.viewers.xycharts.linecharts.LineChartDownsampler;
+import org.eclipse.tracecompass.tmf.ui.viewers.xycharts.linecharts.StreamingLineSeries;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the {@link LineChartDownsampler} class
+ */
+@SuppressWarnings("javadoc")
+public class LineChartDownsamplerTest {
+
+    private static final int NB_POINTS = 100000;
+    private static final int WIDTH = 500;
+
+    private double[] fX;
+    private double[] fY;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(1);
+        fX = new double[NB_POINTS];
+        fY = new double[NB_POINTS];
+        double x = 0;
+        for (int i = 0; i < NB_POINTS; i++) {
+            x += random.nextInt(10);
+            fX[i] = x;
+            fY[i] = Math.sin(i / 1000.0) * 100 + random.nextGaussian();
+        }
+    }
+
+    private static void assertIncreasing(int[] indexes) {
+        for (int i = 1; i < indexes.length; i++) {
+            assertTrue(indexes[i] > indexes[i - 1]);
+        }
+    }
+
+    private static int bucketOf(double x, double start, double end) {
+        return (int) Math.min(WIDTH - 1, (x - start) / (end - start) * WIDTH);
+    }
+
+    @Test
+    public void testMinMax() {
+        int[] indexes = LineChartDownsampler.minMax(fX, fY, WIDTH);
+        assertIncreasing(indexes);
+        assertTrue(indexes.length <= 4 * WIDTH);
+        assertEquals(0, indexes[0]);
+        assertEquals(NB_POINTS - 1, indexes[indexes.length - 1]);
+
+        /* The minimum and maximum of each bucket are kept */
+        double start = fX[0];
+        double end = fX[NB_POINTS - 1];
+        double[] min = new double[WIDTH];
+        double[] max = new double[WIDTH];
+        Arrays.fill(min, Double.MAX_VALUE);
+        Arrays.fill(max, -Double.MAX_VALUE);
+        for (int i = 0; i < NB_POINTS; i++) {
+            int bucket = bucketOf(fX[i], start, end);
+            min[bucket] = Math.min(min[bucket], fY[i]);
+            max[bucket] = Math.max(max[bucket], fY[i]);
+        }
+        double[] keptMin = new double[WIDTH];
+        double[] keptMax = new double[WIDTH];
+        Arrays.fill(keptMin, Double.MAX_VALUE);
+        Arrays.fill(keptMax, -Double.MAX_VALUE);
+        for (int index : indexes) {
+            int bucket = bucketOf(fX[index], start, end);
+            keptMin[bucket] = Math.min(keptMin[bucket], fY[index]);
+            keptMax[bucket] = Math.max(keptMax[bucket], fY[index]);
+        }
+        assertArrayEquals(min, keptMin, 0);
+        assertArrayEquals(max, keptMax, 0);
+    }
+
+    @Test
+    public void testFewPointsPerPixel() {
+        /* Two points per pixel, like a chart with a resolution of 2 */
+        double[] x = Arrays.copyOf(fX, 2 * WIDTH);
+        double[] y = Arrays.copyOf(fY, 2 * WIDTH);
+        int[] indexes = LineChartDownsampler.minMax(x, y, WIDTH);
+        assertIncreasing(indexes);
+        assertTrue(indexes.length <= x.length);
+        assertEquals(0, indexes[0]);
+        assertEquals(x.length - 1, indexes[indexes.length - 1]);
+
+        /* One point per pixel or less, all the points are kept */
+        x = Arrays.copyOf(fX, WIDTH);
+        y = Arrays.copyOf(fY, WIDTH);
+        assertEquals(WIDTH, LineChartDownsampler.minMax(x, y, WIDTH).length);
+    }
+
+    @Test
+    public void testSmallSeries() {
+        double[] x = { 1, 2, 3 };
+        double[] y = { 4, 5, 6 };
+        assertArrayEquals(new int[] { 0, 1, 2 }, LineChartDownsampler.minMax(x, y, WIDTH));
+        assertArrayEquals(new double[] { 4, 6 }, LineChartDownsampler.select(y, new int[] { 0, 2 }), 0);
+        assertTrue(LineChartDownsampler.isSorted(x));
+        assertFalse(LineChartDownsampler.isSorted(new double[] { 1, 3, 2 }));
+    }
+
+    @Test
+    public void testStreaming() {
+        StreamingLineSeries series = new StreamingLineSeries(fX[0], fX[NB_POINTS - 1], WIDTH);
+        /* The points can be added in any order */
+        for (int i = NB_POINTS - 1; i >= 0; i--) {
+            series.add(fX[i], fY[i]);
+        }
+        /* Points outside of the range are ignored */
+        series.add(fX[NB_POINTS - 1] + 1, 5000);
+        assertEquals(NB_POINTS, series.getNbPoints());
+
+        double[][] values = series.getValues();
+        double[] x = values[0];
+        double[] y = values[1];
+        assertEquals(x.length, y.length);
+        assertTrue(x.length <= 4 * WIDTH);
+        assertTrue(LineChartDownsampler.isSorted(x));
+        assertEquals(fX[0], x[0], 0);
+        assertEquals(fX[NB_POINTS - 1], x[x.length - 1], 0);
+
+        /* Same extremes as the complete series */
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (double value : y) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        double expectedMin = Double.MAX_VALUE;
+        double expectedMax = -Double.MAX_VALUE;
+        for (double value : fY) {
+            expectedMin = Math.min(expectedMin, value);
+            expectedMax = Math.max(expectedMax, value);
+        }
+        assertEquals(expectedMin, min, 0);
+        assertEquals(expectedMax, max, 0);
+
+        series.clear();
+        assertEquals(0, series.getValues()[0].length);
+    }
+
+    @Test
+    public void testStreamingDownsampled() {
+        /* The chart was made narrower after the series was streamed */
+        StreamingLineSeries series = new StreamingLineSeries(fX[0], fX[NB_POINTS - 1], WIDTH);
+        for (int i = 0; i < NB_POINTS; i++) {
+            series.add(fX[i], fY[i]);
+        }
+        double[][] values = series.getValues();
+        int width = WIDTH / 2;
+        assertTrue(values[0].length > width);
+        int[] indexes = LineChartDownsampler.minMax(values[0], values[1], width);
+        assertIncreasing(indexes);
+        assertTrue(indexes.length <= 4 * width);
+        assertEquals(0, indexes[0]);
+        assertEquals(values[0].length - 1, indexes[indexes.length - 1]);
+    }
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.ui.tests.views.timegraph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.tracecompass.internal.tmf.ui.views.timegraph.TimeGraphZoomCache;
+import org.eclipse.tracecompass.internal.tmf.ui.views.timegraph.TimeGraphZoomCache.ZoomedList;
+import org.eclipse.tracecompass.tmf.ui.widgets.timegraph.model.ITimeEvent;
+import org.eclipse.tracecompass.tmf.ui.widgets.timegraph.model.TimeEvent;
+import org.eclipse.tracecompass.tmf.ui.widgets.timegraph.model.TimeGraphEntry;
+import org.junit.Test;
+
+/**
+ * Test suite for the {@link TimeGraphZoomCache} class
+ */
+@SuppressWarnings("javadoc")
+public class TimeGraphZoomCacheTest {
+
+    private static final TimeGraphEntry ENTRY = new TimeGraphEntry("entry", 0, 1000);
+
+    /**
+     * Create consecutive events of the entry
+     */
+    private static List<ITimeEvent> events(long... times) {
+        List<ITimeEvent> events = new ArrayList<>();
+        for (int i = 0; i < times.length - 1; i++) {
+            events.add(new TimeEvent(ENTRY, times[i], times[i + 1] - times[i], i));
+        }
+        return events;
+    }
+
+    private static List<Long> times(List<ITimeEvent> events) {
+        List<Long> times = new ArrayList<>();
+        for (ITimeEvent event : events) {
+            times.add(event.getTime());
+        }
+        return times;
+    }
+
+    @Test
+    public void testLevel() {
+        assertEquals(0, TimeGraphZoomCache.getLevel(0));
+        assertEquals(0, TimeGraphZoomCache.getLevel(1));
+        assertEquals(1, TimeGraphZoomCache.getLevel(3));
+        assertEquals(10, TimeGraphZoomCache.getLevel(1024));
+        assertEquals(10, TimeGraphZoomCache.getLevel(2047));
+        assertEquals(1024, TimeGraphZoomCache.getResolution(10));
+    }
+
+    @Test
+    public void testConcat() {
+        /* The state at the boundary is returned by both queries */
+        List<ITimeEvent> first = events(0, 10, 20, 35);
+        List<ITimeEvent> second = events(20, 35, 50);
+        assertEquals(Arrays.asList(0L, 10L, 20L, 35L), times(TimeGraphZoomCache.concat(first, second)));
+
+        /* Disjoint lists */
+        second = events(40, 50);
+        assertEquals(Arrays.asList(0L, 10L, 20L, 40L), times(TimeGraphZoomCache.concat(first, second)));
+
+        /* An event of the first list spans the join */
+        first = events(0, 10, 30);
+        second = events(20, 35, 50);
+        List<ITimeEvent> result = TimeGraphZoomCache.concat(first, second);
+        assertEquals(Arrays.asList(0L, 10L, 20L, 35L), times(result));
+        assertEquals(10, result.get(1).getDuration());
+        for (int i = 1; i < result.size(); i++) {
+            ITimeEvent prev = result.get(i - 1);
+            assertTrue(prev.getTime() + prev.getDuration() <= result.get(i).getTime());
+        }
+
+        first = events(0, 10, 20, 35);
+        assertSame(first, TimeGraphZoomCache.concat(first, new ArrayList<ITimeEvent>()));
+        assertSame(first, TimeGraphZoomCache.concat(new ArrayList<ITimeEvent>(), first));
+    }
+
+    @Test
+    public void testTrim() {
+        List<ITimeEvent> events = events(0, 10, 20, 30, 40, 50);
+        assertEquals(Arrays.asList(10L, 20L, 30L), times(TimeGraphZoomCache.trim(events, 15, 35)));
+        assertSame(events, TimeGraphZoomCache.trim(events, 0, 50));
+        assertTrue(TimeGraphZoomCache.trim(events, 60, 70).isEmpty());
+    }
+
+    @Test
+    public void testCache() {
+        TimeGraphZoomCache cache = new TimeGraphZoomCache();
+        cache.validate(1000);
+        assertNull(cache.get(ENTRY, 1));
+
+        ZoomedList list = new ZoomedList(1, 100, 200, events(100, 150, 200));
+        cache.put(ENTRY, list);
+        assertSame(list, cache.get(ENTRY, 1));
+        assertNull(cache.get(ENTRY, 2));
+        assertTrue(list.covers(120, 180));
+        assertFalse(list.covers(50, 180));
+        assertTrue(list.overlaps(200, 300));
+        assertFalse(list.overlaps(201, 300));
+
+        /* Replace the list at the same level, keep the other levels */
+        ZoomedList other = new ZoomedList(1, 150, 250, events(150, 250));
+        cache.put(ENTRY, other);
+        cache.put(ENTRY, new ZoomedList(2, 0, 1000, events(0, 1000)));
+        assertSame(other, cache.get(ENTRY, 1));
+        assertNotNull(cache.get(ENTRY, 2));
+
+        /* Only a few levels are kept per entry */
+        cache.put(ENTRY, new ZoomedList(3, 0, 1000, events(0, 1000)));
+        cache.put(ENTRY, new ZoomedList(4, 0, 1000, events(0, 1000)));
+        cache.put(ENTRY, new ZoomedList(5, 0, 1000, events(0, 1000)));
+        assertNull(cache.get(ENTRY, 1));
+
+        /* A new end time invalidates the cache */
+        cache.validate(1000);
+        assertNotNull(cache.get(ENTRY, 5));
+        cache.validate(2000);
+        assertNull(cache.get(ENTRY, 5));
+    }
+}
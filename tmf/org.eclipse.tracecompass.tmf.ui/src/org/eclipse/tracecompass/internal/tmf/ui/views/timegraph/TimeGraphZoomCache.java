@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.tmf.ui.views.timegraph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.tmf.ui.widgets.timegraph.model.ITimeEvent;
+import org.eclipse.tracecompass.tmf.ui.widgets.timegraph.model.ITimeGraphEntry;
+
+/**
+ * Cache of the zoomed event lists of time graph entries. The lists are kept
+ * per entry and per resolution level, a level being a power of two of the
+ * resolution, so that a list computed for a time range can be reused or
+ * extended when the view is panned at the same zoom level.
+ */
+public class TimeGraphZoomCache {
+
+    /** Maximum number of resolution levels kept per entry */
+    private static final int MAX_LEVELS = 3;
+
+    /**
+     * A zoomed event list of an entry for a time range at a resolution level
+     */
+    public static final class ZoomedList {
+        private final int fLevel;
+        private final long fStart;
+        private final long fEnd;
+        private final List<ITimeEvent> fEvents;
+
+        /**
+         * Constructor
+         *
+         * @param level
+         *            The resolution level
+         * @param start
+         *            The start of the time range
+         * @param end
+         *            The end of the time range
+         * @param events
+         *            The events, sorted by time, which must not be modified
+         */
+        public ZoomedList(int level, long start, long end, List<ITimeEvent> events) {
+            fLevel = level;
+            fStart = start;
+            fEnd = end;
+            fEvents = events;
+        }
+
+        /**
+         * @return The resolution level
+         */
+        public int getLevel() {
+            return fLevel;
+        }
+
+        /**
+         * @return The start of the time range
+         */
+        public long getStart() {
+            return fStart;
+        }
+
+        /**
+         * @return The end of the time range
+         */
+        public long getEnd() {
+            return fEnd;
+        }
+
+        /**
+         * @return The events, sorted by time, which must not be modified
+         */
+        public List<ITimeEvent> getEvents() {
+            return fEvents;
+        }
+
+        /**
+         * Check if this list covers a time range
+         *
+         * @param start
+         *            The start of the time range
+         * @param end
+         *            The end of the time range
+         * @return true if the time range is within the range of this list
+         */
+        public boolean covers(long start, long end) {
+            return fStart <= start && end <= fEnd;
+        }
+
+        /**
+         * Check if this list overlaps a time range
+         *
+         * @param start
+         *            The start of the time range
+         * @param end
+         *            The end of the time range
+         * @return true if the time ranges overlap or touch
+         */
+        public boolean overlaps(long start, long end) {
+            return fStart <= end && start <= fEnd;
+        }
+    }
+
+    private final Map<ITimeGraphEntry, List<ZoomedList>> fLists = new WeakHashMap<>();
+    private long fEndTime = Long.MIN_VALUE;
+
+    /**
+     * Get the resolution level of a resolution
+     *
+     * @param resolution
+     *            The resolution, in time units per pixel
+     * @return The resolution level, the largest power of two not greater than
+     *         the resolution
+     */
+    public static int getLevel(long resolution) {
+        return 63 - Long.numberOfLeadingZeros(Math.max(1, resolution));
+    }
+
+    /**
+     * Get the resolution of a resolution level
+     *
+     * @param level
+     *            The resolution level
+     * @return The resolution of that level
+     */
+    public static long getResolution(int level) {
+        return 1L << level;
+    }
+
+    /**
+     * Validate the cache against the end time of the view. The lists are
+     * discarded if the end time changed, since the lists computed while the
+     * entries were being built can be incomplete.
+     *
+     * @param endTime
+     *            The end time of the view
+     */
+    public synchronized void validate(long endTime) {
+        if (endTime != fEndTime) {
+            fLists.clear();
+            fEndTime = endTime;
+        }
+    }
+
+    /**
+     * Discard all the lists
+     */
+    public synchronized void clear() {
+        fLists.clear();
+    }
+
+    /**
+     * Get the cached list of an entry at a resolution level
+     *
+     * @param entry
+     *            The entry
+     * @param level
+     *            The resolution level
+     * @return The cached list, or null
+     */
+    public synchronized @Nullable ZoomedList get(ITimeGraphEntry entry, int level) {
+        List<ZoomedList> lists = fLists.get(entry);
+        if (lists == null) {
+            return null;
+        }
+        for (int i = 0; i < lists.size(); i++) {
+            ZoomedList list = lists.get(i);
+            if (list.getLevel() == level) {
+                /* Most recently used first */
+                lists.remove(i);
+                lists.add(0, list);
+                return list;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Put the list of an entry, replacing its list at the same level
+     *
+     * @param entry
+     *            The entry
+     * @param list
+     *            The zoomed list
+     */
+    public synchronized void put(ITimeGraphEntry entry, ZoomedList list) {
+        List<ZoomedList> lists = fLists.get(entry);
+        if (lists == null) {
+            lists = new ArrayList<>(MAX_LEVELS);
+            fLists.put(entry, lists);
+        }
+        for (int i = 0; i < lists.size(); i++) {
+            if (lists.get(i).getLevel() == list.getLevel()) {
+                lists.remove(i);
+                break;
+            }
+        }
+        lists.add(0, list);
+        if (lists.size() > MAX_LEVELS) {
+            lists.remove(lists.size() - 1);
+        }
+    }
+
+    /**
+     * Concatenate two consecutive event lists. The events of the first list
+     * that do not start before the first event of the second list are
+     * dropped, since the state that was current at the boundary of the two
+     * queries is returned by both, and an event of the first list that
+     * crosses the first event of the second list is clipped to it, so that
+     * the events of the result do not overlap.
+     *
+     * @param first
+     *            The first list, sorted by time
+     * @param second
+     *            The second list, sorted by time
+     * @return The concatenated list
+     */
+    public static List<ITimeEvent> concat(List<ITimeEvent> first, List<ITimeEvent> second) {
+        if (first.isEmpty()) {
+            return second;
+        }
+        if (second.isEmpty()) {
+            return first;
+        }
+        long cut = second.get(0).getTime();
+        List<ITimeEvent> result = new ArrayList<>(first.size() + second.size());
+        for (ITimeEvent event : first) {
+            if (event.getTime() >= cut) {
+                break;
+            }
+            if (event.getTime() + event.getDuration() > cut) {
+                ITimeEvent clipped = event.splitBefore(cut);
+                if (clipped != null) {
+                    result.add(clipped);
+                }
+                break;
+            }
+            result.add(event);
+        }
+        result.addAll(second);
+        return result;
+    }
+
+    /**
+     * Trim an event list to the events that intersect a time range
+     *
+     * @param events
+     *            The events, sorted by time
+     * @param start
+     *            The start of the time range
+     * @param end
+     *            The end of the time range
+     * @return The trimmed list, which can be the same list
+     */
+    public static List<ITimeEvent> trim(List<ITimeEvent> events, long start, long end) {
+        int first = 0;
+        while (first < events.size() && events.get(first).getTime() + events.get(first).getDuration() < start) {
+            first++;
+        }
+        int last = events.size();
+        while (last > first && events.get(last - 1).getTime() > end) {
+            last--;
+        }
+        if (first == 0 && last == events.size()) {
+            return events;
+        }
+        if (first >= last) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(events.subList(first, last));
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2014 Ericsson
+ * Copyright (c) 2011, 2016 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -13,32 +13,49 @@
 
 package org.eclipse.tracecompass.tmf.ui.viewers.events;
 
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.tracecompass.internal.tmf.core.filter.TmfCollapseFilter;
+import org.eclipse.tracecompass.internal.tmf.core.filter.TmfFilterCompiler;
+import org.eclipse.tracecompass.internal.tmf.core.filter.TmfFilterResult;
+import org.eclipse.tracecompass.internal.tmf.core.filter.TmfRankBitmap;
 import org.eclipse.tracecompass.internal.tmf.ui.Activator;
+import org.eclipse.tracecompass.internal.tmf.ui.TmfUiTracer;
 import org.eclipse.tracecompass.tmf.core.component.ITmfEventProvider;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEventField;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEventType;
+import org.eclipse.tracecompass.tmf.core.event.TmfEvent;
 import org.eclipse.tracecompass.tmf.core.filter.ITmfFilter;
 import org.eclipse.tracecompass.tmf.core.request.ITmfEventRequest;
 import org.eclipse.tracecompass.tmf.core.request.TmfEventRequest;
 import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 
 /**
  * The generic TMF Events table events cache
  *
  * This can help avoid re-reading the trace when the user scrolls a window,
- * for example.
+ * for example. The events are cached in pages of consecutive table indexes,
+ * the least recently used pages being discarded first. The page next to the
+ * visible one in the scrolling direction is read ahead, and adjacent pages
+ * are read from the trace by the same request. A page whose trace events
+ * were garbage collected is read again in the same way, so that the table
+ * never reads the trace on the UI thread.
  *
  * @author Patrick Tasse
  */
@@ -47,16 +64,33 @@ public class TmfEventsCache {
     /**
      * The generic TMF Events table cached event.
      *
+     * It keeps the strings of the table columns, resolved once when the event
+     * is cached. The original trace event is only softly referenced when the
+     * trace it can be read from again is known, so that it can be garbage
+     * collected while the event is cached.
+     *
      * @author Patrick Tasse
      */
     public static class CachedEvent implements ITmfEvent {
         /**
-         * Event reference.
+         * Event reference, when the event cannot be read again from the trace
+         */
+        private final ITmfEvent fEvent;
+        /**
+         * Soft event reference, when the event can be read again from the
+         * trace.
          *
          * When {@link TmfCollapseFilter} is active then it's event reference
          * of the first event of repeated events.
          */
-        ITmfEvent event;
+        private SoftReference<ITmfEvent> fEventRef;
+        /** The trace or experiment from which the event can be read again */
+        private final ITmfTrace fProvider;
+        private final ITmfTrace fTrace;
+        private final long fEventRank;
+        private final ITmfTimestamp fTimestamp;
+        /** The strings of the table columns, or null if not resolved */
+        private final String[] fItemStrings;
         /**
          * Events rank.
          *
@@ -78,23 +112,103 @@ public class TmfEventsCache {
          *            The rank of this event in the trace
          */
         public CachedEvent (ITmfEvent iTmfEvent, long rank) {
-            this.event = iTmfEvent;
+            this(iTmfEvent, rank, null, null);
+        }
+
+        /**
+         * Constructor for cached events that do not keep the original event
+         *
+         * @param iTmfEvent
+         *            The original trace event
+         * @param rank
+         *            The rank of this event in the trace
+         * @param provider
+         *            The trace or experiment from which the event can be read
+         *            again by rank, or null to keep the original event
+         * @param itemStrings
+         *            The strings of the table columns, or null
+         */
+        CachedEvent(ITmfEvent iTmfEvent, long rank, ITmfTrace provider, String[] itemStrings) {
+            fProvider = provider;
+            if (provider == null) {
+                fEvent = iTmfEvent;
+            } else {
+                fEvent = null;
+                fEventRef = new SoftReference<>(iTmfEvent);
+            }
+            fTrace = iTmfEvent.getTrace();
+            fEventRank = iTmfEvent.getRank();
+            fTimestamp = iTmfEvent.getTimestamp();
+            fItemStrings = itemStrings;
             this.rank = rank;
         }
 
+        /**
+         * Get the original trace event, reading it again from the trace if it
+         * was garbage collected. This should not be called from the UI thread,
+         * see {@link #peekEvent()}.
+         *
+         * @return The trace event
+         */
+        synchronized ITmfEvent getEvent() {
+            if (fEvent != null) {
+                return fEvent;
+            }
+            ITmfEvent event = fEventRef.get();
+            if (event == null) {
+                ITmfContext context = fProvider.seekEvent(rank);
+                event = fProvider.getNext(context);
+                context.dispose();
+                if (event == null) {
+                    /* The trace is being disposed */
+                    event = new TmfEvent(fTrace, fEventRank, fTimestamp, null, null);
+                }
+                fEventRef = new SoftReference<>(event);
+            }
+            return event;
+        }
+
+        /**
+         * Get the original trace event if it is still in memory, without
+         * reading the trace
+         *
+         * @return The trace event, or null if it was garbage collected
+         */
+        synchronized ITmfEvent peekEvent() {
+            if (fEvent != null) {
+                return fEvent;
+            }
+            return fEventRef.get();
+        }
+
+        /**
+         * Get the string of a table column, as resolved when the event was
+         * cached
+         *
+         * @param index
+         *            The index of the column, in creation order
+         * @return The string, or null if it was not resolved
+         */
+        String getItemString(int index) {
+            if (fItemStrings == null || index >= fItemStrings.length) {
+                return null;
+            }
+            return fItemStrings[index];
+        }
+
         @Override
         public <T> T getAdapter(Class<T> adapterType) {
-            return event.getAdapter(adapterType);
+            return getEvent().getAdapter(adapterType);
         }
 
         @Override
         public ITmfTrace getTrace() {
-            return event.getTrace();
+            return fTrace;
         }
 
         @Override
         public long getRank() {
-            return event.getRank();
+            return fEventRank;
         }
 
         /**
@@ -102,29 +216,74 @@ public class TmfEventsCache {
          */
         @Override
         public String getName() {
-            return event.getName();
+            return getEvent().getName();
         }
 
         @Override
         public ITmfTimestamp getTimestamp() {
-            return event.getTimestamp();
+            return fTimestamp;
         }
 
         @Override
         public ITmfEventType getType() {
-            return event.getType();
+            return getEvent().getType();
         }
 
         @Override
         public ITmfEventField getContent() {
-            return event.getContent();
+            return getEvent().getContent();
+        }
+    }
+
+    /** Maximum number of cached pages */
+    private static final int MAX_PAGES = 16;
+    /** Maximum number of pages waiting to be fetched */
+    private static final int MAX_QUEUED_PAGES = 4;
+    /** Maximum number of adjacent pages read by the same request */
+    private static final int MAX_PAGES_PER_REQUEST = 4;
+
+    /**
+     * A page of consecutive events of the table, the page number being the
+     * index of its first event divided by the cache size
+     */
+    private static final class Page {
+        private final int fNumber;
+        private final CachedEvent[] fEvents;
+        private int fCount = 0;
+        /** The rank after the last event of the page, once it is complete */
+        private long fNextRank = -1;
+
+        public Page(int number, int size) {
+            fNumber = number;
+            fEvents = new CachedEvent[size];
+        }
+
+        public boolean isComplete() {
+            return fCount == fEvents.length;
         }
     }
 
-    private final CachedEvent[] fCache;
     private final int fCacheSize;
-    private int fCacheStartIndex = 0;
-    private int fCacheEndIndex   = 0;
+    private final Map<Integer, Page> fPages = new LinkedHashMap<Integer, Page>(MAX_PAGES, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    /** The pages to fetch, the most urgent first */
+    private final Deque<Integer> fQueue = new ArrayDeque<>();
+    /** The pages being fetched */
+    private final Set<Integer> fFetching = new HashSet<>();
+    /** Incremented when the cache is cleared, to stop the fetching */
+    private volatile int fGeneration = 0;
+    private int fLastIndex = 0;
+
+    private long fHits = 0;
+    private long fMisses = 0;
+    private long fFetchedPages = 0;
+    private long fFetchTime = 0;
 
     private ITmfTrace fTrace;
     private final TmfEventsTable fTable;
@@ -135,13 +294,12 @@ public class TmfEventsCache {
      * Constructor for the event cache
      *
      * @param cacheSize
-     *            The size of the cache, in number of events
+     *            The size of the cache pages, in number of events
      * @param table
      *            The Events table this cache will cover
      */
     public TmfEventsCache(int cacheSize, TmfEventsTable table) {
         fCacheSize = cacheSize;
-        fCache = new CachedEvent[cacheSize * 2]; // the cache holds two blocks of cache size
         fTable = table;
     }
 
@@ -161,12 +319,15 @@ public class TmfEventsCache {
      * Clear the current contents of this cache.
      */
     public synchronized void clear() {
-        if (job != null && job.getState() != Job.NONE) {
+        if (job != null) {
             job.cancel();
+            job = null;
         }
-        Arrays.fill(fCache, null);
-        fCacheStartIndex = 0;
-        fCacheEndIndex = 0;
+        fGeneration++;
+        fPages.clear();
+        fQueue.clear();
+        fFetching.clear();
+        fLastIndex = 0;
         fFilterIndex.clear();
     }
 
@@ -178,8 +339,29 @@ public class TmfEventsCache {
      *            The ITmfFilter to apply.
      */
     public void applyFilter(ITmfFilter filter) {
-        fFilter = filter;
+        fFilter = TmfFilterCompiler.compile(filter);
+        clear();
+    }
+
+    /**
+     * Apply a filter on this event cache, using the known results of that
+     * filter on the first events of the trace. This clears the current cache
+     * contents.
+     *
+     * @param filter
+     *            The ITmfFilter to apply.
+     * @param result
+     *            The results of the filter on the first events of the trace
+     */
+    synchronized void applyFilter(ITmfFilter filter, TmfFilterResult result) {
+        fFilter = result.asFilter(TmfFilterCompiler.compile(filter));
         clear();
+        /* Rebuild the filter index without reading the trace */
+        TmfRankBitmap ranks = result.getRanks();
+        long nbMatches = ranks.getCardinality();
+        for (long index = 0; index < nbMatches; index += fCacheSize) {
+            fFilterIndex.add(Integer.valueOf((int) ranks.select(index)));
+        }
     }
 
     /**
@@ -193,18 +375,37 @@ public class TmfEventsCache {
 
     /**
      * Get an event from the cache. If the cache does not contain the event,
-     * a cache population request is triggered.
+     * or if its trace event was garbage collected, a cache population request
+     * is triggered.
      *
      * @param index
      *            The index of this event in the cache
      * @return The cached event, or 'null' if the event is not in the cache
      */
     public synchronized CachedEvent getEvent(int index) {
-        if ((index >= fCacheStartIndex) && (index < fCacheEndIndex)) {
-            int i = index - fCacheStartIndex;
-            return fCache[i];
+        int number = index / fCacheSize;
+        int offset = index % fCacheSize;
+        int direction = (index >= fLastIndex) ? 1 : -1;
+        fLastIndex = index;
+        Page page = fPages.get(number);
+        if (page != null && offset < page.fCount) {
+            if (page.fEvents[offset].peekEvent() == null) {
+                /* Read the page again instead of reading the event now */
+                fMisses++;
+                populateCache(number, true);
+                return null;
+            }
+            fHits++;
+            /* Read the next page ahead when getting close to it */
+            if ((direction > 0 && offset >= fCacheSize - fCacheSize / 4) ||
+                    (direction < 0 && offset < fCacheSize / 4)) {
+                readAhead(number + direction);
+            }
+            return page.fEvents[offset];
         }
-        populateCache(index);
+        fMisses++;
+        populateCache(number, true);
+        readAhead(number + direction);
         return null;
     }
 
@@ -216,9 +417,9 @@ public class TmfEventsCache {
      * @return The cached event, or 'null' if the event is not in the cache
      */
     public synchronized CachedEvent peekEvent(int index) {
-        if ((index >= fCacheStartIndex) && (index < fCacheEndIndex)) {
-            int i = index - fCacheStartIndex;
-            return fCache[i];
+        Page page = fPages.get(index / fCacheSize);
+        if (page != null && (index % fCacheSize) < page.fCount) {
+            return page.fEvents[index % fCacheSize];
         }
         return null;
     }
@@ -234,13 +435,27 @@ public class TmfEventsCache {
      *            The index this event will occupy in the cache
      */
     public synchronized void storeEvent(ITmfEvent event, long rank, int index) {
-        if (index == fCacheEndIndex) {
-            int i = index - fCacheStartIndex;
-            if (i < fCache.length) {
-                fCache[i] = new CachedEvent(event, rank);
-                fCacheEndIndex++;
-            }
+        /* Only complete the pages that are already cached */
+        Page page = fPages.get(index / fCacheSize);
+        if (page != null && (index % fCacheSize) == page.fCount) {
+            store(page, newCachedEvent(event, rank));
+        }
+        if ((fFilter != null) && ((index % fCacheSize) == 0)) {
+            int i = index / fCacheSize;
+            fFilterIndex.add(i, Integer.valueOf((int) rank));
         }
+    }
+
+    /**
+     * Store the rank of a filtered event, without the event itself. The cache
+     * is populated from the trace when the event is requested.
+     *
+     * @param rank
+     *            The rank of the event in the trace
+     * @param index
+     *            The index of the event among the filtered events
+     */
+    synchronized void storeRank(long rank, int index) {
         if ((fFilter != null) && ((index % fCacheSize) == 0)) {
             int i = index / fCacheSize;
             fFilterIndex.add(i, Integer.valueOf((int) rank));
@@ -254,9 +469,9 @@ public class TmfEventsCache {
      *            The index this event occupies in the cache
      */
     public synchronized void updateCollapsedEvent(int index) {
-        int i = index - fCacheStartIndex;
-        if (i < fCache.length) {
-            fCache[i].repeatCount++;
+        Page page = fPages.get(index / fCacheSize);
+        if (page != null && (index % fCacheSize) < page.fCount) {
+            page.fEvents[index % fCacheSize].repeatCount++;
         }
     }
 
@@ -277,21 +492,6 @@ public class TmfEventsCache {
             int start = 0;
             int end = fFilterIndex.size();
 
-            if ((fCacheEndIndex - fCacheStartIndex) > 1) {
-                if (rank < fCache[0].rank) {
-                    end = (fCacheStartIndex / fCacheSize) + 1;
-                } else if (rank > fCache[fCacheEndIndex - fCacheStartIndex - 1].rank) {
-                    start = fCacheEndIndex / fCacheSize;
-                } else {
-                    for (int i = 0; i < (fCacheEndIndex - fCacheStartIndex); i++) {
-                        if (fCache[i].rank >= rank) {
-                            return fCacheStartIndex + i;
-                        }
-                    }
-                    return fCacheEndIndex;
-                }
-            }
-
             current = (start + end) / 2;
             while (current != start) {
                 if (rank < fFilterIndex.get(current)) {
@@ -303,6 +503,20 @@ public class TmfEventsCache {
                 }
             }
             startRank = fFilterIndex.size() > 0 ? fFilterIndex.get(current) : 0;
+
+            /* Look for the rank in the cached page, if any */
+            Page page = fPages.get(current);
+            if (page != null && page.fCount > 0 && page.fEvents[0].rank <= rank) {
+                for (int i = 0; i < page.fCount; i++) {
+                    if (page.fEvents[i].rank >= rank) {
+                        return current * fCacheSize + i;
+                    }
+                }
+                if (page.isComplete() && current + 1 < fFilterIndex.size()) {
+                    /* The rank is between this page and the next one */
+                    return (current + 1) * fCacheSize;
+                }
+            }
         }
 
         final int index = current * fCacheSize;
@@ -352,118 +566,252 @@ public class TmfEventsCache {
         return 0;
     }
 
+
+    // ------------------------------------------------------------------------
+    // Metrics
+    // ------------------------------------------------------------------------
+
+    /**
+     * @return The number of events found in the cache
+     * @since 2.0
+     */
+    public synchronized long getHitCount() {
+        return fHits;
+    }
+
+    /**
+     * @return The number of events that were not in the cache
+     * @since 2.0
+     */
+    public synchronized long getMissCount() {
+        return fMisses;
+    }
+
+    /**
+     * @return The number of pages read from the trace
+     * @since 2.0
+     */
+    public synchronized long getFetchedPageCount() {
+        return fFetchedPages;
+    }
+
+    /**
+     * @return The average time to read a page from the trace, in nanoseconds
+     * @since 2.0
+     */
+    public synchronized long getAverageFetchTime() {
+        return (fFetchedPages == 0) ? 0 : fFetchTime / fFetchedPages;
+    }
+
     // ------------------------------------------------------------------------
     // Event cache population
     // ------------------------------------------------------------------------
 
     // The event fetching job
     private Job job;
-    private synchronized void populateCache(final int index) {
 
-        /* Check if the current job will fetch the requested event:
-         * 1. The job must exist
-         * 2. It must be running (i.e. not completed)
-         * 3. The requested index must be within the cache range
-         *
-         * If the job meets these conditions, we simply exit.
-         * Otherwise, we create a new job but we might have to cancel
-         * an existing job for an obsolete range.
-         */
-        if (job != null) {
-            if (job.getState() != Job.NONE) {
-                if ((index >= fCacheStartIndex) && (index < (fCacheStartIndex + fCache.length))) {
-                    return;
-                }
-                // The new index is out of the requested range
-                // Kill the job and start a new one
-                job.cancel();
-            }
+    /**
+     * Create a cached event, resolving the strings of the table columns
+     */
+    private CachedEvent newCachedEvent(ITmfEvent event, long rank) {
+        return new CachedEvent(event, rank, fTrace, fTable.resolveItemStrings(event));
+    }
+
+    private static void store(Page page, CachedEvent event) {
+        page.fEvents[page.fCount] = event;
+        page.fCount++;
+        if (page.isComplete()) {
+            page.fNextRank = event.rank + 1;
         }
+    }
 
-        // Populate the cache starting at the index that is one block less
-        // of cache size than the requested index. The cache will hold two
-        // consecutive blocks of cache size, centered on the requested index.
-        fCacheStartIndex = Math.max(0, index - fCacheSize);
-        fCacheEndIndex   = fCacheStartIndex;
+    private void readAhead(int number) {
+        if (number < 0 || (long) number * fCacheSize >= fTable.getTable().getItemCount()) {
+            return;
+        }
+        if (!fPages.containsKey(number)) {
+            populateCache(number, false);
+        }
+    }
 
-        job = new Job("Fetching Events") { //$NON-NLS-1$
-            private int startIndex = fCacheStartIndex;
-            private int skipCount = 0;
-            @Override
-            protected IStatus run(final IProgressMonitor monitor) {
+    /**
+     * Queue a page to be fetched, the pages that are needed now before the
+     * pages that are read ahead
+     */
+    private synchronized void populateCache(int number, boolean needed) {
+        Integer key = Integer.valueOf(number);
+        if (fFetching.contains(key)) {
+            return;
+        }
+        if (needed) {
+            fQueue.remove(key);
+            fQueue.addFirst(key);
+        } else if (!fQueue.contains(key)) {
+            fQueue.addLast(key);
+        }
+        /* Forget the oldest requests when scrolling fast */
+        while (fQueue.size() > MAX_QUEUED_PAGES) {
+            fQueue.removeLast();
+        }
+        if (job == null) {
+            job = new FetchJob(fGeneration);
+            job.setPriority(Job.SHORT);
+            job.schedule();
+        }
+    }
 
-                int nbRequested;
-                if (fFilter == null) {
-                    nbRequested = fCache.length;
-                } else {
-                    nbRequested = ITmfEventRequest.ALL_DATA;
-                    int i = startIndex / fCacheSize;
-                    if (i < fFilterIndex.size()) {
-                        skipCount = startIndex - (i * fCacheSize);
-                        startIndex = fFilterIndex.get(i);
+    /**
+     * The job that fetches the queued pages, until there are none left
+     */
+    private final class FetchJob extends Job {
+        private final int fJobGeneration;
+
+        public FetchJob(int generation) {
+            super("Fetching Events"); //$NON-NLS-1$
+            fJobGeneration = generation;
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            while (!monitor.isCanceled()) {
+                List<Page> pages = nextPages();
+                if (pages == null) {
+                    return Status.OK_STATUS;
+                }
+                long time = System.nanoTime();
+                fetch(pages, monitor);
+                time = System.nanoTime() - time;
+                synchronized (TmfEventsCache.this) {
+                    for (Page page : pages) {
+                        fFetching.remove(page.fNumber);
+                    }
+                    fFetchedPages += pages.size();
+                    fFetchTime += time;
+                    if (TmfUiTracer.isDisplayTraced()) {
+                        TmfUiTracer.traceDisplay("Events cache fetched pages " + pages.get(0).fNumber + '+' + pages.size() + //$NON-NLS-1$
+                                " in " + (time / 1000000) + " ms, hits=" + fHits + " misses=" + fMisses); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
                     }
                 }
+                // Flag the UI thread that the cache is ready
+                fTable.cacheUpdated(true);
+            }
+            return Status.CANCEL_STATUS;
+        }
 
-                TmfEventRequest request = new TmfEventRequest(ITmfEvent.class,
-                        TmfTimeRange.ETERNITY,
-                        startIndex,
-                        nbRequested,
-                        TmfEventRequest.ExecutionType.FOREGROUND) {
-                    private int count = 0;
-                    private long rank = startIndex;
-                    @Override
-                    public void handleData(ITmfEvent event) {
-                        // If the job is canceled, cancel the request so waitForCompletion() will unlock
-                        if (monitor.isCanceled()) {
-                            cancel();
-                            return;
-                        }
-                        super.handleData(event);
-                        if (((fFilter == null) || fFilter.matches(event)) && (skipCount-- <= 0)) {
+        /**
+         * Take the next page to fetch, with the following pages that are also
+         * queued so that they are read with the same request. Returns null
+         * when there is nothing left to fetch.
+         */
+        private List<Page> nextPages() {
+            synchronized (TmfEventsCache.this) {
+                if (fJobGeneration != fGeneration || fQueue.isEmpty()) {
+                    if (job == this) {
+                        job = null;
+                    }
+                    return null;
+                }
+                List<Page> pages = new ArrayList<>();
+                int number = fQueue.removeFirst();
+                do {
+                    Page page = new Page(number, fCacheSize);
+                    fPages.put(number, page);
+                    fFetching.add(number);
+                    pages.add(page);
+                    number++;
+                } while (pages.size() < MAX_PAGES_PER_REQUEST && fQueue.remove(Integer.valueOf(number)));
+                return pages;
+            }
+        }
+
+        private void fetch(final List<Page> pages, final IProgressMonitor monitor) {
+            final ITmfFilter filter = fFilter;
+            final int first = pages.get(0).fNumber;
+            long startRank = (long) first * fCacheSize;
+            int skip = 0;
+            int nbRequested = pages.size() * fCacheSize;
+            if (filter != null) {
+                nbRequested = ITmfEventRequest.ALL_DATA;
+                synchronized (TmfEventsCache.this) {
+                    Page previous = fPages.get(first - 1);
+                    if (previous != null && previous.fNextRank >= 0) {
+                        /* Continue where the previous page ends */
+                        startRank = previous.fNextRank;
+                    } else if (!fFilterIndex.isEmpty()) {
+                        int i = Math.min(first, fFilterIndex.size() - 1);
+                        startRank = fFilterIndex.get(i);
+                        skip = (first - i) * fCacheSize;
+                    } else {
+                        startRank = 0;
+                        skip = first * fCacheSize;
+                    }
+                }
+            }
+            final int skipCount = skip;
+
+            TmfEventRequest request = new TmfEventRequest(ITmfEvent.class,
+                    TmfTimeRange.ETERNITY,
+                    startRank,
+                    nbRequested,
+                    TmfEventRequest.ExecutionType.FOREGROUND) {
+                private int fSkip = skipCount;
+                private int fPageIndex = 0;
+                private int fIndex = first * fCacheSize;
+                private long fRank = getIndex();
+                private CachedEvent fLast = null;
+
+                @Override
+                public void handleData(ITmfEvent event) {
+                    // If the job is canceled, cancel the request so waitForCompletion() will unlock
+                    if (monitor.isCanceled() || fJobGeneration != fGeneration) {
+                        cancel();
+                        return;
+                    }
+                    super.handleData(event);
+                    if (isCancelled() || fPageIndex >= pages.size()) {
+                        return;
+                    }
+                    if ((filter == null) || filter.matches(event)) {
+                        if (fSkip > 0) {
+                            fSkip--;
+                        } else {
+                            /* Resolve the column strings outside of the lock */
+                            CachedEvent cachedEvent = newCachedEvent(event, fRank);
                             synchronized (TmfEventsCache.this) {
-                                if (monitor.isCanceled()) {
-                                    return;
+                                Page page = pages.get(fPageIndex);
+                                /* The filter thread may have stored it already */
+                                if (fIndex % fCacheSize == page.fCount) {
+                                    store(page, cachedEvent);
+                                }
+                                fLast = page.fEvents[fIndex % fCacheSize];
+                                fIndex++;
+                                if (fIndex % fCacheSize == 0) {
+                                    page.fNextRank = fRank + 1;
+                                    fPageIndex++;
                                 }
-                                fCache[count] = new CachedEvent(event, rank);
-                                count++;
-                                fCacheEndIndex++;
                             }
-                            if (fFilter != null) {
+                            if (filter != null) {
                                 fTable.cacheUpdated(false);
                             }
-                        } else if (((fFilter != null) && !fFilter.matches(event)) && (skipCount <= 0)) { // TODO fix duplicated call to matches()
-                            if ((count > 0) && (fFilter instanceof TmfCollapseFilter)) {
-                                fCache[count - 1].repeatCount++;
-                            }
-                        }
-                        if (count >= fCache.length) {
-                            cancel();
-                        } else if ((fFilter != null) && (count >= (fTable.getTable().getItemCount() - 3))) { // -1 for header row, -2 for top and bottom filter status rows
-                            cancel();
                         }
-                        rank++;
+                    } else if ((fSkip <= 0) && (fLast != null) && (filter instanceof TmfCollapseFilter)) {
+                        fLast.repeatCount++;
                     }
-                };
-
-                ((ITmfEventProvider) fTrace).sendRequest(request);
-                try {
-                    request.waitForCompletion();
-                } catch (InterruptedException e) {
-                    Activator.getDefault().logError("Wait for completion interrupted for populateCache ", e); //$NON-NLS-1$
+                    if (fPageIndex >= pages.size()) {
+                        cancel();
+                    } else if ((filter != null) && (fIndex >= (fTable.getTable().getItemCount() - 3))) { // -1 for header row, -2 for top and bottom filter status rows
+                        cancel();
+                    }
+                    fRank++;
                 }
+            };
 
-                fTable.cacheUpdated(true);
-
-                // Flag the UI thread that the cache is ready
-                if (monitor.isCanceled()) {
-                    return Status.CANCEL_STATUS;
-                }
-                return Status.OK_STATUS;
+            ((ITmfEventProvider) fTrace).sendRequest(request);
+            try {
+                request.waitForCompletion();
+            } catch (InterruptedException e) {
+                Activator.getDefault().logError("Wait for completion interrupted for populateCache ", e); //$NON-NLS-1$
             }
-        };
-        //job.setSystem(true);
-        job.setPriority(Job.SHORT);
-        job.schedule();
+        }
     }
-
 }
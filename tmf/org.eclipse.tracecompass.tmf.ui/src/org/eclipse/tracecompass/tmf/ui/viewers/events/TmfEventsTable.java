@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2015 Ericsson
+ * Copyright (c) 2010, 2016 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -51,6 +51,7 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.ListenerList;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
@@ -122,6 +123,11 @@ import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.tracecompass.common.core.NonNullUtils;
 import org.eclipse.tracecompass.internal.tmf.core.filter.TmfCollapseFilter;
+import org.eclipse.tracecompass.internal.tmf.core.filter.TmfFilterCompiler;
+import org.eclipse.tracecompass.internal.tmf.core.filter.TmfFilterResult;
+import org.eclipse.tracecompass.internal.tmf.core.filter.TmfFilterResultStore;
+import org.eclipse.tracecompass.internal.tmf.core.filter.TmfParallelSearch;
+import org.eclipse.tracecompass.internal.tmf.core.filter.TmfRankBitmap;
 import org.eclipse.tracecompass.internal.tmf.ui.Activator;
 import org.eclipse.tracecompass.internal.tmf.ui.Messages;
 import org.eclipse.tracecompass.internal.tmf.ui.commands.CopyToClipboardOperation;
@@ -287,9 +293,10 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
                     }
                 }
             }
-            if (e.item.getData() instanceof ITmfEvent) {
-                broadcast(new TmfEventSelectedSignal(TmfEventsTable.this, (ITmfEvent) e.item.getData()));
-                fireSelectionChanged(new SelectionChangedEvent(TmfEventsTable.this, new StructuredSelection(e.item.getData())));
+            ITmfEvent event = getItemEvent((TableItem) e.item);
+            if (event != null) {
+                broadcast(new TmfEventSelectedSignal(TmfEventsTable.this, event));
+                fireSelectionChanged(new SelectionChangedEvent(TmfEventsTable.this, new StructuredSelection(event)));
             } else {
                 fireSelectionChanged(new SelectionChangedEvent(TmfEventsTable.this, StructuredSelection.EMPTY));
             }
@@ -349,9 +356,10 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
                 if (ts != null) {
                     broadcast(new TmfSelectionRangeUpdatedSignal(TmfEventsTable.this, ts));
                 }
-                if (item.getData() instanceof ITmfEvent) {
-                    broadcast(new TmfEventSelectedSignal(TmfEventsTable.this, (ITmfEvent) item.getData()));
-                    fireSelectionChanged(new SelectionChangedEvent(TmfEventsTable.this, new StructuredSelection(item.getData())));
+                ITmfEvent event = getItemEvent(item);
+                if (event != null) {
+                    broadcast(new TmfEventSelectedSignal(TmfEventsTable.this, event));
+                    fireSelectionChanged(new SelectionChangedEvent(TmfEventsTable.this, new StructuredSelection(event)));
                 } else {
                     fireSelectionChanged(new SelectionChangedEvent(TmfEventsTable.this, StructuredSelection.EMPTY));
                 }
@@ -666,6 +674,8 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
     private FilterThread fFilterThread;
     private boolean fFilterThreadResume = false;
     private final Object fFilterSyncObj = new Object();
+    private TmfFilterResultStore fFilterResultStore;
+    private TmfRankBitmap fFilterRanks;
     private SearchThread fSearchThread;
     private final Object fSearchSyncObj = new Object();
 
@@ -689,6 +699,8 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
     private Color fHighlightColor;
     private Font fFont;
     private Font fBoldFont;
+    /** Whether there are color settings, which need the trace events */
+    private boolean fHasColorSettings;
 
     private final List<TmfEventTableColumn> fColumns = new LinkedList<>();
 
@@ -887,6 +899,8 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
         initializeColors();
         PlatformUI.getWorkbench().getThemeManager().addPropertyChangeListener(this);
 
+        ColorSetting[] colorSettings = ColorSettingsManager.getColorSettings();
+        fHasColorSettings = (colorSettings != null) && (colorSettings.length > 0);
         ColorSettingsManager.addColorSettingsListener(this);
 
         fTable.setItemCount(1); // +1 for header row
@@ -1039,7 +1053,7 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
                 }
                 final TableItem item = items[0];
 
-                final Object data = item.getData();
+                final Object data = getItemEvent(item);
                 if (!(data instanceof ITmfSourceLookup)) {
                     return;
                 }
@@ -1140,7 +1154,7 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
                 }
                 final TableItem item = items[0];
 
-                final Object eventData = item.getData();
+                final Object eventData = getItemEvent(item);
                 if (eventData instanceof ITmfModelLookup) {
                     String modelURI = ((ITmfModelLookup) eventData).getModelUri();
 
@@ -1326,7 +1340,7 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
                 fTablePopupMenuManager.add(new Separator());
 
                 if (item != null) {
-                    final Object data = item.getData();
+                    final Object data = getItemEvent(item);
                     Separator separator = null;
                     if (data instanceof ITmfSourceLookup) {
                         ITmfSourceLookup event = (ITmfSourceLookup) data;
@@ -1493,6 +1507,29 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
         /* No-op */
     }
 
+    /**
+     * Get the trace event of a table item, which the item keeps while it
+     * shows it, see setItemData()
+     *
+     * @param item
+     *            The table item
+     * @return The trace event, or null if the item is not an event row
+     */
+    private static ITmfEvent getItemEvent(TableItem item) {
+        Object data = item.getData();
+        if (data instanceof ITmfEvent) {
+            return getTraceEvent((ITmfEvent) data);
+        }
+        return null;
+    }
+
+    private static ITmfEvent getTraceEvent(ITmfEvent event) {
+        if (event instanceof CachedEvent) {
+            return ((CachedEvent) event).getEvent();
+        }
+        return event;
+    }
+
     /**
      * Set a table item's data.
      *
@@ -1506,14 +1543,15 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
     protected void setItemData(final TableItem item, final ITmfEvent event, final long rank) {
         String[] itemStrings = getItemStrings(fColumns, event);
 
-        // Get the actual ITmfEvent from the CachedEvent
-        ITmfEvent tmfEvent = event;
-        if (event instanceof CachedEvent) {
-            tmfEvent = ((CachedEvent) event).event;
-        }
+        /*
+         * Keep the trace event while the item shows it, the cache only keeps
+         * it softly. The cache only returns events whose trace event is in
+         * memory, so the trace is not read here.
+         */
+        final ITmfEvent tmfEvent = getTraceEvent(event);
         item.setText(itemStrings);
         item.setData(tmfEvent);
-        item.setData(Key.TIMESTAMP, new TmfTimestamp(tmfEvent.getTimestamp()));
+        item.setData(Key.TIMESTAMP, new TmfTimestamp(event.getTimestamp()));
         item.setData(Key.RANK, rank);
 
         final Collection<Long> markerIds = fBookmarksMap.get(rank);
@@ -1549,7 +1587,12 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
             }
         }
 
-        final ColorSetting colorSetting = ColorSettingsManager.getColorSetting(tmfEvent);
+        final ColorSetting colorSetting;
+        if (fHasColorSettings) {
+            colorSetting = ColorSettingsManager.getColorSetting(tmfEvent);
+        } else {
+            colorSetting = ColorSettingsManager.getColorSetting(event);
+        }
         if (searchNoMatch) {
             item.setForeground(colorSetting.getDimmedForegroundColor());
             item.setBackground(colorSetting.getDimmedBackgroundColor());
@@ -1958,17 +2001,40 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
     protected void applyFilter(ITmfFilter filter) {
         stopFilterThread();
         stopSearchThread();
-        fFilterMatchCount = 0;
-        fFilterCheckCount = 0;
-        fCache.applyFilter(filter);
+        resetFilterResults(filter);
         fTable.clearAll();
         fTable.setData(Key.FILTER_OBJ, filter);
         /* +1 for header row, +2 for top and bottom filter status rows */
-        fTable.setItemCount(3);
+        fTable.setItemCount((int) fFilterMatchCount + 3);
         startFilterThread();
         fireFilterApplied(filter);
     }
 
+    /**
+     * Reset the filter counts and the cache for a new filter, starting from
+     * the stored results of that filter on the current trace if any.
+     */
+    private void resetFilterResults(ITmfFilter filter) {
+        fFilterMatchCount = 0;
+        fFilterCheckCount = 0;
+        fFilterRanks = null;
+        if (fTrace != null && TmfFilterResultStore.isStorable(filter)) {
+            if (fFilterResultStore == null || fFilterResultStore.getTrace() != fTrace) {
+                fFilterResultStore = new TmfFilterResultStore(fTrace);
+            }
+            TmfFilterResult result = fFilterResultStore.get((ITmfFilterTreeNode) filter);
+            if (result != null) {
+                fFilterRanks = result.getRanks();
+                fFilterMatchCount = fFilterRanks.getCardinality();
+                fFilterCheckCount = result.getNbChecked();
+                fCache.applyFilter(filter, result);
+                return;
+            }
+            fFilterRanks = new TmfRankBitmap();
+        }
+        fCache.applyFilter(filter);
+    }
+
     /**
      * Clear all currently active filters.
      */
@@ -1994,6 +2060,7 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
         }
         fFilterMatchCount = 0;
         fFilterCheckCount = 0;
+        fFilterRanks = null;
         if (fSelectedRank >= 0) {
             /* +1 for header row */
             fTable.setSelection((int) fSelectedRank + 1);
@@ -2013,6 +2080,8 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
      */
     protected class FilterThread extends Thread {
         private final ITmfFilterTreeNode filter;
+        private final ITmfFilter compiledFilter;
+        private final IProgressMonitor monitor = new NullProgressMonitor();
         private TmfEventRequest request;
         private boolean refreshBusy = false;
         private boolean refreshPending = false;
@@ -2027,6 +2096,7 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
         public FilterThread(final ITmfFilterTreeNode filter) {
             super("Filter Thread"); //$NON-NLS-1$
             this.filter = filter;
+            this.compiledFilter = TmfFilterCompiler.compile(filter);
         }
 
         @Override
@@ -2038,6 +2108,54 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
             if (nbRequested <= 0) {
                 return;
             }
+            final TmfRankBitmap ranks = fFilterRanks;
+            final boolean completed;
+            if (ranks != null) {
+                completed = filterInParallel(nbRequested, ranks);
+            } else {
+                completed = filterWithRequest(nbRequested);
+            }
+            refreshTable();
+            if (ranks != null && completed) {
+                TmfFilterResultStore store = fFilterResultStore;
+                if (store != null && store.getTrace() == fTrace) {
+                    store.put(filter, ranks, fFilterCheckCount);
+                }
+            }
+            synchronized (fFilterSyncObj) {
+                fFilterThread = null;
+                if (fFilterThreadResume) {
+                    fFilterThreadResume = false;
+                    fFilterThread = new FilterThread(filter);
+                    fFilterThread.start();
+                }
+            }
+        }
+
+        /**
+         * Filter the events of a stateless filter on partitions of the trace
+         * in parallel, storing only the ranks of the matching events.
+         */
+        private boolean filterInParallel(final int nbRequested, final TmfRankBitmap ranks) {
+            TmfParallelSearch search = new TmfParallelSearch(fTrace, filter);
+            return search.findAll(fFilterCheckCount, fFilterCheckCount + nbRequested, monitor, new TmfParallelSearch.IMatchHandler() {
+                @Override
+                public void handleMatch(long rank) {
+                    final int index = (int) fFilterMatchCount;
+                    fFilterMatchCount++;
+                    ranks.add(rank);
+                    fCache.storeRank(rank, index);
+                }
+
+                @Override
+                public void handleChecked(long rank) {
+                    fFilterCheckCount = rank;
+                    refreshTable();
+                }
+            });
+        }
+
+        private boolean filterWithRequest(final int nbRequested) {
             request = new TmfEventRequest(ITmfEvent.class, TmfTimeRange.ETERNITY,
                     (int) fFilterCheckCount, nbRequested, ExecutionType.BACKGROUND) {
                 @Override
@@ -2047,10 +2165,13 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
                         return;
                     }
                     boolean refresh = false;
-                    if (filter.matches(event)) {
+                    if (compiledFilter.matches(event)) {
                         final long rank = fFilterCheckCount;
                         final int index = (int) fFilterMatchCount;
                         fFilterMatchCount++;
+                        if (ranks != null) {
+                            ranks.add(rank);
+                        }
                         fCache.storeEvent(event, rank, index);
                         refresh = true;
                     } else {
@@ -2070,15 +2191,7 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
                 request.waitForCompletion();
             } catch (final InterruptedException e) {
             }
-            refreshTable();
-            synchronized (fFilterSyncObj) {
-                fFilterThread = null;
-                if (fFilterThreadResume) {
-                    fFilterThreadResume = false;
-                    fFilterThread = new FilterThread(filter);
-                    fFilterThread.start();
-                }
-            }
+            return request.isCompleted() && !request.isCancelled() && !request.isFailed();
         }
 
         /**
@@ -2095,7 +2208,7 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
             Display.getDefault().asyncExec(new Runnable() {
                 @Override
                 public void run() {
-                    if (request.isCancelled()) {
+                    if (isCancelled()) {
                         return;
                     }
                     if (fTable.isDisposed()) {
@@ -2122,10 +2235,15 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
          * Cancel this filtering thread.
          */
         public void cancel() {
+            monitor.setCanceled(true);
             if (request != null) {
                 request.cancel();
             }
         }
+
+        private boolean isCancelled() {
+            return monitor.isCanceled() || (request != null && request.isCancelled());
+        }
     }
 
     /**
@@ -2220,7 +2338,6 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
         private int direction;
         private long rank;
         private long foundRank = -1;
-        private TmfEventRequest request;
         private ITmfTimestamp foundTimestamp = null;
 
         /**
@@ -2271,9 +2388,10 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
                         break;
                     }
                     rank = event.rank;
-                    if (searchFilter.matches(event.event) && ((eventFilter == null) || eventFilter.matches(event.event))) {
+                    ITmfEvent tmfEvent = event.getEvent();
+                    if (searchFilter.matches(tmfEvent) && ((eventFilter == null) || eventFilter.matches(tmfEvent))) {
                         foundRank = event.rank;
-                        foundTimestamp = event.event.getTimestamp();
+                        foundTimestamp = event.getTimestamp();
                         break;
                     }
                     if (direction == Direction.FORWARD) {
@@ -2296,68 +2414,30 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
                     }
                 }
             }
-            final int startRank = (int) rank;
-            boolean wrapped = false;
-            while (!monitor.isCanceled() && (foundRank == -1)) {
-                int nbRequested = (direction == Direction.FORWARD ? Integer.MAX_VALUE : Math.min((int) rank + 1, trace.getCacheSize()));
-                if (direction == Direction.BACKWARD) {
-                    rank = Math.max(0, rank - trace.getCacheSize() + 1);
-                }
-                request = new TmfEventRequest(ITmfEvent.class, TmfTimeRange.ETERNITY,
-                        (int) rank, nbRequested, ExecutionType.BACKGROUND) {
-                    long currentRank = rank;
-
-                    @Override
-                    public void handleData(final ITmfEvent event) {
-                        super.handleData(event);
-                        if (searchFilter.matches(event) && ((eventFilter == null) || eventFilter.matches(event))) {
-                            foundRank = currentRank;
-                            foundTimestamp = event.getTimestamp();
-                            if (direction == Direction.FORWARD) {
-                                done();
-                                return;
-                            }
-                        }
-                        currentRank++;
+            if (foundRank == -1) {
+                /* Search the partitions of the trace in parallel, then wrap around */
+                TmfParallelSearch search = new TmfParallelSearch(trace, searchFilter, eventFilter);
+                long nbEvents = trace.getNbEvents();
+                Pair<Long, ITmfEvent> found;
+                if (direction == Direction.FORWARD) {
+                    found = search.findNext(rank, nbEvents, monitor);
+                    if (found == null && !monitor.isCanceled()) {
+                        found = search.findNext(0, rank, monitor);
                     }
-                };
-                ((ITmfEventProvider) trace).sendRequest(request);
-                try {
-                    request.waitForCompletion();
-                    if (request.isCancelled()) {
-                        return Status.OK_STATUS;
+                } else {
+                    found = search.findPrevious(0, rank + 1, monitor);
+                    if (found == null && !monitor.isCanceled()) {
+                        found = search.findPrevious(rank + 1, nbEvents, monitor);
                     }
-                } catch (final InterruptedException e) {
+                }
+                if (found == null || monitor.isCanceled()) {
                     synchronized (fSearchSyncObj) {
                         fSearchThread = null;
                     }
                     return Status.OK_STATUS;
                 }
-                if (foundRank == -1) {
-                    if (direction == Direction.FORWARD) {
-                        if (rank == 0) {
-                            synchronized (fSearchSyncObj) {
-                                fSearchThread = null;
-                            }
-                            return Status.OK_STATUS;
-                        }
-                        nbRequested = (int) rank;
-                        rank = 0;
-                        wrapped = true;
-                    } else {
-                        rank--;
-                        if (rank < 0) {
-                            rank = (int) trace.getNbEvents() - 1;
-                            wrapped = true;
-                        }
-                        if ((rank <= startRank) && wrapped) {
-                            synchronized (fSearchSyncObj) {
-                                fSearchThread = null;
-                            }
-                            return Status.OK_STATUS;
-                        }
-                    }
-                }
+                foundRank = found.getFirst().longValue();
+                foundTimestamp = found.getSecond().getTimestamp();
             }
             int index = (int) foundRank;
             if (eventFilter != null) {
@@ -2394,7 +2474,6 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
 
         @Override
         protected void canceling() {
-            request.cancel();
             synchronized (fSearchSyncObj) {
                 fSearchThread = null;
             }
@@ -2520,20 +2599,34 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
      * this method is called, the returned value won't be ordered correctly
      * anymore.
      */
-    private static String[] getItemStrings(List<TmfEventTableColumn> columns, ITmfEvent event) {
+    private String[] getItemStrings(List<TmfEventTableColumn> columns, ITmfEvent event) {
         if (event == null) {
             return EMPTY_STRING_ARRAY;
         }
         synchronized (columns) {
             List<String> itemStrings = new ArrayList<>(columns.size());
+            /* The trace event, read again only if a column string is missing */
+            ITmfEvent traceEvent = null;
+            int i = 0;
             for (TmfEventTableColumn column : columns) {
+                int index = i++;
                 ITmfEvent passedEvent = event;
                 if (!(column instanceof TmfMarginColumn) && (event instanceof CachedEvent)) {
+                    /* Use the string resolved when the event was cached */
+                    CachedEvent cachedEvent = (CachedEvent) event;
+                    String itemString = cachedEvent.getItemString((columns == fColumns) ? index : fColumns.indexOf(column));
+                    if (itemString != null) {
+                        itemStrings.add(itemString);
+                        continue;
+                    }
                     /*
                      * Make sure that the event object from the trace is passed
                      * to all columns but the TmfMarginColumn
                      */
-                    passedEvent = ((CachedEvent) event).event;
+                    if (traceEvent == null) {
+                        traceEvent = cachedEvent.getEvent();
+                    }
+                    passedEvent = traceEvent;
                 }
                 if (passedEvent == null) {
                     itemStrings.add(EMPTY_STRING);
@@ -2546,6 +2639,29 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
         }
     }
 
+    /**
+     * Resolve the strings of all the columns but the margin column for an
+     * event, in the creation order of the columns. This is called when the
+     * event is cached, so that the columns do not need the event anymore.
+     *
+     * @param event
+     *            The trace event
+     * @return The column strings, null for the margin column
+     */
+    String[] resolveItemStrings(ITmfEvent event) {
+        synchronized (fColumns) {
+            String[] itemStrings = new String[fColumns.size()];
+            int i = 0;
+            for (TmfEventTableColumn column : fColumns) {
+                if (!(column instanceof TmfMarginColumn)) {
+                    itemStrings[i] = column.getItemString(event);
+                }
+                i++;
+            }
+            return itemStrings;
+        }
+    }
+
     /**
      * Get the contents of the row in the events table corresponding to an
      * event. The order of the elements corresponds to the current order of the
@@ -2656,13 +2772,12 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
                             fTable.setItemCount((int) trace.getNbEvents() + 1);
                         } else {
                             stopFilterThread();
-                            fFilterMatchCount = 0;
-                            fFilterCheckCount = 0;
+                            resetFilterResults((ITmfFilter) fTable.getData(Key.FILTER_OBJ));
                             /*
                              * +1 for header row, +2 for top and bottom filter
                              * status rows
                              */
-                            fTable.setItemCount(3);
+                            fTable.setItemCount((int) fFilterMatchCount + 3);
                             startFilterThread();
                         }
                     }
@@ -2761,8 +2876,9 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
         }
         List<Object> list = new ArrayList<>(fTable.getSelection().length);
         for (TableItem item : fTable.getSelection()) {
-            if (item.getData() != null) {
-                list.add(item.getData());
+            ITmfEvent event = getItemEvent(item);
+            if (event != null) {
+                list.add(event);
             }
         }
         return new StructuredSelection(list);
@@ -3009,6 +3125,7 @@ public class TmfEventsTable extends TmfComponent implements IGotoMarker, IColorS
 
     @Override
     public void colorSettingsChanged(final ColorSetting[] colorSettings) {
+        fHasColorSettings = (colorSettings != null) && (colorSettings.length > 0);
         fTable.refresh();
     }
 
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.ui.viewers.xycharts.linecharts;
+
+import java.util.Arrays;
+
+/**
+ * Reduce the number of points of a line series before drawing it, while
+ * keeping its visual shape. The indexes of the points to keep are returned,
+ * so the same selection can be applied to the X and Y values.
+ *
+ * The X values of the series must be sorted in increasing order.
+ *
+ * @since 2.0
+ */
+public final class LineChartDownsampler {
+
+    private LineChartDownsampler() {
+    }
+
+    /**
+     * Check whether the X values of a series are sorted, which is needed to
+     * downsample it
+     *
+     * @param x
+     *            The X values
+     * @return True if the values are in increasing order
+     */
+    public static boolean isSorted(double[] x) {
+        for (int i = 1; i < x.length; i++) {
+            if (x[i] < x[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keep the first, last, minimum and maximum points of each of the buckets
+     * of equal X length between the first and last X values. With one bucket
+     * per pixel, the line drawn with the kept points covers the same pixels
+     * as the line drawn with all the points.
+     *
+     * @param x
+     *            The X values, sorted
+     * @param y
+     *            The Y values
+     * @param nbBuckets
+     *            The number of buckets, usually the width of the chart in
+     *            pixels
+     * @return The sorted indexes of the points to keep, at most 4 per bucket
+     */
+    public static int[] minMax(double[] x, double[] y, int nbBuckets) {
+        int n = Math.min(x.length, y.length);
+        if (n <= nbBuckets || nbBuckets <= 0) {
+            return identity(n);
+        }
+        double start = x[0];
+        double length = x[n - 1] - start;
+        int[] indexes = new int[Math.min(n, 4 * nbBuckets + 1)];
+        int size = 0;
+        int i = 0;
+        while (i < n) {
+            int bucket = bucketOf(x[i], start, length, nbBuckets);
+            int first = i;
+            int min = i;
+            int max = i;
+            i++;
+            while (i < n && bucketOf(x[i], start, length, nbBuckets) == bucket) {
+                if (y[i] < y[min]) {
+                    min = i;
+                } else if (y[i] > y[max]) {
+                    max = i;
+                }
+                i++;
+            }
+            int last = i - 1;
+            size = addSorted(indexes, size, first, min, max, last);
+        }
+        return Arrays.copyOf(indexes, size);
+    }
+
+    private static int bucketOf(double x, double start, double length, int nbBuckets) {
+        if (length <= 0) {
+            return 0;
+        }
+        return (int) Math.min(nbBuckets - 1, (x - start) / length * nbBuckets);
+    }
+
+    private static int addSorted(int[] indexes, int size, int first, int min, int max, int last) {
+        int newSize = size;
+        indexes[newSize++] = first;
+        int low = Math.min(min, max);
+        int high = Math.max(min, max);
+        if (low != first) {
+            indexes[newSize++] = low;
+        }
+        if (high != low && high != first) {
+            indexes[newSize++] = high;
+        }
+        if (last != high && last != first) {
+            indexes[newSize++] = last;
+        }
+        return newSize;
+    }
+
+    /**
+     * Select values by index
+     *
+     * @param values
+     *            The values
+     * @param indexes
+     *            The indexes of the values to select
+     * @return The selected values
+     */
+    public static double[] select(double[] values, int[] indexes) {
+        double[] selected = new double[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            selected[i] = values[indexes[i]];
+        }
+        return selected;
+    }
+
+    private static int[] identity(int n) {
+        int[] indexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            indexes[i] = i;
+        }
+        return indexes;
+    }
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.tmf.ui.viewers.xycharts.linecharts;
+
+import java.util.Arrays;
+
+/**
+ * Line series to which points can be added one at a time, in any order, with
+ * a memory usage that does not depend on the number of points. The X range is
+ * divided in buckets, usually one per pixel, and only the points with the
+ * lowest and highest X and Y values of each bucket are kept, like
+ * {@link LineChartDownsampler#minMax}.
+ *
+ * The points outside of the X range are ignored. This class is not thread
+ * safe.
+ *
+ * @since 2.0
+ */
+public class StreamingLineSeries {
+
+    private static final int FIRST = 0;
+    private static final int LAST = 1;
+    private static final int MIN = 2;
+    private static final int MAX = 3;
+    private static final int NB_KEPT = 4;
+
+    private final double fStart;
+    private final double fEnd;
+    private final int fNbBuckets;
+    /** The kept points, NB_KEPT per bucket */
+    private final double[] fX;
+    private final double[] fY;
+    private final boolean[] fUsed;
+    private long fNbPoints = 0;
+
+    /**
+     * Constructor
+     *
+     * @param start
+     *            The lowest X value
+     * @param end
+     *            The highest X value
+     * @param nbBuckets
+     *            The number of buckets, usually the width of the chart in
+     *            pixels
+     */
+    public StreamingLineSeries(double start, double end, int nbBuckets) {
+        if (nbBuckets <= 0 || end < start) {
+            throw new IllegalArgumentException();
+        }
+        fStart = start;
+        fEnd = end;
+        fNbBuckets = nbBuckets;
+        fX = new double[NB_KEPT * nbBuckets];
+        fY = new double[NB_KEPT * nbBuckets];
+        fUsed = new boolean[nbBuckets];
+    }
+
+    /**
+     * Add a point to the series
+     *
+     * @param x
+     *            The X value
+     * @param y
+     *            The Y value
+     */
+    public void add(double x, double y) {
+        if (x < fStart || x > fEnd || Double.isNaN(y)) {
+            return;
+        }
+        int bucket = (fEnd == fStart) ? 0 : (int) Math.min(fNbBuckets - 1, (x - fStart) / (fEnd - fStart) * fNbBuckets);
+        int base = NB_KEPT * bucket;
+        fNbPoints++;
+        if (!fUsed[bucket]) {
+            fUsed[bucket] = true;
+            Arrays.fill(fX, base, base + NB_KEPT, x);
+            Arrays.fill(fY, base, base + NB_KEPT, y);
+            return;
+        }
+        if (x < fX[base + FIRST]) {
+            set(base + FIRST, x, y);
+        }
+        if (x >= fX[base + LAST]) {
+            set(base + LAST, x, y);
+        }
+        if (y < fY[base + MIN]) {
+            set(base + MIN, x, y);
+        }
+        if (y > fY[base + MAX]) {
+            set(base + MAX, x, y);
+        }
+    }
+
+    private void set(int index, double x, double y) {
+        fX[index] = x;
+        fY[index] = y;
+    }
+
+    /**
+     * @return The number of points added to this series, including the ones
+     *         that were not kept
+     */
+    public long getNbPoints() {
+        return fNbPoints;
+    }
+
+    /**
+     * Get the kept points of the series, sorted by X value
+     *
+     * @return An array of two arrays, the X values and the Y values
+     */
+    public double[][] getValues() {
+        double[] x = new double[fX.length];
+        double[] y = new double[fY.length];
+        int size = 0;
+        int[] order = new int[NB_KEPT];
+        for (int bucket = 0; bucket < fNbBuckets; bucket++) {
+            if (!fUsed[bucket]) {
+                continue;
+            }
+            /* Sort the kept points of the bucket by X value */
+            int base = NB_KEPT * bucket;
+            for (int i = 0; i < NB_KEPT; i++) {
+                int index = base + i;
+                int j = i;
+                while (j > 0 && fX[order[j - 1]] > fX[index]) {
+                    order[j] = order[j - 1];
+                    j--;
+                }
+                order[j] = index;
+            }
+            for (int i = 0; i < NB_KEPT; i++) {
+                int index = order[i];
+                /* Skip the duplicates of the same point */
+                if (i > 0 && fX[index] == x[size - 1] && fY[index] == y[size - 1]) {
+                    continue;
+                }
+                x[size] = fX[index];
+                y[size] = fY[index];
+                size++;
+            }
+        }
+        return new double[][] { Arrays.copyOf(x, size), Arrays.copyOf(y, size) };
+    }
+
+    /**
+     * Clear the points of the series, to reuse it for the same X range
+     */
+    public void clear() {
+        Arrays.fill(fUsed, false);
+        fNbPoints = 0;
+    }
+}
@@ -12,6 +12,8 @@
 
 package org.eclipse.tracecompass.tmf.ui.viewers.xycharts.linecharts;
 
+import java.util.Arrays;
+
 import org.eclipse.swt.events.MouseEvent;
 import org.eclipse.swt.events.MouseTrackListener;
 import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
@@ -23,9 +25,8 @@ import org.swtchart.ISeries;
 
 /**
  * Displays a tooltip on line charts. For each series, it shows the y value at
- * the selected x value. This tooltip assumes that all series share a common set
- * of X axis values. If the X series is not common, the tooltip text may not be
- * accurate.
+ * the selected x value, which is the value of its last point before the x
+ * value. The X values of each series must be sorted.
  *
  * @author Geneviève Bastien
  */
@@ -88,30 +89,25 @@ public class TmfCommonXLineChartTooltipProvider extends TmfBaseProvider implemen
                 return;
             }
 
-            /* Find the index of the value we want */
-            double[] xS = series[0].getXSeries();
-            if (xS == null) {
-                return;
-            }
-            int index = 0;
-            for (int i = 0; i < xS.length; i++) {
-                if (xS[i] > xCoordinate) {
-                    break;
-                }
-                index = i;
-            }
-
             /* set tooltip of closest data point */
             StringBuffer buffer = new StringBuffer();
             buffer.append("time="); //$NON-NLS-1$
             buffer.append(new TmfTimestamp((long) xCoordinate + getChartViewer().getTimeOffset(), ITmfTimestamp.NANOSECOND_SCALE).toString());
             buffer.append('\n');
 
-            /* For each series, get the value at the index */
+            /*
+             * For each series, get the value of the last point before the
+             * cursor. The series can have different X values once downsampled.
+             */
             for (ISeries serie : series) {
+                double[] xS = serie.getXSeries();
                 double[] yS = serie.getYSeries();
+                if (xS == null || yS == null) {
+                    continue;
+                }
+                int index = getIndex(xS, xCoordinate);
                 /* Make sure the series values and the value at index exist */
-                if (yS == null || yS.length <= index) {
+                if (yS.length <= index) {
                     continue;
                 }
                 buffer.append(serie.getId());
@@ -125,4 +121,16 @@ public class TmfCommonXLineChartTooltipProvider extends TmfBaseProvider implemen
         }
     }
 
+    /**
+     * Find the index of the last X value that is not after a coordinate, or
+     * the first one if they are all after it
+     */
+    private static int getIndex(double[] xS, double xCoordinate) {
+        int index = Arrays.binarySearch(xS, xCoordinate);
+        if (index < 0) {
+            index = Math.max(0, -index - 2);
+        }
+        return index;
+    }
+
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2015 École Polytechnique de Montréal and others.
+ * Copyright (c) 2014, 2016 École Polytechnique de Montréal and others.
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -12,6 +12,7 @@
 
 package org.eclipse.tracecompass.tmf.ui.viewers.xycharts.linecharts;
 
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -61,6 +62,8 @@ public abstract class TmfCommonXLineChartViewer extends TmfXYChartViewer {
     private static final LineStyle[] LINE_STYLES = { LineStyle.SOLID, LineStyle.DASH, LineStyle.DOT, LineStyle.DASHDOT };
 
     private final Map<String, double[]> fSeriesValues = new LinkedHashMap<>();
+    /** The X values of the series that do not use the common X axis */
+    private final Map<String, double[]> fSeriesXValues = new HashMap<>();
     private double[] fXValues;
     private double fResolution;
 
@@ -107,6 +110,7 @@ public abstract class TmfCommonXLineChartViewer extends TmfXYChartViewer {
      */
     protected void reinitialize() {
         fSeriesValues.clear();
+        fSeriesXValues.clear();
         Thread thread = new Thread() {
             // Don't use TmfUiRefreshHandler (bug 467751)
             @Override
@@ -286,6 +290,47 @@ public abstract class TmfCommonXLineChartViewer extends TmfXYChartViewer {
             throw new IllegalStateException();
         }
         fSeriesValues.put(seriesName, seriesValues);
+        fSeriesXValues.remove(seriesName);
+    }
+
+    /**
+     * Set the data for a given series of the graph from a streaming series.
+     * The series uses the X values of the points that the streaming series
+     * kept, instead of the common X axis. The range of the chart is still the
+     * range of the X axis set with {@link #setXAxis(double[])}.
+     *
+     * If the series does not exist, it will automatically be created at display
+     * time, with the default values.
+     *
+     * @param seriesName
+     *            The name of the series for which to set the values
+     * @param series
+     *            The streaming series, whose X values are in internal time
+     * @since 2.0
+     */
+    protected void setSeries(String seriesName, StreamingLineSeries series) {
+        double[][] values = series.getValues();
+        fSeriesValues.put(seriesName, values[1]);
+        fSeriesXValues.put(seriesName, values[0]);
+    }
+
+    /**
+     * Select the points of a series to draw, when it has more points than the
+     * chart has pixels, which is the case of the series set from a
+     * {@link StreamingLineSeries}. By default, the first, last, minimum and
+     * maximum points of each pixel are kept.
+     *
+     * @param x
+     *            The X values of the series, sorted
+     * @param y
+     *            The Y values of the series
+     * @param width
+     *            The width of the chart, in pixels
+     * @return The sorted indexes of the points to draw
+     * @since 2.0
+     */
+    protected int[] downsample(double[] x, double[] y, int width) {
+        return LineChartDownsampler.minMax(x, y, width);
     }
 
     /**
@@ -321,6 +366,7 @@ public abstract class TmfCommonXLineChartViewer extends TmfXYChartViewer {
             getSwtChart().getSeriesSet().deleteSeries(series.getId());
         }
         fSeriesValues.remove(seriesName);
+        fSeriesXValues.remove(seriesName);
     }
 
     /**
@@ -339,18 +385,34 @@ public abstract class TmfCommonXLineChartViewer extends TmfXYChartViewer {
                     }
                     double maxy = DEFAULT_MAXY;
                     double miny = DEFAULT_MINY;
+                    int width = getSwtChart().getPlotArea().getBounds().width;
+                    boolean sorted = LineChartDownsampler.isSorted(xValues);
                     for (Entry<String, double[]> entry : fSeriesValues.entrySet()) {
                         ILineSeries series = (ILineSeries) getSwtChart().getSeriesSet().getSeries(entry.getKey());
                         if (series == null) {
                             series = addSeries(entry.getKey());
                         }
-                        series.setXSeries(xValues);
+                        double[] seriesX = fSeriesXValues.get(entry.getKey());
+                        boolean seriesSorted = sorted;
+                        if (seriesX == null) {
+                            seriesX = xValues;
+                        } else {
+                            seriesSorted = true;
+                        }
+                        double[] seriesY = entry.getValue();
                         /* Find the minimal and maximum values in this series */
-                        for (double value : entry.getValue()) {
+                        for (double value : seriesY) {
                             maxy = Math.max(maxy, value);
                             miny = Math.min(miny, value);
                         }
-                        series.setYSeries(entry.getValue());
+                        /* Only draw the points that can be seen */
+                        if (seriesSorted && width > 0 && seriesX.length > width) {
+                            int[] indexes = downsample(seriesX, seriesY, width);
+                            seriesX = LineChartDownsampler.select(seriesX, indexes);
+                            seriesY = LineChartDownsampler.select(seriesY, indexes);
+                        }
+                        series.setXSeries(seriesX);
+                        series.setYSeries(seriesY);
                     }
                     if (maxy == DEFAULT_MAXY) {
                         maxy = 1.0;
@@ -49,10 +49,12 @@ import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Menu;
 import org.eclipse.swt.widgets.Tree;
+import org.eclipse.tracecompass.internal.tmf.core.callstack.CallStackService;
 import org.eclipse.tracecompass.internal.tmf.ui.Activator;
 import org.eclipse.tracecompass.internal.tmf.ui.ITmfImageConstants;
 import org.eclipse.tracecompass.internal.tmf.ui.Messages;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.StateRaster;
 import org.eclipse.tracecompass.statesystem.core.StateSystemUtils;
 import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
 import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
@@ -625,12 +627,10 @@ public class CallStackView extends AbstractTimeGraphView {
                 refresh();
             }
             for (ITimeGraphEntry threadEntry : traceEntry.getChildren()) {
-                for (ITimeGraphEntry callStackEntry : threadEntry.getChildren()) {
-                    if (monitor.isCanceled()) {
-                        return;
-                    }
-                    buildStatusEvents(parentTrace, (CallStackEntry) callStackEntry, monitor, start, end);
+                if (monitor.isCanceled()) {
+                    return;
                 }
+                buildStatusEvents(parentTrace, (ThreadEntry) threadEntry, monitor, start, end);
             }
             start = end;
         }
@@ -645,20 +645,53 @@ public class CallStackView extends AbstractTimeGraphView {
         }
     }
 
-    private void buildStatusEvents(ITmfTrace trace, CallStackEntry entry, @NonNull IProgressMonitor monitor, long start, long end) {
-        ITmfStateSystem ss = entry.getStateSystem();
+    /**
+     * Build the events of all the stack levels of a thread, sampled from a
+     * single query of the call stack
+     */
+    private void buildStatusEvents(ITmfTrace trace, ThreadEntry threadEntry, @NonNull IProgressMonitor monitor, long start, long end) {
+        ITmfStateSystem ss = threadEntry.getStateSystem();
+        if (ss == null) {
+            return;
+        }
+        long queryEnd = Math.min(end, ss.getCurrentEndTime());
+        if (queryEnd < start) {
+            return;
+        }
         long resolution = Math.max(1, (end - ss.getStartTime()) / getDisplayWidth());
-        List<ITimeEvent> eventList = getEventList(entry, start, end + 1, resolution, monitor);
-        if (eventList != null) {
-            for (ITimeEvent event : eventList) {
-                entry.addEvent(event);
+        try {
+            StateRaster raster = CallStackService.querySampledLevels(ss, threadEntry.getCallStackQuark(), start, queryEnd, resolution);
+            for (ITimeGraphEntry child : threadEntry.getChildren()) {
+                CallStackEntry entry = (CallStackEntry) child;
+                List<ITimeEvent> eventList = createEvents(entry, raster.getRuns(entry.getQuark()), end + 1, monitor);
+                if (eventList == null) {
+                    return;
+                }
+                for (ITimeEvent event : eventList) {
+                    entry.addEvent(event);
+                }
             }
+        } catch (AttributeNotFoundException e) {
+            Activator.getDefault().logError("Error querying state system", e); //$NON-NLS-1$
+        } catch (TimeRangeException e) {
+            Activator.getDefault().logError("Error querying state system", e); //$NON-NLS-1$
+        } catch (StateSystemDisposedException e) {
+            /* Ignored */
         }
         if (trace == getTrace()) {
             redraw();
         }
     }
 
+    /**
+     * @since 2.0
+     */
+    @Override
+    protected boolean isEntryZoomIndependent() {
+        /* The events of an entry are queried from its own attribute */
+        return true;
+    }
+
     /**
      * @since 2.0
      */
@@ -677,38 +710,7 @@ public class CallStackView extends AbstractTimeGraphView {
         List<ITimeEvent> eventList = null;
         try {
             List<ITmfStateInterval> stackIntervals = StateSystemUtils.queryHistoryRange(ss, entry.getQuark(), start, end - 1, resolution, monitor);
-            eventList = new ArrayList<>(stackIntervals.size());
-            long lastEndTime = -1;
-            boolean lastIsNull = true;
-            for (ITmfStateInterval statusInterval : stackIntervals) {
-                if (monitor.isCanceled()) {
-                    return null;
-                }
-                long time = statusInterval.getStartTime();
-                long duration = statusInterval.getEndTime() - time + 1;
-                if (!statusInterval.getStateValue().isNull()) {
-                    final int modulo = CallStackPresentationProvider.NUM_COLORS / 2;
-                    int value = statusInterval.getStateValue().toString().hashCode() % modulo + modulo;
-                    eventList.add(new CallStackEvent(entry, time, duration, value));
-                    lastIsNull = false;
-                } else {
-                    if (lastEndTime == -1) {
-                        // add null event if it intersects the start time
-                        eventList.add(new NullTimeEvent(entry, time, duration));
-                    } else {
-                        if (lastEndTime != time && lastIsNull) {
-                            // add unknown event if between two null states
-                            eventList.add(new TimeEvent(entry, lastEndTime, time - lastEndTime));
-                        }
-                        if (time + duration >= endTime) {
-                            // add null event if it intersects the end time
-                            eventList.add(new NullTimeEvent(entry, time, duration));
-                        }
-                    }
-                    lastIsNull = true;
-                }
-                lastEndTime = time + duration;
-            }
+            eventList = createEvents(entry, stackIntervals, endTime, monitor);
         } catch (AttributeNotFoundException e) {
             Activator.getDefault().logError("Error querying state system", e); //$NON-NLS-1$
         } catch (TimeRangeException e) {
@@ -719,6 +721,42 @@ public class CallStackView extends AbstractTimeGraphView {
         return eventList;
     }
 
+    private static @Nullable List<ITimeEvent> createEvents(CallStackEntry entry, List<ITmfStateInterval> stackIntervals, long endTime, IProgressMonitor monitor) {
+        List<ITimeEvent> eventList = new ArrayList<>(stackIntervals.size());
+        long lastEndTime = -1;
+        boolean lastIsNull = true;
+        for (ITmfStateInterval statusInterval : stackIntervals) {
+            if (monitor.isCanceled()) {
+                return null;
+            }
+            long time = statusInterval.getStartTime();
+            long duration = statusInterval.getEndTime() - time + 1;
+            if (!statusInterval.getStateValue().isNull()) {
+                final int modulo = CallStackPresentationProvider.NUM_COLORS / 2;
+                int value = statusInterval.getStateValue().toString().hashCode() % modulo + modulo;
+                eventList.add(new CallStackEvent(entry, time, duration, value));
+                lastIsNull = false;
+            } else {
+                if (lastEndTime == -1) {
+                    // add null event if it intersects the start time
+                    eventList.add(new NullTimeEvent(entry, time, duration));
+                } else {
+                    if (lastEndTime != time && lastIsNull) {
+                        // add unknown event if between two null states
+                        eventList.add(new TimeEvent(entry, lastEndTime, time - lastEndTime));
+                    }
+                    if (time + duration >= endTime) {
+                        // add null event if it intersects the end time
+                        eventList.add(new NullTimeEvent(entry, time, duration));
+                    }
+                }
+                lastIsNull = true;
+            }
+            lastEndTime = time + duration;
+        }
+        return eventList;
+    }
+
     /**
      * @since 2.0
      */
@@ -728,6 +766,8 @@ public class CallStackView extends AbstractTimeGraphView {
         if (entryList == null) {
             return;
         }
+        /* The stack levels of all the threads are read from one full query */
+        Map<ITmfStateSystem, List<ITmfStateInterval>> fullStates = new HashMap<>();
         for (TimeGraphEntry traceEntry : entryList) {
             for (ITimeGraphEntry threadEntry : traceEntry.getChildren()) {
                 ITmfStateSystem ss = ((ThreadEntry) threadEntry).getStateSystem();
@@ -740,22 +780,28 @@ public class CallStackView extends AbstractTimeGraphView {
                 if (time < ss.getStartTime() || time > ss.getCurrentEndTime()) {
                     continue;
                 }
+                List<ITmfStateInterval> fullState = fullStates.get(ss);
+                if (fullState == null) {
+                    try {
+                        fullState = ss.queryFullState(time);
+                    } catch (StateSystemDisposedException e) {
+                        continue;
+                    }
+                    fullStates.put(ss, fullState);
+                }
                 for (ITimeGraphEntry child : threadEntry.getChildren()) {
                     CallStackEntry callStackEntry = (CallStackEntry) child;
                     ITmfTrace trace = callStackEntry.getTrace();
-                    try {
-                        ITmfStateInterval stackLevelInterval = ss.querySingleState(time, callStackEntry.getQuark());
-                        ITmfStateValue nameValue = stackLevelInterval.getStateValue();
-                        String name = getFunctionName(trace, nameValue);
-                        callStackEntry.setFunctionName(name);
-                        if (name.length() > 0) {
-                            callStackEntry.setFunctionEntryTime(stackLevelInterval.getStartTime());
-                            callStackEntry.setFunctionExitTime(stackLevelInterval.getEndTime() + 1);
-                        }
-                    } catch (AttributeNotFoundException e) {
-                        Activator.getDefault().logError("Error querying state system", e); //$NON-NLS-1$
-                    } catch (StateSystemDisposedException e) {
-                        /* Ignored */
+                    if (callStackEntry.getQuark() >= fullState.size()) {
+                        continue;
+                    }
+                    ITmfStateInterval stackLevelInterval = fullState.get(callStackEntry.getQuark());
+                    ITmfStateValue nameValue = stackLevelInterval.getStateValue();
+                    String name = getFunctionName(trace, nameValue);
+                    callStackEntry.setFunctionName(name);
+                    if (name.length() > 0) {
+                        callStackEntry.setFunctionEntryTime(stackLevelInterval.getStartTime());
+                        callStackEntry.setFunctionExitTime(stackLevelInterval.getEndTime() + 1);
                     }
                 }
             }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2015 Ericsson
+ * Copyright (c) 2011, 2016 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -538,6 +538,53 @@ public class HistogramDataModel implements IHistogramDataModel {
         fireModelUpdateNotification(eventCount);
     }
 
+    /**
+     * Set the event counts of all the buckets at once, from precomputed
+     * counts, instead of counting the events one by one. The time range must
+     * have been set with {@link #setTimeRange(long, long)}. Since the times of
+     * the events are not known, the first event time and the end time are set
+     * to the bounds of the non-empty buckets.
+     *
+     * @param counts
+     *            The number of events of each bucket, from the first bucket
+     * @param trace
+     *            The trace of the events
+     * @since 2.0
+     */
+    public synchronized void setBucketCounts(long[] counts, ITmfTrace trace) {
+        Integer traceIndex = fTraceMap.get(trace);
+        if (traceIndex == null) {
+            traceIndex = 0;
+        }
+        boolean empty = (fNbEvents == 0);
+        int nbBuckets = Math.min(counts.length, fNbBuckets);
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < nbBuckets; i++) {
+            if (counts[i] <= 0) {
+                continue;
+            }
+            int[] values = new int[getNbTraces()];
+            values[traceIndex] = (int) Math.min(counts[i], Integer.MAX_VALUE);
+            fBuckets[i] = new HistogramBucket(values);
+            fNbEvents += counts[i];
+            if (first == -1) {
+                first = i;
+            }
+            last = i;
+        }
+        if (first != -1) {
+            long firstTime = fFirstBucketTime + first * fBucketDuration;
+            long endTime = fFirstBucketTime + (last + 1) * fBucketDuration - 1;
+            if (empty || firstTime < fFirstEventTime) {
+                fFirstEventTime = firstTime;
+            }
+            fEndTime = Math.max(fEndTime, endTime);
+            fLastBucket = Math.max(fLastBucket, last);
+        }
+        fireModelUpdateNotification();
+    }
+
     /**
      * Add lost event to the correct bucket, compacting the if needed.
      *
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2014 Ericsson
+ * Copyright (c) 2009, 2016 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -103,6 +103,15 @@ public class HistogramRequest extends TmfEventRequest {
         }
     }
 
+    /**
+     * The histogram model moves its buckets for events earlier than the ones
+     * already counted, so the events can be received in any order.
+     */
+    @Override
+    public boolean isLateJoinAllowed() {
+        return true;
+    }
+
     /**
      * Complete the request. It also notifies the histogram model about the
      * completion.
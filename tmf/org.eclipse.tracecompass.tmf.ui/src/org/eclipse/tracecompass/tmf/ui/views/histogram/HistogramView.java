@@ -62,12 +62,16 @@ import org.eclipse.tracecompass.tmf.core.signal.TmfTraceRangeUpdatedSignal;
 import org.eclipse.tracecompass.tmf.core.signal.TmfTraceSelectedSignal;
 import org.eclipse.tracecompass.tmf.core.signal.TmfTraceUpdatedSignal;
 import org.eclipse.tracecompass.tmf.core.signal.TmfWindowRangeUpdatedSignal;
+import org.eclipse.tracecompass.tmf.core.statistics.ITmfStatistics;
+import org.eclipse.tracecompass.tmf.core.statistics.TmfStateStatistics;
+import org.eclipse.tracecompass.tmf.core.statistics.TmfStatisticsModule;
 import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.eclipse.tracecompass.tmf.core.trace.TmfTraceContext;
 import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceUtils;
 import org.eclipse.tracecompass.tmf.ui.signal.TmfTimeViewAlignmentInfo;
 import org.eclipse.tracecompass.tmf.ui.signal.TmfTimeViewAlignmentSignal;
 import org.eclipse.tracecompass.tmf.ui.views.ITmfTimeAligned;
@@ -945,6 +949,10 @@ public class HistogramView extends TmfView implements ITmfTimeAligned {
         fTimeRangeHistogram.setFullRange(fTraceStartTime, fTraceEndTime);
         fTimeRangeHistogram.setTimeRange(startTime, endTime - startTime);
 
+        if (fillFromStatistics(fTimeRangeHistogram.getDataModel(), startTime, endTime)) {
+            return;
+        }
+
         int cacheSize = fTrace.getCacheSize();
         fTimeRangeRequest = new HistogramRequest(fTimeRangeHistogram.getDataModel(),
                 timeRange, 0, ITmfEventRequest.ALL_DATA, cacheSize, ExecutionType.FOREGROUND, false);
@@ -955,6 +963,11 @@ public class HistogramView extends TmfView implements ITmfTimeAligned {
         if ((fFullTraceRequest != null) && !fFullTraceRequest.isCompleted()) {
             fFullTraceRequest.cancel();
         }
+        HistogramDataModel model = fFullTraceHistogram.getDataModel();
+        if (model.getNbEvents() == 0 && fillFromStatistics(model,
+                fullRange.getStartTime().toNanos(), fullRange.getEndTime().toNanos())) {
+            return;
+        }
         int cacheSize = fTrace.getCacheSize();
         fFullTraceRequest = new HistogramRequest(fFullTraceHistogram.getDataModel(),
                 fullRange,
@@ -965,6 +978,40 @@ public class HistogramView extends TmfView implements ITmfTimeAligned {
         fTrace.sendRequest(fFullTraceRequest);
     }
 
+    /**
+     * Fill a histogram model from the event counts precomputed by the
+     * statistics of the trace, if they are available, instead of reading the
+     * events of the time range.
+     *
+     * @return true if the model was filled
+     */
+    private boolean fillFromStatistics(HistogramDataModel model, long startTime, long endTime) {
+        ITmfTrace trace = fTrace;
+        if (trace == null || TmfTraceManager.getTraceSet(trace).size() != 1) {
+            return false;
+        }
+        TmfStatisticsModule module = TmfTraceUtils.getAnalysisModuleOfClass(trace, TmfStatisticsModule.class, TmfStatisticsModule.ID);
+        if (module == null) {
+            return false;
+        }
+        /* Do not wait for the statistics, they are only used once complete */
+        ITmfStatistics stats = module.getStatistics();
+        if (!(stats instanceof TmfStateStatistics)) {
+            return false;
+        }
+        model.setTimeRange(startTime, endTime);
+        long bucketStart = model.getFirstBucketTime();
+        long duration = model.getBucketDuration();
+        int nbBuckets = (int) ((endTime - bucketStart) / duration) + 1;
+        long[] counts = ((TmfStateStatistics) stats).approximateHistogramQuery(bucketStart, bucketStart + nbBuckets * duration, nbBuckets);
+        if (counts == null) {
+            return false;
+        }
+        model.setBucketCounts(counts, trace);
+        model.complete();
+        return true;
+    }
+
     private void contributeToActionBars() {
         IActionBars bars = getViewSite().getActionBars();
         bars.getToolBarManager().add(getShowLostEventsAction());
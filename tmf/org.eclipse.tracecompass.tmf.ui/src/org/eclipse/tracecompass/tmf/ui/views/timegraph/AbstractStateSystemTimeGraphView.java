@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015 Ericsson
+ * Copyright (c) 2015, 2016 Ericsson
  *
  * All rights reserved. This program and the accompanying materials are
  * made available under the terms of the Eclipse Public License v1.0 which
@@ -14,16 +14,27 @@ package org.eclipse.tracecompass.tmf.ui.views.timegraph;
 
 import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.internal.tmf.ui.Activator;
+import org.eclipse.tracecompass.internal.tmf.ui.views.timegraph.TimeGraphZoomCache;
+import org.eclipse.tracecompass.internal.tmf.ui.views.timegraph.TimeGraphZoomCache.ZoomedList;
 import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.StateRaster;
+import org.eclipse.tracecompass.statesystem.core.exceptions.AttributeNotFoundException;
 import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
 import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
 import org.eclipse.tracecompass.tmf.core.signal.TmfSignalHandler;
@@ -37,6 +48,7 @@ import org.eclipse.tracecompass.tmf.ui.widgets.timegraph.model.ITimeGraphEntry;
 import org.eclipse.tracecompass.tmf.ui.widgets.timegraph.model.TimeGraphEntry;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 
 /**
@@ -55,6 +67,9 @@ public abstract class AbstractStateSystemTimeGraphView extends AbstractTimeGraph
 
     private static final long MAX_INTERVALS = 1000000;
 
+    /** The event list of an entry for which no events are computed */
+    private static final List<ITimeEvent> NO_EVENTS = Collections.unmodifiableList(new ArrayList<ITimeEvent>());
+
     // ------------------------------------------------------------------------
     // Fields
     // ------------------------------------------------------------------------
@@ -65,6 +80,9 @@ public abstract class AbstractStateSystemTimeGraphView extends AbstractTimeGraph
     /** The trace to state system multi map */
     private final Multimap<ITmfTrace, ITmfStateSystem> fTraceSSMap = HashMultimap.create();
 
+    /** The state system to zoomed links and markers map */
+    private final Map<ITmfStateSystem, ZoomedStates> fZoomedStates = new WeakHashMap<>();
+
     // ------------------------------------------------------------------------
     // Classes
     // ------------------------------------------------------------------------
@@ -87,30 +105,131 @@ public abstract class AbstractStateSystemTimeGraphView extends AbstractTimeGraph
         void handle(@NonNull List<List<ITmfStateInterval>> fullStates, @Nullable List<ITmfStateInterval> prevFullState);
     }
 
+    /**
+     * A full state that reads the intervals of a state raster at a sample
+     * time. The attributes that are not in the raster are null.
+     */
+    private static class RasterFullState extends AbstractList<ITmfStateInterval> {
+        private final StateRaster fRaster;
+        private final int fSample;
+        private final int fSize;
+
+        public RasterFullState(StateRaster raster, int sample, int size) {
+            fRaster = raster;
+            fSample = sample;
+            fSize = size;
+        }
+
+        @Override
+        public @Nullable ITmfStateInterval get(int quark) {
+            if (quark < 0 || quark >= fSize) {
+                throw new IndexOutOfBoundsException("Quark:" + quark); //$NON-NLS-1$
+            }
+            return fRaster.getInterval(quark, fSample);
+        }
+
+        @Override
+        public int size() {
+            return fSize;
+        }
+    }
+
+    /**
+     * The links and markers of a state system for a time range at a
+     * resolution level, kept with the zoomed event lists of its entries so
+     * that only the new part of the range is queried when the view is panned.
+     */
+    private static final class ZoomedStates {
+        private final int fLevel;
+        private final long fStart;
+        private final long fEnd;
+        private final long fViewEndTime;
+        private final List<ILinkEvent> fLinks;
+        private final List<IMarkerEvent> fMarkers;
+
+        public ZoomedStates(int level, long start, long end, long viewEndTime, List<ILinkEvent> links, List<IMarkerEvent> markers) {
+            fLevel = level;
+            fStart = start;
+            fEnd = end;
+            fViewEndTime = viewEndTime;
+            fLinks = links;
+            fMarkers = markers;
+        }
+    }
+
+    /**
+     * A part of the zoomed time range that is not cached and is queried
+     */
+    private static final class QueriedPart {
+        private final long fStart;
+        private final long fEnd;
+        private final List<ILinkEvent> fLinks = new ArrayList<>();
+        private final List<IMarkerEvent> fMarkers = new ArrayList<>();
+
+        public QueriedPart(long start, long end) {
+            fStart = start;
+            fEnd = end;
+        }
+    }
+
+    /**
+     * The events of an entry for the zoomed time range: its cached events,
+     * and the events queried before and after them
+     */
+    private static final class EntryZoom {
+        private final @NonNull TimeGraphEntry fEntry;
+        private final List<ITimeEvent> fCached;
+        private final List<ITimeEvent> fBefore = new ArrayList<>();
+        private final List<ITimeEvent> fAfter = new ArrayList<>();
+        private boolean fHasEvents;
+
+        public EntryZoom(@NonNull TimeGraphEntry entry, @Nullable ZoomedList cached) {
+            fEntry = entry;
+            fCached = (cached == null) ? NO_EVENTS : cached.getEvents();
+            fHasEvents = (fCached != NO_EVENTS);
+        }
+
+        public void add(boolean before, @Nullable List<ITimeEvent> events) {
+            if (events != null) {
+                (before ? fBefore : fAfter).addAll(events);
+                fHasEvents = true;
+            }
+        }
+
+        public List<ITimeEvent> getEvents() {
+            if (!fHasEvents) {
+                return NO_EVENTS;
+            }
+            List<ITimeEvent> events = TimeGraphZoomCache.concat(TimeGraphZoomCache.concat(fBefore, fCached), fAfter);
+            return (events == NO_EVENTS) ? new ArrayList<ITimeEvent>() : events;
+        }
+
+        public void publish() {
+            fEntry.setZoomedEventList(fHasEvents ? new ArrayList<>(getEvents()) : null);
+        }
+    }
+
     private class ZoomThreadByTime extends ZoomThread {
         private final @NonNull List<ITmfStateSystem> fZoomSSList;
-        private boolean fClearZoomedLists;
+        private final @NonNull Set<ITimeGraphEntry> fVisible;
+        private final int fLevel;
 
-        public ZoomThreadByTime(@NonNull List<ITmfStateSystem> ssList, long startTime, long endTime, long resolution, boolean restart) {
+        public ZoomThreadByTime(@NonNull List<ITmfStateSystem> ssList, long startTime, long endTime, long resolution) {
             super(startTime, endTime, resolution);
             fZoomSSList = ssList;
-            fClearZoomedLists = !restart;
+            fVisible = getZoomVisibleEntries();
+            fLevel = TimeGraphZoomCache.getLevel(resolution);
         }
 
         @Override
         public void doRun() {
             final List<ILinkEvent> links = new ArrayList<>();
             final List<IMarkerEvent> markers = new ArrayList<>();
-            if (fClearZoomedLists) {
-                clearZoomedLists();
-            }
+            getZoomCache().validate(getEndTime());
             for (ITmfStateSystem ss : fZoomSSList) {
-                List<TimeGraphEntry> entryList = null;
-                synchronized (fSSEntryListMap) {
-                    entryList = fSSEntryListMap.get(ss);
-                }
+                List<TimeGraphEntry> entryList = getEntryList(ss);
                 if (entryList != null) {
-                    zoomByTime(ss, entryList, links, markers, getZoomStartTime(), getZoomEndTime(), getResolution(), getMonitor());
+                    zoomByTime(ss, entryList, links, markers, getZoomStartTime(), getZoomEndTime(), true, getMonitor());
                 }
             }
             if (!getMonitor().isCanceled()) {
@@ -122,81 +241,227 @@ public abstract class AbstractStateSystemTimeGraphView extends AbstractTimeGraph
         }
 
         @Override
-        public void cancel() {
-            super.cancel();
-            if (fClearZoomedLists) {
-                clearZoomedLists();
+        public void doPrefetch() {
+            if (getZoomStartTime() <= getStartTime() && getZoomEndTime() >= getEndTime()) {
+                return;
+            }
+            /* Fetch the adjacent windows, for panning */
+            long width = getZoomEndTime() - getZoomStartTime();
+            for (ITmfStateSystem ss : fZoomSSList) {
+                List<TimeGraphEntry> entryList = getEntryList(ss);
+                if (entryList != null) {
+                    zoomByTime(ss, entryList, new ArrayList<ILinkEvent>(), new ArrayList<IMarkerEvent>(),
+                            getZoomStartTime() - width, getZoomEndTime() + width, false, getMonitor());
+                }
             }
         }
 
+        /**
+         * Zoom the entries of a state system for a time range. Only the parts
+         * of the range that are not cached are queried, and the visible
+         * entries are zoomed and published before the others.
+         */
         private void zoomByTime(final ITmfStateSystem ss, final List<TimeGraphEntry> entryList, final List<ILinkEvent> links, final List<IMarkerEvent> markers,
-                long startTime, long endTime, long resolution, final @NonNull IProgressMonitor monitor) {
+                long startTime, long endTime, final boolean publish, final @NonNull IProgressMonitor monitor) {
             final long start = Math.max(startTime, ss.getStartTime());
             final long end = Math.min(endTime, ss.getCurrentEndTime());
             final boolean fullRange = getZoomStartTime() <= getStartTime() && getZoomEndTime() >= getEndTime();
             if (end < start) {
                 return;
             }
+            List<TimeGraphEntry> entries = new ArrayList<>();
+            for (TimeGraphEntry entry : entryList) {
+                addEntries(entries, entry);
+            }
             if (fullRange) {
+                for (TimeGraphEntry entry : entries) {
+                    entry.setZoomedEventList(null);
+                }
                 redraw();
+                entries.clear();
             }
-            queryFullStates(ss, start, end, resolution, monitor, new IQueryHandler() {
-                @Override
-                public void handle(@NonNull List<List<ITmfStateInterval>> fullStates, @Nullable List<ITmfStateInterval> prevFullState) {
-                    if (!fullRange) {
-                        for (TimeGraphEntry entry : entryList) {
-                            zoom(checkNotNull(entry), ss, fullStates, prevFullState, monitor);
-                        }
-                    }
-                    /* Refresh the arrows when zooming */
-                    links.addAll(getLinkList(ss, fullStates, prevFullState, monitor));
-                    /* Refresh the view-specific markers when zooming */
-                    markers.addAll(getViewMarkerList(ss, fullStates, prevFullState, monitor));
+
+            /*
+             * The cached part of the range can only be reused if it is cached
+             * for every entry, otherwise the whole range is queried
+             */
+            ZoomedStates cached = getZoomedStates(ss, start, end);
+            TimeGraphZoomCache cache = getZoomCache();
+            List<@Nullable ZoomedList> lists = new ArrayList<>(entries.size());
+            for (TimeGraphEntry entry : entries) {
+                ZoomedList list = cache.get(checkNotNull(entry), fLevel);
+                if (cached != null && (list == null || !list.covers(Math.max(start, cached.fStart), Math.min(end, cached.fEnd)))) {
+                    cached = null;
                 }
-            });
-            refresh();
-        }
+                lists.add(list);
+            }
+            final List<EntryZoom> visible = new ArrayList<>();
+            final List<EntryZoom> others = new ArrayList<>();
+            for (int i = 0; i < entries.size(); i++) {
+                TimeGraphEntry entry = checkNotNull(entries.get(i));
+                EntryZoom zoom = new EntryZoom(entry, (cached == null) ? null : lists.get(i));
+                (fVisible.contains(entry) ? visible : others).add(zoom);
+            }
 
-        private void zoom(@NonNull TimeGraphEntry entry, ITmfStateSystem ss, @NonNull List<List<ITmfStateInterval>> fullStates, @Nullable List<ITmfStateInterval> prevFullState, @NonNull IProgressMonitor monitor) {
-            List<ITimeEvent> eventList = getEventList(entry, ss, fullStates, prevFullState, monitor);
-            if (eventList != null) {
-                for (ITimeEvent event : eventList) {
-                    entry.addZoomedEvent(event);
+            List<QueriedPart> parts = new ArrayList<>();
+            long cachedStart = start;
+            long cachedEnd = end;
+            if (cached == null) {
+                parts.add(new QueriedPart(start, end));
+            } else {
+                cachedStart = Math.min(start, cached.fStart);
+                cachedEnd = Math.max(end, cached.fEnd);
+                if (start < cached.fStart) {
+                    parts.add(new QueriedPart(start, cached.fStart));
                 }
+                if (end > cached.fEnd) {
+                    parts.add(new QueriedPart(cached.fEnd, end));
+                }
+            }
+            if (publish && parts.isEmpty()) {
+                publish(visible, others);
             }
-            for (ITimeGraphEntry child : entry.getChildren()) {
+            for (final QueriedPart part : parts) {
+                final boolean before = (cached == null) || (part.fStart < cached.fStart);
+                queryFullStates(ss, part.fStart, part.fEnd, TimeGraphZoomCache.getResolution(fLevel), monitor, new IQueryHandler() {
+                    @Override
+                    public void handle(@NonNull List<List<ITmfStateInterval>> fullStates, @Nullable List<ITmfStateInterval> prevFullState) {
+                        for (EntryZoom zoom : visible) {
+                            if (monitor.isCanceled()) {
+                                return;
+                            }
+                            zoom.add(before, getEventList(zoom.fEntry, ss, fullStates, prevFullState, monitor));
+                            if (publish) {
+                                zoom.publish();
+                            }
+                        }
+                        if (publish) {
+                            redraw();
+                        }
+                        for (EntryZoom zoom : others) {
+                            if (monitor.isCanceled()) {
+                                return;
+                            }
+                            zoom.add(before, getEventList(zoom.fEntry, ss, fullStates, prevFullState, monitor));
+                            if (publish) {
+                                zoom.publish();
+                            }
+                        }
+                        /* Refresh the arrows when zooming */
+                        part.fLinks.addAll(getLinkList(ss, fullStates, prevFullState, monitor));
+                        /* Refresh the view-specific markers when zooming */
+                        part.fMarkers.addAll(getViewMarkerList(ss, fullStates, prevFullState, monitor));
+                    }
+                });
                 if (monitor.isCanceled()) {
                     return;
                 }
-                if (child instanceof TimeGraphEntry) {
-                    zoom((TimeGraphEntry) child, ss, fullStates, prevFullState, monitor);
+            }
+            if (publish) {
+                refresh();
+            }
+
+            List<ILinkEvent> zoomedLinks = (cached == null) ? parts.get(0).fLinks : merge(cached.fStart, cached.fEnd, cached.fLinks, parts, part -> part.fLinks);
+            List<IMarkerEvent> zoomedMarkers = (cached == null) ? parts.get(0).fMarkers : merge(cached.fStart, cached.fEnd, cached.fMarkers, parts, part -> part.fMarkers);
+            links.addAll(zoomedLinks);
+            markers.addAll(zoomedMarkers);
+            if (parts.isEmpty()) {
+                return;
+            }
+
+            /* Only keep a few windows around the zoomed range */
+            long margin = (getZoomEndTime() - getZoomStartTime()) * MAX_CACHED_WINDOWS;
+            cachedStart = Math.max(cachedStart, getZoomStartTime() - margin);
+            cachedEnd = Math.min(cachedEnd, getZoomEndTime() + margin);
+            for (EntryZoom zoom : Iterables.concat(visible, others)) {
+                List<ITimeEvent> events = zoom.getEvents();
+                if (events != NO_EVENTS) {
+                    events = TimeGraphZoomCache.trim(events, cachedStart, cachedEnd);
                 }
+                cache.put(zoom.fEntry, new ZoomedList(fLevel, cachedStart, cachedEnd, events));
+            }
+            synchronized (fZoomedStates) {
+                fZoomedStates.put(ss, new ZoomedStates(fLevel, cachedStart, cachedEnd, getEndTime(),
+                        filter(zoomedLinks, cachedStart, cachedEnd), filter(zoomedMarkers, cachedStart, cachedEnd)));
             }
         }
 
-        private void clearZoomedLists() {
-            for (ITmfStateSystem ss : fZoomSSList) {
-                List<TimeGraphEntry> entryList = null;
-                synchronized (fSSEntryListMap) {
-                    entryList = fSSEntryListMap.get(ss);
-                }
-                if (entryList != null) {
-                    for (TimeGraphEntry entry : entryList) {
-                        clearZoomedList(entry);
-                    }
-                }
+        private void publish(List<EntryZoom> visible, List<EntryZoom> others) {
+            for (EntryZoom zoom : visible) {
+                zoom.publish();
             }
-            fClearZoomedLists = false;
+            redraw();
+            for (EntryZoom zoom : others) {
+                zoom.publish();
+            }
+            refresh();
         }
 
-        private void clearZoomedList(TimeGraphEntry entry) {
-            entry.setZoomedEventList(null);
-            for (ITimeGraphEntry child : entry.getChildren()) {
-                if (child instanceof TimeGraphEntry) {
-                    clearZoomedList((TimeGraphEntry) child);
+        /**
+         * Get the cached links and markers of a state system, if they are at
+         * the zoom level and overlap the time range
+         */
+        private @Nullable ZoomedStates getZoomedStates(ITmfStateSystem ss, long start, long end) {
+            ZoomedStates states;
+            synchronized (fZoomedStates) {
+                states = fZoomedStates.get(ss);
+            }
+            if (states == null || states.fLevel != fLevel || states.fViewEndTime != getEndTime() ||
+                    states.fStart > end || start > states.fEnd) {
+                return null;
+            }
+            return states;
+        }
+    }
+
+    private static void addEntries(List<TimeGraphEntry> entries, TimeGraphEntry entry) {
+        entries.add(entry);
+        for (ITimeGraphEntry child : entry.getChildren()) {
+            if (child instanceof TimeGraphEntry) {
+                addEntries(entries, (TimeGraphEntry) child);
+            }
+        }
+    }
+
+    /**
+     * Merge the cached links or markers with those of the queried parts. The
+     * events that are found by the queries of two adjacent parts are kept
+     * from the part where they start.
+     */
+    private static <T extends ITimeEvent> List<T> merge(long cachedStart, long cachedEnd, List<T> cached, List<QueriedPart> parts, Function<QueriedPart, List<T>> getEvents) {
+        boolean before = false;
+        boolean after = false;
+        List<T> result = new ArrayList<>();
+        for (QueriedPart part : parts) {
+            List<T> events = getEvents.apply(part);
+            boolean isBefore = part.fStart < cachedStart;
+            before |= isBefore;
+            after |= !isBefore;
+            for (T event : events) {
+                if (isBefore ? event.getTime() < cachedStart : event.getTime() > cachedEnd) {
+                    result.add(event);
                 }
             }
         }
+        for (T event : cached) {
+            if ((!before || event.getTime() >= cachedStart) && (!after || event.getTime() <= cachedEnd)) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Filter the links or markers that intersect a time range
+     */
+    private static <T extends ITimeEvent> List<T> filter(List<T> events, long start, long end) {
+        List<T> result = new ArrayList<>();
+        for (T event : events) {
+            if (event.getTime() + event.getDuration() >= start && event.getTime() <= end) {
+                result.add(event);
+            }
+        }
+        return result;
     }
 
     // ------------------------------------------------------------------------
@@ -311,7 +576,7 @@ public abstract class AbstractStateSystemTimeGraphView extends AbstractTimeGraph
         if (ssList.isEmpty()) {
             return null;
         }
-        return new ZoomThreadByTime(ssList, startTime, endTime, resolution, restart);
+        return new ZoomThreadByTime(ssList, startTime, endTime, resolution);
     }
 
     /**
@@ -332,6 +597,11 @@ public abstract class AbstractStateSystemTimeGraphView extends AbstractTimeGraph
      */
     protected void queryFullStates(ITmfStateSystem ss, long start, long end, long resolution,
             @NonNull IProgressMonitor monitor, @NonNull IQueryHandler handler) {
+        Collection<@NonNull Integer> quarks = getRasterQuarks(ss);
+        if (quarks != null) {
+            queryRaster(ss, quarks, start, end, resolution, monitor, handler);
+            return;
+        }
         List<List<ITmfStateInterval>> fullStates = new ArrayList<>();
         List<ITmfStateInterval> prevFullState = null;
         try {
@@ -360,6 +630,47 @@ public abstract class AbstractStateSystemTimeGraphView extends AbstractTimeGraph
         }
     }
 
+    /**
+     * Query the state raster of a set of attributes for the given time range,
+     * and pass it to the handler as a list of full states.
+     */
+    private static void queryRaster(ITmfStateSystem ss, @NonNull Collection<@NonNull Integer> quarks, long start, long end, long resolution,
+            @NonNull IProgressMonitor monitor, @NonNull IQueryHandler handler) {
+        try {
+            int size = ss.getNbAttributes();
+            StateRaster raster = StateRaster.query(ss, quarks, start, end, resolution);
+            if (monitor.isCanceled()) {
+                return;
+            }
+            List<List<ITmfStateInterval>> fullStates = new ArrayList<>(raster.getNbSamples());
+            for (int sample = 0; sample < raster.getNbSamples(); sample++) {
+                fullStates.add(new RasterFullState(raster, sample, size));
+            }
+            handler.handle(fullStates, null);
+        } catch (AttributeNotFoundException e) {
+            Activator.getDefault().logError(e.getMessage(), e);
+        } catch (StateSystemDisposedException e) {
+            /* Ignored */
+        }
+    }
+
+    /**
+     * Gets the attributes that are read from the full states by this view. If
+     * not null, the full states passed to the query handlers are read from a
+     * {@link StateRaster} of these attributes, which is computed in one pass
+     * over the state history, and the other attributes are null in the full
+     * states. The default implementation returns null, in which case the full
+     * states are queried at each time.
+     *
+     * @param ss
+     *            The state system
+     * @return The quarks of the attributes, or null for all the attributes
+     * @since 2.0
+     */
+    protected @Nullable Collection<@NonNull Integer> getRasterQuarks(ITmfStateSystem ss) {
+        return null;
+    }
+
     /**
      * Gets the list of events for an entry for a given list of full states.
      *
@@ -19,14 +19,18 @@ package org.eclipse.tracecompass.tmf.ui.views.timegraph;
 import static org.eclipse.tracecompass.common.core.NonNullUtils.checkNotNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -69,6 +73,8 @@ import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Tree;
 import org.eclipse.swt.widgets.TreeColumn;
 import org.eclipse.tracecompass.internal.tmf.ui.Activator;
+import org.eclipse.tracecompass.internal.tmf.ui.views.timegraph.TimeGraphZoomCache;
+import org.eclipse.tracecompass.internal.tmf.ui.views.timegraph.TimeGraphZoomCache.ZoomedList;
 import org.eclipse.tracecompass.tmf.core.resources.ITmfMarker;
 import org.eclipse.tracecompass.tmf.core.signal.TmfSelectionRangeUpdatedSignal;
 import org.eclipse.tracecompass.tmf.core.signal.TmfSignalHandler;
@@ -121,8 +127,27 @@ public abstract class AbstractTimeGraphView extends TmfView implements ITmfTimeA
     /** Constant indicating that all levels of the time graph should be expanded */
     protected static final int ALL_LEVELS = AbstractTreeViewer.ALL_LEVELS;
 
+    /** Number of windows kept on each side of the zoomed range, for panning */
+    static final int MAX_CACHED_WINDOWS = 2;
+
+    /** Pool shared by the views to zoom independent entries in parallel */
+    private static final ForkJoinPool ZOOM_POOL = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
+    /** Maximum number of sibling entries zoomed by one task */
+    private static final int ZOOM_TASK_SIZE = 8;
+
+    /** Number of zoomed entries between redraws */
+    private static final int REDRAW_BATCH_SIZE = 64;
+
     private static final Pattern RGBA_PATTERN = Pattern.compile("RGBA \\{(\\d+), (\\d+), (\\d+), (\\d+)\\}"); //$NON-NLS-1$
 
+    /**
+     * Zoom phase enum
+     */
+    private enum ZoomPhase {
+        VISIBLE, OTHERS, PREFETCH
+    }
+
     /**
      * Redraw state enum
      */
@@ -175,6 +200,12 @@ public abstract class AbstractTimeGraphView extends TmfView implements ITmfTimeA
     /** The zoom thread */
     private ZoomThread fZoomThread;
 
+    /** The zoomed event lists of the entries, per resolution level */
+    private final TimeGraphZoomCache fZoomCache = new TimeGraphZoomCache();
+
+    /** The entries visible when the zoom thread was last started */
+    private volatile @NonNull Set<ITimeGraphEntry> fVisibleEntries = Collections.emptySet();
+
     /** The next resource action */
     private Action fNextResourceAction;
 
@@ -693,8 +724,12 @@ public abstract class AbstractTimeGraphView extends TmfView implements ITmfTimeA
 
         @Override
         public final void run() {
+            zoomStarted(fZoomStartTime, fZoomEndTime, fResolution);
             doRun();
             fDirty.decrementAndGet();
+            if (!fMonitor.isCanceled()) {
+                doPrefetch();
+            }
         }
 
         /**
@@ -702,27 +737,56 @@ public abstract class AbstractTimeGraphView extends TmfView implements ITmfTimeA
          * @since 2.0
          */
         public abstract void doRun();
+
+        /**
+         * Speculatively fetch data that is likely to be needed by the next
+         * zoom operation, after the zoom operation is done. The view is not
+         * considered dirty while prefetching. The default implementation does
+         * nothing.
+         *
+         * @since 2.0
+         */
+        public void doPrefetch() {
+            // Do nothing by default
+        }
     }
 
     private class ZoomThreadByEntry extends ZoomThread {
         private final @NonNull List<TimeGraphEntry> fZoomEntryList;
+        private final @NonNull Set<ITimeGraphEntry> fVisible = new HashSet<>();
+        private final int fLevel;
+        private final AtomicInteger fNbZoomed = new AtomicInteger();
+        private final boolean fIndependent;
 
         public ZoomThreadByEntry(@NonNull List<TimeGraphEntry> entryList, long startTime, long endTime, long resolution) {
             super(startTime, endTime, resolution);
             fZoomEntryList = entryList;
+            fLevel = TimeGraphZoomCache.getLevel(resolution);
+            fIndependent = isEntryZoomIndependent();
+            /* The parents are zoomed with their visible children, before them */
+            for (ITimeGraphEntry entry : fVisibleEntries) {
+                for (ITimeGraphEntry e = entry; e != null && fVisible.add(e); e = e.getParent()) {
+                    // add the entry and its parents
+                }
+            }
         }
 
         @Override
         public void doRun() {
-            for (TimeGraphEntry entry : fZoomEntryList) {
-                if (getMonitor().isCanceled()) {
-                    return;
-                }
-                if (entry == null) {
-                    break;
-                }
-                zoom(entry, getMonitor());
+            boolean fullRange = getZoomStartTime() <= fStartTime && getZoomEndTime() >= fEndTime;
+            fZoomCache.validate(fEndTime);
+            List<TimeGraphEntry> roots = getRoots();
+            /* Zoom the visible entries first, then the others */
+            invoke(new ZoomTask(roots, ZoomPhase.VISIBLE, fullRange));
+            if (getMonitor().isCanceled()) {
+                return;
             }
+            redraw();
+            invoke(new ZoomTask(roots, ZoomPhase.OTHERS, fullRange));
+            if (getMonitor().isCanceled()) {
+                return;
+            }
+            redraw();
             /* Refresh the arrows when zooming */
             List<ILinkEvent> events = getLinkList(getZoomStartTime(), getZoomEndTime(), getResolution(), getMonitor());
             if (events != null) {
@@ -737,26 +801,174 @@ public abstract class AbstractTimeGraphView extends TmfView implements ITmfTimeA
             redraw();
         }
 
-        private void zoom(@NonNull TimeGraphEntry entry, @NonNull IProgressMonitor monitor) {
-            if (getZoomStartTime() <= fStartTime && getZoomEndTime() >= fEndTime) {
-                entry.setZoomedEventList(null);
+        @Override
+        public void doPrefetch() {
+            if (!fIndependent || (getZoomStartTime() <= fStartTime && getZoomEndTime() >= fEndTime)) {
+                return;
+            }
+            invoke(new ZoomTask(getRoots(), ZoomPhase.PREFETCH, false));
+        }
+
+        /**
+         * Run a zoom task on the shared pool if the entries are independent,
+         * or in this thread otherwise
+         */
+        private void invoke(ZoomTask task) {
+            if (fIndependent) {
+                ZOOM_POOL.invoke(task);
             } else {
-                List<ITimeEvent> zoomedEventList = getEventList(entry, getZoomStartTime(), getZoomEndTime(), getResolution(), monitor);
-                if (zoomedEventList != null) {
-                    entry.setZoomedEventList(zoomedEventList);
+                task.compute();
+            }
+        }
+
+        private List<TimeGraphEntry> getRoots() {
+            List<TimeGraphEntry> roots = new ArrayList<>();
+            for (TimeGraphEntry entry : fZoomEntryList) {
+                if (entry == null) {
+                    break;
                 }
+                roots.add(entry);
             }
-            redraw();
-            for (ITimeGraphEntry child : entry.getChildren()) {
-                if (monitor.isCanceled()) {
+            return roots;
+        }
+
+        /**
+         * Task that zooms a list of sibling entries and their children. The
+         * siblings are split between tasks, and the children of an entry are
+         * zoomed after it, since a view can compute the events of the
+         * children from the events of their parent.
+         */
+        private class ZoomTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final List<? extends ITimeGraphEntry> fEntries;
+            private final ZoomPhase fPhase;
+            private final boolean fFullRange;
+
+            public ZoomTask(List<? extends ITimeGraphEntry> entries, ZoomPhase phase, boolean fullRange) {
+                fEntries = entries;
+                fPhase = phase;
+                fFullRange = fullRange;
+            }
+
+            @Override
+            protected void compute() {
+                int size = fEntries.size();
+                if (fIndependent && size > ZOOM_TASK_SIZE) {
+                    invokeAll(new ZoomTask(fEntries.subList(0, size / 2), fPhase, fFullRange),
+                            new ZoomTask(fEntries.subList(size / 2, size), fPhase, fFullRange));
                     return;
                 }
-                if (child instanceof TimeGraphEntry) {
-                    zoom((TimeGraphEntry) child, monitor);
+                List<ZoomTask> subtasks = new ArrayList<>();
+                for (ITimeGraphEntry child : fEntries) {
+                    if (getMonitor().isCanceled()) {
+                        return;
+                    }
+                    if (!(child instanceof TimeGraphEntry)) {
+                        continue;
+                    }
+                    TimeGraphEntry entry = (TimeGraphEntry) child;
+                    boolean visible = fVisible.contains(entry);
+                    if (fPhase != ZoomPhase.OTHERS && !visible) {
+                        /* No visible entry in this subtree */
+                        continue;
+                    }
+                    if (fPhase == ZoomPhase.PREFETCH) {
+                        prefetch(entry, getMonitor());
+                    } else if (visible == (fPhase == ZoomPhase.VISIBLE)) {
+                        if (fFullRange) {
+                            entry.setZoomedEventList(null);
+                        } else {
+                            zoom(entry, getMonitor());
+                        }
+                        /* Publish the zoomed entries in batches */
+                        if (fNbZoomed.incrementAndGet() % REDRAW_BATCH_SIZE == 0) {
+                            redraw();
+                        }
+                    }
+                    if (entry.hasChildren()) {
+                        subtasks.add(new ZoomTask(new ArrayList<>(entry.getChildren()), fPhase, fFullRange));
+                    }
+                }
+                if (fIndependent) {
+                    invokeAll(subtasks);
+                } else {
+                    for (ZoomTask subtask : subtasks) {
+                        subtask.compute();
+                    }
                 }
             }
         }
 
+        /**
+         * Fetch the adjacent windows of an entry, for panning
+         */
+        private void prefetch(@NonNull TimeGraphEntry entry, @NonNull IProgressMonitor monitor) {
+            long start = getZoomStartTime();
+            long end = getZoomEndTime();
+            long width = end - start;
+            long prefetchStart = Math.max(fStartTime, start - width);
+            long prefetchEnd = Math.min(fEndTime, end + width);
+            ZoomedList cached = fZoomCache.get(entry, fLevel);
+            if (cached != null && !cached.covers(prefetchStart, prefetchEnd)) {
+                extend(entry, cached, prefetchStart, prefetchEnd, monitor);
+            }
+        }
+
+        private void zoom(@NonNull TimeGraphEntry entry, @NonNull IProgressMonitor monitor) {
+            long start = getZoomStartTime();
+            long end = getZoomEndTime();
+            if (!fIndependent) {
+                List<ITimeEvent> zoomedEventList = getEventList(entry, start, end, getResolution(), monitor);
+                if (zoomedEventList != null) {
+                    entry.setZoomedEventList(zoomedEventList);
+                }
+                return;
+            }
+            ZoomedList cached = fZoomCache.get(entry, fLevel);
+            if (cached == null || !cached.covers(start, end)) {
+                cached = extend(entry, cached, start, end, monitor);
+            }
+            if (cached != null) {
+                entry.setZoomedEventList(new ArrayList<>(cached.getEvents()));
+            }
+        }
+
+        /**
+         * Extend the cached list of an entry to a time range, only querying
+         * the parts of the range that are not already cached, and cache it
+         */
+        private @Nullable ZoomedList extend(@NonNull TimeGraphEntry entry, @Nullable ZoomedList cached, long start, long end, @NonNull IProgressMonitor monitor) {
+            long resolution = TimeGraphZoomCache.getResolution(fLevel);
+            List<ITimeEvent> events;
+            long cachedStart = start;
+            long cachedEnd = end;
+            if (cached == null || !cached.overlaps(start, end)) {
+                events = getEventList(entry, start, end, resolution, monitor);
+            } else {
+                events = cached.getEvents();
+                cachedStart = Math.min(start, cached.getStart());
+                cachedEnd = Math.max(end, cached.getEnd());
+                if (start < cached.getStart()) {
+                    List<ITimeEvent> before = getEventList(entry, start, cached.getStart(), resolution, monitor);
+                    events = (before == null) ? null : TimeGraphZoomCache.concat(before, events);
+                }
+                if (events != null && end > cached.getEnd()) {
+                    List<ITimeEvent> after = getEventList(entry, cached.getEnd(), end, resolution, monitor);
+                    events = (after == null) ? null : TimeGraphZoomCache.concat(events, after);
+                }
+            }
+            if (events == null || monitor.isCanceled()) {
+                return null;
+            }
+            /* Only keep a few windows around the requested range */
+            long margin = (end - start) * MAX_CACHED_WINDOWS;
+            cachedStart = Math.max(cachedStart, start - margin);
+            cachedEnd = Math.min(cachedEnd, end + margin);
+            ZoomedList list = new ZoomedList(fLevel, cachedStart, cachedEnd, TimeGraphZoomCache.trim(events, cachedStart, cachedEnd));
+            fZoomCache.put(entry, list);
+            return list;
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -1363,6 +1575,7 @@ public abstract class AbstractTimeGraphView extends TmfView implements ITmfTimeA
         synchronized (fEntryListMap) {
             fEntryListMap.remove(signal.getTrace());
         }
+        fZoomCache.clear();
         fFiltersMap.remove(signal.getTrace());
         fViewContext.remove(signal.getTrace());
         if (signal.getTrace() == fTrace) {
@@ -1543,7 +1756,11 @@ public abstract class AbstractTimeGraphView extends TmfView implements ITmfTimeA
     protected abstract void buildEventList(@NonNull ITmfTrace trace, @NonNull ITmfTrace parentTrace, @NonNull IProgressMonitor monitor);
 
     /**
-     * Gets the list of event for an entry in a given timerange
+     * Gets the list of event for an entry in a given timerange. The events of
+     * an entry are always computed after those of its parent. If
+     * {@link #isEntryZoomIndependent()} returns true, this can be called
+     * concurrently for different entries, and for a part of the zoomed time
+     * range that is not already cached.
      *
      * @param entry
      *            The entry to get events for
@@ -1561,6 +1778,21 @@ public abstract class AbstractTimeGraphView extends TmfView implements ITmfTimeA
             long startTime, long endTime, long resolution,
             @NonNull IProgressMonitor monitor);
 
+    /**
+     * Whether the events of an entry only depend on the time range requested
+     * for that entry, and not on the events computed for the other entries.
+     * If true, the entries are zoomed in parallel, and their zoomed event
+     * lists are cached and extended when the view is panned. Otherwise the
+     * entries are zoomed one at a time in tree order, for the whole zoomed
+     * time range. The default implementation returns false.
+     *
+     * @return true if the entries can be zoomed independently
+     * @since 2.0
+     */
+    protected boolean isEntryZoomIndependent() {
+        return false;
+    }
+
     /**
      * Gets the list of links (displayed as arrows) for a trace in a given
      * timerange.  Default implementation returns an empty list.
@@ -1827,6 +2059,9 @@ public abstract class AbstractTimeGraphView extends TmfView implements ITmfTimeA
             }
         }
         long resolution = Math.max(1, (clampedEndTime - clampedStartTime) / fDisplayWidth);
+        if (Display.getCurrent() != null) {
+            fVisibleEntries = getVisibleEntries();
+        }
         fZoomThread = createZoomThread(clampedStartTime, clampedEndTime, resolution, restart);
         if (fZoomThread != null) {
             fZoomThread.start();
@@ -1835,6 +2070,61 @@ public abstract class AbstractTimeGraphView extends TmfView implements ITmfTimeA
         }
     }
 
+    /**
+     * Get the cache of the zoomed event lists, which is shared with the zoom
+     * threads of the subclasses in this package.
+     */
+    TimeGraphZoomCache getZoomCache() {
+        return fZoomCache;
+    }
+
+    /**
+     * Get the entries that were visible when the zoom thread was last
+     * started.
+     */
+    @NonNull Set<ITimeGraphEntry> getZoomVisibleEntries() {
+        return fVisibleEntries;
+    }
+
+    /**
+     * Get the entries that are visible in the time graph, with one page of
+     * entries above and below, so that they are zoomed first. Must be called
+     * from the UI thread.
+     */
+    private @NonNull Set<ITimeGraphEntry> getVisibleEntries() {
+        if (fTimeGraphWrapper == null || fTimeGraphWrapper.isDisposed()) {
+            return Collections.emptySet();
+        }
+        TimeGraphViewer viewer = fTimeGraphWrapper.getTimeGraphViewer();
+        ITimeGraphEntry[] expanded = viewer.getExpandedElements();
+        int top = viewer.getTopIndex();
+        int page = viewer.getTimeGraphControl().countPerPage();
+        int from = Math.max(0, top - page);
+        int to = Math.min(expanded.length, top + 2 * page + 1);
+        if (from >= to) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(Arrays.asList(expanded).subList(from, to));
+    }
+
+    /**
+     * Called from the zoom thread when it starts, before the zoom operation
+     * is run. Views can override this to reset the state that the zoomed
+     * event lists are computed from. The default implementation does
+     * nothing.
+     *
+     * @param startTime
+     *            the zoom start time
+     * @param endTime
+     *            the zoom end time
+     * @param resolution
+     *            the resolution
+     * @since 2.0
+     */
+    protected void zoomStarted(long startTime, long endTime, long resolution) {
+        // Do nothing by default
+    }
+
     /**
      * Create a zoom thread.
      *